@@ -4,6 +4,7 @@ import org.boon.core.timer.TimeKeeper;
 
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
@@ -27,7 +28,17 @@ public class SystemTimeKeeper implements TimeKeeper {
     public static void start() {
 
         if ( !started.getAndSet (true) ) {
-            executorService = Executors.newSingleThreadScheduledExecutor();
+            time.set( System.nanoTime() / 1_000_000 );
+
+            /* A daemon, the clock should not keep the JVM up. */
+            executorService = Executors.newSingleThreadScheduledExecutor( new ThreadFactory() {
+                @Override
+                public Thread newThread( Runnable runnable ) {
+                    Thread thread = new Thread( runnable, "system-time-keeper" );
+                    thread.setDaemon( true );
+                    return thread;
+                }
+            } );
 
             executorService.scheduleAtFixedRate( new Runnable() {
                 @Override
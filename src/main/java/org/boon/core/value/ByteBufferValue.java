@@ -0,0 +1,172 @@
+package org.boon.core.value;
+
+import org.boon.core.Type;
+import org.boon.core.Value;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Date;
+
+/**
+ * A string or number left where it is in a byte buffer, a memory mapped file say, until it is asked for.
+ * The first access decodes its bytes into a {@link CharSequenceValue} or {@link NumberValue} that answers
+ * from then on, and lets go of the buffer.
+ */
+public class ByteBufferValue implements Value {
+
+    private final Type type;
+    private final boolean encoded;
+    private final boolean checkDate;
+    private final Charset charset;
+
+    private ByteBuffer buffer;
+    private final int startIndex;
+    private final int endIndex;
+
+    private Value decoded;
+
+    public ByteBufferValue( Type type, int startIndex, int endIndex, ByteBuffer buffer,
+                            boolean encoded, Charset charset, boolean checkDate ) {
+        this.type = type;
+        this.startIndex = startIndex;
+        this.endIndex = endIndex;
+        this.buffer = buffer;
+        this.encoded = encoded;
+        this.charset = charset;
+        this.checkDate = checkDate;
+    }
+
+    private Value decoded() {
+        if ( decoded == null ) {
+            int length = endIndex - startIndex;
+            if ( type == Type.STRING ) {
+                byte[] bytes = new byte[ length ];
+                for ( int index = 0; index < length; index++ ) {
+                    bytes[ index ] = buffer.get( startIndex + index );
+                }
+
+                /* Escapes are ASCII, so they are decoded after the charset is, by the char value. */
+                char[] chars = new String( bytes, charset ).toCharArray();
+                decoded = new CharSequenceValue( false, type, 0, chars.length, chars, encoded, checkDate );
+            } else {
+                /* Numbers are ASCII whatever the charset. */
+                char[] chars = new char[ length ];
+                for ( int index = 0; index < length; index++ ) {
+                    chars[ index ] = ( char ) buffer.get( startIndex + index );
+                }
+                decoded = new NumberValue( false, type, 0, length, chars );
+            }
+            buffer = null;
+        }
+        return decoded;
+    }
+
+    @Override
+    public String toString() {
+        return decoded().toString();
+    }
+
+    @Override
+    public final Object toValue() {
+        return decoded().toValue();
+    }
+
+    @Override
+    public <T extends Enum> T toEnum( Class<T> cls ) {
+        return decoded().toEnum( cls );
+    }
+
+    @Override
+    public boolean isContainer() {
+        return false;
+    }
+
+    /**
+     * Decoding copies the bytes out, so the value no longer holds the buffer.
+     */
+    @Override
+    public void chop() {
+        decoded();
+    }
+
+    @Override
+    public byte byteValue() {
+        return decoded().byteValue();
+    }
+
+    @Override
+    public short shortValue() {
+        return decoded().shortValue();
+    }
+
+    @Override
+    public int intValue() {
+        return decoded().intValue();
+    }
+
+    @Override
+    public long longValue() {
+        return decoded().longValue();
+    }
+
+    @Override
+    public BigDecimal bigDecimalValue() {
+        return decoded().bigDecimalValue();
+    }
+
+    @Override
+    public BigInteger bigIntegerValue() {
+        return decoded().bigIntegerValue();
+    }
+
+    @Override
+    public float floatValue() {
+        return decoded().floatValue();
+    }
+
+    @Override
+    public double doubleValue() {
+        return decoded().doubleValue();
+    }
+
+    @Override
+    public boolean booleanValue() {
+        return decoded().booleanValue();
+    }
+
+    @Override
+    public Date dateValue() {
+        return decoded().dateValue();
+    }
+
+    @Override
+    public String stringValue() {
+        return decoded().stringValue();
+    }
+
+    @Override
+    public String stringValueEncoded() {
+        return decoded().stringValueEncoded();
+    }
+
+    @Override
+    public char charValue() {
+        return decoded().charValue();
+    }
+
+    @Override
+    public boolean equals( Object o ) {
+        if ( this == o ) return true;
+        if ( !( o instanceof ByteBufferValue ) ) return false;
+
+        ByteBufferValue value = ( ByteBufferValue ) o;
+        return type == value.type && toString().equals( value.toString() );
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * type.hashCode() + toString().hashCode();
+    }
+}
@@ -173,6 +173,13 @@ public abstract class Criterion<VALUE> extends Criteria {
             this.objectUnderTest = o;
 
             initIfNeeded();
+
+            /* Read once. Another thread testing the same criteria may clean up after its own group test. */
+            Map<String, FieldAccess> fields = this.fields;
+            if ( fields == null ) {
+                fields = getFieldsInternal( o );
+            }
+
             if ( this.useDelegate ) {
 
                 return this.nativeDelegate.resolve( fields, o );
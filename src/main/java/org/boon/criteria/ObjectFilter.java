@@ -9,6 +9,7 @@ import org.boon.core.reflection.fields.FieldAccess;
 import org.boon.criteria.internal.*;
 
 import java.util.*;
+import java.util.regex.Pattern;
 
 import static org.boon.core.reflection.Reflection.iterator;
 
@@ -469,15 +470,25 @@ public class ObjectFilter {
 //    }
 
 
-    // TODO regex suppot
-//    public static Query matches(Object name, Object set) {
-//        return new Criterion<Object>(name.toString(), Operator.EQUAL, set) {
-//            @Override
-//            public boolean resolve(Map<String, FieldAccess> fields, Object owner) {
-//                return set.equals(field.readNestedValue(owner)) ;
-//            }
-//        };
-//    }
+    /**
+     * The whole string value of the field matches the regular expression.
+     */
+    public static Criterion matches( final Object name, final String regex ) {
+        return new Criterion<Object>( name.toString(), Operator.MATCHES, regex ) {
+            Pattern pattern = Pattern.compile( regex );
+
+            @Override
+            public boolean resolve( Map<String, FieldAccess> fields, Object owner ) {
+                FieldAccess field = fields.get( name );
+                Object itemValue = field.getValue( owner );
+                if ( itemValue == null ) {
+                    return false;
+                }
+                String sItemvalue = itemValue instanceof String ? ( String ) itemValue : itemValue.toString();
+                return pattern.matcher( sItemvalue ).matches();
+            }
+        };
+    }
 
 
     //
@@ -18,6 +18,14 @@ public abstract class Criteria implements Predicate {
         fieldsLocal.set( null );
     }
 
+    /**
+     * Fields set for this thread, or null.
+     * Code that tests criteria on other threads hands these over with {@link #fields(java.util.Map)}.
+     */
+    public static Map<String, FieldAccess> currentFields() {
+        return fieldsLocal.get();
+    }
+
     public abstract void prepareForGroupTest( Map<String, FieldAccess> fields, Object owner );
 
 
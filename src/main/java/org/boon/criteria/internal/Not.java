@@ -22,6 +22,10 @@ public class Not extends Criteria {
 
     }
 
+    public Criteria getExpression() {
+        return expression;
+    }
+
     @Override
     public boolean resolve( Map<String, FieldAccess> fields, Object owner ) {
         return !this.expression.resolve( fields, owner );
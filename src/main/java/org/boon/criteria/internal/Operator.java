@@ -19,10 +19,10 @@ public enum Operator {
 
 
     STARTS_WITH, //Indexed for strings
-    ENDS_WITH,  //Not indexed
-    CONTAINS,   //Not indexed
+    ENDS_WITH,  //Indexed by n-gram search indexes
+    CONTAINS,   //Indexed by n-gram search indexes
     NOT_CONTAINS,//Not indexed
-    MATCHES,    //Not implemented yet
+    MATCHES,    //Indexed by n-gram search indexes
     IN,         //Not indexed
     NOT_IN,     //Not Indexed
     NOT,
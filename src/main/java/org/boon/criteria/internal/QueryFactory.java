@@ -1,12 +1,14 @@
 package org.boon.criteria.internal;
 
 
+import org.boon.core.reflection.BeanUtils;
+import org.boon.core.reflection.fields.FieldAccess;
+import org.boon.criteria.Criterion;
 import org.boon.criteria.ObjectFilter;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 
 public class QueryFactory {
@@ -23,6 +25,37 @@ public class QueryFactory {
         return ObjectFilter.or( exp ).test( obj );
     }
 
+    /**
+     * Collects the top level properties the criteria read, so "department.name" is "department".
+     *
+     * @return false if there is a criteria that does not say what it reads
+     */
+    public static boolean properties( Criteria criteria, Set<String> properties ) {
+        if ( criteria instanceof Group ) {
+            for ( Criteria expression : ( ( Group ) criteria ).getExpressions() ) {
+                if ( !properties( expression, properties ) ) {
+                    return false;
+                }
+            }
+            return true;
+        } else if ( criteria instanceof Not ) {
+            return properties( ( ( Not ) criteria ).getExpression(), properties );
+        } else if ( criteria instanceof Criterion ) {
+            String name = ( ( Criterion ) criteria ).getName();
+            int end = name.length();
+            for ( int index = 0; index < name.length(); index++ ) {
+                char c = name.charAt( index );
+                if ( c == '.' || c == '[' ) {
+                    end = index;
+                    break;
+                }
+            }
+            properties.add( name.substring( 0, end ) );
+            return true;
+        }
+        return false;
+    }
+
 
     public static <T> List<T> filter( Collection<T> items, Criteria exp ) {
         if ( items.size() == 0 ) {
@@ -38,5 +71,106 @@ public class QueryFactory {
         return results;
     }
 
+    /* Below this many items splitting the work costs more than it saves. */
+    private static final int PARALLEL_THRESHOLD = 10_000;
+    private static final int MIN_CHUNK = 2_048;
+
+    /**
+     * Same as {@link #filter(java.util.Collection, Criteria)} but splits the items into chunks and
+     * tests them on the pool. Results come back in the same order as the items.
+     * Small collections, or a null pool, are filtered on the calling thread.
+     * <p/>
+     * The criteria are initialized on the calling thread first, and the fields set for this thread
+     * are handed to every worker.
+     */
+    public static <T> List<T> filter( Collection<T> items, Criteria exp, ForkJoinPool pool ) {
+        if ( pool == null || items.size() < PARALLEL_THRESHOLD ) {
+            return filter( items, exp );
+        }
+
+        List<T> list = items instanceof RandomAccess ? ( List<T> ) items : new ArrayList<>( items );
+
+        Map<String, FieldAccess> fields = Criteria.currentFields();
+        if ( fields == null ) {
+            fields = BeanUtils.getFieldsFromObject( list.get( 0 ) );
+        }
+        initialize( exp, fields );
+
+        int chunk = Math.max( MIN_CHUNK, list.size() / ( pool.getParallelism() * 4 ) );
+        return pool.invoke( new FilterTask<>( list, 0, list.size(), chunk, exp, fields ) );
+    }
+
+    /**
+     * Criterion turns its value into the field type the first time it is tested.
+     * Doing it here means the workers only ever read the criteria.
+     */
+    private static void initialize( Criteria exp, Map<String, FieldAccess> fields ) {
+        if ( exp instanceof Criterion ) {
+            Criterion criterion = ( Criterion ) exp;
+            if ( !criterion.isInitialized() ) {
+                criterion.initByFields( fields );
+            }
+        } else if ( exp instanceof Group ) {
+            for ( Criteria child : ( ( Group ) exp ).getExpressions() ) {
+                initialize( child, fields );
+            }
+        } else if ( exp instanceof Not ) {
+            initialize( ( ( Not ) exp ).getExpression(), fields );
+        }
+    }
+
+    private static class FilterTask<T> extends RecursiveTask<List<T>> {
+
+        private static final long serialVersionUID = 1L;
 
+        private final List<T> items;
+        private final int start;
+        private final int end;
+        private final int chunk;
+        private final Criteria exp;
+        private final Map<String, FieldAccess> fields;
+
+        FilterTask( List<T> items, int start, int end, int chunk, Criteria exp, Map<String, FieldAccess> fields ) {
+            this.items = items;
+            this.start = start;
+            this.end = end;
+            this.chunk = chunk;
+            this.exp = exp;
+            this.fields = fields;
+        }
+
+        @Override
+        protected List<T> compute() {
+            if ( end - start <= chunk ) {
+                return scan();
+            }
+
+            int middle = ( start + end ) >>> 1;
+            FilterTask<T> left = new FilterTask<>( items, start, middle, chunk, exp, fields );
+            left.fork();
+            List<T> right = new FilterTask<>( items, middle, end, chunk, exp, fields ).compute();
+
+            List<T> results = left.join();
+            results.addAll( right );
+            return results;
+        }
+
+        /* The calling thread can end up running a chunk too, so put its own fields back after. */
+        private List<T> scan() {
+            Map<String, FieldAccess> previous = Criteria.currentFields();
+            Criteria.fields( fields );
+            try {
+                List<T> results = new ArrayList<>();
+                for ( int index = start; index < end; index++ ) {
+                    T item = items.get( index );
+                    if ( exp.test( item ) ) {
+                        results.add( item );
+                    }
+                }
+                return results;
+            } finally {
+                Criteria.fields( previous );
+            }
+        }
+    }
 }
@@ -0,0 +1,193 @@
+package org.boon.datarepo;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.boon.Str.join;
+import static org.boon.core.Conversions.toDouble;
+import static org.boon.core.Conversions.toLong;
+
+/**
+ * An aggregate over the items of a {@link View}. Unlike a {@link org.boon.criteria.ProjectedSelector}
+ * it can take a value back out, so the view keeps it up to date as items come and go instead of
+ * running over every item again. The names match the projected selectors, "sum.salary", "max.salary" and so on.
+ * <p/>
+ * An aggregate keeps state, so use a new one for each view.
+ */
+public abstract class Aggregate {
+
+    private final String name;
+    private final String fieldName;
+
+    protected Aggregate( String name, String fieldName ) {
+        this.name = name;
+        this.fieldName = fieldName;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * The field whose values this aggregate takes, or null if it only counts items.
+     */
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    public abstract void add( Object value );
+
+    public abstract void remove( Object value );
+
+    public abstract Object value();
+
+
+    public static Aggregate count() {
+        return new Aggregate( "count", null ) {
+            long count;
+
+            @Override
+            public void add( Object value ) {
+                count++;
+            }
+
+            @Override
+            public void remove( Object value ) {
+                count--;
+            }
+
+            @Override
+            public Object value() {
+                return count;
+            }
+        };
+    }
+
+    public static Aggregate sum( final String fieldName ) {
+        return new Aggregate( join( '.', "sum", fieldName ), fieldName ) {
+            long sum;
+
+            @Override
+            public void add( Object value ) {
+                if ( value != null ) {
+                    sum += toLong( value );
+                }
+            }
+
+            @Override
+            public void remove( Object value ) {
+                if ( value != null ) {
+                    sum -= toLong( value );
+                }
+            }
+
+            @Override
+            public Object value() {
+                return sum;
+            }
+        };
+    }
+
+    public static Aggregate sumFloat( final String fieldName ) {
+        return new Aggregate( join( '.', "sum", fieldName ), fieldName ) {
+            double sum;
+
+            @Override
+            public void add( Object value ) {
+                if ( value != null ) {
+                    sum += toDouble( value );
+                }
+            }
+
+            @Override
+            public void remove( Object value ) {
+                if ( value != null ) {
+                    sum -= toDouble( value );
+                }
+            }
+
+            @Override
+            public Object value() {
+                return sum;
+            }
+        };
+    }
+
+    /**
+     * Average of the values that are not null, or null when there are none.
+     */
+    public static Aggregate avg( final String fieldName ) {
+        return new Aggregate( join( '.', "avg", fieldName ), fieldName ) {
+            double sum;
+            long count;
+
+            @Override
+            public void add( Object value ) {
+                if ( value != null ) {
+                    sum += toDouble( value );
+                    count++;
+                }
+            }
+
+            @Override
+            public void remove( Object value ) {
+                if ( value != null ) {
+                    sum -= toDouble( value );
+                    count--;
+                }
+            }
+
+            @Override
+            public Object value() {
+                return count == 0 ? null : sum / count;
+            }
+        };
+    }
+
+    public static Aggregate max( final String fieldName ) {
+        return new Extreme( join( '.', "max", fieldName ), fieldName, true );
+    }
+
+    public static Aggregate min( final String fieldName ) {
+        return new Extreme( join( '.', "min", fieldName ), fieldName, false );
+    }
+
+    /**
+     * Min and max keep a count of every value so the next one is there when the current one is taken out.
+     */
+    private static class Extreme extends Aggregate {
+        private final TreeMap<Comparable, Integer> values = new TreeMap<>();
+        private final boolean max;
+
+        Extreme( String name, String fieldName, boolean max ) {
+            super( name, fieldName );
+            this.max = max;
+        }
+
+        @Override
+        public void add( Object value ) {
+            if ( value != null ) {
+                Integer count = values.get( value );
+                values.put( ( Comparable ) value, count == null ? 1 : count + 1 );
+            }
+        }
+
+        @Override
+        public void remove( Object value ) {
+            if ( value != null ) {
+                Integer count = values.get( value );
+                if ( count == null || count == 1 ) {
+                    values.remove( value );
+                } else {
+                    values.put( ( Comparable ) value, count - 1 );
+                }
+            }
+        }
+
+        @Override
+        public Object value() {
+            Map.Entry<Comparable, Integer> entry = max ? values.lastEntry() : values.firstEntry();
+            return entry == null ? null : entry.getKey();
+        }
+    }
+}
@@ -16,6 +16,9 @@
 package org.boon.datarepo;
 
 import org.boon.criteria.internal.Criteria;
+import org.boon.sort.Sort;
+
+import java.util.List;
 
 
 /**
@@ -27,6 +30,33 @@ public interface Filter {
 
     ResultSet filter( Criteria... expressions );
 
+    /**
+     * Same matches as filter but pulled one at a time as the result set is read.
+     */
+    ResultSet lazyFilter( Criteria... expressions );
+
+    /**
+     * A page of matches in the order of the search index on sortBy, starting after the cursor.
+     * Pass a null cursor for the first page.
+     */
+    Page page( String sortBy, String cursor, int size, Criteria... expressions );
+
+    /**
+     * Matches start to start + size in sort order, without sorting every match.
+     */
+    List sortedFilter( Sort sort, int start, int size, Criteria... expressions );
+
     void invalidate();
 
+    /**
+     * The item is about to change. A property of null means the whole item, it is being removed or replaced.
+     * Lets a cache take the item out of the results that depend on it.
+     */
+    void invalidate( String property, Object item );
+
+    /**
+     * The item is back after the change to the property, or was added when the property is null.
+     */
+    void validate( String property, Object item );
+
 }
@@ -0,0 +1,36 @@
+package org.boon.datarepo;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Group by over a {@link ResultSet}. Pick the aggregates and then ask for the rows, one per group.
+ * Each row has the group by fields followed by the aggregates, named the way the projected selectors are,
+ * "count", "sum.salary", "avg.salary" and so on. With no aggregates picked each row gets a count.
+ * <p/>
+ * The items are read in one pass and the aggregates are kept in primitive arrays, one slot per group.
+ * Grouping every item in the repo on a field with a lookup or search index takes the groups from the index buckets,
+ * so a count is just the size of each bucket.
+ */
+public interface GroupBy {
+
+    GroupBy count();
+
+    GroupBy sum( String fieldName );
+
+    GroupBy min( String fieldName );
+
+    GroupBy max( String fieldName );
+
+    /**
+     * Average of the values that are not null, null for a group with none.
+     */
+    GroupBy avg( String fieldName );
+
+    /**
+     * How many different values the field has in each group, named "distinct.fieldName".
+     */
+    GroupBy countDistinct( String fieldName );
+
+    List<Map<String, Object>> asListOfMaps();
+}
@@ -0,0 +1,39 @@
+package org.boon.datarepo;
+
+import org.boon.criteria.Selector;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Inner join of a result set with a repo or another result set, on a field of each. Made by
+ * {@link ResultSet#join(SearchableCollection, String, String)}.
+ * <p/>
+ * When the right side has an index on its field each left item probes the index, an index nested loop.
+ * Otherwise the right items are hashed on their field once and each left item looks up its matches there.
+ * <p/>
+ * The rows come out as the left items are walked, in left order, so iterating does not hold every row at once.
+ * A row has the selections from the left item then the selections from the right item. With no selectors
+ * a side puts in all of its fields, and a field both sides have keeps the left value.
+ *
+ * @param <LEFT>  The items on the left.
+ * @param <RIGHT> The items on the right.
+ */
+public interface Join<LEFT, RIGHT> extends Iterable<Map<String, Object>> {
+
+    Join<LEFT, RIGHT> selectLeft( Selector... selectors );
+
+    Join<LEFT, RIGHT> selectRight( Selector... selectors );
+
+    List<Map<String, Object>> asListOfMaps();
+
+    /**
+     * The rows as a result set, so they can be selected, sorted and grouped like items.
+     */
+    ResultSet<Map<String, Object>> results();
+
+    /**
+     * The plan the join picked, with the rows it has produced so far.
+     */
+    List<PlanStep> queryPlan();
+}
@@ -18,6 +18,7 @@ package org.boon.datarepo;
 import org.boon.core.Function;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * Creates a simple lookup index (like a hash map).
@@ -32,6 +33,18 @@ public interface LookupIndex<KEY, ITEM> extends Bag<ITEM> {
 
     List<ITEM> getAll( KEY key );
 
+    /**
+     * Adds a batch of items. Indexes that can be built faster from the whole batch than one add
+     * at a time do so, a search index sorts the batch and builds its tree in one pass.
+     */
+    void addAll( List<ITEM> items );
+
+    /**
+     * Every key with the items filed under it, or null when the index does not keep its items in buckets.
+     * A group by over the whole repo reads its groups from here instead of hashing every item again.
+     */
+    Map<KEY, List<ITEM>> buckets();
+
     boolean deleteByKey( KEY key );
 
     boolean isPrimaryKeyOnly();
@@ -40,9 +53,25 @@ public interface LookupIndex<KEY, ITEM> extends Bag<ITEM> {
 
     void setBucketSize( int size );
 
+    /**
+     * Turns on thread safe buckets so the index can be read while it is being written.
+     */
+    void setConcurrent( boolean concurrent );
+
+    /**
+     * A read only copy of the index as it is right now.
+     * Later adds and deletes do not show up in the copy.
+     */
+    LookupIndex<KEY, ITEM> snapshot();
+
     void init();
 
     boolean has( KEY key );
 
+    /**
+     * How many items have this key. The query planner asks this before it picks an index, so it must be cheap.
+     */
+    int count( KEY key );
+
 
 }
@@ -19,6 +19,7 @@ import org.boon.criteria.Update;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Future;
 
 public interface ObjectEditor<KEY, ITEM> extends Bag<ITEM> {
 
@@ -40,6 +41,14 @@ public interface ObjectEditor<KEY, ITEM> extends Bag<ITEM> {
 
     void addAllAsync( Collection<ITEM> items );
 
+    /**
+     * Loads the items on another thread. Loads run one after another, in the order they were asked for.
+     * A repo that is not concurrent is not thread safe, so it loads on the caller's thread instead.
+     *
+     * @return done when the items are in the repo
+     */
+    Future<?> submitAll( Collection<ITEM> items );
+
     void modifyAll( ITEM... items );
 
     void modifyAll( Collection<ITEM> items );
@@ -0,0 +1,40 @@
+package org.boon.datarepo;
+
+import java.util.List;
+
+/**
+ * One page of a keyset paginated query.
+ * Hand the cursor back to get the next page. Items added or removed between pages do not shift
+ * the pages the way an offset does.
+ *
+ * @param <T> The items on the page.
+ */
+public class Page<T> {
+    private final List<T> items;
+    private final String cursor;
+
+    public Page( List<T> items, String cursor ) {
+        this.items = items;
+        this.cursor = cursor;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * Where the next page starts. Treat it as opaque. Null once there are no more pages.
+     */
+    public String getCursor() {
+        return cursor;
+    }
+
+    public boolean hasMore() {
+        return cursor != null;
+    }
+
+    @Override
+    public String toString() {
+        return "Page{items=" + items + ", cursor=" + cursor + '}';
+    }
+}
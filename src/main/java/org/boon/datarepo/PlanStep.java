@@ -1,6 +1,42 @@
 package org.boon.datarepo;
 
+/**
+ * One step the filter took to answer a query, with how many rows it expected and how many it got.
+ */
 public class PlanStep {
     String type;
     String details;
+    int estimatedRows;
+    int actualRows;
+
+    public PlanStep( PlanSteps type, String details, int estimatedRows, int actualRows ) {
+        this.type = type.name();
+        this.details = details;
+        this.estimatedRows = estimatedRows;
+        this.actualRows = actualRows;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getDetails() {
+        return details;
+    }
+
+    /**
+     * What the index statistics predicted, or -1 if there was nothing to go on.
+     */
+    public int getEstimatedRows() {
+        return estimatedRows;
+    }
+
+    public int getActualRows() {
+        return actualRows;
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + details + " estimated " + estimatedRows + " actual " + actualRows;
+    }
 }
@@ -2,5 +2,9 @@ package org.boon.datarepo;
 
 public enum PlanSteps {
     USE_INDEX,
-    LINEAR_SEARCH;
+    USE_BITMAP,
+    FILTER_CANDIDATES,
+    LINEAR_SEARCH,
+    INDEX_NESTED_LOOP,
+    HASH_JOIN;
 }
@@ -15,14 +15,19 @@
  */
 package org.boon.datarepo;
 
+import org.boon.datarepo.impl.replication.ReplicationLeader;
 import org.boon.datarepo.modification.ModificationListener;
 import org.boon.datarepo.spi.RepoComposer;
 import org.boon.datarepo.spi.SearchIndex;
 import org.boon.core.Function;
 import org.boon.core.Supplier;
+import org.boon.core.timer.TimeKeeper;
 
+import java.io.File;
 import java.util.Comparator;
 import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 /**
@@ -45,10 +50,14 @@ public interface RepoBuilder {
 
     public RepoBuilder lookupIndex( String propertyName );
 
+    public RepoBuilder bitmapIndex( String propertyName );
+
     public RepoBuilder uniqueLookupIndex( String propertyName );
 
     public RepoBuilder searchIndex( String propertyName );
 
+    public RepoBuilder ngramIndex( String propertyName );
+
     public RepoBuilder uniqueSearchIndex( String propertyName );
 
     public RepoBuilder collateIndex( String propertyName, Comparator collator );
@@ -78,6 +87,36 @@ public interface RepoBuilder {
 
     public RepoBuilder storeKeyInIndexOnly();
 
+    public RepoBuilder dictionaryKeys();
+
+    public RepoBuilder concurrent();
+
+    public RepoBuilder snapshotQueries();
+
+    public RepoBuilder parallelScan();
+
+    public RepoBuilder parallelScan( ForkJoinPool pool );
+
+    public RepoBuilder journal( File directory );
+
+    public RepoBuilder journal( File directory, long snapshotAfterBytes );
+
+    public RepoBuilder offHeap( File directory );
+
+    RepoBuilder replicate( ReplicationLeader leader );
+
+    RepoBuilder shards( int count );
+
+    RepoBuilder shards( int count, ForkJoinPool pool );
+
+    RepoBuilder timeToLive( long duration, TimeUnit unit );
+
+    RepoBuilder timeToLive( String property, TimeUnit unit );
+
+    RepoBuilder maxSize( int maxSize );
+
+    RepoBuilder timeKeeper( TimeKeeper timeKeeper );
+
     RepoBuilder events( ModificationListener... listeners );
 
     RepoBuilder debug();
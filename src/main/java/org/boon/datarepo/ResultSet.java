@@ -68,6 +68,18 @@ public interface ResultSet<T> extends Iterable<T> {
 
     String firstJSON();
 
+    /**
+     * Groups the results by these fields, pick the aggregates on what comes back.
+     */
+    GroupBy groupBy( String... fields );
+
+    /**
+     * Joins the results with the items of a repo whose rightField equals this field, see {@link Join}.
+     */
+    <RIGHT> Join<T, RIGHT> join( SearchableCollection<?, RIGHT> right, String field, String rightField );
+
+    <RIGHT> Join<T, RIGHT> join( ResultSet<RIGHT> right, String field, String rightField );
+
     int firstInt( Selector selector );
 
     float firstFloat( Selector selector );
@@ -80,12 +80,42 @@ public interface SearchableCollection<KEY, ITEM> extends Collection<ITEM> {
 
     ResultSet<ITEM> results( Criteria... expressions );
 
+    /**
+     * Results that are worked out as they are read. Reading the first item or the first page
+     * of a query that matches millions of items only tests items until it has enough.
+     */
+    ResultSet<ITEM> lazyResults( Criteria... expressions );
+
+    /**
+     * Keyset pagination over the search index on sortBy.
+     * Pass a null cursor for the first page and the cursor of the last page after that.
+     */
+    Page<ITEM> page( String sortBy, String cursor, int size, Criteria... expressions );
+
     List<ITEM> query( Criteria... expressions );
 
+    /**
+     * Registers the criteria as a standing query. The view keeps the matches as the collection changes
+     * so reading it does not run the query again.
+     */
+    View<KEY, ITEM> view( Criteria... expressions );
+
+    /**
+     * A view that also keeps the aggregates up to date, see {@link Aggregate}.
+     */
+    View<KEY, ITEM> view( List<Aggregate> aggregates, Criteria... expressions );
+
     List<ITEM> sortedQuery( String sortBy, Criteria... expressions );
 
     List<ITEM> sortedQuery( Sort sortBy, Criteria... expressions );
 
+    /**
+     * Items start to start + size of the sorted query. When the first sort field has a search index
+     * the index is walked in order and stops once the page is full, otherwise only the best
+     * start + size matches are kept instead of sorting them all.
+     */
+    List<ITEM> sortedQuery( Sort sortBy, int start, int size, Criteria... expressions );
+
     List<Map<String, Object>> queryAsMaps( Criteria... expressions );
 
     List<Map<String, Object>> query( List<Selector> selectors, Criteria... expressions );
@@ -108,6 +138,12 @@ public interface SearchableCollection<KEY, ITEM> extends Collection<ITEM> {
 
     void addLookupIndex( String name, LookupIndex<?, ?> si );
 
+    /**
+     * The index on this property, a lookup index if there is one and otherwise a search index, or null.
+     * Joins probe it directly instead of running a query for each row.
+     */
+    LookupIndex<?, ITEM> index( String property );
+
 
     List<ITEM> all();
 
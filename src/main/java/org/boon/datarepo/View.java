@@ -0,0 +1,56 @@
+package org.boon.datarepo;
+
+import org.boon.criteria.Selector;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A standing query over a repo, a materialized view.
+ * The items that match are kept, and the repo hands the view every add, remove and update, so reading
+ * a view does not run the query again. Only changes to properties the criteria or aggregates read are looked at.
+ * <p/>
+ * Listeners hear about items as they come into and go out of the view. An update to an item in the view
+ * is heard as a remove and then an add, if the item still matches. Listeners are called while the view
+ * is locked, keep them short.
+ *
+ * @param <KEY>  The primary key of the repo.
+ * @param <ITEM> The items in the view.
+ */
+public interface View<KEY, ITEM> {
+
+    int size();
+
+    boolean has( KEY key );
+
+    ITEM get( KEY key );
+
+    /**
+     * A copy of the items in the view.
+     */
+    List<ITEM> items();
+
+    /**
+     * The current value of the aggregate with this name, "sum.salary" for example.
+     */
+    Object aggregate( String name );
+
+    /**
+     * Every aggregate by name.
+     */
+    Map<String, Object> aggregates();
+
+    /**
+     * Runs the selectors over the items in the view instead of over the whole repo.
+     */
+    List<Map<String, Object>> select( List<Selector> selectors );
+
+    void addListener( ViewListener<ITEM> listener );
+
+    void removeListener( ViewListener<ITEM> listener );
+
+    /**
+     * Stops keeping the view up to date.
+     */
+    void close();
+}
@@ -0,0 +1,13 @@
+package org.boon.datarepo;
+
+/**
+ * Hears the changes to a {@link View}.
+ *
+ * @param <ITEM> The items in the view.
+ */
+public interface ViewListener<ITEM> {
+
+    void added( ITEM item );
+
+    void removed( ITEM item );
+}
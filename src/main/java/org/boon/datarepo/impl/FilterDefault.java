@@ -8,16 +8,27 @@ import org.boon.criteria.Criterion;
 import org.boon.criteria.internal.*;
 import org.boon.datarepo.Filter;
 import org.boon.datarepo.LookupIndex;
+import org.boon.datarepo.Page;
+import org.boon.datarepo.PlanStep;
+import org.boon.datarepo.PlanSteps;
 import org.boon.datarepo.ResultSet;
 import org.boon.datarepo.SearchableCollection;
+import org.boon.datarepo.impl.columns.ColumnPrimaryIndex;
+import org.boon.datarepo.impl.columns.ColumnSearchIndex;
+import org.boon.datarepo.impl.columns.ColumnStore;
+import org.boon.datarepo.impl.indexes.BitmapLookupIndex;
+import org.boon.datarepo.impl.indexes.NGramSearchIndex;
+import org.boon.datarepo.impl.indexes.RowBitmap;
+import org.boon.datarepo.impl.indexes.RowIds;
+import org.boon.datarepo.impl.indexes.UniqueLookupIndex;
 import org.boon.datarepo.spi.FilterComposer;
 import org.boon.datarepo.spi.ResultSetInternal;
 import org.boon.datarepo.spi.SearchIndex;
+import org.boon.sort.Sort;
+import org.boon.sort.SortType;
 
-import java.util.Collections;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.boon.criteria.ObjectFilter.instanceOf;
 import static org.boon.criteria.ObjectFilter.not;
@@ -41,6 +52,21 @@ public class FilterDefault implements Filter, FilterComposer {
     private Map<String, SearchIndex> searchIndexMap;
     private Map<String, LookupIndex> lookupIndexMap;
 
+    /* Search and lookup indexes together, handed to results that hold every item so a group by can use them. */
+    private Map<String, LookupIndex> groupIndexMap;
+
+    /* Bitmap indexes by property, and the row ids they share. Empty when there are none. */
+    private Map<String, BitmapLookupIndex> bitmapIndexMap = Collections.emptyMap();
+    private RowIds rowIds;
+
+    /* Set when the items are kept in columns. Criteria on a column are answered from it like a bitmap. */
+    private ColumnStore columns;
+
+    /* Splits up full scans when set. */
+    private ForkJoinPool scanPool;
+
+    private UniqueLookupIndex primaryIndex;
+
 
     /**
      * Seems innocent enough. Give me some criteria expressions,
@@ -93,21 +119,230 @@ public class FilterDefault implements Filter, FilterComposer {
          */
         doFilterGroup( group, results );
 
+        if ( expressions.length == 0 ) {
+            results.allItems( groupIndexMap );
+        }
         return results;
     }
 
 
+    /**
+     * Lazy version of the plan. The cheapest indexed criterion of an and group picks the candidates
+     * and the rest of the group is tested on each candidate as it is pulled.
+     * Greater than lookups walk the index in place. Anything else with no index walks the primary index in place.
+     */
+    @Override
+    public ResultSet lazyFilter( Criteria... expressions ) {
+        try {
+            Criteria.fields( this.fields );
+            return lazyQueryPlan( expressions );
+        } finally {
+            Criteria.clearFields();
+        }
+    }
+
+    private ResultSet lazyQueryPlan( Criteria[] expressions ) {
+        if ( expressions == null || expressions.length == 0 ) {
+            return new LazyResultSet( primaryIndex.values().iterator(), null, fields,
+                    PlanSteps.LINEAR_SEARCH, "all", primaryIndex.size() );
+        }
+
+        Group group = expressions.length ==
+                1 && expressions[ 0 ] instanceof Group
+                ? ( Group ) expressions[ 0 ] : ObjectFilter.and( expressions );
+
+        Criterion driver = null;
+        int driverEstimate = Integer.MAX_VALUE;
+        if ( group.getGrouping() == Grouping.AND ) {
+            for ( Criteria expression : group.getExpressions() ) {
+                if ( expression instanceof Criterion ) {
+                    int estimate = estimate( ( Criterion ) expression );
+                    if ( estimate != -1 && estimate < driverEstimate ) {
+                        driver = ( Criterion ) expression;
+                        driverEstimate = estimate;
+                    }
+                }
+            }
+        }
+
+        if ( driver == null ) {
+            return new LazyResultSet( primaryIndex.values().iterator(), group, fields,
+                    PlanSteps.LINEAR_SEARCH, group.toString(), primaryIndex.size() );
+        }
+
+        List<Criteria> rest = new ArrayList<>( Arrays.asList( group.getExpressions() ) );
+        rest.remove( driver );
+        Criteria predicate = rest.size() == 0 ? null : ObjectFilter.and( rest.toArray( new Criteria[ rest.size() ] ) );
+
+        Iterator candidates;
+        SearchIndex searchIndex = searchIndexMap.get( driver.getName() );
+        Operator operator = driver.getOperator();
+        if ( searchIndex != null && ( operator == Operator.GREATER_THAN || operator == Operator.GREATER_THAN_EQUAL ) ) {
+            if ( !driver.isInitialized() ) {
+                driver.initByFields( this.fields );
+            }
+            candidates = searchIndex.iteratorFrom( driver.getValue(), operator == Operator.GREATER_THAN_EQUAL );
+            driver.clean();
+        } else {
+            ResultSetInternal indexed = new ResultSetImpl( fields );
+            doFilterWithIndex( driver, fields, indexed, driverEstimate );
+            candidates = indexed.iterator();
+        }
+
+        return new LazyResultSet( candidates, predicate, fields, PlanSteps.USE_INDEX, describe( driver ), driverEstimate );
+    }
+
+    /**
+     * Walks the search index on sortBy from the cursor, testing items as it goes, until the page is full.
+     * Items that share a sort key are handed out in primary key order, and the cursor holds the sort key
+     * and primary key of the last item handed out, so the next page starts right after that pair
+     * even if the item itself has since gone.
+     */
+    @Override
+    public Page page( String sortBy, String cursor, int size, Criteria... expressions ) {
+        SearchIndex searchIndex = searchIndexMap.get( sortBy );
+        FieldAccess field = fields.get( sortBy );
+        if ( searchIndex == null || field == null ) {
+            throw new IllegalStateException( String.format(
+                    "No searchIndex was found so you can't page by %s", sortBy ) );
+        }
+
+        Object startKey = null;
+        String startId = null;
+        if ( cursor != null ) {
+            int colon = cursor.indexOf( ':' );
+            int keyLength = Integer.parseInt( cursor.substring( 0, colon ) );
+            String key = cursor.substring( colon + 1, colon + 1 + keyLength );
+            startId = cursor.substring( colon + 1 + keyLength );
+            startKey = field.type() == Date.class ? new Date( Long.parseLong( key ) )
+                    : Conversions.coerce( field.type(), key );
+        }
+
+        Criteria predicate = expressions == null || expressions.length == 0 ? null : ObjectFilter.and( expressions );
+        Iterator iterator = searchIndex.iteratorFrom( startKey, true );
+        List items = new ArrayList( size );
+        List tied = new ArrayList();
+        Object tiedKey = null;
+
+        try {
+            Criteria.fields( this.fields );
+            while ( items.size() < size && ( iterator.hasNext() || !tied.isEmpty() ) ) {
+                Object item = iterator.hasNext() ? iterator.next() : null;
+                Object key = item == null ? null : field.getValue( item );
+                if ( item != null && ( tied.isEmpty() || key.equals( tiedKey ) ) ) {
+                    tied.add( item );
+                    tiedKey = key;
+                    continue;
+                }
+
+                Collections.sort( tied, byPrimaryKey );
+                boolean atCursor = startKey != null && startKey.equals( tiedKey );
+                for ( int index = 0; index < tied.size() && items.size() < size; index++ ) {
+                    Object candidate = tied.get( index );
+                    if ( atCursor && comparePrimaryKey( primaryIndex.keyOf( candidate ), startId ) <= 0 ) {
+                        continue;
+                    }
+                    if ( predicate == null || predicate.test( candidate ) ) {
+                        items.add( candidate );
+                    }
+                }
+                tied.clear();
+                if ( item != null ) {
+                    tied.add( item );
+                    tiedKey = key;
+                }
+            }
+        } finally {
+            Criteria.clearFields();
+        }
+
+        return new Page( items, items.size() < size ? null : cursorFor( field, items.get( items.size() - 1 ) ) );
+    }
+
+    private final Comparator byPrimaryKey = new Comparator() {
+        @Override
+        public int compare( Object a, Object b ) {
+            Object keyA = primaryIndex.keyOf( a );
+            Object keyB = primaryIndex.keyOf( b );
+            return keyA instanceof Comparable ? ( ( Comparable ) keyA ).compareTo( keyB )
+                    : String.valueOf( keyA ).compareTo( String.valueOf( keyB ) );
+        }
+    };
+
+    /**
+     * The cursor only has the primary key as text, so it is turned back into the key's type first.
+     */
+    private static int comparePrimaryKey( Object key, String cursorKey ) {
+        if ( key instanceof Comparable && !( key instanceof String ) ) {
+            return ( ( Comparable ) key ).compareTo( Conversions.coerce( key.getClass(), cursorKey ) );
+        }
+        return String.valueOf( key ).compareTo( cursorKey );
+    }
+
+    /**
+     * Walks the search index on the sort field when the field is primitive. Those keys are never null
+     * and sit in the index in the same order the sort puts them, so the walk stops once the page is full
+     * and everything tied with its last item is in. Sorting that window with the whole sort settles the ties.
+     * Anything else keeps only the best start + size matches.
+     */
+    @Override
+    public List sortedFilter( Sort sort, int start, int size, Criteria... expressions ) {
+        boolean noCriteria = expressions == null || expressions.length == 0;
+        SearchIndex searchIndex = searchIndexMap.get( sort.getName() );
+        FieldAccess field = fields.get( sort.getName() );
+        if ( searchIndex == null || field == null || !field.type().isPrimitive() ) {
+            List matches = noCriteria ? searchableCollection.all() : filter( expressions ).asList();
+            return sort.page( matches, start, size, fields );
+        }
+
+        Criteria predicate = noCriteria ? null : ObjectFilter.and( expressions );
+        Iterator iterator = sort.getType() == SortType.DESCENDING ? searchIndex.descendingIterator()
+                : searchIndex.iteratorFrom( null, true );
+        int limit = start + size;
+        List window = new ArrayList();
+        Object lastKey = null;
+
+        try {
+            Criteria.fields( this.fields );
+            while ( iterator.hasNext() ) {
+                Object item = iterator.next();
+                if ( predicate != null && !predicate.test( item ) ) {
+                    continue;
+                }
+                Object key = field.getValue( item );
+                if ( window.size() >= limit && !key.equals( lastKey ) ) {
+                    break;
+                }
+                window.add( item );
+                lastKey = key;
+            }
+        } finally {
+            Criteria.clearFields();
+        }
+
+        sort.sort( window, fields );
+        return new ArrayList( window.subList( Math.min( start, window.size() ), Math.min( limit, window.size() ) ) );
+    }
+
+    private String cursorFor( FieldAccess field, Object item ) {
+        Object value = field.getValue( item );
+        String key = value instanceof Date ? String.valueOf( ( ( Date ) value ).getTime() ) : String.valueOf( value );
+        return key.length() + ":" + key + primaryIndex.keyOf( item );
+    }
+
     private void orPlanWithIndex( Criterion criterion, ResultSetInternal results ) {
 
 
         Operator operator = criterion.getOperator();
         if ( operator == Operator.EQUAL && lookupIndexMap.get( criterion.getName() ) != null ) {
-            doFilterWithIndex( criterion, fields, results );
-        } else if ( this.isIndexed( criterion.getName() ) && Sets.in( operator, indexedOperators ) ) {
-            doFilterWithIndex( criterion, fields, results );
+            doFilterWithIndex( criterion, fields, results, estimate( criterion ) );
+        } else if ( this.isIndexed( criterion.getName() ) && usesIndex( operator, criterion.getName() ) ) {
+            doFilterWithIndex( criterion, fields, results, estimate( criterion ) );
         } else {
-            List list = QueryFactory.filter( this.searchableCollection.all(), criterion );
+            List all = this.searchableCollection.all();
+            List list = QueryFactory.filter( all, criterion, scanPool );
             results.addResults( list );
+            results.addPlanStep( new PlanStep( PlanSteps.LINEAR_SEARCH, describe( criterion ), all.size(), list.size() ) );
         }
 
     }
@@ -117,6 +352,14 @@ public class FilterDefault implements Filter, FilterComposer {
 
     }
 
+    @Override
+    public void invalidate( String property, Object item ) {
+    }
+
+    @Override
+    public void validate( String property, Object item ) {
+    }
+
     /**
      * Run the filter on the group.
      *
@@ -124,6 +367,10 @@ public class FilterDefault implements Filter, FilterComposer {
      * @param results here are the results
      */
     private void doFilterGroup( Group group, ResultSetInternal results ) {
+        if ( doFilterGroupWithBitmaps( group, results ) ) {
+            return;
+        }
+
         /* The group was n or group so handle it that way. */
         if ( group.getGrouping() == Grouping.OR ) {
             /* nice short method name, or. */
@@ -135,7 +382,105 @@ public class FilterDefault implements Filter, FilterComposer {
             ResultSetInternal resultsForAnd = new ResultSetImpl( fields );
             and( group.getExpressions(), fields, resultsForAnd );
             results.addResults( resultsForAnd.asList() );
+            for ( PlanStep step : ( List<PlanStep> ) resultsForAnd.queryPlan() ) {
+                results.addPlanStep( step );
+            }
+        }
+    }
+
+    /**
+     * Answers as much of the group as it can with bitmap indexes, or off heap columns, before any item is looked at.
+     * An or group has to be answered completely. In an and group the bitmaps are intersected
+     * and whatever is left is checked against the items that made it through.
+     *
+     * @return false if no bitmap could be used and the group still has to be run
+     */
+    private boolean doFilterGroupWithBitmaps( Group group, ResultSetInternal results ) {
+        if ( rowIds == null ) {
+            return false;
+        }
+
+        if ( group.getGrouping() == Grouping.OR ) {
+            RowBitmap rows = bitmapFor( group );
+            if ( rows == null ) {
+                return false;
+            }
+            List items = rowIds.items( rows );
+            results.addResults( items );
+            results.addPlanStep( new PlanStep( PlanSteps.USE_BITMAP, group.toString(), items.size(), items.size() ) );
+            return true;
+        }
+
+        RowBitmap rows = null;
+        List<Criteria> rest = new ArrayList<>();
+        for ( Criteria expression : group.getExpressions() ) {
+            RowBitmap expressionRows = bitmapFor( expression );
+            if ( expressionRows == null ) {
+                rest.add( expression );
+            } else {
+                rows = rows == null ? expressionRows : rows.and( expressionRows );
+            }
+        }
+
+        if ( rows == null ) {
+            return false;
         }
+
+        List items = rowIds.items( rows );
+        results.addPlanStep( new PlanStep( PlanSteps.USE_BITMAP, group.toString(), items.size(), items.size() ) );
+        if ( rest.size() > 0 ) {
+            int candidates = items.size();
+            items = QueryFactory.filter( items, ObjectFilter.and( rest.toArray( new Criteria[ rest.size() ] ) ) );
+            results.addPlanStep( new PlanStep( PlanSteps.FILTER_CANDIDATES, rest.toString(), candidates, items.size() ) );
+        }
+        results.addResults( items );
+        return true;
+    }
+
+    /**
+     * Rows for the expression, or null if some part of it has no bitmap index or column.
+     */
+    private RowBitmap bitmapFor( Criteria expression ) {
+        if ( expression instanceof Criterion ) {
+            Criterion criterion = ( Criterion ) expression;
+            BitmapLookupIndex index = bitmapIndexMap.get( criterion.getName() );
+            if ( index == null ) {
+                return columns == null ? null : columns.rows( criterion, rowIds.live() );
+            }
+
+            switch ( criterion.getOperator() ) {
+                case EQUAL:
+                    return index.rows( criterion.getValue() );
+                case NOT_EQUAL:
+                    return rowIds.live().andNot( index.rows( criterion.getValue() ) );
+                case IN:
+                    RowBitmap rows = new RowBitmap();
+                    for ( Object value : criterion.getValues() ) {
+                        rows = rows.or( index.rows( value ) );
+                    }
+                    return rows;
+                default:
+                    return null;
+            }
+
+        } else if ( expression instanceof Not ) {
+            RowBitmap rows = bitmapFor( ( ( Not ) expression ).getExpression() );
+            return rows == null ? null : rowIds.live().andNot( rows );
+
+        } else if ( expression instanceof Group ) {
+            Group group = ( Group ) expression;
+            boolean or = group.getGrouping() == Grouping.OR;
+            RowBitmap rows = null;
+            for ( Criteria child : group.getExpressions() ) {
+                RowBitmap childRows = bitmapFor( child );
+                if ( childRows == null ) {
+                    return null;
+                }
+                rows = rows == null ? childRows : or ? rows.or( childRows ) : rows.and( childRows );
+            }
+            return rows;
+        }
+        return null;
     }
 
     private void or( Criteria[] expressions,
@@ -165,6 +510,13 @@ public class FilterDefault implements Filter, FilterComposer {
     }
 
 
+    /**
+     * Runs the indexed criteria of an and group cheapest first.
+     * Each index is asked how many items it expects to hand back. The most selective one runs first,
+     * and the next one only runs while it is expected to return fewer items than are left over.
+     * Once it is cheaper to check the leftovers one by one the rest stay in the expression set
+     * and are checked by {@link #applyLinearSearch}.
+     */
     private boolean applyIndexedFiltersForAnd( Criteria[] expressions, Map<String, FieldAccess> fields, Set<Criteria> expressionSet, ResultSetInternal resultSet ) {
         Criterion criteria = null;
         boolean foundIndex = false;
@@ -172,7 +524,7 @@ public class FilterDefault implements Filter, FilterComposer {
 
         if ( expressions.length == 1 && expressions[ 0 ] instanceof Criterion ) {
             criteria = ( Criterion ) expressions[ 0 ];
-            foundIndex = doFilterWithIndex( criteria, fields, resultSet );
+            foundIndex = doFilterWithIndex( criteria, fields, resultSet, estimate( criteria ) );
             if ( foundIndex ) {
                 expressionSet.remove( criteria );
             }
@@ -181,35 +533,113 @@ public class FilterDefault implements Filter, FilterComposer {
         }
 
 
+        List<Criterion> indexed = new ArrayList<>( expressions.length );
+        final Map<Criterion, Integer> estimates = new IdentityHashMap<>();
         for ( Criteria expression : expressions ) {
-            /*
-             * See if the criteria has an index
-             */
             if ( expression instanceof Criterion ) {
                 criteria = ( Criterion ) expression;
+                int estimate = estimate( criteria );
+                if ( estimate != -1 ) {
+                    indexed.add( criteria );
+                    estimates.put( criteria, estimate );
+                }
+            }
+        }
 
+        Collections.sort( indexed, new Comparator<Criterion>() {
+            @Override
+            public int compare( Criterion a, Criterion b ) {
+                return Integer.compare( estimates.get( a ), estimates.get( b ) );
+            }
+        } );
 
-                foundIndex = doFilterWithIndex( criteria, fields, resultSet );
-                if ( foundIndex ) {
-                    expressionSet.remove( criteria );
-                }
 
-                /* if it is less than 20, just linear search the rest. */
-                if ( resultSet.lastSize() < 20 ) {
-                    resultSet.andResults(); //consolidate now
-                    return foundIndex;
-                } else if ( resultSet.lastSize() > 0 ) {
-                    //No op
-                }
+        int candidates = Integer.MAX_VALUE;
+        for ( Criterion criterion : indexed ) {
+            int estimate = estimates.get( criterion );
+
+            /* if it is less than 20, or the index would hand back more than we have, just linear search the rest. */
+            if ( foundIndex && ( candidates < 20 || estimate >= candidates ) ) {
+                break;
+            }
 
+            if ( doFilterWithIndex( criterion, fields, resultSet, estimate ) ) {
+                foundIndex = true;
+                expressionSet.remove( criterion );
+                candidates = Math.min( candidates, resultSet.lastSize() );
             }
         }
+
         if ( foundIndex ) {
             resultSet.andResults();
         }
         return foundIndex;
     }
 
+    /**
+     * How many items the index for this criterion expects to return, or -1 if the criterion can not use an index.
+     */
+    private int estimate( Criterion criterion ) {
+        Operator operator = criterion.getOperator();
+        if ( !usesIndex( operator, criterion.getName() ) ) {
+            return -1;
+        }
+
+        String name = criterion.getName();
+        LookupIndex lookupIndex = lookupIndexMap.get( name );
+        if ( lookupIndex != null && operator == Operator.EQUAL ) {
+            return lookupIndex.count( criterion.getValue() );
+        }
+
+        SearchIndex searchIndex = searchIndexMap.get( name );
+        if ( searchIndex == null ) {
+            return -1;
+        }
+
+        if ( !criterion.isInitialized() ) {
+            criterion.initByFields( this.fields );
+        }
+        Object value = criterion.getValue();
+
+        try {
+            switch ( operator ) {
+                case EQUAL:
+                    /* Counting a column is a scan, a sample will do for planning. */
+                    return searchIndex instanceof ColumnSearchIndex ? searchIndex.estimateBetween( value, true, value, true )
+                            : searchIndex.count( value );
+                case STARTS_WITH:
+                    if ( !( value instanceof String ) ) {
+                        return 0;
+                    }
+                    return searchIndex.estimateBetween( value, true, value + "\uffff", false );
+                case GREATER_THAN:
+                    return searchIndex.estimateBetween( value, false, null, false );
+                case GREATER_THAN_EQUAL:
+                    return searchIndex.estimateBetween( value, true, null, false );
+                case LESS_THAN:
+                    return searchIndex.estimateBetween( null, false, value, false );
+                case LESS_THAN_EQUAL:
+                    return searchIndex.estimateBetween( null, false, value, true );
+                case BETWEEN:
+                    return searchIndex.estimateBetween( value, true, criterion.getValues()[ 1 ], false );
+                case CONTAINS:
+                    return ( ( NGramSearchIndex ) searchIndex ).estimateContains( String.valueOf( value ) );
+                case ENDS_WITH:
+                    return ( ( NGramSearchIndex ) searchIndex ).estimateEndsWith( String.valueOf( value ) );
+                case MATCHES:
+                    return ( ( NGramSearchIndex ) searchIndex ).estimateMatches( String.valueOf( value ) );
+                default:
+                    return -1;
+            }
+        } finally {
+            criterion.clean();
+        }
+    }
+
+    private static String describe( Criterion criterion ) {
+        return criterion.getName() + " " + criterion.getOperator() + " " + criterion.getValue();
+    }
+
 
 //    private List applyGroupsWithIndexesForAnd(List items, Set<Query> expressionSet) {
 //
@@ -281,12 +711,16 @@ public class FilterDefault implements Filter, FilterComposer {
         Criteria[] expressions = Conversions.array( Criteria.class, QueryFactory.filter( expressionSet, not( instanceOf( Group.class ) ) ) );
 
         if ( foundIndex ) {
+            int candidates = resultSet.size();
             resultSet.filterAndPrune( ObjectFilter.and( expressions ) );
+            resultSet.addPlanStep( new PlanStep( PlanSteps.FILTER_CANDIDATES, Arrays.toString( expressions ),
+                    candidates, resultSet.size() ) );
         } else {
-            resultSet.addResults(
-                    QueryFactory.filter( searchableCollection.all(),
-                            ObjectFilter.and( expressions ) )
-            );
+            List all = searchableCollection.all();
+            List list = QueryFactory.filter( all, ObjectFilter.and( expressions ), scanPool );
+            resultSet.addResults( list );
+            resultSet.addPlanStep( new PlanStep( PlanSteps.LINEAR_SEARCH, Arrays.toString( expressions ),
+                    all.size(), list.size() ) );
         }
         for ( Criteria expression : expressions ) {
             expressionSet.remove( expression );
@@ -299,10 +733,25 @@ public class FilterDefault implements Filter, FilterComposer {
         return searchIndexMap.containsKey( name );
     }
 
-    private boolean doFilterWithIndex( Criterion criterion, Map<String, FieldAccess> fields, ResultSetInternal resultSet ) {
+    /**
+     * Contains, ends with and matches only go to the index when it is an n-gram index on a string field,
+     * contains on a collection field means holding the element.
+     */
+    private boolean usesIndex( Operator operator, String name ) {
+        if ( indexedOperators.contains( operator ) ) {
+            return true;
+        }
+        if ( operator != Operator.CONTAINS && operator != Operator.ENDS_WITH && operator != Operator.MATCHES ) {
+            return false;
+        }
+        FieldAccess field = fields.get( name );
+        return searchIndexMap.get( name ) instanceof NGramSearchIndex && field != null && field.type() == String.class;
+    }
+
+    private boolean doFilterWithIndex( Criterion criterion, Map<String, FieldAccess> fields, ResultSetInternal resultSet, int estimate ) {
 
 
-        boolean indexed = indexedOperators.contains( criterion.getOperator() );
+        boolean indexed = usesIndex( criterion.getOperator(), criterion.getName() );
 
         if ( !indexed ) {
             return false;
@@ -320,13 +769,12 @@ public class FilterDefault implements Filter, FilterComposer {
         if ( lookupIndex != null && operator == Operator.EQUAL ) {
             foundIndex = true;
             resultList = lookupIndex.getAll( value );
-            if ( resultList != null ) {
-                resultSet.addResults( resultList );
-                return foundIndex;
-            } else {
-                resultSet.addResults( Collections.EMPTY_LIST );
-                return foundIndex;
+            if ( resultList == null ) {
+                resultList = Collections.EMPTY_LIST;
             }
+            resultSet.addResults( resultList );
+            resultSet.addPlanStep( new PlanStep( PlanSteps.USE_INDEX, describe( criterion ), estimate, resultList.size() ) );
+            return foundIndex;
         }
 
         if ( searchIndex == null ) {
@@ -367,6 +815,18 @@ public class FilterDefault implements Filter, FilterComposer {
                 resultList = searchIndex.findBetween( criterion.getValue(), criterion.getValues()[ 1 ] );
                 break;
 
+            case CONTAINS:
+                resultList = searchIndex.findContains( value );
+                break;
+
+            case ENDS_WITH:
+                resultList = searchIndex.findEndsWith( value );
+                break;
+
+            case MATCHES:
+                resultList = ( ( NGramSearchIndex ) searchIndex ).findMatches( String.valueOf( value ) );
+                break;
+
 
         }
 
@@ -374,10 +834,9 @@ public class FilterDefault implements Filter, FilterComposer {
 
         if ( resultList != null ) {
             resultSet.addResults( resultList );
-            return foundIndex;
-        } else {
-            return foundIndex;
+            resultSet.addPlanStep( new PlanStep( PlanSteps.USE_INDEX, describe( criterion ), estimate, resultList.size() ) );
         }
+        return foundIndex;
 
     }
 
@@ -412,7 +871,34 @@ public class FilterDefault implements Filter, FilterComposer {
     }
 
     @Override
-    public void init() {
+    public void setScanPool( ForkJoinPool scanPool ) {
+        this.scanPool = scanPool;
+    }
+
+    @Override
+    public void setPrimaryIndex( UniqueLookupIndex primaryIndex ) {
+        this.primaryIndex = primaryIndex;
+    }
 
+    @Override
+    public void init() {
+        groupIndexMap = new HashMap<>();
+        groupIndexMap.putAll( searchIndexMap );
+        groupIndexMap.putAll( lookupIndexMap );
+        Map<String, BitmapLookupIndex> bitmaps = new HashMap<>();
+        for ( Map.Entry<String, LookupIndex> entry : lookupIndexMap.entrySet() ) {
+            if ( entry.getValue() instanceof BitmapLookupIndex ) {
+                BitmapLookupIndex index = ( BitmapLookupIndex ) entry.getValue();
+                bitmaps.put( entry.getKey(), index );
+                rowIds = index.rowIds();
+            }
+        }
+        if ( bitmaps.size() > 0 ) {
+            bitmapIndexMap = bitmaps;
+        }
+        if ( primaryIndex instanceof ColumnPrimaryIndex ) {
+            rowIds = ( ( ColumnPrimaryIndex ) primaryIndex ).rowIds();
+            columns = ( ( ColumnPrimaryIndex ) primaryIndex ).rowIds().columns();
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,574 @@
+package org.boon.datarepo.impl;
+
+import org.boon.core.Conversions;
+import org.boon.core.Type;
+import org.boon.core.reflection.fields.FieldAccess;
+import org.boon.datarepo.DataRepoException;
+import org.boon.datarepo.GroupBy;
+import org.boon.datarepo.LookupIndex;
+
+import java.util.*;
+
+import static org.boon.Str.join;
+
+/**
+ * Runs a group by in one pass. Each group gets a number the first time it is seen, and every aggregate keeps
+ * its running values in arrays indexed by that number, longs for whole numbers and doubles for the rest,
+ * so nothing is boxed per item for primitive fields.
+ * <p/>
+ * When the items are every item in the repo and the single group by field has an index, the groups are
+ * taken from the index buckets. The buckets are checked first, they have to hold every item and be keyed by the
+ * plain field value, otherwise the items are grouped by hashing them as usual.
+ *
+ * @param <T> The items.
+ */
+public class GroupByDefault<T> implements GroupBy {
+
+    private final List<T> items;
+    private final Map<String, FieldAccess> fields;
+    private final String[] fieldNames;
+    private final FieldAccess[] groupFields;
+
+    /* Only set when the items are every item in the repo. */
+    private final Map<String, LookupIndex> indexes;
+
+    private final List<Accumulator> accumulators = new ArrayList<>();
+
+
+    public GroupByDefault( List<T> items, Map<String, FieldAccess> fields, Map<String, LookupIndex> indexes,
+                           String... fieldNames ) {
+        if ( fieldNames == null || fieldNames.length == 0 ) {
+            throw new DataRepoException( "Group by needs at least one field" );
+        }
+        this.items = items;
+        this.fields = fields;
+        this.indexes = indexes;
+        this.fieldNames = fieldNames;
+        this.groupFields = new FieldAccess[ fieldNames.length ];
+        for ( int index = 0; index < fieldNames.length; index++ ) {
+            groupFields[ index ] = field( fieldNames[ index ] );
+        }
+    }
+
+    private FieldAccess field( String name ) {
+        FieldAccess field = fields.get( name );
+        if ( field == null ) {
+            throw new DataRepoException( "Unable to group, no field named " + name );
+        }
+        return field;
+    }
+
+    @Override
+    public GroupBy count() {
+        accumulators.add( new Count() );
+        return this;
+    }
+
+    @Override
+    public GroupBy sum( String fieldName ) {
+        accumulators.add( new Sum( fieldName, field( fieldName ) ) );
+        return this;
+    }
+
+    @Override
+    public GroupBy min( String fieldName ) {
+        accumulators.add( new Extreme( "min", fieldName, field( fieldName ), false ) );
+        return this;
+    }
+
+    @Override
+    public GroupBy max( String fieldName ) {
+        accumulators.add( new Extreme( "max", fieldName, field( fieldName ), true ) );
+        return this;
+    }
+
+    @Override
+    public GroupBy avg( String fieldName ) {
+        accumulators.add( new Average( fieldName, field( fieldName ) ) );
+        return this;
+    }
+
+    @Override
+    public GroupBy countDistinct( String fieldName ) {
+        accumulators.add( new Distinct( fieldName, field( fieldName ) ) );
+        return this;
+    }
+
+    @Override
+    public List<Map<String, Object>> asListOfMaps() {
+        if ( accumulators.isEmpty() ) {
+            count();
+        }
+
+        List<Object> keys = groupFromIndex();
+        if ( keys == null ) {
+            keys = groupByHashing();
+        }
+
+        List<Map<String, Object>> rows = new ArrayList<>( keys.size() );
+        for ( int group = 0; group < keys.size(); group++ ) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            if ( groupFields.length == 1 ) {
+                row.put( fieldNames[ 0 ], keys.get( group ) );
+            } else {
+                List<?> values = ( List<?> ) keys.get( group );
+                for ( int index = 0; index < fieldNames.length; index++ ) {
+                    row.put( fieldNames[ index ], values.get( index ) );
+                }
+            }
+            for ( Accumulator accumulator : accumulators ) {
+                row.put( accumulator.name, accumulator.value( group ) );
+            }
+            rows.add( row );
+        }
+        return rows;
+    }
+
+    private List<Object> groupByHashing() {
+        Map<Object, Integer> groups = new HashMap<>();
+        List<Object> keys = new ArrayList<>();
+        int capacity = start( 16 );
+
+        for ( T item : items ) {
+            Object key = key( item );
+            Integer group = groups.get( key );
+            if ( group == null ) {
+                group = keys.size();
+                if ( group == capacity ) {
+                    capacity = grow( capacity * 2 );
+                }
+                groups.put( key, group );
+                keys.add( key );
+            }
+            for ( Accumulator accumulator : accumulators ) {
+                accumulator.add( group, item );
+            }
+        }
+        return keys;
+    }
+
+    private Object key( T item ) {
+        if ( groupFields.length == 1 ) {
+            return groupFields[ 0 ].getValue( item );
+        }
+        Object[] key = new Object[ groupFields.length ];
+        for ( int index = 0; index < key.length; index++ ) {
+            key[ index ] = groupFields[ index ].getValue( item );
+        }
+        return Arrays.asList( key );
+    }
+
+    /**
+     * The groups read off the index, or null if there is no index that can be used.
+     */
+    private List<Object> groupFromIndex() {
+        if ( indexes == null || groupFields.length != 1 || indexes.get( fieldNames[ 0 ] ) == null ) {
+            return null;
+        }
+        Map<Object, List<T>> buckets = indexes.get( fieldNames[ 0 ] ).buckets();
+        if ( buckets == null ) {
+            return null;
+        }
+
+        long filed = 0;
+        for ( Map.Entry<Object, List<T>> bucket : buckets.entrySet() ) {
+            List<T> bucketItems = bucket.getValue();
+            if ( bucketItems.size() > 0 && !bucket.getKey().equals( groupFields[ 0 ].getValue( bucketItems.get( 0 ) ) ) ) {
+                return null;
+            }
+            filed += bucketItems.size();
+        }
+        if ( filed != items.size() ) {
+            return null;
+        }
+
+        List<Object> keys = new ArrayList<>( buckets.size() );
+        start( Math.max( 1, buckets.size() ) );
+        for ( Map.Entry<Object, List<T>> bucket : buckets.entrySet() ) {
+            if ( bucket.getValue().isEmpty() ) {
+                continue;
+            }
+            int group = keys.size();
+            keys.add( bucket.getKey() );
+            for ( Accumulator accumulator : accumulators ) {
+                accumulator.addAll( group, bucket.getValue() );
+            }
+        }
+        return keys;
+    }
+
+    private int start( int capacity ) {
+        for ( Accumulator accumulator : accumulators ) {
+            accumulator.start( capacity );
+        }
+        return capacity;
+    }
+
+    private int grow( int capacity ) {
+        for ( Accumulator accumulator : accumulators ) {
+            accumulator.grow( capacity );
+        }
+        return capacity;
+    }
+
+
+    /**
+     * Running values of one aggregate for every group.
+     */
+    private static abstract class Accumulator {
+        final String name;
+
+        Accumulator( String name ) {
+            this.name = name;
+        }
+
+        /* Throws away what is there and makes room for this many groups. */
+        abstract void start( int capacity );
+
+        abstract void grow( int capacity );
+
+        abstract void add( int group, Object item );
+
+        void addAll( int group, List<?> items ) {
+            for ( Object item : items ) {
+                add( group, item );
+            }
+        }
+
+        abstract Object value( int group );
+    }
+
+    private static class Count extends Accumulator {
+        long[] counts;
+
+        Count() {
+            super( "count" );
+        }
+
+        @Override
+        void start( int capacity ) {
+            counts = new long[ capacity ];
+        }
+
+        @Override
+        void grow( int capacity ) {
+            counts = Arrays.copyOf( counts, capacity );
+        }
+
+        @Override
+        void add( int group, Object item ) {
+            counts[ group ]++;
+        }
+
+        @Override
+        void addAll( int group, List<?> items ) {
+            counts[ group ] += items.size();
+        }
+
+        @Override
+        Object value( int group ) {
+            return counts[ group ];
+        }
+    }
+
+    /**
+     * Reads a field as a long or a double without boxing when the field is primitive.
+     */
+    private static abstract class FieldAccumulator extends Accumulator {
+        final FieldAccess field;
+        final Type type;
+        final boolean whole;
+
+        /* The value read by the last read that returned true. */
+        long wholeValue;
+        double realValue;
+
+        FieldAccumulator( String name, FieldAccess field ) {
+            super( name );
+            this.field = field;
+            this.type = field.typeEnum();
+            switch ( type ) {
+                case INT:
+                case SHORT:
+                case BYTE:
+                case LONG:
+                case INTEGER_WRAPPER:
+                case SHORT_WRAPPER:
+                case BYTE_WRAPPER:
+                case LONG_WRAPPER:
+                    whole = true;
+                    break;
+                default:
+                    whole = false;
+            }
+        }
+
+        /**
+         * Reads the field of the item into wholeValue or realValue, false if it is null.
+         */
+        final boolean read( Object item ) {
+            switch ( type ) {
+                case INT:
+                    wholeValue = field.getInt( item );
+                    return true;
+                case SHORT:
+                    wholeValue = field.getShort( item );
+                    return true;
+                case BYTE:
+                    wholeValue = field.getByte( item );
+                    return true;
+                case LONG:
+                    wholeValue = field.getLong( item );
+                    return true;
+                case DOUBLE:
+                    realValue = field.getDouble( item );
+                    return true;
+                case FLOAT:
+                    realValue = field.getFloat( item );
+                    return true;
+                default:
+                    Object value = field.getValue( item );
+                    if ( value == null ) {
+                        return false;
+                    }
+                    if ( whole ) {
+                        wholeValue = Conversions.toLong( value );
+                    } else {
+                        realValue = Conversions.toDouble( value );
+                    }
+                    return true;
+            }
+        }
+
+        /**
+         * A whole value boxed as the type of the field, the way the field itself would give it.
+         */
+        final Object box( long value ) {
+            switch ( type ) {
+                case INT:
+                case INTEGER_WRAPPER:
+                    return ( int ) value;
+                case SHORT:
+                case SHORT_WRAPPER:
+                    return ( short ) value;
+                case BYTE:
+                case BYTE_WRAPPER:
+                    return ( byte ) value;
+                default:
+                    return value;
+            }
+        }
+
+        final Object box( double value ) {
+            switch ( type ) {
+                case FLOAT:
+                case FLOAT_WRAPPER:
+                    return ( float ) value;
+                default:
+                    return value;
+            }
+        }
+    }
+
+    /**
+     * Sum as a long for whole number fields and as a double for the rest.
+     */
+    private static class Sum extends FieldAccumulator {
+        long[] wholeSums;
+        double[] realSums;
+
+        Sum( String fieldName, FieldAccess field ) {
+            super( join( '.', "sum", fieldName ), field );
+        }
+
+        @Override
+        void start( int capacity ) {
+            if ( whole ) {
+                wholeSums = new long[ capacity ];
+            } else {
+                realSums = new double[ capacity ];
+            }
+        }
+
+        @Override
+        void grow( int capacity ) {
+            if ( whole ) {
+                wholeSums = Arrays.copyOf( wholeSums, capacity );
+            } else {
+                realSums = Arrays.copyOf( realSums, capacity );
+            }
+        }
+
+        @Override
+        void add( int group, Object item ) {
+            if ( read( item ) ) {
+                if ( whole ) {
+                    wholeSums[ group ] += wholeValue;
+                } else {
+                    realSums[ group ] += realValue;
+                }
+            }
+        }
+
+        @Override
+        Object value( int group ) {
+            return whole ? ( Object ) wholeSums[ group ] : ( Object ) realSums[ group ];
+        }
+    }
+
+    private static class Average extends FieldAccumulator {
+        double[] sums;
+        long[] counts;
+
+        Average( String fieldName, FieldAccess field ) {
+            super( join( '.', "avg", fieldName ), field );
+        }
+
+        @Override
+        void start( int capacity ) {
+            sums = new double[ capacity ];
+            counts = new long[ capacity ];
+        }
+
+        @Override
+        void grow( int capacity ) {
+            sums = Arrays.copyOf( sums, capacity );
+            counts = Arrays.copyOf( counts, capacity );
+        }
+
+        @Override
+        void add( int group, Object item ) {
+            if ( read( item ) ) {
+                sums[ group ] += whole ? wholeValue : realValue;
+                counts[ group ]++;
+            }
+        }
+
+        @Override
+        Object value( int group ) {
+            return counts[ group ] == 0 ? null : sums[ group ] / counts[ group ];
+        }
+    }
+
+    /**
+     * Min or max. Number fields are compared as longs or doubles, anything else has to be comparable.
+     */
+    private static class Extreme extends FieldAccumulator {
+        private final boolean max;
+        private final boolean number;
+
+        boolean[] seen;
+        long[] wholes;
+        double[] reals;
+        Comparable[] objects;
+
+        Extreme( String prefix, String fieldName, FieldAccess field, boolean max ) {
+            super( join( '.', prefix, fieldName ), field );
+            this.max = max;
+            switch ( type ) {
+                case DOUBLE:
+                case FLOAT:
+                case DOUBLE_WRAPPER:
+                case FLOAT_WRAPPER:
+                    number = true;
+                    break;
+                default:
+                    number = whole;
+            }
+        }
+
+        @Override
+        void start( int capacity ) {
+            seen = new boolean[ capacity ];
+            if ( !number ) {
+                objects = new Comparable[ capacity ];
+            } else if ( whole ) {
+                wholes = new long[ capacity ];
+            } else {
+                reals = new double[ capacity ];
+            }
+        }
+
+        @Override
+        void grow( int capacity ) {
+            seen = Arrays.copyOf( seen, capacity );
+            if ( !number ) {
+                objects = Arrays.copyOf( objects, capacity );
+            } else if ( whole ) {
+                wholes = Arrays.copyOf( wholes, capacity );
+            } else {
+                reals = Arrays.copyOf( reals, capacity );
+            }
+        }
+
+        @Override
+        void add( int group, Object item ) {
+            if ( !number ) {
+                Comparable value = ( Comparable ) field.getValue( item );
+                if ( value != null && ( !seen[ group ] || better( value.compareTo( objects[ group ] ) ) ) ) {
+                    objects[ group ] = value;
+                    seen[ group ] = true;
+                }
+            } else if ( read( item ) ) {
+                if ( whole ) {
+                    if ( !seen[ group ] || better( Long.compare( wholeValue, wholes[ group ] ) ) ) {
+                        wholes[ group ] = wholeValue;
+                    }
+                } else if ( !seen[ group ] || better( Double.compare( realValue, reals[ group ] ) ) ) {
+                    reals[ group ] = realValue;
+                }
+                seen[ group ] = true;
+            }
+        }
+
+        private boolean better( int comparison ) {
+            return max ? comparison > 0 : comparison < 0;
+        }
+
+        @Override
+        Object value( int group ) {
+            if ( !seen[ group ] ) {
+                return null;
+            }
+            if ( !number ) {
+                return objects[ group ];
+            }
+            return whole ? box( wholes[ group ] ) : box( reals[ group ] );
+        }
+    }
+
+    private static class Distinct extends Accumulator {
+        private final FieldAccess field;
+        List<Set<Object>> values;
+
+        Distinct( String fieldName, FieldAccess field ) {
+            super( join( '.', "distinct", fieldName ) );
+            this.field = field;
+        }
+
+        @Override
+        void start( int capacity ) {
+            values = new ArrayList<>( capacity );
+        }
+
+        @Override
+        void grow( int capacity ) {
+        }
+
+        @Override
+        void add( int group, Object item ) {
+            while ( values.size() <= group ) {
+                values.add( new HashSet<>() );
+            }
+            Object value = field.getValue( item );
+            if ( value != null ) {
+                values.get( group ).add( value );
+            }
+        }
+
+        @Override
+        Object value( int group ) {
+            return group < values.size() ? ( long ) values.get( group ).size() : 0L;
+        }
+    }
+}
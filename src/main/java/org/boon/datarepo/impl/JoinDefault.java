@@ -0,0 +1,238 @@
+package org.boon.datarepo.impl;
+
+import org.boon.core.reflection.BeanUtils;
+import org.boon.core.reflection.fields.FieldAccess;
+import org.boon.criteria.Selector;
+import org.boon.datarepo.DataRepoException;
+import org.boon.datarepo.Join;
+import org.boon.datarepo.LookupIndex;
+import org.boon.datarepo.PlanStep;
+import org.boon.datarepo.PlanSteps;
+import org.boon.datarepo.ResultSet;
+import org.boon.datarepo.SearchableCollection;
+
+import java.util.*;
+
+/**
+ * Streams the rows of a join. The right side is either an index to probe or a list of items
+ * that is hashed on the join field the first time the rows are walked.
+ *
+ * @param <LEFT>  The items on the left.
+ * @param <RIGHT> The items on the right.
+ */
+public class JoinDefault<LEFT, RIGHT> implements Join<LEFT, RIGHT> {
+
+    private final List<LEFT> left;
+    private final Map<String, FieldAccess> leftFields;
+    private final FieldAccess leftKey;
+    private final String leftField;
+    private final String rightField;
+
+    /* One of these is set, the index for an index nested loop and the items for a hash join. */
+    private final LookupIndex<Object, RIGHT> rightIndex;
+    private final List<RIGHT> rightItems;
+
+    private Map<Object, List<RIGHT>> hashed;
+    private Map<String, FieldAccess> rightFields;
+
+    private List<Selector> leftSelectors = Collections.emptyList();
+    private List<Selector> rightSelectors = Collections.emptyList();
+
+    private int rows;
+
+
+    JoinDefault( List<LEFT> left, Map<String, FieldAccess> leftFields, String leftField,
+                 LookupIndex<Object, RIGHT> rightIndex, List<RIGHT> rightItems, String rightField ) {
+        this.left = left;
+        this.leftFields = leftFields;
+        this.leftField = leftField;
+        this.leftKey = leftFields.get( leftField );
+        this.rightIndex = rightIndex;
+        this.rightItems = rightItems;
+        this.rightField = rightField;
+        if ( leftKey == null && left.size() > 0 ) {
+            throw new DataRepoException( "Unable to join, no field named " + leftField );
+        }
+    }
+
+    /**
+     * Probes the index on the right field when the repo has one, otherwise hashes every item in the repo.
+     */
+    static <LEFT, RIGHT> Join<LEFT, RIGHT> join( List<LEFT> left, Map<String, FieldAccess> leftFields, String leftField,
+                                                 SearchableCollection<?, RIGHT> right, String rightField ) {
+        LookupIndex index = right.index( rightField );
+        if ( index != null ) {
+            return new JoinDefault<>( left, leftFields, leftField, ( LookupIndex<Object, RIGHT> ) index, null, rightField );
+        }
+        return new JoinDefault<>( left, leftFields, leftField, null, right.all(), rightField );
+    }
+
+    /**
+     * A result set on the right that is every item of its repo still gets the index nested loop.
+     */
+    static <LEFT, RIGHT> Join<LEFT, RIGHT> join( List<LEFT> left, Map<String, FieldAccess> leftFields, String leftField,
+                                                 ResultSet<RIGHT> right, String rightField ) {
+        if ( right instanceof ResultSetImpl ) {
+            LookupIndex index = ( ( ResultSetImpl<RIGHT> ) right ).index( rightField );
+            if ( index != null ) {
+                return new JoinDefault<>( left, leftFields, leftField, ( LookupIndex<Object, RIGHT> ) index, null, rightField );
+            }
+        }
+        return new JoinDefault<>( left, leftFields, leftField, null, right.asList(), rightField );
+    }
+
+    @Override
+    public Join<LEFT, RIGHT> selectLeft( Selector... selectors ) {
+        this.leftSelectors = Arrays.asList( selectors );
+        return this;
+    }
+
+    @Override
+    public Join<LEFT, RIGHT> selectRight( Selector... selectors ) {
+        this.rightSelectors = Arrays.asList( selectors );
+        return this;
+    }
+
+    @Override
+    public List<Map<String, Object>> asListOfMaps() {
+        List<Map<String, Object>> list = new ArrayList<>();
+        for ( Map<String, Object> row : this ) {
+            list.add( row );
+        }
+        for ( Selector selector : leftSelectors ) {
+            selector.handleComplete( list );
+        }
+        for ( Selector selector : rightSelectors ) {
+            selector.handleComplete( list );
+        }
+        return list;
+    }
+
+    @Override
+    public ResultSet<Map<String, Object>> results() {
+        return new ResultSetImpl<>( asListOfMaps() );
+    }
+
+    @Override
+    public List<PlanStep> queryPlan() {
+        PlanSteps type = rightIndex != null ? PlanSteps.INDEX_NESTED_LOOP : PlanSteps.HASH_JOIN;
+        return Collections.singletonList( new PlanStep( type, leftField + " = " + rightField, left.size(), rows ) );
+    }
+
+    @Override
+    public Iterator<Map<String, Object>> iterator() {
+        if ( rightIndex == null && hashed == null ) {
+            hashed = hash();
+        }
+        for ( Selector selector : leftSelectors ) {
+            selector.handleStart( left );
+        }
+        for ( Selector selector : rightSelectors ) {
+            selector.handleStart( rightItems == null ? Collections.emptyList() : rightItems );
+        }
+        rows = 0;
+
+        return new Iterator<Map<String, Object>>() {
+            int next;
+            LEFT current;
+            List<RIGHT> matches = Collections.emptyList();
+            int match;
+            Map<String, Object> row;
+
+            @Override
+            public boolean hasNext() {
+                while ( row == null ) {
+                    while ( match < matches.size() && matches.get( match ) == null ) {
+                        match++;
+                    }
+                    if ( match < matches.size() ) {
+                        row = row( current, matches.get( match++ ) );
+                    } else if ( next < left.size() ) {
+                        current = left.get( next++ );
+                        matches = matches( leftKey.getValue( current ) );
+                        match = 0;
+                    } else {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public Map<String, Object> next() {
+                if ( !hasNext() ) {
+                    throw new NoSuchElementException();
+                }
+                Map<String, Object> result = row;
+                row = null;
+                return result;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException( "remove Not supported" );
+            }
+        };
+    }
+
+    private List<RIGHT> matches( Object key ) {
+        if ( key == null ) {
+            return Collections.emptyList();
+        }
+        List<RIGHT> matches = rightIndex != null ? rightIndex.getAll( key ) : hashed.get( key );
+        return matches == null ? Collections.<RIGHT>emptyList() : matches;
+    }
+
+    private Map<Object, List<RIGHT>> hash() {
+        Map<Object, List<RIGHT>> hashed = new HashMap<>( rightItems.size() * 4 / 3 + 1 );
+        FieldAccess rightKey = null;
+        for ( RIGHT item : rightItems ) {
+            if ( rightKey == null ) {
+                rightKey = fields( item ).get( rightField );
+                if ( rightKey == null ) {
+                    throw new DataRepoException( "Unable to join, no field named " + rightField );
+                }
+            }
+            Object key = rightKey.getValue( item );
+            if ( key == null ) {
+                continue;
+            }
+            List<RIGHT> bucket = hashed.get( key );
+            if ( bucket == null ) {
+                bucket = new ArrayList<>( 1 );
+                hashed.put( key, bucket );
+            }
+            bucket.add( item );
+        }
+        return hashed;
+    }
+
+    private Map<String, FieldAccess> fields( RIGHT item ) {
+        if ( rightFields == null ) {
+            rightFields = BeanUtils.getFieldsFromObject( item );
+        }
+        return rightFields;
+    }
+
+    private Map<String, Object> row( LEFT leftItem, RIGHT rightItem ) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        put( row, leftItem, leftFields, leftSelectors );
+        put( row, rightItem, fields( rightItem ), rightSelectors );
+        rows++;
+        return row;
+    }
+
+    private void put( Map<String, Object> row, Object item, Map<String, FieldAccess> fields, List<Selector> selectors ) {
+        if ( selectors.isEmpty() ) {
+            for ( FieldAccess field : fields.values() ) {
+                if ( !field.isStatic() && !row.containsKey( field.getName() ) ) {
+                    row.put( field.getName(), field.getValue( item ) );
+                }
+            }
+        } else {
+            for ( Selector selector : selectors ) {
+                selector.handleRow( rows, row, item, fields );
+            }
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package org.boon.datarepo.impl;
+
+import org.boon.core.reflection.fields.FieldAccess;
+import org.boon.criteria.Selector;
+import org.boon.criteria.internal.Criteria;
+import org.boon.datarepo.DataRepoException;
+import org.boon.datarepo.GroupBy;
+import org.boon.datarepo.Join;
+import org.boon.datarepo.PlanStep;
+import org.boon.datarepo.PlanSteps;
+import org.boon.datarepo.ResultSet;
+import org.boon.datarepo.SearchableCollection;
+import org.boon.sort.Sort;
+
+import java.util.*;
+
+/**
+ * Result set that pulls matches from its source only as they are asked for.
+ * firstItem, the expects, paginate and iterator stop as soon as they have enough.
+ * Anything that needs every match (size, sort, select, asList and friends) pulls the rest
+ * and hands off to a {@link ResultSetImpl}.
+ * A sort is held back until something needs it, so sort followed by paginate or firstItem only keeps
+ * the top of the matches instead of sorting them all.
+ * <p/>
+ * The source is walked in place, so do not write to a repo that is not concurrent while the results are still being read.
+ *
+ * @param <T> The items
+ */
+public class LazyResultSet<T> implements ResultSet<T> {
+
+    private final Iterator<T> source;
+    private final Criteria predicate;
+    private final Map<String, FieldAccess> fields;
+
+    private final PlanSteps stepType;
+    private final String stepDetails;
+    private final int estimatedRows;
+
+    /* Matches pulled so far. */
+    private final List<T> pulled = new ArrayList<>();
+    private int candidatesRead;
+
+    private ResultSetImpl<T> all;
+
+    /* Asked for but not done yet. */
+    private Sort pendingSort;
+
+
+    /**
+     * @param source    candidates in the order they should come out
+     * @param predicate what a candidate has to pass, or null if every candidate matches
+     * @param fields    fields used to test the predicate
+     */
+    public LazyResultSet( Iterator<T> source, Criteria predicate, Map<String, FieldAccess> fields,
+                          PlanSteps stepType, String stepDetails, int estimatedRows ) {
+        this.source = source;
+        this.predicate = predicate;
+        this.fields = fields;
+        this.stepType = stepType;
+        this.stepDetails = stepDetails;
+        this.estimatedRows = estimatedRows;
+    }
+
+    /**
+     * Pulls until there are count matches or the source runs out.
+     */
+    private boolean pull( int count ) {
+        if ( all != null ) {
+            return pulled.size() >= count;
+        }
+
+        Map<String, FieldAccess> previous = Criteria.currentFields();
+        Criteria.fields( fields );
+        try {
+            while ( pulled.size() < count && source.hasNext() ) {
+                T item = source.next();
+                candidatesRead++;
+                if ( predicate == null || predicate.test( item ) ) {
+                    pulled.add( item );
+                }
+            }
+        } finally {
+            Criteria.fields( previous );
+        }
+        return pulled.size() >= count;
+    }
+
+    private ResultSetImpl<T> all() {
+        if ( all == null ) {
+            pull( Integer.MAX_VALUE );
+            all = new ResultSetImpl<>( pulled, fields );
+        }
+        if ( pendingSort != null ) {
+            pendingSort.sort( pulled, fields );
+            pendingSort = null;
+        }
+        return all;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        if ( pendingSort != null ) {
+            all();
+        }
+        return new Iterator<T>() {
+            int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < pulled.size() || pull( index + 1 );
+            }
+
+            @Override
+            public T next() {
+                if ( !hasNext() ) {
+                    throw new NoSuchElementException();
+                }
+                return pulled.get( index++ );
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException( "remove Not supported" );
+            }
+        };
+    }
+
+    @Override
+    public ResultSet expectOne() {
+        pull( 2 );
+        if ( pulled.size() == 0 ) {
+            throw new DataRepoException( "Expected one result, no results" );
+        } else if ( pulled.size() > 1 ) {
+            throw new DataRepoException( "Expected one result, but have many" );
+        }
+        return this;
+    }
+
+    @Override
+    public <EXPECT> ResultSet<EXPECT> expectOne( Class<EXPECT> clz ) {
+        return ( ResultSet<EXPECT> ) this.expectOne();
+    }
+
+    @Override
+    public ResultSet expectMany() {
+        if ( !pull( 2 ) ) {
+            throw new DataRepoException( "Expected many" );
+        }
+        return this;
+    }
+
+    @Override
+    public ResultSet expectNone() {
+        if ( pull( 1 ) ) {
+            throw new DataRepoException( "Expected none" );
+        }
+        return this;
+    }
+
+    @Override
+    public ResultSet expectOneOrMany() {
+        all().expectOneOrMany();
+        return this;
+    }
+
+    @Override
+    public T firstItem() {
+        if ( pendingSort != null ) {
+            return paginate( 0, 1 ).get( 0 );
+        }
+        pull( 1 );
+        return pulled.get( 0 );
+    }
+
+    @Override
+    public Map<String, Object> firstMap() {
+        return new ResultSetImpl<>( Collections.singletonList( firstItem() ), fields ).firstMap();
+    }
+
+    @Override
+    public String firstJSON() {
+        return new ResultSetImpl<>( Collections.singletonList( firstItem() ), fields ).firstJSON();
+    }
+
+    @Override
+    public int firstInt( Selector selector ) {
+        return first().firstInt( selector );
+    }
+
+    @Override
+    public float firstFloat( Selector selector ) {
+        return first().firstFloat( selector );
+    }
+
+    @Override
+    public short firstShort( Selector selector ) {
+        return first().firstShort( selector );
+    }
+
+    @Override
+    public double firstDouble( Selector selector ) {
+        return first().firstDouble( selector );
+    }
+
+    @Override
+    public byte firstByte( Selector selector ) {
+        return first().firstByte( selector );
+    }
+
+    @Override
+    public char firstChar( Selector selector ) {
+        return first().firstChar( selector );
+    }
+
+    @Override
+    public Object firstObject( Selector selector ) {
+        return first().firstObject( selector );
+    }
+
+    @Override
+    public <OBJ> OBJ firstObject( Class<OBJ> cls, Selector selector ) {
+        return first().firstObject( cls, selector );
+    }
+
+    private ResultSetImpl<T> first() {
+        return new ResultSetImpl<>( Collections.singletonList( firstItem() ), fields );
+    }
+
+    @Override
+    public List<T> paginate( int start, int size ) {
+        if ( pendingSort != null ) {
+            pull( Integer.MAX_VALUE );
+            return pendingSort.page( pulled, start, size, fields );
+        }
+        pull( start + size );
+        int from = Math.min( start, pulled.size() );
+        return new ArrayList<>( pulled.subList( from, Math.min( start + size, pulled.size() ) ) );
+    }
+
+    @Override
+    public List<Map<String, Object>> paginateMaps( int start, int size ) {
+        return new ResultSetImpl<>( paginate( start, size ), fields ).asListOfMaps();
+    }
+
+    @Override
+    public String paginateJSON( int start, int size ) {
+        return new ResultSetImpl<>( paginate( start, size ), fields ).asJSONString();
+    }
+
+    @Override
+    public List<PlanStep> queryPlan() {
+        List<PlanStep> plan = new ArrayList<>( 2 );
+        plan.add( new PlanStep( stepType, stepDetails, estimatedRows, candidatesRead ) );
+        if ( predicate != null ) {
+            plan.add( new PlanStep( PlanSteps.FILTER_CANDIDATES, predicate.toString(), candidatesRead, pulled.size() ) );
+        }
+        return plan;
+    }
+
+
+    @Override
+    public ResultSet removeDuplication() {
+        return all().removeDuplication();
+    }
+
+    @Override
+    public ResultSet sort( Sort sort ) {
+        if ( all != null || pendingSort != null ) {
+            all();
+            sort.sort( pulled, fields );
+        } else {
+            pendingSort = sort;
+        }
+        return this;
+    }
+
+    @Override
+    public Collection<T> filter( Criteria criteria ) {
+        return all().filter( criteria );
+    }
+
+    @Override
+    public ResultSet<List<Map<String, Object>>> select( Selector... selectors ) {
+        return all().select( selectors );
+    }
+
+    @Override
+    public int[] selectInts( Selector selector ) {
+        return all().selectInts( selector );
+    }
+
+    @Override
+    public float[] selectFloats( Selector selector ) {
+        return all().selectFloats( selector );
+    }
+
+    @Override
+    public short[] selectShorts( Selector selector ) {
+        return all().selectShorts( selector );
+    }
+
+    @Override
+    public double[] selectDoubles( Selector selector ) {
+        return all().selectDoubles( selector );
+    }
+
+    @Override
+    public byte[] selectBytes( Selector selector ) {
+        return all().selectBytes( selector );
+    }
+
+    @Override
+    public char[] selectChars( Selector selector ) {
+        return all().selectChars( selector );
+    }
+
+    @Override
+    public Object[] selectObjects( Selector selector ) {
+        return all().selectObjects( selector );
+    }
+
+    @Override
+    public <OBJ> OBJ[] selectObjects( Class<OBJ> cls, Selector selector ) {
+        return all().selectObjects( cls, selector );
+    }
+
+    @Override
+    public <OBJ> ResultSet<OBJ> selectObjectsAsResultSet( Class<OBJ> cls, Selector selector ) {
+        return all().selectObjectsAsResultSet( cls, selector );
+    }
+
+    @Override
+    public Collection<T> asCollection() {
+        return all().asCollection();
+    }
+
+    @Override
+    public String asJSONString() {
+        return all().asJSONString();
+    }
+
+    @Override
+    public GroupBy groupBy( String... fields ) {
+        return all().groupBy( fields );
+    }
+
+    @Override
+    public <RIGHT> Join<T, RIGHT> join( SearchableCollection<?, RIGHT> right, String field, String rightField ) {
+        return all().join( right, field, rightField );
+    }
+
+    @Override
+    public <RIGHT> Join<T, RIGHT> join( ResultSet<RIGHT> right, String field, String rightField ) {
+        return all().join( right, field, rightField );
+    }
+
+    @Override
+    public List<Map<String, Object>> asListOfMaps() {
+        return all().asListOfMaps();
+    }
+
+    @Override
+    public List<T> asList() {
+        return all().asList();
+    }
+
+    @Override
+    public Set<T> asSet() {
+        return all().asSet();
+    }
+
+    @Override
+    public int size() {
+        return all().size();
+    }
+}
@@ -0,0 +1,29 @@
+package org.boon.datarepo.impl;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs async loads off the calling thread, one at a time and in the order they were asked for.
+ * The thread is made on the first load and is a daemon, so an idle repo does not hold up the JVM.
+ */
+public class LoadQueue {
+
+    private ExecutorService executor;
+
+    public synchronized Future<?> submit( Runnable load ) {
+        if ( executor == null ) {
+            executor = Executors.newSingleThreadExecutor( new ThreadFactory() {
+                @Override
+                public Thread newThread( Runnable runnable ) {
+                    Thread thread = new Thread( runnable, "repo-load" );
+                    thread.setDaemon( true );
+                    return thread;
+                }
+            } );
+        }
+        return executor.submit( load );
+    }
+}
@@ -8,10 +8,14 @@ import org.boon.datarepo.ObjectEditor;
 import org.boon.datarepo.SearchableCollection;
 import org.boon.datarepo.spi.ObjectEditorComposer;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -27,6 +31,12 @@ public class ObjectEditorDefault<KEY, ITEM> implements ObjectEditorComposer<KEY,
 
     private boolean lookupAndExcept;
 
+    /**
+     * Set for snapshot queries. A stored item is never changed in place, so a
+     * snapshot that still holds the old item keeps seeing the old values.
+     */
+    private boolean copyOnWrite;
+
 
     public void put( ITEM item ) {
         if ( !this.add( item ) ) {
@@ -51,14 +61,28 @@ public class ObjectEditorDefault<KEY, ITEM> implements ObjectEditorComposer<KEY,
     }
 
     public void addAll( ITEM... items ) {
-        for ( ITEM item : items ) {
-            this.add( item );
-        }
+        query.addAll( Arrays.asList( items ) );
     }
 
 
     public void addAllAsync( Collection<ITEM> items ) {
-        query.addAll( items );
+        submitAll( items );
+    }
+
+    /**
+     * Only a repo that is not concurrent gets here, the lock decorator loads for the others.
+     * Its indexes are not thread safe, so the load runs on the caller's thread and the future is done when this returns.
+     */
+    public Future<?> submitAll( Collection<ITEM> items ) {
+        final List<ITEM> batch = new ArrayList<>( items );
+        FutureTask<Object> load = new FutureTask<>( new Runnable() {
+            @Override
+            public void run() {
+                query.addAll( batch );
+            }
+        }, null );
+        load.run();
+        return load;
     }
 
     public void modifyAll( ITEM... items ) {
@@ -113,10 +137,41 @@ public class ObjectEditorDefault<KEY, ITEM> implements ObjectEditorComposer<KEY,
 
     public void modify( ITEM item, String property, Object value ) {
         item = lookupAndExpect( item );
-        query.invalidateIndex( property, item );
+        item = beginEdit( property, item );
         fields.get( property ).setObject( item, value );
         optimizeHash( item );
-        query.validateIndex( property, item );
+        endEdit( property, item );
+    }
+
+    /**
+     * Takes the item out of the indexes that depend on this property.
+     * In copy on write mode the item is taken out of every index and a copy is handed back to edit.
+     */
+    private ITEM beginEdit( String property, ITEM item ) {
+        if ( !copyOnWrite ) {
+            query.invalidateIndex( property, item );
+            return item;
+        }
+        ITEM copy = BeanUtils.copy( item );
+        query.delete( item );
+        return copy;
+    }
+
+    private void endEdit( String property, ITEM item ) {
+        if ( !copyOnWrite ) {
+            query.validateIndex( property, item );
+        } else {
+            query.validateIndexes( item );
+        }
+    }
+
+    /**
+     * Each update is a whole edit of its own, so it has to start from the item stored by the last one.
+     */
+    private void updateCopyOnWrite( KEY key, Update... values ) {
+        for ( Update value : values ) {
+            value.doSet( this, lookupAndExpectByKey( key ) );
+        }
     }
 
     private void optimizeHash( ITEM item ) {
@@ -134,71 +189,75 @@ public class ObjectEditorDefault<KEY, ITEM> implements ObjectEditorComposer<KEY,
 
     public void modifyByValue( ITEM item, String property, String value ) {
         item = lookupAndExpect( item );
-        query.invalidateIndex( property, item );
+        item = beginEdit( property, item );
         fields.get( property ).setValue( item, value );
         optimizeHash( item );
-        query.validateIndex( property, item );
+        endEdit( property, item );
 
     }
 
     public void modify( ITEM item, String property, int value ) {
         item = lookupAndExpect( item );
-        query.invalidateIndex( property, item );
+        item = beginEdit( property, item );
         fields.get( property ).setInt( item, value );
         optimizeHash( item );
-        query.validateIndex( property, item );
+        endEdit( property, item );
     }
 
     public void modify( ITEM item, String property, long value ) {
         item = lookupAndExpect( item );
-        query.invalidateIndex( property, item );
+        item = beginEdit( property, item );
         fields.get( property ).setLong( item, value );
         optimizeHash( item );
-        query.validateIndex( property, item );
+        endEdit( property, item );
     }
 
     public void modify( ITEM item, String property, char value ) {
         item = lookupAndExpect( item );
-        query.invalidateIndex( property, item );
+        item = beginEdit( property, item );
         fields.get( property ).setChar( item, value );
         optimizeHash( item );
-        query.validateIndex( property, item );
+        endEdit( property, item );
     }
 
     public void modify( ITEM item, String property, short value ) {
         item = lookupAndExpect( item );
-        query.invalidateIndex( property, item );
+        item = beginEdit( property, item );
         fields.get( property ).setShort( item, value );
         optimizeHash( item );
-        query.validateIndex( property, item );
+        endEdit( property, item );
     }
 
     public void modify( ITEM item, String property, byte value ) {
         item = lookupAndExpect( item );
-        query.invalidateIndex( property, item );
+        item = beginEdit( property, item );
         fields.get( property ).setByte( item, value );
         optimizeHash( item );
-        query.validateIndex( property, item );
+        endEdit( property, item );
     }
 
     public void modify( ITEM item, String property, float value ) {
         item = lookupAndExpect( item );
-        query.invalidateIndex( property, item );
+        item = beginEdit( property, item );
         fields.get( property ).setFloat( item, value );
         optimizeHash( item );
-        query.validateIndex( property, item );
+        endEdit( property, item );
     }
 
     public void modify( ITEM item, String property, double value ) {
         item = lookupAndExpect( item );
-        query.invalidateIndex( property, item );
+        item = beginEdit( property, item );
         fields.get( property ).setDouble( item, value );
         optimizeHash( item );
-        query.validateIndex( property, item );
+        endEdit( property, item );
     }
 
     public void modify( ITEM item, Update... values ) {
         item = lookupAndExpect( item );
+        if ( copyOnWrite ) {
+            updateCopyOnWrite( getKey( item ), values );
+            return;
+        }
         for ( Update value : values ) {
             query.invalidateIndex( value.getName(), item );
             value.doSet( this, item );
@@ -210,77 +269,81 @@ public class ObjectEditorDefault<KEY, ITEM> implements ObjectEditorComposer<KEY,
 
     public void update( KEY key, String property, Object value ) {
         ITEM item = lookupAndExpectByKey( key );
-        query.invalidateIndex( property, item );
+        item = beginEdit( property, item );
         fields.get( property ).setObject( item, value );
         optimizeHash( item );
-        query.validateIndex( property, item );
+        endEdit( property, item );
     }
 
     public void updateByValue( KEY key, String property, String value ) {
         ITEM item = lookupAndExpectByKey( key );
-        query.invalidateIndex( property, item );
+        item = beginEdit( property, item );
         fields.get( property ).setValue( item, value );
         optimizeHash( item );
-        query.validateIndex( property, item );
+        endEdit( property, item );
     }
 
     public void update( KEY key, String property, int value ) {
         ITEM item = lookupAndExpectByKey( key );
-        query.invalidateIndex( property, item );
+        item = beginEdit( property, item );
         fields.get( property ).setInt( item, value );
         optimizeHash( item );
-        query.validateIndex( property, item );
+        endEdit( property, item );
     }
 
     public void update( KEY key, String property, long value ) {
         ITEM item = lookupAndExpectByKey( key );
-        query.invalidateIndex( property, item );
+        item = beginEdit( property, item );
         fields.get( property ).setLong( item, value );
         optimizeHash( item );
-        query.validateIndex( property, item );
+        endEdit( property, item );
     }
 
     public void update( KEY key, String property, char value ) {
         ITEM item = lookupAndExpectByKey( key );
-        query.invalidateIndex( property, item );
+        item = beginEdit( property, item );
         fields.get( property ).setChar( item, value );
         optimizeHash( item );
-        query.validateIndex( property, item );
+        endEdit( property, item );
     }
 
     public void update( KEY key, String property, short value ) {
         ITEM item = lookupAndExpectByKey( key );
-        query.invalidateIndex( property, item );
+        item = beginEdit( property, item );
         fields.get( property ).setShort( item, value );
         optimizeHash( item );
-        query.validateIndex( property, item );
+        endEdit( property, item );
     }
 
     public void update( KEY key, String property, byte value ) {
         ITEM item = lookupAndExpectByKey( key );
-        query.invalidateIndex( property, item );
+        item = beginEdit( property, item );
         fields.get( property ).setByte( item, value );
         optimizeHash( item );
-        query.validateIndex( property, item );
+        endEdit( property, item );
     }
 
     public void update( KEY key, String property, float value ) {
         ITEM item = lookupAndExpectByKey( key );
-        query.invalidateIndex( property, item );
+        item = beginEdit( property, item );
         fields.get( property ).setFloat( item, value );
         optimizeHash( item );
-        query.validateIndex( property, item );
+        endEdit( property, item );
     }
 
     public void update( KEY key, String property, double value ) {
         ITEM item = lookupAndExpectByKey( key );
-        query.invalidateIndex( property, item );
+        item = beginEdit( property, item );
         fields.get( property ).setDouble( item, value );
         optimizeHash( item );
-        query.validateIndex( property, item );
+        endEdit( property, item );
     }
 
     public void update( KEY key, Update... values ) {
+        if ( copyOnWrite ) {
+            updateCopyOnWrite( key, values );
+            return;
+        }
         ITEM item = lookupAndExpectByKey( key );
 
         for ( Update value : values ) {
@@ -296,11 +359,11 @@ public class ObjectEditorDefault<KEY, ITEM> implements ObjectEditorComposer<KEY,
         FieldAccess field = fields.get( property );
         boolean set = false;
         if ( field.getObject( item ).equals( compare ) ) {
-            query.invalidateIndex( property, item );
+            item = beginEdit( property, item );
             field.setObject( item, value );
             set = true;
             optimizeHash( item );
-            query.validateIndex( property, item );
+            endEdit( property, item );
         }
         return set;
     }
@@ -310,11 +373,11 @@ public class ObjectEditorDefault<KEY, ITEM> implements ObjectEditorComposer<KEY,
         FieldAccess field = fields.get( property );
         boolean set = false;
         if ( field.getInt( item ) == ( compare ) ) {
-            query.invalidateIndex( property, item );
+            item = beginEdit( property, item );
             field.setInt( item, value );
             set = true;
             optimizeHash( item );
-            query.validateIndex( property, item );
+            endEdit( property, item );
         }
         return set;
     }
@@ -324,11 +387,11 @@ public class ObjectEditorDefault<KEY, ITEM> implements ObjectEditorComposer<KEY,
         FieldAccess field = fields.get( property );
         boolean set = false;
         if ( field.getLong( item ) == ( compare ) ) {
-            query.invalidateIndex( property, item );
+            item = beginEdit( property, item );
             field.setLong( item, value );
             set = true;
             optimizeHash( item );
-            query.validateIndex( property, item );
+            endEdit( property, item );
         }
         return set;
     }
@@ -338,11 +401,11 @@ public class ObjectEditorDefault<KEY, ITEM> implements ObjectEditorComposer<KEY,
         FieldAccess field = fields.get( property );
         boolean set = false;
         if ( field.getChar( item ) == ( compare ) ) {
-            query.invalidateIndex( property, item );
+            item = beginEdit( property, item );
             field.setChar( item, value );
             set = true;
             optimizeHash( item );
-            query.validateIndex( property, item );
+            endEdit( property, item );
         }
         return set;
     }
@@ -352,11 +415,11 @@ public class ObjectEditorDefault<KEY, ITEM> implements ObjectEditorComposer<KEY,
         FieldAccess field = fields.get( property );
         boolean set = false;
         if ( field.getShort( item ) == ( compare ) ) {
-            query.invalidateIndex( property, item );
+            item = beginEdit( property, item );
             field.setShort( item, value );
             set = true;
             optimizeHash( item );
-            query.validateIndex( property, item );
+            endEdit( property, item );
         }
         return set;
 
@@ -367,11 +430,11 @@ public class ObjectEditorDefault<KEY, ITEM> implements ObjectEditorComposer<KEY,
         FieldAccess field = fields.get( property );
         boolean set = false;
         if ( field.getByte( item ) == ( compare ) ) {
-            query.invalidateIndex( property, item );
+            item = beginEdit( property, item );
             field.setByte( item, value );
             set = true;
             optimizeHash( item );
-            query.validateIndex( property, item );
+            endEdit( property, item );
         }
         return set;
     }
@@ -381,11 +444,11 @@ public class ObjectEditorDefault<KEY, ITEM> implements ObjectEditorComposer<KEY,
         FieldAccess field = fields.get( property );
         boolean set = false;
         if ( field.getFloat( item ) == ( compare ) ) {
-            query.invalidateIndex( property, item );
+            item = beginEdit( property, item );
             field.setFloat( item, value );
             set = true;
             optimizeHash( item );
-            query.validateIndex( property, item );
+            endEdit( property, item );
         }
         return set;
     }
@@ -395,11 +458,11 @@ public class ObjectEditorDefault<KEY, ITEM> implements ObjectEditorComposer<KEY,
         FieldAccess field = fields.get( property );
         boolean set = false;
         if ( field.getDouble( item ) == ( compare ) ) {
-            query.invalidateIndex( property, item );
+            item = beginEdit( property, item );
             field.setDouble( item, value );
             set = true;
             optimizeHash( item );
-            query.validateIndex( property, item );
+            endEdit( property, item );
         }
         return set;
     }
@@ -409,11 +472,11 @@ public class ObjectEditorDefault<KEY, ITEM> implements ObjectEditorComposer<KEY,
         FieldAccess field = fields.get( property );
         boolean set = false;
         if ( field.getInt( item ) == ( compare ) ) {
-            query.invalidateIndex( property, item );
+            item = beginEdit( property, item );
             field.setInt( item, ( compare + 1 ) );
             set = true;
             optimizeHash( item );
-            query.validateIndex( property, item );
+            endEdit( property, item );
         }
         return set;
 
@@ -424,11 +487,11 @@ public class ObjectEditorDefault<KEY, ITEM> implements ObjectEditorComposer<KEY,
         FieldAccess field = fields.get( property );
         boolean set = false;
         if ( field.getLong( item ) == ( compare ) ) {
-            query.invalidateIndex( property, item );
+            item = beginEdit( property, item );
             field.setLong( item, ( compare + 1 ) );
             set = true;
             optimizeHash( item );
-            query.validateIndex( property, item );
+            endEdit( property, item );
         }
         return set;
     }
@@ -438,11 +501,11 @@ public class ObjectEditorDefault<KEY, ITEM> implements ObjectEditorComposer<KEY,
         FieldAccess field = fields.get( property );
         boolean set = false;
         if ( field.getShort( item ) == ( compare ) ) {
-            query.invalidateIndex( property, item );
+            item = beginEdit( property, item );
             field.setShort( item, ( short ) ( compare + 1 ) );
             set = true;
             optimizeHash( item );
-            query.validateIndex( property, item );
+            endEdit( property, item );
         }
         return set;
     }
@@ -452,11 +515,11 @@ public class ObjectEditorDefault<KEY, ITEM> implements ObjectEditorComposer<KEY,
         FieldAccess field = fields.get( property );
         boolean set = false;
         if ( field.getByte( item ) == ( compare ) ) {
-            query.invalidateIndex( property, item );
+            item = beginEdit( property, item );
             field.setByte( item, ( byte ) ( compare + 1 ) );
             set = true;
             optimizeHash( item );
-            query.validateIndex( property, item );
+            endEdit( property, item );
         }
         return set;
     }
@@ -486,6 +549,11 @@ public class ObjectEditorDefault<KEY, ITEM> implements ObjectEditorComposer<KEY,
     public void init() {
     }
 
+    @Override
+    public void copyOnWriteOn() {
+        this.copyOnWrite = true;
+    }
+
     @Override
     public void hashCodeOptimizationOn() {
         this.hashCodeOptimization = true;
@@ -506,7 +574,7 @@ public class ObjectEditorDefault<KEY, ITEM> implements ObjectEditorComposer<KEY,
     }
 
     private ITEM lookupAndExpect( ITEM item ) {
-        if ( !lookupAndExcept ) {
+        if ( !lookupAndExcept && !copyOnWrite ) {
             return item;
         }
 
@@ -2,23 +2,49 @@ package org.boon.datarepo.impl;
 
 import org.boon.Exceptions;
 import org.boon.Str;
+import org.boon.cache.Cache;
+import org.boon.cache.CacheType;
+import org.boon.cache.SimpleConcurrentCache;
+import org.boon.core.SystemTimeKeeper;
 import org.boon.core.reflection.BeanUtils;
 import org.boon.core.reflection.fields.FieldAccess;
+import org.boon.criteria.internal.Group;
 import org.boon.datarepo.*;
-import org.boon.datarepo.impl.decorators.FilterWithSimpleCache;
+import org.boon.datarepo.impl.columns.ColumnPrimaryIndex;
+import org.boon.datarepo.impl.columns.ColumnRowIds;
+import org.boon.datarepo.impl.columns.ColumnSearchIndex;
+import org.boon.datarepo.impl.columns.ColumnStore;
+import org.boon.datarepo.impl.decorators.FilterWithCache;
 import org.boon.datarepo.impl.decorators.ObjectEditorCloneDecorator;
 import org.boon.datarepo.impl.decorators.ObjectEditorEventDecorator;
+import org.boon.datarepo.impl.decorators.ObjectEditorExpiryDecorator;
+import org.boon.datarepo.impl.decorators.ObjectEditorJournalDecorator;
+import org.boon.datarepo.impl.decorators.ObjectEditorLockDecorator;
 import org.boon.datarepo.impl.decorators.ObjectEditorLogNullCheckDecorator;
+import org.boon.datarepo.impl.indexes.BaseIndexWrapper;
+import org.boon.datarepo.impl.indexes.BitmapLookupIndex;
+import org.boon.datarepo.impl.indexes.KeyDictionary;
+import org.boon.datarepo.impl.indexes.LookupIndexDefault;
+import org.boon.datarepo.impl.indexes.NGramSearchIndex;
 import org.boon.datarepo.impl.indexes.NestedKeySearchIndex;
+import org.boon.datarepo.impl.indexes.PrimitiveSearchIndex;
+import org.boon.datarepo.impl.indexes.RowIds;
 import org.boon.datarepo.impl.indexes.TypeHierarchyIndex;
+import org.boon.datarepo.impl.indexes.UniqueLookupIndex;
+import org.boon.datarepo.impl.journal.Journal;
+import org.boon.datarepo.impl.replication.ReplicationLeader;
 import org.boon.datarepo.modification.ModificationListener;
 import org.boon.datarepo.spi.*;
 import org.boon.core.Function;
 import org.boon.predicates.PropertyNameUtils;
 import org.boon.core.Supplier;
+import org.boon.core.timer.TimeKeeper;
 
+import java.io.File;
 import java.text.Collator;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 import static org.boon.Exceptions.requireNonNull;
@@ -104,6 +130,14 @@ public class RepoBuilderDefault implements RepoBuilder {
      * This holds the uniqueLookupIndexes that this repo will manager.
      */
     Set<String> uniqueLookupIndexes = new HashSet<>();
+    /**
+     * Lookup indexes that keep a bitmap of row ids per key.
+     */
+    Set<String> bitmapIndexes = new HashSet<>();
+    /**
+     * Search indexes on string fields that also keep trigrams for contains, ends with and matches.
+     */
+    Set<String> ngramIndexes = new HashSet<>();
 
     /**
      * If we are dealing with a complex key, like a derived key or some sort of
@@ -151,6 +185,69 @@ public class RepoBuilderDefault implements RepoBuilder {
      */
     boolean storeKeyInIndexOnly;
 
+    /**
+     * String keys of the lookup and search indexes are kept once in a dictionary the repo's indexes share.
+     */
+    boolean dictionaryKeys;
+
+    /**
+     * The dictionary of the repo being built.
+     */
+    private KeyDictionary keyDictionary;
+
+    /**
+     * Lets many threads use the repo at once.
+     * Writers lock only the stripe for their primary key and the index buckets they touch.
+     * Readers never lock.
+     */
+    boolean concurrent;
+
+    /**
+     * Queries see a frozen version of the repo. Implies concurrent.
+     * Editors pass through this gate, which publishes a new version after their edits.
+     */
+    VersionGate versionGate;
+
+    /**
+     * Queries that no index can answer split the scan into chunks and test them on this pool.
+     */
+    ForkJoinPool scanPool;
+
+    /**
+     * Changes are logged here and the repo is recovered from here when it is built.
+     */
+    File journalDirectory;
+
+    /**
+     * The log is folded into a new snapshot once it is this big.
+     */
+    long snapshotAfterBytes;
+
+    /**
+     * Items are kept in memory mapped columns in this directory instead of on the heap.
+     */
+    File offHeapDirectory;
+
+    /**
+     * Changes are published here for followers.
+     */
+    ReplicationLeader replicationLeader;
+
+    /**
+     * The repo is split into this many shards by primary key when it is more than one.
+     */
+    int shardCount;
+
+    /**
+     * Queries run on every shard at once on this pool.
+     */
+    ForkJoinPool shardPool;
+
+    /**
+     * The rows of the repo being built when it is off heap.
+     */
+    private ColumnRowIds columnRowIds;
+
     /**
      * This would turn on extra debugging.
      */
@@ -195,9 +292,8 @@ public class RepoBuilderDefault implements RepoBuilder {
 
 
     /**
-     * Turns caching on. Caching is very rudimentary at this point.
-     * This can cache complex queries and hold on the results until
-     * there is an update.
+     * Turns caching on. This can cache complex queries and hold on to the results,
+     * patching them as the items they depend on change.
      */
     private boolean cache = false;
 
@@ -258,6 +354,28 @@ public class RepoBuilderDefault implements RepoBuilder {
      */
     ModificationListener[] listeners;
 
+    /**
+     * Items are removed this many milliseconds after they were last written. 0 means they live forever,
+     * unless they carry their own time to live in {@link #timeToLiveProperty}.
+     */
+    long timeToLive;
+
+    /**
+     * Property of the item with its own time to live, in {@link #timeToLiveUnit}.
+     */
+    String timeToLiveProperty;
+    TimeUnit timeToLiveUnit;
+
+    /**
+     * Most items the repo keeps before the least recently written go. 0 means no limit.
+     */
+    int maxSize;
+
+    /**
+     * Clock for time to live. When not set the repo starts the {@link SystemTimeKeeper}.
+     */
+    TimeKeeper timeKeeper;
+
 
     /**
      * Turns on property access instead of field access.
@@ -340,7 +458,8 @@ public class RepoBuilderDefault implements RepoBuilder {
     }
 
     /**
-     * This caches query results until there is an update.
+     * This caches query results. A change only touches the cached queries whose criteria name
+     * the property that changed, and their results are patched instead of run again.
      *
      * @return RepoBuilder
      */
@@ -363,6 +482,213 @@ public class RepoBuilderDefault implements RepoBuilder {
         return this;
     }
 
+    /**
+     * Lookup and search indexes keep their string keys in one dictionary for the repo instead of a string
+     * per index entry. Indexes that transform keys, like {@link #upperCaseIndex(String)}, then hold one copy
+     * of each transformed key however many items have it, and indexes over the same values share it.
+     * Sorted indexes with a collator compare dictionary keys by rank instead of through the collator.
+     * Off heap the indexes have no keys of their own, so this does nothing there.
+     *
+     * @return RepoBuilder
+     * @see KeyDictionary
+     */
+    @Override
+    public RepoBuilder dictionaryKeys() {
+        this.dictionaryKeys = true;
+        return this;
+    }
+
+    /**
+     * Makes the repo safe to read and write from many threads without an outside lock.
+     * Queries and gets do not block. Writes to the same primary key are serialized.
+     *
+     * @return RepoBuilder
+     * @see ObjectEditorLockDecorator
+     */
+    @Override
+    public RepoBuilder concurrent() {
+        this.concurrent = true;
+        return this;
+    }
+
+    /**
+     * Each query runs against a consistent point in time copy of the indexes.
+     * The last writer out of an edit publishes a new copy, so a thread sees its own writes once no other
+     * edit is in flight, and neither queries nor writers wait on publishing.
+     * Edits copy the stored item instead of changing it in place.
+     * Turns on concurrent.
+     *
+     * @return RepoBuilder
+     */
+    @Override
+    public RepoBuilder snapshotQueries() {
+        this.concurrent = true;
+        this.versionGate = new VersionGate();
+        return this;
+    }
+
+    /**
+     * Full scans for criteria with no index are split into chunks and tested on a fork join pool
+     * with a thread per core. Results keep the order of the repo. Small repos still scan on the calling thread.
+     *
+     * @return RepoBuilder
+     */
+    @Override
+    public RepoBuilder parallelScan() {
+        return parallelScan( new ForkJoinPool() );
+    }
+
+    /**
+     * Same as {@link #parallelScan()} but on a pool you already have.
+     *
+     * @param pool pool to run the scans on
+     * @return RepoBuilder
+     */
+    @Override
+    public RepoBuilder parallelScan( ForkJoinPool pool ) {
+        requireNonNull( pool, "pool cannot be null" );
+        this.scanPool = pool;
+        return this;
+    }
+
+    /**
+     * Makes the repo durable. Every change is appended to a log in the directory before the edit returns,
+     * and the log is folded into a snapshot once it passes 64 MB.
+     * Building the repo loads the snapshot and replays the log after it.
+     *
+     * @param directory where the snapshot and the log live
+     * @return RepoBuilder
+     * @see Journal
+     */
+    @Override
+    public RepoBuilder journal( File directory ) {
+        return journal( directory, 64L * 1024 * 1024 );
+    }
+
+    /**
+     * Same as {@link #journal(File)} with the log size that triggers a snapshot.
+     *
+     * @param directory          where the snapshot and the log live
+     * @param snapshotAfterBytes log size that triggers a snapshot
+     * @return RepoBuilder
+     */
+    @Override
+    public RepoBuilder journal( File directory, long snapshotAfterBytes ) {
+        requireNonNull( directory, "directory cannot be null" );
+        this.journalDirectory = directory;
+        this.snapshotAfterBytes = snapshotAfterBytes;
+        return this;
+    }
+
+    /**
+     * Keeps the items in memory mapped column files in the directory instead of as objects on the heap,
+     * so a repo of many small items does not make the garbage collector work.
+     * Gets and queries hand back new copies made from the columns. Criteria on primitive, date and string fields
+     * are worked out on the columns and only the matches are made into items.
+     * Search indexes become scans of their column and lookup indexes become bitmap indexes.
+     * Can not be used with concurrent, snapshot queries, nested or hierarchy indexes,
+     * or search indexes with a collator, key transform or key getter.
+     *
+     * @param directory where the column files live; they are emptied when the repo is built
+     * @return RepoBuilder
+     * @see ColumnStore
+     */
+    @Override
+    public RepoBuilder offHeap( File directory ) {
+        requireNonNull( directory, "directory cannot be null" );
+        this.offHeapDirectory = directory;
+        return this;
+    }
+
+    /**
+     * Publishes every change to the leader's followers. Changes made by expiry are published too.
+     *
+     * @param leader sends the change stream to its followers, a new one for each repo
+     * @return RepoBuilder
+     * @see ReplicationLeader
+     */
+    @Override
+    public RepoBuilder replicate( ReplicationLeader leader ) {
+        requireNonNull( leader, "leader cannot be null" );
+        this.replicationLeader = leader;
+        return this;
+    }
+
+    /**
+     * Splits the repo into shards by primary key hash, each a repo of its own with every index,
+     * and queries them all at once on a fork join pool with a thread per core.
+     * A journal or off heap directory gets a directory per shard in it.
+     *
+     * @param count number of shards
+     * @return RepoBuilder
+     * @see ShardedRepo
+     */
+    @Override
+    public RepoBuilder shards( int count ) {
+        return shards( count, new ForkJoinPool() );
+    }
+
+    /**
+     * Same as {@link #shards(int)} but on a pool you already have.
+     *
+     * @param count number of shards
+     * @param pool  pool the shards are queried on
+     * @return RepoBuilder
+     */
+    @Override
+    public RepoBuilder shards( int count, ForkJoinPool pool ) {
+        requireNonNull( pool, "pool cannot be null" );
+        if ( count < 1 ) {
+            throw new IllegalArgumentException( "count must be at least 1" );
+        }
+        this.shardCount = count;
+        this.shardPool = pool;
+        return this;
+    }
+
+    /**
+     * Removes each item once this long has passed since it was added or last written whole.
+     * Expired items leave every index and fire expire events.
+     *
+     * @return RepoBuilder
+     * @see ObjectEditorExpiryDecorator
+     */
+    @Override
+    public RepoBuilder timeToLive( long duration, TimeUnit unit ) {
+        this.timeToLive = unit.toMillis( duration );
+        return this;
+    }
+
+    /**
+     * Each item says how long it lives in this property. Items where it is 0 or less
+     * use the repo's time to live if there is one.
+     *
+     * @return RepoBuilder
+     */
+    @Override
+    public RepoBuilder timeToLive( String property, TimeUnit unit ) {
+        this.timeToLiveProperty = property;
+        this.timeToLiveUnit = unit;
+        return this;
+    }
+
+    /**
+     * Keeps at most this many items, removing the least recently written first.
+     *
+     * @return RepoBuilder
+     */
+    @Override
+    public RepoBuilder maxSize( int maxSize ) {
+        this.maxSize = maxSize;
+        return this;
+    }
+
+    @Override
+    public RepoBuilder timeKeeper( TimeKeeper timeKeeper ) {
+        this.timeKeeper = timeKeeper;
+        return this;
+    }
+
     /**
      * Register event listeners for modification changes.
      *
@@ -467,6 +793,21 @@ public class RepoBuilderDefault implements RepoBuilder {
         return this;
     }
 
+    /**
+     * Lookup index for a field with few distinct values.
+     * And, or and not over bitmap indexed fields are worked out on the bitmaps before any item is touched.
+     * A concurrent repo gets a plain lookup index instead.
+     *
+     * @param propertyName
+     * @return
+     * @see BitmapLookupIndex
+     */
+    @Override
+    public RepoBuilder bitmapIndex( String propertyName ) {
+        this.bitmapIndexes.add( propertyName );
+        return this;
+    }
+
     /**
      * @param propertyName
      * @return
@@ -500,6 +841,21 @@ public class RepoBuilderDefault implements RepoBuilder {
         return this;
     }
 
+    /**
+     * Search index on a string field that also answers contains, ends with and matches from its trigrams
+     * instead of checking every item. It costs about one entry per character of every key.
+     * Off heap it is a plain column search index.
+     *
+     * @param propertyName
+     * @return
+     * @see NGramSearchIndex
+     */
+    @Override
+    public RepoBuilder ngramIndex( String propertyName ) {
+        this.ngramIndexes.add( propertyName );
+        return this;
+    }
+
     /**
      * @param propertyName
      * @return
@@ -621,6 +977,10 @@ public class RepoBuilderDefault implements RepoBuilder {
      */
     public <KEY, ITEM> Repo<KEY, ITEM> build( Class<?> primitiveKey, Class<KEY> key, Class<ITEM> clazz, Class<?>... classes ) {
 
+        if ( shardCount > 1 ) {
+            return buildShards( primitiveKey, key, clazz, classes );
+        }
+
         /* Initialize factories. */
         initializeTheFactories();
 
@@ -633,19 +993,50 @@ public class RepoBuilderDefault implements RepoBuilder {
         /* Construct */
         this.repo = this.repoComposerFactory.get();
         this.editor = constructObjectEditor( fields );
-        SearchableCollectionComposer query = constructSearchableCollection( primitiveKey, clazz, repo, fields );
+        SearchableCollectionComposer query = constructSearchableCollection( primitiveKey, clazz, classes, repo, fields );
         query.setRemoveDuplication( this.removeDuplication );
 
         /* Inject */
         repo.setSearchableCollection( ( SearchableCollection<KEY, ITEM> ) query );
         ( ( ObjectEditorComposer ) editor ).setSearchableCollection( ( SearchableCollection<KEY, ITEM> ) query );
 
-        editor = decorateEditor( editor );
+        editor = decorateEditor( editor, clazz );
         repo.setObjectEditor( ( ObjectEditor ) editor );
 
         return ( Repo<KEY, ITEM> ) repo;
     }
 
+    /**
+     * Builds each shard as a repo of its own with the same settings.
+     */
+    private <KEY, ITEM> Repo<KEY, ITEM> buildShards( Class<?> primitiveKey, Class<KEY> key, Class<ITEM> clazz, Class<?>... classes ) {
+        if ( replicationLeader != null ) {
+            throw new IllegalStateException( "replicate can not be used with shards" );
+        }
+
+        int count = shardCount;
+        File journal = journalDirectory;
+        File offHeap = offHeapDirectory;
+        List<Repo<KEY, ITEM>> shards = new ArrayList<>( count );
+        shardCount = 0;
+        try {
+            for ( int index = 0; index < count; index++ ) {
+                if ( journal != null ) {
+                    journalDirectory = new File( journal, "shard-" + index );
+                }
+                if ( offHeap != null ) {
+                    offHeapDirectory = new File( offHeap, "shard-" + index );
+                }
+                shards.add( build( primitiveKey, key, clazz, classes ) );
+            }
+        } finally {
+            shardCount = count;
+            journalDirectory = journal;
+            offHeapDirectory = offHeap;
+        }
+        return new ShardedRepo<>( shards, fields, shardPool );
+    }
+
     /**
      * @param clazz
      * @param classes
@@ -676,7 +1067,8 @@ public class RepoBuilderDefault implements RepoBuilder {
      * @param fields
      * @return
      */
-    private SearchableCollectionComposer constructSearchableCollection( Class<?> primitiveKey, Class<?> itemClazz, RepoComposer repo, Map<String, FieldAccess> fields ) {
+    private SearchableCollectionComposer constructSearchableCollection( Class<?> primitiveKey, Class<?> itemClazz, Class<?>[] classes,
+                                                                       RepoComposer repo, Map<String, FieldAccess> fields ) {
 
         /* Create the searchable collection. */
         query = searchableCollectionFactory.get();
@@ -684,9 +1076,21 @@ public class RepoBuilderDefault implements RepoBuilder {
         /* Create the filter object. */
         Filter filter = this.filterFactory.get();
 
+        if ( this.offHeapDirectory != null ) {
+            if ( this.concurrent ) {
+                throw new IllegalStateException( "offHeap can not be used with concurrent or snapshotQueries" );
+            }
+            requireNonNull( primaryKey, "primary key cannot be null" );
+            columnRowIds = new ColumnRowIds( getKeyGetterOrCreate( fields, this.primaryKey ),
+                    new ColumnStore( this.offHeapDirectory, itemClazz, classes ) );
+            query.setRowIds( columnRowIds );
+        }
+
 
         configPrimaryKey( primitiveKey == null ? itemClazz : primitiveKey, fields );
 
+        keyDictionary = this.dictionaryKeys ? new KeyDictionary() : null;
+
 
         configIndexes( repo, fields );
 
@@ -696,10 +1100,21 @@ public class RepoBuilderDefault implements RepoBuilder {
 
         query.setFields( fields );
 
+        if ( this.versionGate != null ) {
+            query.setVersionGate( this.versionGate );
+        }
+
+        query.setScanPool( this.scanPool );
+
         query.init();
 
         if ( this.cache ) {
-            filter = new FilterWithSimpleCache( filter );
+            filter = new FilterWithCache( filter, new Supplier<Cache<Group, ResultSet>>() {
+                @Override
+                public Cache<Group, ResultSet> get() {
+                    return new SimpleConcurrentCache<>( 1_000, false, CacheType.LRU );
+                }
+            }, getKeyGetterOrCreate( fields, this.primaryKey ) );
         }
 
         query.setFilter( filter );
@@ -720,12 +1135,21 @@ public class RepoBuilderDefault implements RepoBuilder {
             editorComposer.setLookupAndExcept( true );
         }
 
+        if ( this.versionGate != null ) {
+            editorComposer.copyOnWriteOn();
+        }
+
         editorComposer.setFields( fields );
         return editor;
     }
 
 
-    private ObjectEditor decorateEditor( ObjectEditor editor ) {
+    private ObjectEditor decorateEditor( ObjectEditor editor, Class<?> itemClass ) {
+        /* Innermost so the lock is held for the whole edit and nothing else. */
+        if ( concurrent ) {
+            editor = new ObjectEditorLockDecorator( editor, new StripedLocks( versionGate ) );
+        }
+
         if ( debug || nullChecksAndLogging ) {
             ObjectEditorLogNullCheckDecorator logNullCheckDecorator = new ObjectEditorLogNullCheckDecorator( editor );
             logNullCheckDecorator.setLevel( level );
@@ -738,6 +1162,38 @@ public class RepoBuilderDefault implements RepoBuilder {
             editor = new ObjectEditorCloneDecorator( editor );
         }
 
+        /* Recovery goes through everything but the journal so it is not logged again. */
+        if ( journalDirectory != null ) {
+            Journal journal = new Journal( journalDirectory, itemClass, snapshotAfterBytes );
+            journal.recover( editor );
+            editor = new ObjectEditorJournalDecorator( editor, journal );
+        }
+
+        /* Over the journal so followers snapshot what was recovered, under the expiry so expiring is published. */
+        if ( replicationLeader != null ) {
+            replicationLeader.attach( editor );
+            editor = new ObjectEditorJournalDecorator( editor, replicationLeader );
+        }
+
+        /* Under the events so the expiry fires its own events, over the journal so expiring is logged. */
+        if ( timeToLive > 0 || timeToLiveProperty != null || maxSize > 0 ) {
+            TimeKeeper clock = this.timeKeeper;
+            if ( clock == null ) {
+                SystemTimeKeeper.start();
+                clock = new SystemTimeKeeper();
+            }
+            List<ModificationListener> expiryListeners = events ? Arrays.asList( listeners ) : new ArrayList<ModificationListener>();
+            ObjectEditorExpiryDecorator expiry = new ObjectEditorExpiryDecorator( editor, clock, timeToLive,
+                    timeToLiveProperty, timeToLiveUnit, maxSize, expiryListeners );
+            if ( concurrent ) {
+                expiry.sweepInBackground();
+            }
+            if ( repo instanceof RepoDefault ) {
+                ( ( RepoDefault ) repo ).setExpiry( expiry );
+            }
+            editor = expiry;
+        }
+
         if ( events ) {
             ObjectEditorEventDecorator eventManager = new ObjectEditorEventDecorator( editor );
             for ( ModificationListener l : listeners ) {
@@ -831,10 +1287,17 @@ public class RepoBuilderDefault implements RepoBuilder {
     private void configIndexes( RepoComposer repo,
                                 Map<String, FieldAccess> fields ) {
 
+        if ( columnRowIds != null ) {
+            configColumnIndexes( fields );
+            return;
+        }
+
         if ( this.indexHierarchy ) {
             TypeHierarchyIndex index = new TypeHierarchyIndex();
             index.setComparator( this.collators.get( "_type" ) );
             index.setInputKeyTransformer( this.keyTransformers.get( "_type" ) );
+            index.setConcurrent( this.concurrent );
+            configVersioned( index );
             index.init();
             ( ( SearchableCollection ) query ).addSearchIndex( "_type", index );
         }
@@ -850,10 +1313,18 @@ public class RepoBuilderDefault implements RepoBuilder {
 
             Class<?> type = fieldAccess.type();
 
-            SearchIndex searchIndex = this.searchIndexFactory.apply( type );
+            SearchIndex searchIndex = usePrimitiveSearchIndex( prop, type )
+                    ? new PrimitiveSearchIndex( fieldAccess )
+                    : this.searchIndexFactory.apply( type );
             configSearchIndex( fields, prop, searchIndex );
 
         }
+        for ( String prop : ngramIndexes ) {
+            FieldAccess fieldAccess = fields.get( prop );
+            requireNonNull( fieldAccess, "Field access for property was null. " + prop );
+
+            configSearchIndex( fields, prop, new NGramSearchIndex( fieldAccess.type() ) );
+        }
         for ( String prop : uniqueSearchIndexes ) {
             FieldAccess fieldAccess = fields.get( prop );
             requireNonNull( fieldAccess, "Field access for property was null. " + prop );
@@ -870,6 +1341,10 @@ public class RepoBuilderDefault implements RepoBuilder {
             LookupIndex index = this.lookupIndexFactory.apply( fieldAccess.type() );
             configLookupIndex( fields, prop, index );
         }
+        if ( bitmapIndexes.size() > 0 ) {
+            configBitmapIndexes( fields );
+        }
+
         for ( String prop : uniqueLookupIndexes ) {
             FieldAccess fieldAccess = fields.get( prop );
             Exceptions.requireNonNull( fieldAccess, "Field access for property was null. " + prop );
@@ -881,11 +1356,73 @@ public class RepoBuilderDefault implements RepoBuilder {
 
     }
 
+    /**
+     * Primitive fields get an index that keeps its keys unboxed in a sorted array.
+     * Only when nothing needs the TreeMap: no custom factory, collator, key transform or key getter,
+     * and not concurrent since that index is not thread safe.
+     */
+    private boolean usePrimitiveSearchIndex( String prop, Class<?> type ) {
+        return PrimitiveSearchIndex.supports( type )
+                && !this.concurrent
+                && this.searchIndexFactory == SPIFactory.getSearchIndexFactory()
+                && this.collators.get( prop ) == null
+                && this.keyTransformers.get( prop ) == null
+                && ( this.keyGetterMap.get( prop ) == null || prop.equals( this.primaryKey ) );
+    }
+
+    /**
+     * Off heap the rows are the storage, so a search index is a scan of its column and a lookup index
+     * is a bitmap of rows. Indexes that would hold on to items or need keys of their own are not allowed.
+     */
+    private void configColumnIndexes( Map<String, FieldAccess> fields ) {
+        if ( this.indexHierarchy || this.nestedIndexes.size() > 0 ) {
+            throw new IllegalStateException( "Nested and hierarchy indexes can not be used off heap" );
+        }
+
+        Set<String> searched = new LinkedHashSet<>( searchIndexes );
+        searched.addAll( uniqueSearchIndexes );
+        searched.addAll( ngramIndexes );
+        for ( String prop : searched ) {
+            if ( this.collators.get( prop ) != null || this.keyTransformers.get( prop ) != null
+                    || ( this.keyGetterMap.get( prop ) != null && !prop.equals( this.primaryKey ) ) ) {
+                throw new IllegalStateException( String.format(
+                        "Search index %s can not have a collator, key transform or key getter off heap", prop ) );
+            }
+            configSearchIndex( fields, prop, new ColumnSearchIndex( columnRowIds, prop ) );
+        }
+
+        Set<String> looked = new LinkedHashSet<>( lookupIndexes );
+        looked.addAll( uniqueLookupIndexes );
+        looked.addAll( bitmapIndexes );
+        for ( String prop : looked ) {
+            Exceptions.requireNonNull( fields.get( prop ), "Field access for property was null. " + prop );
+            configLookupIndex( fields, prop, new BitmapLookupIndex( columnRowIds ) );
+        }
+    }
+
+    private void configBitmapIndexes( Map<String, FieldAccess> fields ) {
+        if ( this.concurrent ) {
+            throw new IllegalStateException( "bitmapIndex can not be used with concurrent or snapshotQueries" );
+        }
+        RowIds rowIds = new RowIds( getKeyGetterOrCreate( fields, this.primaryKey ) );
+        query.setRowIds( rowIds );
+
+        for ( String prop : bitmapIndexes ) {
+            Exceptions.requireNonNull( fields.get( prop ), "Field access for property was null. " + prop );
+            configLookupIndex( fields, prop, new BitmapLookupIndex( rowIds ) );
+        }
+    }
+
     private void configLookupIndex( Map<String, FieldAccess> fields, String prop, LookupIndex index ) {
         Function kg = getKeyGetterOrCreate( fields, prop );
         index.setInputKeyTransformer( this.keyTransformers.get( prop ) );
         index.setKeyGetter( kg );
         index.setBucketSize( this.indexBucketSize.get( prop ) == null ? 3 : this.indexBucketSize.get( prop ) );
+        index.setConcurrent( this.concurrent );
+        configVersioned( index );
+        if ( keyDictionary != null && index instanceof LookupIndexDefault ) {
+            ( ( LookupIndexDefault ) index ).setKeyDictionary( keyDictionary );
+        }
 
         index.init();
         ( ( SearchableCollection ) query ).addLookupIndex( prop, index );
@@ -897,6 +1434,11 @@ public class RepoBuilderDefault implements RepoBuilder {
         Function kg = getKeyGetterOrCreate( fields, prop );
         searchIndex.setKeyGetter( kg );
         searchIndex.setBucketSize( this.indexBucketSize.get( prop ) == null ? 3 : this.indexBucketSize.get( prop ) );
+        searchIndex.setConcurrent( this.concurrent );
+        configVersioned( searchIndex );
+        if ( keyDictionary != null && searchIndex instanceof LookupIndexDefault ) {
+            ( ( LookupIndexDefault ) searchIndex ).setKeyDictionary( keyDictionary );
+        }
         searchIndex.init();
         ( ( SearchableCollection ) query ).addSearchIndex( prop, searchIndex );
     }
@@ -905,10 +1447,29 @@ public class RepoBuilderDefault implements RepoBuilder {
         index.setComparator( this.collators.get( prop ) );
         index.setInputKeyTransformer( this.keyTransformers.get( prop ) );
         index.setBucketSize( this.indexBucketSize.get( prop ) == null ? 3 : this.indexBucketSize.get( prop ) );
+        index.setConcurrent( this.concurrent );
+        configVersioned( index );
         index.init();
         ( ( SearchableCollection ) query ).addSearchIndex( prop, index );
     }
 
+    /**
+     * With snapshot queries the indexes keep their keys in persistent maps, so publishing
+     * a version does not copy them. Indexes that can not are copied as before.
+     */
+    private void configVersioned( LookupIndex index ) {
+        if ( versionGate == null ) {
+            return;
+        }
+        if ( index instanceof LookupIndexDefault ) {
+            ( ( LookupIndexDefault ) index ).setVersioned( true );
+        } else if ( index instanceof UniqueLookupIndex ) {
+            ( ( UniqueLookupIndex ) index ).setVersioned( true );
+        } else if ( index instanceof BaseIndexWrapper ) {
+            ( ( BaseIndexWrapper ) index ).setVersioned( true );
+        }
+    }
+
     private Function getKeyGetterOrCreate( Map<String, FieldAccess> fields, String prop ) {
         Exceptions.requireNonNull( fields, "field cannot be null" );
         Exceptions.requireNonNull( prop, "prop cannot be null" );
@@ -931,7 +1492,9 @@ public class RepoBuilderDefault implements RepoBuilder {
 
         Exceptions.requireNonNull( primaryKey, "primary key cannot be null" );
 
-        LookupIndex primaryKeyIndex = this.uniqueLookupIndexFactory.apply( type );
+        LookupIndex primaryKeyIndex = columnRowIds != null
+                ? new ColumnPrimaryIndex( columnRowIds )
+                : this.uniqueLookupIndexFactory.apply( type );
 
 
         if ( !fields.containsKey( primaryKey ) ) {
@@ -942,6 +1505,8 @@ public class RepoBuilderDefault implements RepoBuilder {
 
 
         primaryKeyIndex.setKeyGetter( getKeyGetterOrCreate( fields, this.primaryKey ) );
+        primaryKeyIndex.setConcurrent( this.concurrent );
+        configVersioned( primaryKeyIndex );
         query.setPrimaryKeyName( this.primaryKey );
         query.setPrimaryKeyGetter( this.keyGetterMap.get( this.primaryKey ) );
 
@@ -4,14 +4,17 @@ import org.boon.criteria.Selector;
 import org.boon.criteria.Update;
 import org.boon.criteria.internal.*;
 import org.boon.datarepo.*;
+import org.boon.datarepo.impl.decorators.ObjectEditorExpiryDecorator;
 import org.boon.datarepo.spi.RepoComposer;
 import org.boon.datarepo.spi.SearchIndex;
 import org.boon.sort.Sort;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 
 /**
@@ -25,9 +28,19 @@ public class RepoDefault<KEY, ITEM> implements Repo<KEY, ITEM>, RepoComposer<KEY
     private ObjectEditor<KEY, ITEM> editor;
     private SearchableCollection<KEY, ITEM> query;
 
+    /* Only set when items expire. Reads that skip the editor take out what is due first. */
+    private ObjectEditorExpiryDecorator<KEY, ITEM> expiry;
+
+    private SearchableCollection<KEY, ITEM> searchable() {
+        if ( expiry != null ) {
+            expiry.expire();
+        }
+        return query;
+    }
+
     @Override
     public void updateByFilter( String property, Object value, Criteria... expressions ) {
-        List<ITEM> items = query.query( expressions );
+        List<ITEM> items = searchable().query( expressions );
         for ( ITEM item : items ) {
             modify( item, property, value );
         }
@@ -35,7 +48,7 @@ public class RepoDefault<KEY, ITEM> implements Repo<KEY, ITEM>, RepoComposer<KEY
 
     @Override
     public void updateByFilterUsingValue( String property, String value, Criteria... expressions ) {
-        List<ITEM> items = query.query( expressions );
+        List<ITEM> items = searchable().query( expressions );
         for ( ITEM item : items ) {
             modifyByValue( item, property, value );
         }
@@ -43,7 +56,7 @@ public class RepoDefault<KEY, ITEM> implements Repo<KEY, ITEM>, RepoComposer<KEY
 
     @Override
     public void updateByFilter( String property, int value, Criteria... expressions ) {
-        List<ITEM> items = query.query( expressions );
+        List<ITEM> items = searchable().query( expressions );
         for ( ITEM item : items ) {
             modify( item, property, value );
         }
@@ -51,7 +64,7 @@ public class RepoDefault<KEY, ITEM> implements Repo<KEY, ITEM>, RepoComposer<KEY
 
     @Override
     public void updateByFilter( String property, long value, Criteria... expressions ) {
-        List<ITEM> items = query.query( expressions );
+        List<ITEM> items = searchable().query( expressions );
         for ( ITEM item : items ) {
             modify( item, property, value );
         }
@@ -59,7 +72,7 @@ public class RepoDefault<KEY, ITEM> implements Repo<KEY, ITEM>, RepoComposer<KEY
 
     @Override
     public void updateByFilter( String property, char value, Criteria... expressions ) {
-        List<ITEM> items = query.query( expressions );
+        List<ITEM> items = searchable().query( expressions );
         for ( ITEM item : items ) {
             modify( item, property, value );
         }
@@ -67,7 +80,7 @@ public class RepoDefault<KEY, ITEM> implements Repo<KEY, ITEM>, RepoComposer<KEY
 
     @Override
     public void updateByFilter( String property, short value, Criteria... expressions ) {
-        List<ITEM> items = query.query( expressions );
+        List<ITEM> items = searchable().query( expressions );
         for ( ITEM item : items ) {
             modify( item, property, value );
         }
@@ -75,7 +88,7 @@ public class RepoDefault<KEY, ITEM> implements Repo<KEY, ITEM>, RepoComposer<KEY
 
     @Override
     public void updateByFilter( String property, byte value, Criteria... expressions ) {
-        List<ITEM> items = query.query( expressions );
+        List<ITEM> items = searchable().query( expressions );
         for ( ITEM item : items ) {
             modify( item, property, value );
         }
@@ -83,7 +96,7 @@ public class RepoDefault<KEY, ITEM> implements Repo<KEY, ITEM>, RepoComposer<KEY
 
     @Override
     public void updateByFilter( String property, float value, Criteria... expressions ) {
-        List<ITEM> items = query.query( expressions );
+        List<ITEM> items = searchable().query( expressions );
         for ( ITEM item : items ) {
             modify( item, property, value );
         }
@@ -91,7 +104,7 @@ public class RepoDefault<KEY, ITEM> implements Repo<KEY, ITEM>, RepoComposer<KEY
 
     @Override
     public void updateByFilter( String property, double value, Criteria... expressions ) {
-        List<ITEM> items = query.query( expressions );
+        List<ITEM> items = searchable().query( expressions );
         for ( ITEM item : items ) {
             modify( item, property, value );
         }
@@ -99,14 +112,10 @@ public class RepoDefault<KEY, ITEM> implements Repo<KEY, ITEM>, RepoComposer<KEY
 
     @Override
     public void updateByFilter( List<Update> values, Criteria... expressions ) {
-        List<ITEM> items = query.query( expressions );
+        List<ITEM> items = searchable().query( expressions );
+        Update[] updates = values.toArray( new Update[ values.size() ] );
         for ( ITEM item : items ) {
-
-            for ( Update value : values ) {
-                query.invalidateIndex( value.getName(), item );
-                value.doSet( this, item );
-                query.validateIndex( value.getName(), item );
-            }
+            modify( item, updates );
         }
     }
 
@@ -229,157 +238,187 @@ public class RepoDefault<KEY, ITEM> implements Repo<KEY, ITEM>, RepoComposer<KEY
 
     @Override
     public int count( KEY key, String property, int value ) {
-        return query.count( key, property, value );
+        return searchable().count( key, property, value );
     }
 
     @Override
     public int count( KEY key, String property, short value ) {
-        return query.count( key, property, value );
+        return searchable().count( key, property, value );
     }
 
     @Override
     public int count( KEY key, String property, byte value ) {
-        return query.count( key, property, value );
+        return searchable().count( key, property, value );
     }
 
     @Override
     public int count( KEY key, String property, long value ) {
-        return query.count( key, property, value );
+        return searchable().count( key, property, value );
     }
 
     @Override
     public int count( KEY key, String property, char value ) {
-        return query.count( key, property, value );
+        return searchable().count( key, property, value );
     }
 
     @Override
     public int count( KEY key, String property, float value ) {
-        return query.count( key, property, value );
+        return searchable().count( key, property, value );
     }
 
     @Override
     public int count( KEY key, String property, double value ) {
-        return query.count( key, property, value );
+        return searchable().count( key, property, value );
     }
 
     @Override
     public int count( KEY key, String property, Object value ) {
-        return query.count( key, property, value );
+        return searchable().count( key, property, value );
     }
 
     @Override
     public <T> T max( KEY key, String property, Class<T> type ) {
-        return query.max( key, property, type );
+        return searchable().max( key, property, type );
     }
 
     @Override
     public String maxString( KEY key, String property ) {
-        return query.maxString( key, property );
+        return searchable().maxString( key, property );
     }
 
     @Override
     public Number maxNumber( KEY key, String property ) {
-        return query.maxNumber( key, property );
+        return searchable().maxNumber( key, property );
     }
 
     @Override
     public int maxInt( KEY key, String property ) {
-        return query.maxInt( key, property );
+        return searchable().maxInt( key, property );
     }
 
     @Override
     public long maxLong( KEY key, String property ) {
-        return query.maxLong( key, property );
+        return searchable().maxLong( key, property );
     }
 
     @Override
     public double maxDouble( KEY key, String property ) {
-        return query.maxDouble( key, property );
+        return searchable().maxDouble( key, property );
     }
 
     @Override
     public <T> T min( KEY key, String property, Class<T> type ) {
-        return query.min( key, property, type );
+        return searchable().min( key, property, type );
     }
 
     @Override
     public String minString( KEY key, String property ) {
-        return query.minString( key, property );
+        return searchable().minString( key, property );
     }
 
     @Override
     public Number minNumber( KEY key, String property ) {
-        return query.minNumber( key, property );
+        return searchable().minNumber( key, property );
     }
 
     @Override
     public int minInt( KEY key, String property ) {
-        return query.minInt( key, property );
+        return searchable().minInt( key, property );
     }
 
     @Override
     public long minLong( KEY key, String property ) {
-        return query.minLong( key, property );
+        return searchable().minLong( key, property );
     }
 
     @Override
     public double minDouble( KEY key, String property ) {
-        return query.minDouble( key, property );
+        return searchable().minDouble( key, property );
     }
 
     @Override
     public ResultSet<ITEM> results( Criteria... expressions ) {
-        return query.results( expressions );
+        return searchable().results( expressions );
+    }
+
+    @Override
+    public ResultSet<ITEM> lazyResults( Criteria... expressions ) {
+        return searchable().lazyResults( expressions );
+    }
+
+    @Override
+    public Page<ITEM> page( String sortBy, String cursor, int size, Criteria... expressions ) {
+        return searchable().page( sortBy, cursor, size, expressions );
     }
 
     @Override
     public List<ITEM> query( Criteria... expressions ) {
-        return query.query( expressions );
+        return searchable().query( expressions );
+    }
+
+    @Override
+    public LookupIndex<?, ITEM> index( String property ) {
+        return searchable().index( property );
+    }
+
+    @Override
+    public View<KEY, ITEM> view( Criteria... expressions ) {
+        return searchable().view( expressions );
+    }
+
+    @Override
+    public View<KEY, ITEM> view( List<Aggregate> aggregates, Criteria... expressions ) {
+        return searchable().view( aggregates, expressions );
     }
 
     @Override
     public List<ITEM> sortedQuery( String sortBy, Criteria... expressions ) {
-        return query.sortedQuery( sortBy, expressions );
+        return searchable().sortedQuery( sortBy, expressions );
     }
 
     @Override
     public List<ITEM> sortedQuery( Sort sortBy, Criteria... expressions ) {
-        return query.sortedQuery( sortBy, expressions );
+        return searchable().sortedQuery( sortBy, expressions );
+    }
+
+    @Override
+    public List<ITEM> sortedQuery( Sort sortBy, int start, int size, Criteria... expressions ) {
+        return searchable().sortedQuery( sortBy, start, size, expressions );
     }
 
     @Override
     public List<Map<String, Object>> queryAsMaps( Criteria... expressions ) {
-        return query.queryAsMaps( expressions );
+        return searchable().queryAsMaps( expressions );
     }
 
     @Override
     public List<Map<String, Object>> query( List<Selector> selectors, Criteria... expressions ) {
-        return query.query( selectors, expressions );
+        return searchable().query( selectors, expressions );
     }
 
     @Override
     public List<Map<String, Object>> sortedQuery( String sortBy, List<Selector> selectors, Criteria... expressions ) {
-        return query.sortedQuery( sortBy, selectors, expressions );
+        return searchable().sortedQuery( sortBy, selectors, expressions );
     }
 
     @Override
     public List<Map<String, Object>> sortedQuery( Sort sortBy, List<Selector> selectors, Criteria... expressions ) {
-        return query.sortedQuery( sortBy, selectors, expressions );
+        return searchable().sortedQuery( sortBy, selectors, expressions );
     }
 
     @Override
     public void query( Visitor<KEY, ITEM> visitor, Criteria... expressions ) {
-        query.query( visitor, expressions );
+        searchable().query( visitor, expressions );
     }
 
     @Override
     public void sortedQuery( Visitor<KEY, ITEM> visitor, String sortBy, Criteria... expressions ) {
-        query.query( visitor, expressions );
+        searchable().query( visitor, expressions );
     }
 
     @Override
     public void sortedQuery( Visitor<KEY, ITEM> visitor, Sort sortBy, Criteria... expressions ) {
-        query.sortedQuery( visitor, sortBy, expressions );
+        searchable().sortedQuery( visitor, sortBy, expressions );
     }
 
     @Override
@@ -412,6 +451,11 @@ public class RepoDefault<KEY, ITEM> implements Repo<KEY, ITEM>, RepoComposer<KEY
         editor.addAllAsync( items );
     }
 
+    @Override
+    public Future<?> submitAll( Collection<ITEM> items ) {
+        return editor.submitAll( items );
+    }
+
     @Override
     public void modifyAll( ITEM... items ) {
         editor.modifyAll( items );
@@ -644,27 +688,30 @@ public class RepoDefault<KEY, ITEM> implements Repo<KEY, ITEM>, RepoComposer<KEY
 
     @Override
     public boolean remove( Object o ) {
-        return query.remove( o );
+        return searchable().remove( o );
     }
 
     @Override
     public boolean containsAll( Collection<?> c ) {
-        return query.containsAll( c );
+        return searchable().containsAll( c );
     }
 
     @Override
     public boolean addAll( Collection<? extends ITEM> c ) {
-        return query.addAll( c );
+        /* Items whose key is already in the repo are skipped, so only a change in size means something went in. */
+        int before = size();
+        editor.addAll( new ArrayList<ITEM>( c ) );
+        return size() != before;
     }
 
     @Override
     public boolean removeAll( Collection<?> c ) {
-        return query.removeAll( c );
+        return searchable().removeAll( c );
     }
 
     @Override
     public boolean retainAll( Collection<?> c ) {
-        return query.retainAll( c );
+        return searchable().retainAll( c );
     }
 
     @Override
@@ -695,29 +742,29 @@ public class RepoDefault<KEY, ITEM> implements Repo<KEY, ITEM>, RepoComposer<KEY
     @Override
     public boolean isEmpty() {
 
-        return query.isEmpty();
+        return searchable().isEmpty();
     }
 
     @Override
     public boolean contains( Object o ) {
-        return query.contains( o );
+        return searchable().contains( o );
     }
 
     @Override
     public Iterator<ITEM> iterator() {
-        return query.iterator();
+        return searchable().iterator();
     }
 
 
     @Override
     public Object[] toArray() {
-        return query.toArray();
+        return searchable().toArray();
 
     }
 
     @Override
     public <T> T[] toArray( T[] a ) {
-        return query.toArray( a );
+        return searchable().toArray( a );
     }
 
     @Override
@@ -744,4 +791,8 @@ public class RepoDefault<KEY, ITEM> implements Repo<KEY, ITEM>, RepoComposer<KEY
     public void setObjectEditor( ObjectEditor editor ) {
         this.editor = editor;
     }
+
+    public void setExpiry( ObjectEditorExpiryDecorator<KEY, ITEM> expiry ) {
+        this.expiry = expiry;
+    }
 }
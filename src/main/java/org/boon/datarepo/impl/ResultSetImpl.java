@@ -8,8 +8,12 @@ import org.boon.criteria.internal.QueryFactory;
 import org.boon.criteria.Selector;
 import org.boon.sort.Sort;
 import org.boon.datarepo.DataRepoException;
+import org.boon.datarepo.GroupBy;
+import org.boon.datarepo.Join;
+import org.boon.datarepo.LookupIndex;
 import org.boon.datarepo.PlanStep;
 import org.boon.datarepo.ResultSet;
+import org.boon.datarepo.SearchableCollection;
 import org.boon.datarepo.spi.ResultSetInternal;
 
 import java.lang.reflect.Array;
@@ -28,6 +32,11 @@ public class ResultSetImpl<T> implements ResultSetInternal<T> {
 
     private Map<String, FieldAccess> fields;
 
+    private List<PlanStep> plan;
+
+    /* Set while the results are every item in the collection. */
+    private Map<String, LookupIndex> indexes;
+
 
     public ResultSetImpl( Map<String, FieldAccess> fields ) {
         this.fields = fields;
@@ -70,6 +79,7 @@ public class ResultSetImpl<T> implements ResultSetInternal<T> {
 
 
     public void addResults( List<T> results ) {
+        indexes = null;
         lastList = results;
         totalSize += results.size();
         allResults.add( results );
@@ -144,10 +154,42 @@ public class ResultSetImpl<T> implements ResultSetInternal<T> {
     @Override
     public void filterAndPrune( Criteria criteria ) {
         prepareResults();
+        indexes = null;
         this.results = QueryFactory.filter( results, criteria );
     }
 
 
+    @Override
+    public void allItems( Map<String, LookupIndex> indexes ) {
+        this.indexes = indexes;
+    }
+
+    @Override
+    public GroupBy groupBy( String... fields ) {
+        prepareResults();
+        return new GroupByDefault<>( results, this.fields, indexes, fields );
+    }
+
+    @Override
+    public <RIGHT> Join<T, RIGHT> join( SearchableCollection<?, RIGHT> right, String field, String rightField ) {
+        prepareResults();
+        return JoinDefault.join( results, fields, field, right, rightField );
+    }
+
+    @Override
+    public <RIGHT> Join<T, RIGHT> join( ResultSet<RIGHT> right, String field, String rightField ) {
+        prepareResults();
+        return JoinDefault.join( results, fields, field, right, rightField );
+    }
+
+    /**
+     * The index on this field when the results are every item in the collection, otherwise null.
+     */
+    LookupIndex index( String field ) {
+        prepareResults();
+        return indexes == null ? null : indexes.get( field );
+    }
+
     @Override
     public ResultSet<List<Map<String, Object>>> select( Selector... selectors ) {
         prepareResults();
@@ -348,7 +390,22 @@ public class ResultSetImpl<T> implements ResultSetInternal<T> {
 
     @Override
     public List<PlanStep> queryPlan() {
-        throw new RuntimeException( "NOT IMPLEMENTED" );
+        return plan == null ? Collections.<PlanStep>emptyList() : plan;
+    }
+
+    @Override
+    public void addPlanStep( PlanStep step ) {
+        if ( plan == null ) {
+            plan = new ArrayList<>();
+        }
+        plan.add( step );
+    }
+
+    @Override
+    public ResultSetInternal<T> withResults( List<T> results ) {
+        ResultSetImpl<T> copy = new ResultSetImpl<>( results, fields );
+        copy.plan = plan == null ? null : new ArrayList<>( plan );
+        return copy;
     }
 
     @Override
@@ -568,6 +625,7 @@ public class ResultSetImpl<T> implements ResultSetInternal<T> {
 
     @Override
     public void andResults() {
+        indexes = null;
         if ( allResults.size() == 0 ) {
             return;
         }
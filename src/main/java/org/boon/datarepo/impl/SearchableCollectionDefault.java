@@ -7,17 +7,29 @@ import org.boon.criteria.internal.Criteria;
 import org.boon.criteria.Selector;
 import org.boon.sort.Sort;
 import org.boon.criteria.internal.Visitor;
+import org.boon.datarepo.Aggregate;
 import org.boon.datarepo.Filter;
 import org.boon.datarepo.LookupIndex;
+import org.boon.datarepo.Page;
 import org.boon.datarepo.ResultSet;
 import org.boon.datarepo.SearchableCollection;
+import org.boon.datarepo.View;
+import org.boon.datarepo.impl.indexes.RowIds;
 import org.boon.datarepo.impl.indexes.UniqueLookupIndex;
 import org.boon.datarepo.spi.FilterComposer;
+import org.boon.datarepo.spi.SPIFactory;
 import org.boon.datarepo.spi.SearchIndex;
 import org.boon.datarepo.spi.SearchableCollectionComposer;
 import org.boon.core.Function;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 import static org.boon.Lists.list;
@@ -43,12 +55,51 @@ public class SearchableCollectionDefault<KEY, ITEM> implements SearchableCollect
 
     protected boolean removeDuplication = true;
 
+    /**
+     * Snapshot query mode. Queries run against a frozen copy of the indexes (a version).
+     * Editors pass through this gate and a new version is published once their edits are done.
+     * Null means queries run against the live indexes.
+     */
+    private VersionGate versionGate;
+
+    /* Only set when there are bitmap indexes. */
+    private RowIds<ITEM> rowIds;
+
+    /* Only set when full scans run in parallel. */
+    private ForkJoinPool scanPool;
+
+    /* Materialized views, told about every change along with the filter. */
+    private final List<ViewDefault<KEY, ITEM>> views = new CopyOnWriteArrayList<>();
+    private final AtomicLong writes = new AtomicLong();
+    private volatile Version<KEY, ITEM> version;
+
+    /* The write count each index last changed at, so a version only snapshots the indexes that moved. */
+    private volatile long allChangedAt;
+    private final ConcurrentHashMap<String, Long> changedAt = new ConcurrentHashMap<>();
+
+    private static class Version<KEY, ITEM> {
+        final long writes;
+        final SearchableCollectionDefault<KEY, ITEM> items;
+
+        Version( long writes, SearchableCollectionDefault<KEY, ITEM> items ) {
+            this.writes = writes;
+            this.items = items;
+        }
+    }
+
 
     @Override
     public boolean delete( ITEM item ) {
+        if ( item != null ) {
+            invalidated( null, item );
+        }
         for ( LookupIndex index : indexes ) {
             index.delete( item );
         }
+        if ( rowIds != null ) {
+            rowIds.release( item );
+        }
+        changed();
         return true;
     }
 
@@ -66,9 +117,14 @@ public class SearchableCollectionDefault<KEY, ITEM> implements SearchableCollect
     }
 
     public void validateIndexes( ITEM item ) {
+        if ( rowIds != null ) {
+            rowIds.assign( item );
+        }
         for ( LookupIndex index : indexes ) {
             index.add( item );
         }
+        validated( null, item );
+        changed();
     }
 
 
@@ -345,11 +401,33 @@ public class SearchableCollectionDefault<KEY, ITEM> implements SearchableCollect
 
     @Override
     public ResultSet<ITEM> results( Criteria... expressions ) {
+        if ( versionGate != null ) {
+            return version().results( expressions );
+        }
         return this.filter.filter( expressions );
     }
 
+    @Override
+    public ResultSet<ITEM> lazyResults( Criteria... expressions ) {
+        if ( versionGate != null ) {
+            return version().lazyResults( expressions );
+        }
+        return this.filter.lazyFilter( expressions );
+    }
+
+    @Override
+    public Page<ITEM> page( String sortBy, String cursor, int size, Criteria... expressions ) {
+        if ( versionGate != null ) {
+            return version().page( sortBy, cursor, size, expressions );
+        }
+        return this.filter.page( sortBy, cursor, size, expressions );
+    }
+
     @Override
     public List<ITEM> query( Criteria... expressions ) {
+        if ( versionGate != null ) {
+            return version().query( expressions );
+        }
         if ( expressions == null || expressions.length == 0 ) {
             return this.all();
         } else {
@@ -374,6 +452,14 @@ public class SearchableCollectionDefault<KEY, ITEM> implements SearchableCollect
         return results;
     }
 
+    @Override
+    public List<ITEM> sortedQuery( Sort sortBy, int start, int size, Criteria... expressions ) {
+        if ( versionGate != null ) {
+            return version().sortedQuery( sortBy, start, size, expressions );
+        }
+        return this.filter.sortedFilter( sortBy, start, size, expressions );
+    }
+
     @Override
     public List<Map<String, Object>> queryAsMaps( Criteria... expressions ) {
         List<ITEM> items = this.query( expressions );
@@ -398,7 +484,7 @@ public class SearchableCollectionDefault<KEY, ITEM> implements SearchableCollect
         return results;
     }
 
-    private void visit( KEY key, ITEM item, Visitor<KEY, ITEM> visitor, Object o, List<String> path, int levels ) {
+    static <KEY, ITEM> void visit( KEY key, ITEM item, Visitor<KEY, ITEM> visitor, Object o, List<String> path, int levels ) {
         if ( o == null ) {
             return;
         }
@@ -496,11 +582,15 @@ public class SearchableCollectionDefault<KEY, ITEM> implements SearchableCollect
         if ( index != null ) {
             index.delete( item );
         }
-        filter.invalidate();
+        invalidated( property, item );
+        changed( property );
 
     }
 
     public void validateIndex( String property, ITEM item ) {
+        if ( rowIds != null ) {
+            rowIds.assign( item );
+        }
         LookupIndex index = this.searchIndexMap.get( property );
         if ( index != null ) {
             index.add( item );
@@ -510,6 +600,8 @@ public class SearchableCollectionDefault<KEY, ITEM> implements SearchableCollect
         if ( index != null ) {
             index.add( item );
         }
+        validated( property, item );
+        changed( property );
 
     }
 
@@ -519,7 +611,154 @@ public class SearchableCollectionDefault<KEY, ITEM> implements SearchableCollect
         for ( LookupIndex index : indexes ) {
             index.clear();
         }
+        if ( rowIds != null ) {
+            rowIds.clear();
+        }
+        filter.invalidate();
+        for ( ViewDefault<KEY, ITEM> view : views ) {
+            view.clear();
+        }
+        changed();
+
+    }
+
+    @Override
+    public void setVersionGate( VersionGate versionGate ) {
+        this.versionGate = versionGate;
+        versionGate.setPublisher( new VersionGate.Publisher<Version<KEY, ITEM>>() {
+            @Override
+            public Version<KEY, ITEM> build() {
+                return nextVersion();
+            }
+
+            @Override
+            public void install( Version<KEY, ITEM> version ) {
+                SearchableCollectionDefault.this.version = version;
+            }
+        } );
+    }
+
+    @Override
+    public void setRowIds( RowIds rowIds ) {
+        this.rowIds = rowIds;
+    }
+
+    @Override
+    public void setScanPool( ForkJoinPool scanPool ) {
+        this.scanPool = scanPool;
+    }
+
+    private void invalidated( String property, ITEM item ) {
+        filter.invalidate( property, item );
+        for ( ViewDefault<KEY, ITEM> view : views ) {
+            view.invalidate( property, item );
+        }
+    }
 
+    private void validated( String property, ITEM item ) {
+        filter.validate( property, item );
+        for ( ViewDefault<KEY, ITEM> view : views ) {
+            view.validate( property, item );
+        }
+    }
+
+    @Override
+    public View<KEY, ITEM> view( Criteria... expressions ) {
+        return view( new ArrayList<Aggregate>(), expressions );
+    }
+
+    /**
+     * The view is listening before the query that fills it runs, so no change is missed.
+     */
+    @Override
+    public View<KEY, ITEM> view( List<Aggregate> aggregates, Criteria... expressions ) {
+        ViewDefault<KEY, ITEM> view = new ViewDefault<>( this, fields, aggregates, expressions );
+        views.add( view );
+        view.load( query( expressions ) );
+        return view;
+    }
+
+    void removeView( ViewDefault<KEY, ITEM> view ) {
+        views.remove( view );
+    }
+
+    private void changed() {
+        changed( null );
+    }
+
+    /**
+     * Null means every index changed.
+     */
+    private void changed( String property ) {
+        if ( versionGate != null ) {
+            long count = writes.incrementAndGet();
+            if ( property == null ) {
+                allChangedAt = count;
+            } else {
+                changedAt.put( property, count );
+            }
+        }
+    }
+
+    /**
+     * The version last published. Queries never wait for a newer one.
+     */
+    private SearchableCollectionDefault<KEY, ITEM> version() {
+        return this.version.items;
+    }
+
+    /**
+     * Builds a new version if anything changed since the last one.
+     * The gate runs this with no edit in flight and only installs it if none started meanwhile.
+     */
+    private Version<KEY, ITEM> nextVersion() {
+        Version<KEY, ITEM> current = this.version;
+        long count = writes.get();
+        if ( current != null && current.writes == count ) {
+            return current;
+        }
+        return new Version<>( count, freeze( current ) );
+    }
+
+    /**
+     * Snapshots the indexes into a new collection that is never written to again.
+     * An index that has not changed since the last version hands over that version's snapshot,
+     * and the others share their persistent maps with theirs, so this costs about the same
+     * however many items there are. Old versions go away once no result set refers to them.
+     */
+    private SearchableCollectionDefault<KEY, ITEM> freeze( Version<KEY, ITEM> last ) {
+        SearchableCollectionDefault<KEY, ITEM> frozen = new SearchableCollectionDefault<>();
+        frozen.log = this.log;
+        frozen.fields = this.fields;
+        frozen.primaryKeyName = this.primaryKeyName;
+        frozen.primaryKeyGetter = this.primaryKeyGetter;
+        frozen.removeDuplication = this.removeDuplication;
+        frozen.scanPool = this.scanPool;
+
+        for ( Map.Entry<String, LookupIndex> entry : lookupIndexMap.entrySet() ) {
+            LookupIndex index = unchanged( last, entry.getKey() ) ? last.items.lookupIndexMap.get( entry.getKey() )
+                    : entry.getValue().snapshot();
+            frozen.lookupIndexMap.put( entry.getKey(), index );
+            frozen.indexes.add( index );
+        }
+        for ( Map.Entry<String, SearchIndex> entry : searchIndexMap.entrySet() ) {
+            SearchIndex index = unchanged( last, entry.getKey() ) ? last.items.searchIndexMap.get( entry.getKey() )
+                    : entry.getValue().snapshot();
+            frozen.searchIndexMap.put( entry.getKey(), index );
+            frozen.indexes.add( index );
+        }
+
+        frozen.filter = SPIFactory.getFilterFactory().get();
+        frozen.init();
+        return frozen;
+    }
+
+    private boolean unchanged( Version<KEY, ITEM> last, String property ) {
+        if ( last == null || allChangedAt > last.writes ) {
+            return false;
+        }
+        Long count = changedAt.get( property );
+        return count == null || count <= last.writes;
     }
 
 
@@ -541,6 +780,15 @@ public class SearchableCollectionDefault<KEY, ITEM> implements SearchableCollect
         indexes.add( si );
     }
 
+    @Override
+    public LookupIndex<?, ITEM> index( String property ) {
+        if ( versionGate != null ) {
+            return version().index( property );
+        }
+        LookupIndex index = lookupIndexMap.get( property );
+        return index != null ? index : searchIndexMap.get( property );
+    }
+
     public List<ITEM> all() {
         return primaryIndex.all();
     }
@@ -588,9 +836,14 @@ public class SearchableCollectionDefault<KEY, ITEM> implements SearchableCollect
             fc.setLookupIndexMap( this.lookupIndexMap );
             fc.setSearchIndexMap( this.searchIndexMap );
             fc.setSearchableCollection( this );
+            fc.setScanPool( scanPool );
+            fc.setPrimaryIndex( this.primaryIndex );
             fc.init();
         }
         indexes.add( this.primaryIndex );
+        if ( versionGate != null ) {
+            versionGate.publish();
+        }
     }
 
     @Override
@@ -603,13 +856,72 @@ public class SearchableCollectionDefault<KEY, ITEM> implements SearchableCollect
         return primaryIndex.size();
     }
 
+    /**
+     * Bulk load. The items go in first and then each index is built from the whole batch in one pass,
+     * in parallel when full scans have a pool. Items whose key is already in the repo, or that repeat
+     * a key earlier in the batch, are skipped the same as add skips them.
+     * Concurrent repos load through the lock decorator, one item at a time.
+     */
     public boolean addAll( Collection<? extends ITEM> items ) {
+        Set<KEY> keys = new HashSet<>( Math.max( 16, items.size() * 4 / 3 + 1 ) );
+        List<ITEM> batch = new ArrayList<>( items.size() );
         for ( ITEM item : items ) {
-            this.add( item );
+            Exceptions.requireNonNull( item, "No nulls allowed in repo" );
+            KEY key = getKey( item );
+            if ( !primaryIndex.has( key ) && keys.add( key ) ) {
+                batch.add( item );
+            }
+        }
+        if ( batch.isEmpty() ) {
+            return false;
+        }
+
+        if ( rowIds != null ) {
+            for ( ITEM item : batch ) {
+                rowIds.assign( item );
+            }
+        }
+        buildIndexes( batch );
+        for ( ITEM item : batch ) {
+            validated( null, item );
         }
+        changed();
         return true;
     }
 
+    private void buildIndexes( final List<ITEM> batch ) {
+        if ( scanPool == null || indexes.size() < 2 ) {
+            for ( LookupIndex index : indexes ) {
+                index.addAll( batch );
+            }
+            return;
+        }
+
+        List<Callable<Object>> builds = new ArrayList<>( indexes.size() );
+        for ( final LookupIndex index : indexes ) {
+            builds.add( new Callable<Object>() {
+                @Override
+                public Object call() {
+                    index.addAll( batch );
+                    return null;
+                }
+            } );
+        }
+        for ( Future<Object> build : scanPool.invokeAll( builds ) ) {
+            try {
+                build.get();
+            } catch ( InterruptedException ex ) {
+                Thread.currentThread().interrupt();
+                Exceptions.handle( ex );
+            } catch ( ExecutionException ex ) {
+                if ( ex.getCause() instanceof RuntimeException ) {
+                    throw ( RuntimeException ) ex.getCause();
+                }
+                Exceptions.handle( "Unable to build index", ex.getCause() );
+            }
+        }
+    }
+
     public boolean remove( Object o ) {
         KEY key = null;
         ITEM item = null;
@@ -0,0 +1,1371 @@
+package org.boon.datarepo.impl;
+
+import org.boon.Exceptions;
+import org.boon.core.reflection.fields.FieldAccess;
+import org.boon.criteria.Selector;
+import org.boon.criteria.Update;
+import org.boon.criteria.internal.Criteria;
+import org.boon.criteria.internal.Visitor;
+import org.boon.datarepo.*;
+import org.boon.datarepo.spi.SearchIndex;
+import org.boon.sort.Sort;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static org.boon.Lists.list;
+import static org.boon.core.reflection.MapObjectConversion.toMap;
+
+/**
+ * Repo split by primary key hash into shards, each one a repo of its own with its own indexes.
+ * <p/>
+ * Edits go to the shard that owns the key. Queries run on every shard at once on a fork join pool
+ * and the matches are put together. Sorted queries and pages are sorted by each shard and merged,
+ * and a sorted query for a page only asks each shard for that many items.
+ * Selectors run once over all of the matches, as they keep their totals in themselves.
+ * <p/>
+ * A page cursor holds one cursor per shard, so pages keep working as the repo changes.
+ * Views are one view per shard, with their aggregates kept over all of them. No index covers more than
+ * one shard, so {@link #index(String)} is always null and joins hash the items. Indexes are built in each
+ * shard from the builder's settings and can not be added afterwards.
+ */
+public class ShardedRepo<KEY, ITEM> implements Repo<KEY, ITEM> {
+
+    /**
+     * Work done on one shard.
+     */
+    private interface ShardCall<KEY, ITEM, T> {
+        T call( Repo<KEY, ITEM> shard );
+    }
+
+    private final Repo<KEY, ITEM>[] shards;
+    private final Map<String, FieldAccess> fields;
+    private final ForkJoinPool pool;
+
+
+    public ShardedRepo( List<Repo<KEY, ITEM>> shards, Map<String, FieldAccess> fields, ForkJoinPool pool ) {
+        Exceptions.requireNonNull( pool, "pool cannot be null" );
+        if ( shards.isEmpty() ) {
+            throw new IllegalArgumentException( "shards cannot be empty" );
+        }
+        this.shards = shards.toArray( new Repo[ shards.size() ] );
+        this.fields = fields;
+        this.pool = pool;
+    }
+
+    public int shardCount() {
+        return shards.length;
+    }
+
+    private int slot( KEY key ) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return ( hash & 0x7fffffff ) % shards.length;
+    }
+
+    /**
+     * The shard that owns the key.
+     */
+    public Repo<KEY, ITEM> shard( KEY key ) {
+        return shards[ slot( key ) ];
+    }
+
+    private Repo<KEY, ITEM> owner( ITEM item ) {
+        return shards[ slot( shards[ 0 ].getKey( item ) ) ];
+    }
+
+    /**
+     * Items grouped by the shard that owns them, in the order they came.
+     */
+    private List<ITEM>[] split( Collection<? extends ITEM> items ) {
+        List<ITEM>[] split = new List[ shards.length ];
+        for ( int index = 0; index < split.length; index++ ) {
+            split[ index ] = new ArrayList<>();
+        }
+        for ( ITEM item : items ) {
+            split[ slot( shards[ 0 ].getKey( item ) ) ].add( item );
+        }
+        return split;
+    }
+
+    /**
+     * Runs the call on every shard at once and hands back the answers in shard order.
+     */
+    private <T> List<T> scatter( final ShardCall<KEY, ITEM, T> call ) {
+        if ( shards.length == 1 ) {
+            return list( call.call( shards[ 0 ] ) );
+        }
+        List<Callable<T>> calls = new ArrayList<>( shards.length );
+        for ( final Repo<KEY, ITEM> shard : shards ) {
+            calls.add( new Callable<T>() {
+                @Override
+                public T call() {
+                    return call.call( shard );
+                }
+            } );
+        }
+
+        List<T> answers = new ArrayList<>( shards.length );
+        for ( Future<T> answer : pool.invokeAll( calls ) ) {
+            try {
+                answers.add( answer.get() );
+            } catch ( InterruptedException ex ) {
+                Thread.currentThread().interrupt();
+                Exceptions.handle( ex );
+            } catch ( ExecutionException ex ) {
+                if ( ex.getCause() instanceof RuntimeException ) {
+                    throw ( RuntimeException ) ex.getCause();
+                }
+                Exceptions.handle( "Unable to query shard", ex.getCause() );
+            }
+        }
+        return answers;
+    }
+
+    private List<ITEM> gather( List<List<ITEM>> runs ) {
+        int size = 0;
+        for ( List<ITEM> run : runs ) {
+            size += run.size();
+        }
+        List<ITEM> all = new ArrayList<>( size );
+        for ( List<ITEM> run : runs ) {
+            all.addAll( run );
+        }
+        return all;
+    }
+
+    /**
+     * K-way merge of runs sorted by the comparator, up to limit items. Ties go to the lower shard,
+     * so each run's items come out in the order the run had them. Counts how many were taken from each run.
+     */
+    private static <ITEM> List<ITEM> merge( final List<List<ITEM>> runs, final Comparator comparator, int limit, int[] taken ) {
+        final int[] positions = new int[ runs.size() ];
+        PriorityQueue<Integer> heads = new PriorityQueue<>( Math.max( 1, runs.size() ), new Comparator<Integer>() {
+            @Override
+            public int compare( Integer a, Integer b ) {
+                int compare = comparator.compare( runs.get( a ).get( positions[ a ] ), runs.get( b ).get( positions[ b ] ) );
+                return compare != 0 ? compare : Integer.compare( a, b );
+            }
+        } );
+        for ( int run = 0; run < runs.size(); run++ ) {
+            if ( !runs.get( run ).isEmpty() ) {
+                heads.add( run );
+            }
+        }
+
+        List<ITEM> merged = new ArrayList<>();
+        while ( merged.size() < limit && !heads.isEmpty() ) {
+            int run = heads.poll();
+            merged.add( runs.get( run ).get( positions[ run ]++ ) );
+            if ( positions[ run ] < runs.get( run ).size() ) {
+                heads.add( run );
+            }
+        }
+        if ( taken != null ) {
+            System.arraycopy( positions, 0, taken, 0, positions.length );
+        }
+        return merged;
+    }
+
+    @Override
+    public ITEM get( KEY key ) {
+        return shard( key ).get( key );
+    }
+
+    @Override
+    public KEY getKey( ITEM item ) {
+        return shards[ 0 ].getKey( item );
+    }
+
+    @Override
+    public boolean add( ITEM item ) {
+        return owner( item ).add( item );
+    }
+
+    @Override
+    public void put( ITEM item ) {
+        owner( item ).put( item );
+    }
+
+    @Override
+    public boolean delete( ITEM item ) {
+        return owner( item ).delete( item );
+    }
+
+    @Override
+    public void removeByKey( KEY key ) {
+        shard( key ).removeByKey( key );
+    }
+
+    @Override
+    public void modify( ITEM item ) {
+        owner( item ).modify( item );
+    }
+
+    @Override
+    public void update( ITEM item ) {
+        owner( item ).update( item );
+    }
+
+    @Override
+    public void addAll( ITEM... items ) {
+        addAll( Arrays.asList( items ) );
+    }
+
+    /**
+     * Every shard loads its share at the same time.
+     */
+    @Override
+    public void addAll( List<ITEM> items ) {
+        final List<ITEM>[] split = split( items );
+        final List<Repo<KEY, ITEM>> order = Arrays.asList( shards );
+        scatter( new ShardCall<KEY, ITEM, Object>() {
+            @Override
+            public Object call( Repo<KEY, ITEM> shard ) {
+                List<ITEM> mine = split[ order.indexOf( shard ) ];
+                if ( !mine.isEmpty() ) {
+                    shard.addAll( mine );
+                }
+                return null;
+            }
+        } );
+    }
+
+    @Override
+    public boolean addAll( Collection<? extends ITEM> items ) {
+        addAll( new ArrayList<ITEM>( items ) );
+        return true;
+    }
+
+    @Override
+    public void addAllAsync( Collection<ITEM> items ) {
+        submitAll( items );
+    }
+
+    @Override
+    public Future<?> submitAll( Collection<ITEM> items ) {
+        List<ITEM>[] split = split( items );
+        final List<Future<?>> loads = new ArrayList<>( shards.length );
+        for ( int index = 0; index < shards.length; index++ ) {
+            if ( !split[ index ].isEmpty() ) {
+                loads.add( shards[ index ].submitAll( split[ index ] ) );
+            }
+        }
+        return pool.submit( new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                for ( Future<?> load : loads ) {
+                    load.get();
+                }
+                return null;
+            }
+        } );
+    }
+
+    @Override
+    public void modifyAll( ITEM... items ) {
+        modifyAll( Arrays.asList( items ) );
+    }
+
+    @Override
+    public void modifyAll( Collection<ITEM> items ) {
+        List<ITEM>[] split = split( items );
+        for ( int index = 0; index < shards.length; index++ ) {
+            if ( !split[ index ].isEmpty() ) {
+                shards[ index ].modifyAll( split[ index ] );
+            }
+        }
+    }
+
+    @Override
+    public void removeAll( ITEM... items ) {
+        List<ITEM>[] split = split( Arrays.asList( items ) );
+        for ( int index = 0; index < shards.length; index++ ) {
+            if ( !split[ index ].isEmpty() ) {
+                List<ITEM> mine = split[ index ];
+                shards[ index ].removeAll( ( ITEM[] ) mine.toArray() );
+            }
+        }
+    }
+
+    @Override
+    public void removeAllAsync( Collection<ITEM> items ) {
+        List<ITEM>[] split = split( items );
+        for ( int index = 0; index < shards.length; index++ ) {
+            if ( !split[ index ].isEmpty() ) {
+                shards[ index ].removeAllAsync( split[ index ] );
+            }
+        }
+    }
+
+    @Override
+    public boolean remove( Object o ) {
+        return owner( ( ITEM ) o ).remove( o );
+    }
+
+    @Override
+    public boolean removeAll( Collection<?> c ) {
+        boolean changed = false;
+        for ( Object o : c ) {
+            changed |= remove( o );
+        }
+        return changed;
+    }
+
+    @Override
+    public boolean retainAll( Collection<?> c ) {
+        boolean changed = false;
+        for ( Repo<KEY, ITEM> shard : shards ) {
+            changed |= shard.retainAll( c );
+        }
+        return changed;
+    }
+
+    @Override
+    public boolean contains( Object o ) {
+        return owner( ( ITEM ) o ).contains( o );
+    }
+
+    @Override
+    public boolean containsAll( Collection<?> c ) {
+        for ( Object o : c ) {
+            if ( !contains( o ) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        for ( Repo<KEY, ITEM> shard : shards ) {
+            shard.clear();
+        }
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for ( Repo<KEY, ITEM> shard : shards ) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for ( Repo<KEY, ITEM> shard : shards ) {
+            if ( !shard.isEmpty() ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public List<ITEM> all() {
+        List<List<ITEM>> runs = new ArrayList<>( shards.length );
+        for ( Repo<KEY, ITEM> shard : shards ) {
+            runs.add( shard.all() );
+        }
+        return gather( runs );
+    }
+
+    @Override
+    public Collection<ITEM> toCollection() {
+        return all();
+    }
+
+    @Override
+    public Iterator<ITEM> iterator() {
+        return all().iterator();
+    }
+
+    @Override
+    public Object[] toArray() {
+        return all().toArray();
+    }
+
+    @Override
+    public <T> T[] toArray( T[] a ) {
+        return all().toArray( a );
+    }
+
+    @Override
+    public void invalidateIndex( String property, ITEM item ) {
+        owner( item ).invalidateIndex( property, item );
+    }
+
+    @Override
+    public void validateIndex( String property, ITEM item ) {
+        owner( item ).validateIndex( property, item );
+    }
+
+    @Override
+    public void validateIndexes( ITEM item ) {
+        owner( item ).validateIndexes( item );
+    }
+
+    @Override
+    public List<ITEM> query( final Criteria... expressions ) {
+        return gather( scatter( new ShardCall<KEY, ITEM, List<ITEM>>() {
+            @Override
+            public List<ITEM> call( Repo<KEY, ITEM> shard ) {
+                return shard.query( expressions );
+            }
+        } ) );
+    }
+
+    @Override
+    public ResultSet<ITEM> results( Criteria... expressions ) {
+        return new ResultSetImpl<>( query( expressions ), fields );
+    }
+
+    /**
+     * The shards' matches are gathered up front.
+     */
+    @Override
+    public ResultSet<ITEM> lazyResults( Criteria... expressions ) {
+        return results( expressions );
+    }
+
+    @Override
+    public List<ITEM> sortedQuery( String sortBy, Criteria... expressions ) {
+        return sortedQuery( Sort.asc( sortBy ), expressions );
+    }
+
+    @Override
+    public List<ITEM> sortedQuery( final Sort sortBy, final Criteria... expressions ) {
+        Comparator comparator = sortBy.comparator( fields );
+        return merge( scatter( new ShardCall<KEY, ITEM, List<ITEM>>() {
+            @Override
+            public List<ITEM> call( Repo<KEY, ITEM> shard ) {
+                return shard.sortedQuery( sortBy, expressions );
+            }
+        } ), comparator, Integer.MAX_VALUE, null );
+    }
+
+    /**
+     * Each shard hands back its best start + size, and the merge stops once it has them.
+     */
+    @Override
+    public List<ITEM> sortedQuery( final Sort sortBy, int start, int size, final Criteria... expressions ) {
+        final int limit = start + size;
+        Comparator comparator = sortBy.comparator( fields );
+        List<ITEM> merged = merge( scatter( new ShardCall<KEY, ITEM, List<ITEM>>() {
+            @Override
+            public List<ITEM> call( Repo<KEY, ITEM> shard ) {
+                return shard.sortedQuery( sortBy, 0, limit, expressions );
+            }
+        } ), comparator, limit, null );
+        return new ArrayList<>( merged.subList( Math.min( start, merged.size() ), merged.size() ) );
+    }
+
+    /**
+     * Each shard pages from its own cursor and the pages are merged. The cursor handed back
+     * moves each shard on past what was taken from it, and marks the shards that have nothing left.
+     */
+    @Override
+    public Page<ITEM> page( final String sortBy, String cursor, final int size, final Criteria... expressions ) {
+        final String[] cursors = cursor == null ? new String[ shards.length ] : decodeCursor( cursor );
+        final List<Repo<KEY, ITEM>> order = Arrays.asList( shards );
+
+        List<Page<ITEM>> pages = scatter( new ShardCall<KEY, ITEM, Page<ITEM>>() {
+            @Override
+            public Page<ITEM> call( Repo<KEY, ITEM> shard ) {
+                String shardCursor = cursors[ order.indexOf( shard ) ];
+                if ( EXHAUSTED.equals( shardCursor ) ) {
+                    return new Page<>( new ArrayList<ITEM>(), null );
+                }
+                return shard.page( sortBy, shardCursor, size, expressions );
+            }
+        } );
+
+        List<List<ITEM>> runs = new ArrayList<>( pages.size() );
+        for ( Page<ITEM> page : pages ) {
+            runs.add( page.getItems() );
+        }
+        int[] taken = new int[ runs.size() ];
+        List<ITEM> items = merge( runs, Sort.asc( sortBy ).comparator( fields ), size, taken );
+
+        FieldAccess field = fields.get( sortBy );
+        boolean more = false;
+        for ( int index = 0; index < cursors.length; index++ ) {
+            List<ITEM> run = runs.get( index );
+            if ( taken[ index ] == run.size() && pages.get( index ).getCursor() == null ) {
+                cursors[ index ] = EXHAUSTED;
+                continue;
+            }
+            if ( taken[ index ] > 0 ) {
+                cursors[ index ] = cursorFor( field, run.get( taken[ index ] - 1 ) );
+            }
+            more = true;
+        }
+        return new Page<>( items, more && items.size() == size ? encodeCursor( cursors ) : null );
+    }
+
+    private static final String EXHAUSTED = "!";
+
+    /**
+     * The same cursor a shard hands out for the item.
+     */
+    private String cursorFor( FieldAccess field, ITEM item ) {
+        Object value = field.getValue( item );
+        String key = value instanceof Date ? String.valueOf( ( ( Date ) value ).getTime() ) : String.valueOf( value );
+        return key.length() + ":" + key + getKey( item );
+    }
+
+    /**
+     * Length, colon and the shard's cursor for each shard, with a length of -1 for a shard
+     * that has not started.
+     */
+    private static String encodeCursor( String[] cursors ) {
+        StringBuilder builder = new StringBuilder();
+        for ( String cursor : cursors ) {
+            if ( cursor == null ) {
+                builder.append( "-1:" );
+            } else {
+                builder.append( cursor.length() ).append( ':' ).append( cursor );
+            }
+        }
+        return builder.toString();
+    }
+
+    private String[] decodeCursor( String cursor ) {
+        String[] cursors = new String[ shards.length ];
+        int position = 0;
+        for ( int index = 0; index < cursors.length; index++ ) {
+            int colon = cursor.indexOf( ':', position );
+            if ( colon < 0 ) {
+                throw new DataRepoException( "Not a cursor for " + shards.length + " shards: " + cursor );
+            }
+            int length = Integer.parseInt( cursor.substring( position, colon ) );
+            position = colon + 1;
+            if ( length >= 0 ) {
+                cursors[ index ] = cursor.substring( position, position + length );
+                position += length;
+            }
+        }
+        return cursors;
+    }
+
+    @Override
+    public List<Map<String, Object>> queryAsMaps( Criteria... expressions ) {
+        List<ITEM> items = query( expressions );
+        List<Map<String, Object>> results = new ArrayList<>( items.size() );
+        for ( ITEM item : items ) {
+            results.add( toMap( item ) );
+        }
+        return results;
+    }
+
+    @Override
+    public List<Map<String, Object>> query( List<Selector> selectors, Criteria... expressions ) {
+        return Selector.performSelection( selectors, query( expressions ), fields );
+    }
+
+    @Override
+    public List<Map<String, Object>> sortedQuery( String sortBy, List<Selector> selectors, Criteria... expressions ) {
+        return sortedQuery( Sort.asc( sortBy ), selectors, expressions );
+    }
+
+    @Override
+    public List<Map<String, Object>> sortedQuery( Sort sortBy, List<Selector> selectors, Criteria... expressions ) {
+        List<Map<String, Object>> results = query( selectors, expressions );
+        sortBy.sort( results );
+        return results;
+    }
+
+    @Override
+    public void query( Visitor<KEY, ITEM> visitor, Criteria... expressions ) {
+        visit( visitor, query( expressions ) );
+    }
+
+    @Override
+    public void sortedQuery( Visitor<KEY, ITEM> visitor, String sortBy, Criteria... expressions ) {
+        visit( visitor, sortedQuery( sortBy, expressions ) );
+    }
+
+    @Override
+    public void sortedQuery( Visitor<KEY, ITEM> visitor, Sort sortBy, Criteria... expressions ) {
+        visit( visitor, sortedQuery( sortBy, expressions ) );
+    }
+
+    private void visit( Visitor<KEY, ITEM> visitor, List<ITEM> items ) {
+        for ( ITEM item : items ) {
+            SearchableCollectionDefault.visit( getKey( item ), item, visitor, item, list( "root" ), 0 );
+        }
+    }
+
+    @Override
+    public View<KEY, ITEM> view( Criteria... expressions ) {
+        return view( new ArrayList<Aggregate>(), expressions );
+    }
+
+    @Override
+    public View<KEY, ITEM> view( List<Aggregate> aggregates, Criteria... expressions ) {
+        List<View<KEY, ITEM>> views = new ArrayList<>( shards.length );
+        for ( Repo<KEY, ITEM> shard : shards ) {
+            views.add( shard.view( watching( aggregates ), expressions ) );
+        }
+        ShardedView view = new ShardedView( views, aggregates );
+        view.load();
+        return view;
+    }
+
+    /**
+     * Aggregates that keep nothing, so a shard's view still hears about changes to the fields the real ones read.
+     */
+    private static List<Aggregate> watching( List<Aggregate> aggregates ) {
+        List<Aggregate> watching = new ArrayList<>( aggregates.size() );
+        for ( Aggregate aggregate : aggregates ) {
+            watching.add( new Aggregate( aggregate.getName(), aggregate.getFieldName() ) {
+                @Override
+                public void add( Object value ) {
+                }
+
+                @Override
+                public void remove( Object value ) {
+                }
+
+                @Override
+                public Object value() {
+                    return null;
+                }
+            } );
+        }
+        return watching;
+    }
+
+    /**
+     * One view per shard. The aggregates are kept here, fed by a listener on every shard's view,
+     * since each one keeps state and so can not be shared by the shards or added up after.
+     * Like the shard views, each item keeps the values it gave the aggregates so they can be taken back out.
+     */
+    private class ShardedView implements View<KEY, ITEM>, ViewListener<ITEM> {
+
+        private final List<View<KEY, ITEM>> views;
+        private final List<Aggregate> aggregates;
+        private final FieldAccess[] aggregateFields;
+
+        /* Guarded by this. */
+        private final Map<KEY, Object[]> aggregated = new HashMap<>();
+
+        /* Keys the listener heard about while loading, which the items read at the start must not undo. */
+        private Set<KEY> heard = new HashSet<>();
+
+        ShardedView( List<View<KEY, ITEM>> views, List<Aggregate> aggregates ) {
+            this.views = views;
+            this.aggregates = new ArrayList<>( aggregates );
+            this.aggregateFields = new FieldAccess[ aggregates.size() ];
+            for ( int index = 0; index < aggregateFields.length; index++ ) {
+                String name = this.aggregates.get( index ).getFieldName();
+                if ( name != null ) {
+                    aggregateFields[ index ] = fields.get( name );
+                    Exceptions.requireNonNull( aggregateFields[ index ], "No field for aggregate " + name );
+                }
+            }
+        }
+
+        /**
+         * Listens first and then reads what each shard's view already holds, outside the lock the listener
+         * takes, since the shard views call the listener holding their own.
+         */
+        void load() {
+            if ( aggregates.isEmpty() ) {
+                return;
+            }
+            for ( View<KEY, ITEM> view : views ) {
+                view.addListener( this );
+            }
+            for ( View<KEY, ITEM> view : views ) {
+                List<ITEM> items = view.items();
+                synchronized ( this ) {
+                    for ( ITEM item : items ) {
+                        KEY key = getKey( item );
+                        if ( !heard.contains( key ) && !aggregated.containsKey( key ) ) {
+                            put( key, item );
+                        }
+                    }
+                }
+            }
+            synchronized ( this ) {
+                heard = null;
+            }
+        }
+
+        @Override
+        public synchronized void added( ITEM item ) {
+            KEY key = heard( item );
+            take( key );
+            put( key, item );
+        }
+
+        @Override
+        public synchronized void removed( ITEM item ) {
+            take( heard( item ) );
+        }
+
+        private KEY heard( ITEM item ) {
+            KEY key = getKey( item );
+            if ( heard != null ) {
+                heard.add( key );
+            }
+            return key;
+        }
+
+        private void put( KEY key, ITEM item ) {
+            Object[] values = new Object[ aggregateFields.length ];
+            for ( int index = 0; index < values.length; index++ ) {
+                values[ index ] = aggregateFields[ index ] == null ? null : aggregateFields[ index ].getValue( item );
+                aggregates.get( index ).add( values[ index ] );
+            }
+            aggregated.put( key, values );
+        }
+
+        private void take( KEY key ) {
+            Object[] values = aggregated.remove( key );
+            if ( values != null ) {
+                for ( int index = 0; index < values.length; index++ ) {
+                    aggregates.get( index ).remove( values[ index ] );
+                }
+            }
+        }
+
+        private View<KEY, ITEM> view( KEY key ) {
+            return views.get( slot( key ) );
+        }
+
+        @Override
+        public int size() {
+            int size = 0;
+            for ( View<KEY, ITEM> view : views ) {
+                size += view.size();
+            }
+            return size;
+        }
+
+        @Override
+        public boolean has( KEY key ) {
+            return view( key ).has( key );
+        }
+
+        @Override
+        public ITEM get( KEY key ) {
+            return view( key ).get( key );
+        }
+
+        @Override
+        public List<ITEM> items() {
+            List<List<ITEM>> runs = new ArrayList<>( views.size() );
+            for ( View<KEY, ITEM> view : views ) {
+                runs.add( view.items() );
+            }
+            return gather( runs );
+        }
+
+        @Override
+        public synchronized Object aggregate( String name ) {
+            for ( Aggregate aggregate : aggregates ) {
+                if ( aggregate.getName().equals( name ) ) {
+                    return aggregate.value();
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public synchronized Map<String, Object> aggregates() {
+            Map<String, Object> values = new LinkedHashMap<>();
+            for ( Aggregate aggregate : aggregates ) {
+                values.put( aggregate.getName(), aggregate.value() );
+            }
+            return values;
+        }
+
+        @Override
+        public List<Map<String, Object>> select( List<Selector> selectors ) {
+            return Selector.performSelection( selectors, items(), fields );
+        }
+
+        @Override
+        public void addListener( ViewListener<ITEM> listener ) {
+            for ( View<KEY, ITEM> view : views ) {
+                view.addListener( listener );
+            }
+        }
+
+        @Override
+        public void removeListener( ViewListener<ITEM> listener ) {
+            for ( View<KEY, ITEM> view : views ) {
+                view.removeListener( listener );
+            }
+        }
+
+        @Override
+        public void close() {
+            for ( View<KEY, ITEM> view : views ) {
+                view.removeListener( this );
+                view.close();
+            }
+        }
+    }
+
+    /**
+     * No one index covers every shard.
+     */
+    @Override
+    public LookupIndex<?, ITEM> index( String property ) {
+        return null;
+    }
+
+    /**
+     * An index holds the items of one shard, so one index can not be handed to all of them.
+     */
+    @Override
+    public void addSearchIndex( String name, SearchIndex<?, ?> si ) {
+        throw new IllegalStateException( "addSearchIndex can not be used with shards, use the builder's searchIndex( \""
+                + name + "\" ) so each shard builds its own" );
+    }
+
+    @Override
+    public void addLookupIndex( String name, LookupIndex<?, ?> si ) {
+        throw new IllegalStateException( "addLookupIndex can not be used with shards, use the builder's lookupIndex( \""
+                + name + "\" ) so each shard builds its own" );
+    }
+
+    private Comparable extreme( KEY key, String property, boolean max ) {
+        Comparable best = null;
+        for ( Repo<KEY, ITEM> shard : shards ) {
+            Comparable value = ( Comparable ) ( max ? shard.max( key, property, Object.class )
+                    : shard.min( key, property, Object.class ) );
+            if ( value != null && ( best == null || ( max ? value.compareTo( best ) > 0 : value.compareTo( best ) < 0 ) ) ) {
+                best = value;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public <T> T max( KEY key, String property, Class<T> type ) {
+        return ( T ) extreme( key, property, true );
+    }
+
+    @Override
+    public String maxString( KEY key, String property ) {
+        return ( String ) extreme( key, property, true );
+    }
+
+    @Override
+    public Number maxNumber( KEY key, String property ) {
+        Number max = ( Number ) extreme( key, property, true );
+        return max == null ? Double.NaN : max;
+    }
+
+    @Override
+    public int maxInt( KEY key, String property ) {
+        int max = Integer.MIN_VALUE;
+        for ( Repo<KEY, ITEM> shard : shards ) {
+            max = Math.max( max, shard.maxInt( key, property ) );
+        }
+        return max;
+    }
+
+    @Override
+    public long maxLong( KEY key, String property ) {
+        long max = Long.MIN_VALUE;
+        for ( Repo<KEY, ITEM> shard : shards ) {
+            max = Math.max( max, shard.maxLong( key, property ) );
+        }
+        return max;
+    }
+
+    @Override
+    public double maxDouble( KEY key, String property ) {
+        double max = Integer.MIN_VALUE;
+        for ( Repo<KEY, ITEM> shard : shards ) {
+            max = Math.max( max, shard.maxDouble( key, property ) );
+        }
+        return max;
+    }
+
+    @Override
+    public <T> T min( KEY key, String property, Class<T> type ) {
+        return ( T ) extreme( key, property, false );
+    }
+
+    @Override
+    public String minString( KEY key, String property ) {
+        String min = ( String ) extreme( key, property, false );
+        return min == null ? "" : min;
+    }
+
+    @Override
+    public Number minNumber( KEY key, String property ) {
+        Number min = ( Number ) extreme( key, property, false );
+        return min == null ? Double.NaN : min;
+    }
+
+    @Override
+    public int minInt( KEY key, String property ) {
+        int min = Integer.MAX_VALUE;
+        for ( Repo<KEY, ITEM> shard : shards ) {
+            min = Math.min( min, shard.minInt( key, property ) );
+        }
+        return min;
+    }
+
+    @Override
+    public long minLong( KEY key, String property ) {
+        long min = Long.MAX_VALUE;
+        for ( Repo<KEY, ITEM> shard : shards ) {
+            min = Math.min( min, shard.minLong( key, property ) );
+        }
+        return min;
+    }
+
+    @Override
+    public double minDouble( KEY key, String property ) {
+        double min = Double.MAX_VALUE;
+        for ( Repo<KEY, ITEM> shard : shards ) {
+            min = Math.min( min, shard.minDouble( key, property ) );
+        }
+        return min;
+    }
+
+    @Override
+    public void updateByFilter( String property, Object value, Criteria... expressions ) {
+        for ( ITEM item : query( expressions ) ) {
+            modify( item, property, value );
+        }
+    }
+
+    @Override
+    public void updateByFilterUsingValue( String property, String value, Criteria... expressions ) {
+        for ( ITEM item : query( expressions ) ) {
+            modifyByValue( item, property, value );
+        }
+    }
+
+    @Override
+    public void updateByFilter( String property, int value, Criteria... expressions ) {
+        for ( ITEM item : query( expressions ) ) {
+            modify( item, property, value );
+        }
+    }
+
+    @Override
+    public void updateByFilter( String property, long value, Criteria... expressions ) {
+        for ( ITEM item : query( expressions ) ) {
+            modify( item, property, value );
+        }
+    }
+
+    @Override
+    public void updateByFilter( String property, char value, Criteria... expressions ) {
+        for ( ITEM item : query( expressions ) ) {
+            modify( item, property, value );
+        }
+    }
+
+    @Override
+    public void updateByFilter( String property, short value, Criteria... expressions ) {
+        for ( ITEM item : query( expressions ) ) {
+            modify( item, property, value );
+        }
+    }
+
+    @Override
+    public void updateByFilter( String property, byte value, Criteria... expressions ) {
+        for ( ITEM item : query( expressions ) ) {
+            modify( item, property, value );
+        }
+    }
+
+    @Override
+    public void updateByFilter( String property, float value, Criteria... expressions ) {
+        for ( ITEM item : query( expressions ) ) {
+            modify( item, property, value );
+        }
+    }
+
+    @Override
+    public void updateByFilter( String property, double value, Criteria... expressions ) {
+        for ( ITEM item : query( expressions ) ) {
+            modify( item, property, value );
+        }
+    }
+
+    @Override
+    public void updateByFilter( List<Update> values, Criteria... expressions ) {
+        Update[] updates = values.toArray( new Update[ values.size() ] );
+        for ( ITEM item : query( expressions ) ) {
+            modify( item, updates );
+        }
+    }
+
+    @Override
+    public int count( KEY key, String property, int value ) {
+        int count = 0;
+        for ( Repo<KEY, ITEM> shard : shards ) {
+            count += shard.count( key, property, value );
+        }
+        return count;
+    }
+
+    @Override
+    public int count( KEY key, String property, short value ) {
+        int count = 0;
+        for ( Repo<KEY, ITEM> shard : shards ) {
+            count += shard.count( key, property, value );
+        }
+        return count;
+    }
+
+    @Override
+    public int count( KEY key, String property, byte value ) {
+        int count = 0;
+        for ( Repo<KEY, ITEM> shard : shards ) {
+            count += shard.count( key, property, value );
+        }
+        return count;
+    }
+
+    @Override
+    public int count( KEY key, String property, long value ) {
+        int count = 0;
+        for ( Repo<KEY, ITEM> shard : shards ) {
+            count += shard.count( key, property, value );
+        }
+        return count;
+    }
+
+    @Override
+    public int count( KEY key, String property, char value ) {
+        int count = 0;
+        for ( Repo<KEY, ITEM> shard : shards ) {
+            count += shard.count( key, property, value );
+        }
+        return count;
+    }
+
+    @Override
+    public int count( KEY key, String property, float value ) {
+        int count = 0;
+        for ( Repo<KEY, ITEM> shard : shards ) {
+            count += shard.count( key, property, value );
+        }
+        return count;
+    }
+
+    @Override
+    public int count( KEY key, String property, double value ) {
+        int count = 0;
+        for ( Repo<KEY, ITEM> shard : shards ) {
+            count += shard.count( key, property, value );
+        }
+        return count;
+    }
+
+    @Override
+    public int count( KEY key, String property, Object value ) {
+        int count = 0;
+        for ( Repo<KEY, ITEM> shard : shards ) {
+            count += shard.count( key, property, value );
+        }
+        return count;
+    }
+
+    @Override
+    public void updateByValue( KEY key, String property, String value ) {
+        shard( key ).updateByValue( key, property, value );
+    }
+
+    @Override
+    public void update( KEY key, String property, Object value ) {
+        shard( key ).update( key, property, value );
+    }
+
+    @Override
+    public void update( KEY key, String property, int value ) {
+        shard( key ).update( key, property, value );
+    }
+
+    @Override
+    public void update( KEY key, String property, long value ) {
+        shard( key ).update( key, property, value );
+    }
+
+    @Override
+    public void update( KEY key, String property, char value ) {
+        shard( key ).update( key, property, value );
+    }
+
+    @Override
+    public void update( KEY key, String property, short value ) {
+        shard( key ).update( key, property, value );
+    }
+
+    @Override
+    public void update( KEY key, String property, byte value ) {
+        shard( key ).update( key, property, value );
+    }
+
+    @Override
+    public void update( KEY key, String property, float value ) {
+        shard( key ).update( key, property, value );
+    }
+
+    @Override
+    public void update( KEY key, String property, double value ) {
+        shard( key ).update( key, property, value );
+    }
+
+    @Override
+    public void update( KEY key, Update... values ) {
+        shard( key ).update( key, values );
+    }
+
+    @Override
+    public boolean compareAndUpdate( KEY key, String property, Object compare, Object value ) {
+        return shard( key ).compareAndUpdate( key, property, compare, value );
+    }
+
+    @Override
+    public boolean compareAndUpdate( KEY key, String property, int compare, int value ) {
+        return shard( key ).compareAndUpdate( key, property, compare, value );
+    }
+
+    @Override
+    public boolean compareAndUpdate( KEY key, String property, long compare, long value ) {
+        return shard( key ).compareAndUpdate( key, property, compare, value );
+    }
+
+    @Override
+    public boolean compareAndUpdate( KEY key, String property, char compare, char value ) {
+        return shard( key ).compareAndUpdate( key, property, compare, value );
+    }
+
+    @Override
+    public boolean compareAndUpdate( KEY key, String property, short compare, short value ) {
+        return shard( key ).compareAndUpdate( key, property, compare, value );
+    }
+
+    @Override
+    public boolean compareAndUpdate( KEY key, String property, byte compare, byte value ) {
+        return shard( key ).compareAndUpdate( key, property, compare, value );
+    }
+
+    @Override
+    public boolean compareAndUpdate( KEY key, String property, float compare, float value ) {
+        return shard( key ).compareAndUpdate( key, property, compare, value );
+    }
+
+    @Override
+    public boolean compareAndUpdate( KEY key, String property, double compare, double value ) {
+        return shard( key ).compareAndUpdate( key, property, compare, value );
+    }
+
+    @Override
+    public boolean compareAndIncrement( KEY key, String property, int compare ) {
+        return shard( key ).compareAndIncrement( key, property, compare );
+    }
+
+    @Override
+    public boolean compareAndIncrement( KEY key, String property, long compare ) {
+        return shard( key ).compareAndIncrement( key, property, compare );
+    }
+
+    @Override
+    public boolean compareAndIncrement( KEY key, String property, short compare ) {
+        return shard( key ).compareAndIncrement( key, property, compare );
+    }
+
+    @Override
+    public boolean compareAndIncrement( KEY key, String property, byte compare ) {
+        return shard( key ).compareAndIncrement( key, property, compare );
+    }
+
+    @Override
+    public void modifyByValue( ITEM item, String property, String value ) {
+        owner( item ).modifyByValue( item, property, value );
+    }
+
+    @Override
+    public void modify( ITEM item, String property, Object value ) {
+        owner( item ).modify( item, property, value );
+    }
+
+    @Override
+    public void modify( ITEM item, String property, int value ) {
+        owner( item ).modify( item, property, value );
+    }
+
+    @Override
+    public void modify( ITEM item, String property, long value ) {
+        owner( item ).modify( item, property, value );
+    }
+
+    @Override
+    public void modify( ITEM item, String property, char value ) {
+        owner( item ).modify( item, property, value );
+    }
+
+    @Override
+    public void modify( ITEM item, String property, short value ) {
+        owner( item ).modify( item, property, value );
+    }
+
+    @Override
+    public void modify( ITEM item, String property, byte value ) {
+        owner( item ).modify( item, property, value );
+    }
+
+    @Override
+    public void modify( ITEM item, String property, float value ) {
+        owner( item ).modify( item, property, value );
+    }
+
+    @Override
+    public void modify( ITEM item, String property, double value ) {
+        owner( item ).modify( item, property, value );
+    }
+
+    @Override
+    public void modify( ITEM item, Update... values ) {
+        owner( item ).modify( item, values );
+    }
+
+    @Override
+    public Object readNestedValue( KEY key, String... properties ) {
+        return shard( key ).readNestedValue( key, properties );
+    }
+
+    @Override
+    public int readNestedInt( KEY key, String... properties ) {
+        return shard( key ).readNestedInt( key, properties );
+    }
+
+    @Override
+    public short readNestedShort( KEY key, String... properties ) {
+        return shard( key ).readNestedShort( key, properties );
+    }
+
+    @Override
+    public char readNestedChar( KEY key, String... properties ) {
+        return shard( key ).readNestedChar( key, properties );
+    }
+
+    @Override
+    public byte readNestedByte( KEY key, String... properties ) {
+        return shard( key ).readNestedByte( key, properties );
+    }
+
+    @Override
+    public double readNestedDouble( KEY key, String... properties ) {
+        return shard( key ).readNestedDouble( key, properties );
+    }
+
+    @Override
+    public float readNestedFloat( KEY key, String... properties ) {
+        return shard( key ).readNestedFloat( key, properties );
+    }
+
+    @Override
+    public long readNestedLong( KEY key, String... properties ) {
+        return shard( key ).readNestedLong( key, properties );
+    }
+
+    @Override
+    public Object readObject( KEY key, String property ) {
+        return shard( key ).readObject( key, property );
+    }
+
+    @Override
+    public <T> T readValue( KEY key, String property, Class<T> type ) {
+        return shard( key ).readValue( key, property, type );
+    }
+
+    @Override
+    public int readInt( KEY key, String property ) {
+        return shard( key ).readInt( key, property );
+    }
+
+    @Override
+    public long readLong( KEY key, String property ) {
+        return shard( key ).readLong( key, property );
+    }
+
+    @Override
+    public char readChar( KEY key, String property ) {
+        return shard( key ).readChar( key, property );
+    }
+
+    @Override
+    public short readShort( KEY key, String property ) {
+        return shard( key ).readShort( key, property );
+    }
+
+    @Override
+    public byte readByte( KEY key, String property ) {
+        return shard( key ).readByte( key, property );
+    }
+
+    @Override
+    public float readFloat( KEY key, String property ) {
+        return shard( key ).readFloat( key, property );
+    }
+
+    @Override
+    public double readDouble( KEY key, String property ) {
+        return shard( key ).readDouble( key, property );
+    }
+
+    @Override
+    public Object getObject( ITEM item, String property ) {
+        return shards[ 0 ].getObject( item, property );
+    }
+
+    @Override
+    public <T> T getValue( ITEM item, String property, Class<T> type ) {
+        return shards[ 0 ].getValue( item, property, type );
+    }
+
+    @Override
+    public int getInt( ITEM item, String property ) {
+        return shards[ 0 ].getInt( item, property );
+    }
+
+    @Override
+    public long getLong( ITEM item, String property ) {
+        return shards[ 0 ].getLong( item, property );
+    }
+
+    @Override
+    public char getChar( ITEM item, String property ) {
+        return shards[ 0 ].getChar( item, property );
+    }
+
+    @Override
+    public short getShort( ITEM item, String property ) {
+        return shards[ 0 ].getShort( item, property );
+    }
+
+    @Override
+    public byte getByte( ITEM item, String property ) {
+        return shards[ 0 ].getByte( item, property );
+    }
+
+    @Override
+    public float getFloat( ITEM item, String property ) {
+        return shards[ 0 ].getFloat( item, property );
+    }
+
+    @Override
+    public double getDouble( ITEM item, String property ) {
+        return shards[ 0 ].getDouble( item, property );
+    }
+}
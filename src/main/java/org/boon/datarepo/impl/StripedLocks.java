@@ -0,0 +1,92 @@
+package org.boon.datarepo.impl;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed set of locks picked by key hash.
+ * Writers for different keys mostly land on different stripes, so they
+ * do not wait on each other.
+ */
+public class StripedLocks {
+
+    private final ReentrantLock[] locks;
+
+    /**
+     * Optional. Writers are inside the gate while they own a stripe, so a version
+     * is never published with an edit half done.
+     */
+    private final VersionGate gate;
+
+    public StripedLocks() {
+        this( Runtime.getRuntime().availableProcessors() * 4 );
+    }
+
+    public StripedLocks( int concurrency ) {
+        this( concurrency, null );
+    }
+
+    public StripedLocks( VersionGate gate ) {
+        this( Runtime.getRuntime().availableProcessors() * 4, gate );
+    }
+
+    public StripedLocks( int concurrency, VersionGate gate ) {
+        this.gate = gate;
+        int size = concurrency < 2 ? 2 : Integer.highestOneBit( concurrency - 1 ) << 1;
+        locks = new ReentrantLock[ size ];
+        for ( int index = 0; index < locks.length; index++ ) {
+            locks[ index ] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Acquires the stripe for this key and hands it back so the caller can unlock it.
+     */
+    public Lock lock( Object key ) {
+        if ( gate != null ) {
+            gate.enter();
+        }
+        Lock lock = locks[ stripeIndex( key ) ];
+        lock.lock();
+        return lock;
+    }
+
+    /**
+     * Releases a stripe handed out by {@link #lock(Object)}.
+     */
+    public void unlock( Lock lock ) {
+        lock.unlock();
+        if ( gate != null ) {
+            gate.exit();
+        }
+    }
+
+    /**
+     * Acquires every stripe, always in the same order so two callers can not deadlock.
+     */
+    public void lockAll() {
+        if ( gate != null ) {
+            gate.enter();
+        }
+        for ( ReentrantLock lock : locks ) {
+            lock.lock();
+        }
+    }
+
+    public void unlockAll() {
+        for ( int index = locks.length - 1; index >= 0; index-- ) {
+            locks[ index ].unlock();
+        }
+        if ( gate != null ) {
+            gate.exit();
+        }
+    }
+
+    private int stripeIndex( Object key ) {
+        int h = key == null ? 0 : key.hashCode();
+        h ^= ( h >>> 20 ) ^ ( h >>> 12 );
+        h = h ^ ( h >>> 7 ) ^ ( h >>> 4 );
+        return h & ( locks.length - 1 );
+    }
+
+}
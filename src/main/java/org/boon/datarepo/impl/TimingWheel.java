@@ -0,0 +1,173 @@
+package org.boon.datarepo.impl;
+
+import java.util.*;
+
+/**
+ * Hierarchical timing wheel of keys and the time each one is due. Four wheels of 64 slots, the first
+ * a slot per tick, each next one a slot per turn of the one below. A key goes in the slot of the lowest wheel
+ * whose span its deadline fits, and when a wheel comes round to a slot of the one above, the keys in that slot
+ * are spread over the wheels below again. Scheduling and cancelling are constant time, and each key is handled
+ * at most once per wheel on its way down, so expiring is constant time per key amortized.
+ * <p/>
+ * A key is never due before its time and at most one tick after it. Deadlines past the last wheel wait in
+ * its farthest slot and are placed again when it comes round. Not thread safe.
+ *
+ * @param <KEY> the keys being timed
+ */
+public class TimingWheel<KEY> {
+
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+
+    private static final class Node<KEY> {
+        final KEY key;
+        final long deadline;
+        int level;
+        int slot;
+        Node<KEY> previous;
+        Node<KEY> next;
+
+        Node( KEY key, long deadline ) {
+            this.key = key;
+            this.deadline = deadline;
+        }
+    }
+
+    private final long tickMillis;
+    private long currentTick;
+    private final Node<KEY>[][] slots;
+    private final Map<KEY, Node<KEY>> nodes = new HashMap<>();
+
+
+    public TimingWheel( long tickMillis, long now ) {
+        if ( tickMillis <= 0 ) {
+            throw new IllegalArgumentException( "tickMillis must be more than 0" );
+        }
+        this.tickMillis = tickMillis;
+        this.currentTick = now / tickMillis;
+        this.slots = new Node[ LEVELS ][ SLOTS ];
+    }
+
+    public long tickMillis() {
+        return tickMillis;
+    }
+
+    /**
+     * Times the key to be due at the given time, in place of any time it had.
+     */
+    public void schedule( KEY key, long dueAt ) {
+        cancel( key );
+        Node<KEY> node = new Node<>( key, ( dueAt + tickMillis - 1 ) / tickMillis );
+        nodes.put( key, node );
+        place( node );
+    }
+
+    public boolean cancel( KEY key ) {
+        Node<KEY> node = nodes.remove( key );
+        if ( node == null ) {
+            return false;
+        }
+        unlink( node );
+        return true;
+    }
+
+    public boolean isScheduled( KEY key ) {
+        return nodes.containsKey( key );
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    public void clear() {
+        nodes.clear();
+        for ( Node<KEY>[] level : slots ) {
+            Arrays.fill( level, null );
+        }
+    }
+
+    /**
+     * Turns the wheels up to the given time and hands back the keys that came due, no longer scheduled.
+     * With nothing scheduled the wheels jump straight there.
+     */
+    public List<KEY> advance( long now ) {
+        long target = now / tickMillis;
+        List<KEY> due = new ArrayList<>();
+        while ( currentTick < target ) {
+            if ( nodes.isEmpty() ) {
+                currentTick = target;
+                break;
+            }
+            currentTick++;
+            for ( int level = 1; level < LEVELS; level++ ) {
+                if ( ( currentTick & ( ( 1L << ( BITS * level ) ) - 1 ) ) != 0 ) {
+                    break;
+                }
+                cascade( level, ( int ) ( ( currentTick >> ( BITS * level ) ) & MASK ) );
+            }
+
+            int slot = ( int ) ( currentTick & MASK );
+            Node<KEY> node = slots[ 0 ][ slot ];
+            slots[ 0 ][ slot ] = null;
+            while ( node != null ) {
+                Node<KEY> next = node.next;
+                node.previous = node.next = null;
+                if ( node.deadline <= currentTick ) {
+                    nodes.remove( node.key );
+                    due.add( node.key );
+                } else {
+                    place( node );
+                }
+                node = next;
+            }
+        }
+        return due;
+    }
+
+    private void cascade( int level, int slot ) {
+        Node<KEY> node = slots[ level ][ slot ];
+        slots[ level ][ slot ] = null;
+        while ( node != null ) {
+            Node<KEY> next = node.next;
+            node.previous = node.next = null;
+            place( node );
+            node = next;
+        }
+    }
+
+    private void place( Node<KEY> node ) {
+        long deadline = Math.max( node.deadline, currentTick + 1 );
+        long delta = deadline - currentTick;
+
+        int level = 0;
+        while ( level < LEVELS - 1 && delta >= 1L << ( BITS * ( level + 1 ) ) ) {
+            level++;
+        }
+        if ( delta >= 1L << ( BITS * LEVELS ) ) {
+            deadline = currentTick + ( 1L << ( BITS * LEVELS ) ) - 1;
+        }
+
+        node.level = level;
+        node.slot = ( int ) ( ( deadline >> ( BITS * level ) ) & MASK );
+        Node<KEY> head = slots[ level ][ node.slot ];
+        node.next = head;
+        if ( head != null ) {
+            head.previous = node;
+        }
+        slots[ level ][ node.slot ] = node;
+    }
+
+    private void unlink( Node<KEY> node ) {
+        if ( node.previous != null ) {
+            node.previous.next = node.next;
+        } else if ( slots[ node.level ][ node.slot ] == node ) {
+            slots[ node.level ][ node.slot ] = node.next;
+        }
+        if ( node.next != null ) {
+            node.next.previous = node.previous;
+        }
+        node.previous = node.next = null;
+    }
+}
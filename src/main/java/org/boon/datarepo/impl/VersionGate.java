@@ -0,0 +1,90 @@
+package org.boon.datarepo.impl;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Where writers publish the versions snapshot queries read.
+ * Writers enter before an edit and exit after it, and neither ever waits on a lock.
+ * The last writer to leave publishes a new version, so each query just reads the version last
+ * published and never waits on a writer either.
+ * <p/>
+ * Only one thread builds a version at a time. A build that a writer came in on may have an edit
+ * half done, so it is thrown away and that writer publishes on its way out instead.
+ */
+public class VersionGate {
+
+    /**
+     * Builds a version from the live indexes and installs it for queries.
+     */
+    public interface Publisher<V> {
+
+        V build();
+
+        void install( V version );
+    }
+
+    /* Writers in the middle of an edit. */
+    private final AtomicInteger active = new AtomicInteger();
+
+    /* Bumped each time a writer enters, after active. A build whose count moved saw a writer come in. */
+    private final AtomicLong entries = new AtomicLong();
+
+    private final AtomicBoolean publishing = new AtomicBoolean();
+
+    /* The entries count the installed version was built at. Only written while publishing. */
+    private volatile long published = -1;
+
+    private volatile Publisher publisher;
+
+    public void enter() {
+        active.incrementAndGet();
+        entries.incrementAndGet();
+    }
+
+    /**
+     * The last writer out publishes before it returns, so a thread sees its own writes
+     * unless another writer is still mid edit. Those writes show once that writer leaves.
+     */
+    public void exit() {
+        if ( active.decrementAndGet() == 0 ) {
+            publish();
+        }
+    }
+
+    /**
+     * Publishes everything written so far, unless a writer is mid edit.
+     * If another thread is building a version this waits for it and then tries again,
+     * since that build may have started before the last edit was done.
+     */
+    public void publish() {
+        Publisher publisher = this.publisher;
+        if ( publisher == null ) {
+            return;
+        }
+        long wanted = entries.get();
+        while ( published < wanted && active.get() == 0 ) {
+            if ( !publishing.compareAndSet( false, true ) ) {
+                Thread.yield();
+                continue;
+            }
+            try {
+                long stamp = entries.get();
+                if ( active.get() == 0 ) {
+                    Object version = publisher.build();
+                    if ( entries.get() == stamp ) {
+                        publisher.install( version );
+                        published = stamp;
+                    }
+                }
+            } finally {
+                publishing.set( false );
+            }
+        }
+    }
+
+    public void setPublisher( Publisher<?> publisher ) {
+        this.publisher = publisher;
+    }
+}
@@ -0,0 +1,204 @@
+package org.boon.datarepo.impl;
+
+import org.boon.Exceptions;
+import org.boon.core.reflection.fields.FieldAccess;
+import org.boon.criteria.ObjectFilter;
+import org.boon.criteria.Selector;
+import org.boon.criteria.internal.Criteria;
+import org.boon.criteria.internal.Group;
+import org.boon.criteria.internal.QueryFactory;
+import org.boon.datarepo.Aggregate;
+import org.boon.datarepo.View;
+import org.boon.datarepo.ViewListener;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * View kept up to date by the searchable collection. The collection calls invalidate before an item
+ * changes or is removed and validate after it changes or is added, the same as it does for its filter.
+ * <p/>
+ * Each item in the view keeps the values it gave the aggregates, so they can be taken back out
+ * even after the item itself has been changed.
+ *
+ * @param <KEY>  The primary key.
+ * @param <ITEM> The items.
+ */
+public class ViewDefault<KEY, ITEM> implements View<KEY, ITEM> {
+
+    private final SearchableCollectionDefault<KEY, ITEM> collection;
+    private final Group criteria;
+    private final List<Aggregate> aggregates;
+    private final FieldAccess[] aggregateFields;
+    private final Map<String, FieldAccess> fields;
+
+    /* The properties the view reads, null when the criteria do not say. */
+    private final Set<String> properties;
+
+    private final Map<KEY, ITEM> items = new LinkedHashMap<>();
+    private final Map<KEY, Object[]> aggregated = new HashMap<>();
+    private final List<ViewListener<ITEM>> listeners = new CopyOnWriteArrayList<>();
+
+
+    ViewDefault( SearchableCollectionDefault<KEY, ITEM> collection, Map<String, FieldAccess> fields,
+                 List<Aggregate> aggregates, Criteria... expressions ) {
+        this.collection = collection;
+        this.fields = fields;
+        this.criteria = ObjectFilter.and( expressions );
+        this.aggregates = new ArrayList<>( aggregates );
+        this.aggregateFields = new FieldAccess[ aggregates.size() ];
+
+        Set<String> properties = new HashSet<>();
+        for ( int index = 0; index < aggregateFields.length; index++ ) {
+            String name = this.aggregates.get( index ).getFieldName();
+            if ( name != null ) {
+                aggregateFields[ index ] = fields.get( name );
+                Exceptions.requireNonNull( aggregateFields[ index ], "No field for aggregate " + name );
+                properties.add( name );
+            }
+        }
+        this.properties = QueryFactory.properties( criteria, properties ) ? properties : null;
+    }
+
+    /**
+     * Puts in the items the query found when the view was made. Changes that came in while it ran win.
+     */
+    synchronized void load( List<ITEM> matches ) {
+        for ( ITEM item : matches ) {
+            KEY key = collection.getKey( item );
+            if ( !items.containsKey( key ) ) {
+                put( key, item );
+            }
+        }
+    }
+
+    private boolean dependsOn( String property ) {
+        return property == null || properties == null || properties.contains( property );
+    }
+
+    void invalidate( String property, ITEM item ) {
+        if ( !dependsOn( property ) ) {
+            return;
+        }
+        synchronized ( this ) {
+            ITEM removed = take( collection.getKey( item ) );
+            if ( removed != null ) {
+                for ( ViewListener<ITEM> listener : listeners ) {
+                    listener.removed( removed );
+                }
+            }
+        }
+    }
+
+    void validate( String property, ITEM item ) {
+        if ( !dependsOn( property ) ) {
+            return;
+        }
+        synchronized ( this ) {
+            if ( !criteria.test( item ) ) {
+                return;
+            }
+            KEY key = collection.getKey( item );
+            ITEM replaced = take( key );
+            put( key, item );
+            for ( ViewListener<ITEM> listener : listeners ) {
+                if ( replaced != null ) {
+                    listener.removed( replaced );
+                }
+                listener.added( item );
+            }
+        }
+    }
+
+    synchronized void clear() {
+        List<ITEM> removed = new ArrayList<>( items.values() );
+        for ( KEY key : new ArrayList<>( items.keySet() ) ) {
+            take( key );
+        }
+        for ( ViewListener<ITEM> listener : listeners ) {
+            for ( ITEM item : removed ) {
+                listener.removed( item );
+            }
+        }
+    }
+
+    private void put( KEY key, ITEM item ) {
+        Object[] values = new Object[ aggregateFields.length ];
+        for ( int index = 0; index < values.length; index++ ) {
+            values[ index ] = aggregateFields[ index ] == null ? null : aggregateFields[ index ].getValue( item );
+            aggregates.get( index ).add( values[ index ] );
+        }
+        items.put( key, item );
+        aggregated.put( key, values );
+    }
+
+    private ITEM take( KEY key ) {
+        ITEM item = items.remove( key );
+        if ( item != null ) {
+            Object[] values = aggregated.remove( key );
+            for ( int index = 0; index < values.length; index++ ) {
+                aggregates.get( index ).remove( values[ index ] );
+            }
+        }
+        return item;
+    }
+
+    @Override
+    public synchronized int size() {
+        return items.size();
+    }
+
+    @Override
+    public synchronized boolean has( KEY key ) {
+        return items.containsKey( key );
+    }
+
+    @Override
+    public synchronized ITEM get( KEY key ) {
+        return items.get( key );
+    }
+
+    @Override
+    public synchronized List<ITEM> items() {
+        return new ArrayList<>( items.values() );
+    }
+
+    @Override
+    public synchronized Object aggregate( String name ) {
+        for ( Aggregate aggregate : aggregates ) {
+            if ( aggregate.getName().equals( name ) ) {
+                return aggregate.value();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized Map<String, Object> aggregates() {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for ( Aggregate aggregate : aggregates ) {
+            values.put( aggregate.getName(), aggregate.value() );
+        }
+        return values;
+    }
+
+    @Override
+    public List<Map<String, Object>> select( List<Selector> selectors ) {
+        return Selector.performSelection( selectors, items(), fields );
+    }
+
+    @Override
+    public void addListener( ViewListener<ITEM> listener ) {
+        listeners.add( listener );
+    }
+
+    @Override
+    public void removeListener( ViewListener<ITEM> listener ) {
+        listeners.remove( listener );
+    }
+
+    @Override
+    public void close() {
+        collection.removeView( this );
+    }
+}
@@ -0,0 +1,63 @@
+package org.boon.datarepo.impl.columns;
+
+import org.boon.core.reflection.fields.FieldAccess;
+import org.boon.criteria.internal.Operator;
+
+/**
+ * One field of every row, stored by row id.
+ */
+abstract class Column {
+
+    /**
+     * A criterion worked out against the column. Rows are only tested if their class has the field.
+     */
+    interface RowTest {
+        boolean test( int row );
+    }
+
+    final String name;
+    final FieldAccess field;
+
+
+    Column( FieldAccess field ) {
+        this.name = field.getName();
+        this.field = field;
+    }
+
+    /**
+     * Copies the field of the item into the row.
+     */
+    abstract void write( int row, Object item );
+
+    /**
+     * Copies the row into the field of the item.
+     */
+    abstract void read( int row, Object item );
+
+    /**
+     * The value in the row, boxed.
+     */
+    abstract Object value( int row );
+
+    /**
+     * Sort order of two rows.
+     */
+    abstract int compare( int row, int other );
+
+    /**
+     * Tests rows against the operator and its values, or null if this column can not answer it.
+     */
+    abstract RowTest test( Operator operator, Object[] values );
+
+    /**
+     * The row is no longer used. Only columns that hold references need to do anything.
+     */
+    void forget( int row ) {
+    }
+
+    void clear() {
+    }
+
+    void close() {
+    }
+}
@@ -0,0 +1,130 @@
+package org.boon.datarepo.impl.columns;
+
+import org.boon.Exceptions;
+import org.boon.datarepo.LookupIndex;
+import org.boon.datarepo.impl.indexes.UniqueLookupIndex;
+
+import java.util.*;
+
+/**
+ * Primary key index over a {@link ColumnStore}. The row ids already map each key to its row,
+ * so this index keeps nothing of its own and makes the item from its row on every get.
+ * The collection numbers and drops the rows, add and delete only answer.
+ *
+ * @param <KEY>  The primary key
+ * @param <ITEM> The items
+ */
+public class ColumnPrimaryIndex<KEY, ITEM> extends UniqueLookupIndex<KEY, ITEM> {
+
+    private final ColumnRowIds<ITEM> rowIds;
+
+
+    public ColumnPrimaryIndex( ColumnRowIds<ITEM> rowIds ) {
+        super( null );
+        Exceptions.requireNonNull( rowIds, "rowIds cannot be null" );
+        this.rowIds = rowIds;
+    }
+
+    public ColumnRowIds<ITEM> rowIds() {
+        return rowIds;
+    }
+
+    @Override
+    public ITEM get( KEY key ) {
+        int id = rowIds.idOfKey( getKey( key ) );
+        return id == -1 ? null : rowIds.get( id );
+    }
+
+    @Override
+    public boolean add( ITEM item ) {
+        return keyGetter.apply( item ) != null;
+    }
+
+    @Override
+    public void addAll( List<ITEM> items ) {
+    }
+
+    @Override
+    public boolean delete( ITEM item ) {
+        return rowIds.idOf( item ) != -1;
+    }
+
+    @Override
+    public boolean deleteByKey( KEY key ) {
+        return rowIds.idOfKey( getKey( key ) ) != -1;
+    }
+
+    @Override
+    public List<ITEM> all() {
+        return rowIds.items( rowIds.live() );
+    }
+
+    @Override
+    public int size() {
+        return rowIds.size();
+    }
+
+    @Override
+    public Collection<ITEM> toCollection() {
+        return all();
+    }
+
+    /**
+     * Makes each item as the iterator gets to it.
+     */
+    @Override
+    public Collection<ITEM> values() {
+        return new AbstractCollection<ITEM>() {
+            @Override
+            public Iterator<ITEM> iterator() {
+                final int[] ids = rowIds.live().toArray();
+                return new Iterator<ITEM>() {
+                    int index;
+
+                    @Override
+                    public boolean hasNext() {
+                        return index < ids.length;
+                    }
+
+                    @Override
+                    public ITEM next() {
+                        if ( !hasNext() ) {
+                            throw new NoSuchElementException();
+                        }
+                        return rowIds.get( ids[ index++ ] );
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException( "remove Not supported" );
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return rowIds.size();
+            }
+        };
+    }
+
+    @Override
+    public void clear() {
+    }
+
+    @Override
+    public boolean has( KEY key ) {
+        return key != null && rowIds.idOfKey( key ) != -1;
+    }
+
+    @Override
+    public int count( KEY key ) {
+        key = getKey( key );
+        return key != null && rowIds.idOfKey( key ) != -1 ? 1 : 0;
+    }
+
+    @Override
+    public LookupIndex<KEY, ITEM> snapshot() {
+        throw new UnsupportedOperationException( "snapshot Not supported" );
+    }
+}
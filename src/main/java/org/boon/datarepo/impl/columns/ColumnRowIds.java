@@ -0,0 +1,47 @@
+package org.boon.datarepo.impl.columns;
+
+import org.boon.Exceptions;
+import org.boon.core.Function;
+import org.boon.datarepo.impl.indexes.RowIds;
+
+/**
+ * Row ids whose items are kept in a {@link ColumnStore} instead of an array of references.
+ * Getting an item makes a new copy of it from its row.
+ *
+ * @param <ITEM> The items we are numbering.
+ */
+public class ColumnRowIds<ITEM> extends RowIds<ITEM> {
+
+    private final ColumnStore columns;
+
+
+    public ColumnRowIds( Function<ITEM, Object> primaryKeyGetter, ColumnStore columns ) {
+        super( primaryKeyGetter );
+        Exceptions.requireNonNull( columns, "columns cannot be null" );
+        this.columns = columns;
+    }
+
+    public ColumnStore columns() {
+        return columns;
+    }
+
+    @Override
+    protected void store( int id, ITEM item ) {
+        columns.write( id, item );
+    }
+
+    @Override
+    protected ITEM load( int id ) {
+        return ( ITEM ) columns.read( id );
+    }
+
+    @Override
+    protected void forget( int id ) {
+        columns.forget( id );
+    }
+
+    @Override
+    protected void forgetAll() {
+        columns.clear();
+    }
+}
@@ -0,0 +1,343 @@
+package org.boon.datarepo.impl.columns;
+
+import org.boon.Exceptions;
+import org.boon.core.Function;
+import org.boon.criteria.internal.Operator;
+import org.boon.datarepo.impl.indexes.RowBitmap;
+import org.boon.datarepo.spi.SearchIndex;
+
+import java.util.*;
+
+/**
+ * Search index that is nothing but the column of its field in a {@link ColumnStore}.
+ * Every lookup scans the column of the live rows, then sorts the rows that matched by the column
+ * and makes items of them. The scan reads packed values from one file, so it is a straight read
+ * through memory with no items and no pointer chasing, and there is nothing to keep up to date on a write.
+ * <p/>
+ * Estimates only test an evenly spaced sample of the rows, so planning a query never scans the column.
+ * Small repos are counted exactly.
+ *
+ * @param <KEY>  Key we are indexing on.
+ * @param <ITEM> The items we are indexing.
+ */
+public class ColumnSearchIndex<KEY, ITEM> implements SearchIndex<KEY, ITEM> {
+
+    private static final int SAMPLE = 512;
+
+    private final ColumnRowIds<ITEM> rowIds;
+    private final ColumnStore columns;
+    private final Column column;
+
+
+    public ColumnSearchIndex( ColumnRowIds<ITEM> rowIds, String name ) {
+        Exceptions.requireNonNull( rowIds, "rowIds cannot be null" );
+        this.rowIds = rowIds;
+        this.columns = rowIds.columns();
+        this.column = columns.column( name );
+        if ( column == null || !columns.isOffHeap( name ) ) {
+            throw new IllegalArgumentException( String.format( "No off heap column for %s", name ) );
+        }
+    }
+
+    private int[] range( KEY start, boolean startInclusive, KEY end, boolean endInclusive ) {
+        return range( rowIds.live(), start, startInclusive, end, endInclusive );
+    }
+
+    private int[] range( RowBitmap live, KEY start, boolean startInclusive, KEY end, boolean endInclusive ) {
+        RowBitmap rows = null;
+        if ( start != null ) {
+            rows = columns.rows( column, live, startInclusive ? Operator.GREATER_THAN_EQUAL : Operator.GREATER_THAN, start );
+        }
+        if ( end != null ) {
+            RowBitmap endRows = columns.rows( column, rows == null ? live : rows,
+                    endInclusive ? Operator.LESS_THAN_EQUAL : Operator.LESS_THAN, end );
+            rows = endRows;
+        }
+        return rows == null ? columns.rowsWith( column, live ) : rows.toArray();
+    }
+
+    private int[] matching( Operator operator, KEY key ) {
+        RowBitmap rows = columns.rows( column, rowIds.live(), operator, key );
+        return rows == null ? new int[ 0 ] : rows.toArray();
+    }
+
+    private int[] sorted( int[] rows, final boolean descending ) {
+        Integer[] boxed = new Integer[ rows.length ];
+        for ( int index = 0; index < rows.length; index++ ) {
+            boxed[ index ] = rows[ index ];
+        }
+        Arrays.sort( boxed, new Comparator<Integer>() {
+            @Override
+            public int compare( Integer row, Integer other ) {
+                int compare = column.compare( row, other );
+                return descending ? -compare : compare;
+            }
+        } );
+        for ( int index = 0; index < rows.length; index++ ) {
+            rows[ index ] = boxed[ index ];
+        }
+        return rows;
+    }
+
+    private List<ITEM> items( int[] rows ) {
+        sorted( rows, false );
+        List<ITEM> items = new ArrayList<>( rows.length );
+        for ( int row : rows ) {
+            items.add( rowIds.get( row ) );
+        }
+        return items;
+    }
+
+    private Iterator<ITEM> iterator( final int[] rows ) {
+        return new Iterator<ITEM>() {
+            int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < rows.length;
+            }
+
+            @Override
+            public ITEM next() {
+                if ( !hasNext() ) {
+                    throw new NoSuchElementException();
+                }
+                return rowIds.get( rows[ index++ ] );
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException( "remove Not supported" );
+            }
+        };
+    }
+
+    /**
+     * The row with the smallest value, or the largest, or -1 if there are no rows.
+     */
+    private int edge( boolean last ) {
+        int best = -1;
+        for ( int row : columns.rowsWith( column, rowIds.live() ) ) {
+            if ( best == -1 ) {
+                best = row;
+            } else {
+                int compare = column.compare( row, best );
+                if ( last ? compare > 0 : compare < 0 ) {
+                    best = row;
+                }
+            }
+        }
+        return best;
+    }
+
+
+    /* The rows are the storage. The collection writes and drops them. */
+    @Override
+    public boolean add( ITEM item ) {
+        return true;
+    }
+
+    @Override
+    public Map<KEY, List<ITEM>> buckets() {
+        return null;
+    }
+
+    @Override
+    public void addAll( List<ITEM> items ) {
+    }
+
+    @Override
+    public boolean delete( ITEM item ) {
+        return true;
+    }
+
+    @Override
+    public boolean deleteByKey( KEY key ) {
+        return true;
+    }
+
+    @Override
+    public void clear() {
+    }
+
+    @Override
+    public ITEM get( KEY key ) {
+        List<ITEM> results = findEquals( key );
+        return results == null ? null : results.get( 0 );
+    }
+
+    @Override
+    public List<ITEM> getAll( KEY key ) {
+        return findEquals( key );
+    }
+
+    @Override
+    public boolean has( KEY key ) {
+        return count( key ) > 0;
+    }
+
+    @Override
+    public int count( KEY key ) {
+        return matching( Operator.EQUAL, key ).length;
+    }
+
+    @Override
+    public List<ITEM> findEquals( KEY key ) {
+        int[] rows = matching( Operator.EQUAL, key );
+        return rows.length == 0 ? null : items( rows );
+    }
+
+    @Override
+    public List<ITEM> findStartsWith( KEY keyFrag ) {
+        return items( matching( Operator.STARTS_WITH, keyFrag ) );
+    }
+
+    @Override
+    public List<ITEM> findEndsWith( KEY keyFrag ) {
+        return items( matching( Operator.ENDS_WITH, keyFrag ) );
+    }
+
+    @Override
+    public List<ITEM> findContains( KEY keyFrag ) {
+        return items( matching( Operator.CONTAINS, keyFrag ) );
+    }
+
+    @Override
+    public List<ITEM> findBetween( KEY start, KEY end ) {
+        return items( range( start, true, end, false ) );
+    }
+
+    @Override
+    public List<ITEM> findGreaterThan( KEY key ) {
+        return items( range( key, false, null, false ) );
+    }
+
+    @Override
+    public List<ITEM> findLessThan( KEY key ) {
+        return items( range( null, false, key, false ) );
+    }
+
+    @Override
+    public List<ITEM> findGreaterThanEqual( KEY key ) {
+        return items( range( key, true, null, false ) );
+    }
+
+    @Override
+    public List<ITEM> findLessThanEqual( KEY key ) {
+        return items( range( null, false, key, true ) );
+    }
+
+    /**
+     * The share of a sample of the rows that fall in the range, times the rows with the column.
+     */
+    @Override
+    public int estimateBetween( KEY start, boolean startInclusive, KEY end, boolean endInclusive ) {
+        RowBitmap live = rowIds.live();
+        int total = columns.countWith( column, live );
+        if ( total <= SAMPLE * 2 ) {
+            return range( live, start, startInclusive, end, endInclusive ).length;
+        }
+        RowBitmap sample = columns.sample( live, SAMPLE );
+        int sampled = columns.countWith( column, sample );
+        if ( sampled == 0 ) {
+            return 0;
+        }
+        int matched = range( sample, start, startInclusive, end, endInclusive ).length;
+        return ( int ) ( ( long ) matched * total / sampled );
+    }
+
+    @Override
+    public ITEM findFirst() {
+        int row = edge( false );
+        return row == -1 ? null : rowIds.get( row );
+    }
+
+    @Override
+    public ITEM findLast() {
+        int row = edge( true );
+        return row == -1 ? null : rowIds.get( row );
+    }
+
+    @Override
+    public KEY findFirstKey() {
+        int row = edge( false );
+        return row == -1 ? null : ( KEY ) column.value( row );
+    }
+
+    @Override
+    public KEY findLastKey() {
+        int row = edge( true );
+        return row == -1 ? null : ( KEY ) column.value( row );
+    }
+
+    @Override
+    public ITEM min() {
+        return findFirst();
+    }
+
+    @Override
+    public ITEM max() {
+        return findLast();
+    }
+
+    @Override
+    public Iterator<ITEM> iteratorFrom( KEY start, boolean startInclusive ) {
+        return iterator( sorted( range( start, startInclusive, null, false ), false ) );
+    }
+
+    @Override
+    public Iterator<ITEM> descendingIterator() {
+        return iterator( sorted( columns.rowsWith( column, rowIds.live() ), true ) );
+    }
+
+    @Override
+    public List<ITEM> all() {
+        return items( columns.rowsWith( column, rowIds.live() ) );
+    }
+
+    @Override
+    public int size() {
+        return columns.countWith( column, rowIds.live() );
+    }
+
+    @Override
+    public Collection<ITEM> toCollection() {
+        return all();
+    }
+
+    /* The key is read from the column. Collators and key transforms need keys that are not kept,
+       the builder does not allow them. */
+    @Override
+    public void setKeyGetter( Function<ITEM, KEY> keyGetter ) {
+    }
+
+    @Override
+    public void setComparator( Comparator<KEY> collator ) {
+    }
+
+    @Override
+    public void setInputKeyTransformer( Function<Object, KEY> func ) {
+    }
+
+    @Override
+    public void setBucketSize( int size ) {
+    }
+
+    @Override
+    public void setConcurrent( boolean concurrent ) {
+    }
+
+    @Override
+    public boolean isPrimaryKeyOnly() {
+        return false;
+    }
+
+    @Override
+    public void init() {
+    }
+
+    @Override
+    public SearchIndex<KEY, ITEM> snapshot() {
+        throw new UnsupportedOperationException( "snapshot Not supported" );
+    }
+}
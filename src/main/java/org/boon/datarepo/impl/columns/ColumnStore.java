@@ -0,0 +1,262 @@
+package org.boon.datarepo.impl.columns;
+
+import org.boon.Exceptions;
+import org.boon.core.reflection.BeanUtils;
+import org.boon.core.reflection.Reflection;
+import org.boon.core.reflection.fields.FieldAccess;
+import org.boon.criteria.Criterion;
+import org.boon.criteria.internal.Operator;
+import org.boon.datarepo.DataRepoException;
+import org.boon.datarepo.impl.indexes.RowBitmap;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Keeps the items of a repo as rows of columns instead of objects.
+ * Primitive, date and string fields live in memory mapped files, one file per field, so the garbage
+ * collector never sees them. Other fields stay on the heap in an array per field.
+ * An item is only put back together when it is asked for, and every call hands back a new copy.
+ * <p/>
+ * Each row also records the class of its item, so a repo of a base class and its subclasses
+ * can share the columns. A row only has the columns of its own class.
+ * <p/>
+ * The files are scratch space. They are emptied when the store is opened; use a journal to keep the items.
+ * This class is not thread safe.
+ */
+public class ColumnStore {
+
+    private static final int INITIAL_ROWS = 1024;
+
+    private final File directory;
+    private final Map<String, Column> columns = new LinkedHashMap<>();
+
+    /* Class ids start at one, zero marks an empty row. */
+    private final List<Class<?>> classes = new ArrayList<>();
+    private final List<Column[]> layouts = new ArrayList<>();
+    private final Map<Class<?>, Integer> classIds = new HashMap<>();
+    private final Map<Column, BitSet> classesWithColumn = new HashMap<>();
+
+    private final MappedRegion rowClasses;
+    private int rows;
+
+
+    public ColumnStore( File directory, Class<?> itemClass, Class<?>... classes ) {
+        Exceptions.requireNonNull( directory, "directory cannot be null" );
+        Exceptions.requireNonNull( itemClass, "itemClass cannot be null" );
+        if ( !directory.isDirectory() && !directory.mkdirs() ) {
+            throw new DataRepoException( "Unable to create column directory " + directory );
+        }
+        this.directory = directory;
+        this.rowClasses = new MappedRegion( new File( directory, "rows.col" ), INITIAL_ROWS );
+
+        classId( itemClass );
+        for ( Class<?> cls : classes ) {
+            classId( cls );
+        }
+    }
+
+    private int classId( Class<?> cls ) {
+        Integer id = classIds.get( cls );
+        if ( id == null ) {
+            if ( classes.size() == 255 ) {
+                throw new DataRepoException( "Too many item classes for one column store " + cls.getName() );
+            }
+            id = classes.size() + 1;
+            layouts.add( layout( cls, id ) );
+            classes.add( cls );
+            classIds.put( cls, id );
+        }
+        return id;
+    }
+
+    private Column[] layout( Class<?> cls, int id ) {
+        List<Column> layout = new ArrayList<>();
+        for ( FieldAccess access : new TreeMap<>( BeanUtils.getFieldsFromObject( cls ) ).values() ) {
+            Field field = access.getField();
+            /* The field maps are shared, and the builder adds subclass fields to the base class map. */
+            if ( field == null || Modifier.isStatic( field.getModifiers() )
+                    || Modifier.isTransient( field.getModifiers() )
+                    || !field.getDeclaringClass().isAssignableFrom( cls ) ) {
+                continue;
+            }
+
+            String name = access.getName();
+            Column column = columns.get( name );
+            if ( column == null ) {
+                column = newColumn( access );
+                columns.put( name, column );
+                classesWithColumn.put( column, new BitSet() );
+            } else if ( !field.equals( column.field.getField() ) ) {
+                throw new DataRepoException( String.format( "Field %s of %s is a different field than %s of %s",
+                        name, cls.getName(), name, column.field.getField().getDeclaringClass().getName() ) );
+            }
+            classesWithColumn.get( column ).set( id );
+            layout.add( column );
+        }
+        return layout.toArray( new Column[ layout.size() ] );
+    }
+
+    private Column newColumn( FieldAccess field ) {
+        Class<?> type = field.type();
+        if ( PrimitiveColumn.supports( type ) ) {
+            return new PrimitiveColumn( field, new File( directory, field.getName() + ".col" ), INITIAL_ROWS );
+        } else if ( type == String.class ) {
+            return new StringColumn( field, directory, INITIAL_ROWS );
+        }
+        return new HeapColumn( field, INITIAL_ROWS );
+    }
+
+    /**
+     * Writes every field of the item into the row.
+     */
+    public void write( int row, Object item ) {
+        int id = classId( item.getClass() );
+        rowClasses.ensure( row + 1 ).put( row, ( byte ) id );
+        rows = Math.max( rows, row + 1 );
+        for ( Column column : layouts.get( id - 1 ) ) {
+            column.write( row, item );
+        }
+    }
+
+    /**
+     * A new item made from the row, or null if the row is empty.
+     */
+    public Object read( int row ) {
+        int id = classOf( row );
+        if ( id == 0 ) {
+            return null;
+        }
+        Object item = Reflection.newInstance( classes.get( id - 1 ) );
+        for ( Column column : layouts.get( id - 1 ) ) {
+            column.read( row, item );
+        }
+        return item;
+    }
+
+    private int classOf( int row ) {
+        return row < rows ? rowClasses.buffer().get( row ) & 0xff : 0;
+    }
+
+    public void forget( int row ) {
+        int id = classOf( row );
+        if ( id == 0 ) {
+            return;
+        }
+        for ( Column column : layouts.get( id - 1 ) ) {
+            column.forget( row );
+        }
+        rowClasses.buffer().put( row, ( byte ) 0 );
+    }
+
+    public void clear() {
+        ByteBuffer buffer = rowClasses.buffer();
+        for ( int row = 0; row < rows; row++ ) {
+            buffer.put( row, ( byte ) 0 );
+        }
+        rows = 0;
+        for ( Column column : columns.values() ) {
+            column.clear();
+        }
+    }
+
+    public void close() {
+        rowClasses.close();
+        for ( Column column : columns.values() ) {
+            column.close();
+        }
+    }
+
+    public boolean hasColumn( String name ) {
+        return columns.containsKey( name );
+    }
+
+    /**
+     * True if the field is kept in a mapped file, so criteria on it are answered from the column.
+     */
+    public boolean isOffHeap( String name ) {
+        Column column = columns.get( name );
+        return column != null && !( column instanceof HeapColumn );
+    }
+
+    Column column( String name ) {
+        return columns.get( name );
+    }
+
+    /**
+     * Rows of the live rows that pass the criterion, worked out from the column without making any items.
+     *
+     * @return null if the criterion can not be answered from a column
+     */
+    public RowBitmap rows( Criterion criterion, RowBitmap live ) {
+        Column column = columns.get( criterion.getName() );
+        if ( column == null ) {
+            return null;
+        }
+        return rows( column, live, criterion.getOperator(), criterion.getValues() );
+    }
+
+    RowBitmap rows( Column column, RowBitmap live, Operator operator, Object... values ) {
+        int needed = operator == Operator.BETWEEN ? 2
+                : operator == Operator.IS_NULL || operator == Operator.NOT_NULL ? 0 : 1;
+        if ( values == null || values.length < needed ) {
+            return null;
+        }
+
+        Column.RowTest test = column.test( operator, values );
+        if ( test == null ) {
+            return null;
+        }
+
+        BitSet withColumn = classesWithColumn.get( column );
+        RowBitmap rows = new RowBitmap();
+        for ( int row : live.toArray() ) {
+            if ( withColumn.get( classOf( row ) ) && test.test( row ) ) {
+                rows.add( row );
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * How many live rows have the column. Only goes row by row when some classes do not have it.
+     */
+    int countWith( Column column, RowBitmap live ) {
+        if ( classesWithColumn.get( column ).cardinality() == classes.size() ) {
+            return live.cardinality();
+        }
+        return rowsWith( column, live ).length;
+    }
+
+    /**
+     * About count of the live rows, picked at an even stride over the row ids.
+     */
+    RowBitmap sample( RowBitmap live, int count ) {
+        RowBitmap sample = new RowBitmap();
+        int step = Math.max( 1, rows / count );
+        for ( int row = step / 2; row < rows; row += step ) {
+            if ( live.contains( row ) ) {
+                sample.add( row );
+            }
+        }
+        return sample;
+    }
+
+    /**
+     * The live rows whose class has the column.
+     */
+    int[] rowsWith( Column column, RowBitmap live ) {
+        BitSet withColumn = classesWithColumn.get( column );
+        int[] ids = live.toArray();
+        int count = 0;
+        for ( int row : ids ) {
+            if ( withColumn.get( classOf( row ) ) ) {
+                ids[ count++ ] = row;
+            }
+        }
+        return Arrays.copyOf( ids, count );
+    }
+}
@@ -0,0 +1,64 @@
+package org.boon.datarepo.impl.columns;
+
+import org.boon.core.reflection.fields.FieldAccess;
+import org.boon.criteria.internal.Operator;
+
+import java.util.Arrays;
+
+/**
+ * Column for any other field. The values stay on the heap and every copy of a row shares them.
+ * Criteria on these fields are tested against the items.
+ */
+final class HeapColumn extends Column {
+
+    private Object[] values;
+
+
+    HeapColumn( FieldAccess field, int initialRows ) {
+        super( field );
+        this.values = new Object[ initialRows ];
+    }
+
+    @Override
+    void write( int row, Object item ) {
+        if ( row >= values.length ) {
+            values = Arrays.copyOf( values, Math.max( row + 1, values.length * 2 ) );
+        }
+        values[ row ] = field.getObject( item );
+    }
+
+    @Override
+    void read( int row, Object item ) {
+        field.setObject( item, values[ row ] );
+    }
+
+    @Override
+    Object value( int row ) {
+        return values[ row ];
+    }
+
+    @Override
+    int compare( int row, int other ) {
+        Comparable value = ( Comparable ) values[ row ];
+        Object otherValue = values[ other ];
+        if ( value == null ) {
+            return otherValue == null ? 0 : -1;
+        }
+        return otherValue == null ? 1 : value.compareTo( otherValue );
+    }
+
+    @Override
+    RowTest test( Operator operator, Object[] values ) {
+        return null;
+    }
+
+    @Override
+    void forget( int row ) {
+        values[ row ] = null;
+    }
+
+    @Override
+    void clear() {
+        Arrays.fill( values, null );
+    }
+}
@@ -0,0 +1,70 @@
+package org.boon.datarepo.impl.columns;
+
+import org.boon.datarepo.DataRepoException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A file mapped into memory that grows by doubling. The file is emptied when it is opened.
+ * Growing maps the file again, so never hold on to the buffer across a call to ensure.
+ */
+final class MappedRegion {
+
+    private final File file;
+    private final RandomAccessFile access;
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+
+
+    MappedRegion( File file, int initialBytes ) {
+        this.file = file;
+        try {
+            this.access = new RandomAccessFile( file, "rw" );
+            this.access.setLength( 0 );
+            this.channel = access.getChannel();
+            this.buffer = channel.map( FileChannel.MapMode.READ_WRITE, 0, initialBytes );
+        } catch ( IOException ex ) {
+            throw new DataRepoException( "Unable to map " + file, ex );
+        }
+    }
+
+    ByteBuffer buffer() {
+        return buffer;
+    }
+
+    /**
+     * Makes sure the first bytes of the file are mapped.
+     */
+    ByteBuffer ensure( long bytes ) {
+        if ( bytes <= buffer.capacity() ) {
+            return buffer;
+        }
+        long size = Math.max( bytes, ( long ) buffer.capacity() * 2 );
+        if ( size > Integer.MAX_VALUE ) {
+            if ( bytes > Integer.MAX_VALUE ) {
+                throw new DataRepoException( "Column file is full " + file );
+            }
+            size = Integer.MAX_VALUE;
+        }
+        try {
+            buffer = channel.map( FileChannel.MapMode.READ_WRITE, 0, size );
+        } catch ( IOException ex ) {
+            throw new DataRepoException( "Unable to grow " + file, ex );
+        }
+        return buffer;
+    }
+
+    void close() {
+        try {
+            channel.close();
+            access.close();
+        } catch ( IOException ex ) {
+            throw new DataRepoException( "Unable to close " + file, ex );
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package org.boon.datarepo.impl.columns;
+
+import org.boon.core.Conversions;
+import org.boon.core.reflection.fields.FieldAccess;
+import org.boon.criteria.internal.Operator;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Date;
+
+/**
+ * Column for a primitive or date field, one fixed width slot per row in a mapped file.
+ * Rows are compared as longs that sort the same way the values do, so floats and doubles
+ * are turned into sortable bits and a date is its time. A null date is stored as Long.MIN_VALUE
+ * and never matches a comparison.
+ */
+final class PrimitiveColumn extends Column {
+
+    private static final long NULL_DATE = Long.MIN_VALUE;
+
+    private final Class<?> type;
+    private final int width;
+    private final boolean floating;
+    private final MappedRegion region;
+
+
+    PrimitiveColumn( FieldAccess field, File file, int initialRows ) {
+        super( field );
+        this.type = field.type();
+        this.width = widthOf( type );
+        this.floating = type == double.class || type == float.class;
+        this.region = new MappedRegion( file, initialRows * width );
+    }
+
+    static boolean supports( Class<?> type ) {
+        return widthOf( type ) != -1;
+    }
+
+    private static int widthOf( Class<?> type ) {
+        if ( type == long.class || type == double.class || type == Date.class ) {
+            return 8;
+        } else if ( type == int.class || type == float.class ) {
+            return 4;
+        } else if ( type == short.class || type == char.class ) {
+            return 2;
+        } else if ( type == byte.class || type == boolean.class ) {
+            return 1;
+        }
+        return -1;
+    }
+
+    @Override
+    void write( int row, Object item ) {
+        ByteBuffer buffer = region.ensure( ( long ) ( row + 1 ) * width );
+        int at = row * width;
+        if ( type == int.class ) {
+            buffer.putInt( at, field.getInt( item ) );
+        } else if ( type == long.class ) {
+            buffer.putLong( at, field.getLong( item ) );
+        } else if ( type == double.class ) {
+            buffer.putDouble( at, field.getDouble( item ) );
+        } else if ( type == float.class ) {
+            buffer.putFloat( at, field.getFloat( item ) );
+        } else if ( type == short.class ) {
+            buffer.putShort( at, field.getShort( item ) );
+        } else if ( type == char.class ) {
+            buffer.putChar( at, field.getChar( item ) );
+        } else if ( type == byte.class ) {
+            buffer.put( at, field.getByte( item ) );
+        } else if ( type == boolean.class ) {
+            buffer.put( at, field.getBoolean( item ) ? ( byte ) 1 : ( byte ) 0 );
+        } else {
+            Date date = ( Date ) field.getObject( item );
+            buffer.putLong( at, date == null ? NULL_DATE : date.getTime() );
+        }
+    }
+
+    @Override
+    void read( int row, Object item ) {
+        ByteBuffer buffer = region.buffer();
+        int at = row * width;
+        if ( type == int.class ) {
+            field.setInt( item, buffer.getInt( at ) );
+        } else if ( type == long.class ) {
+            field.setLong( item, buffer.getLong( at ) );
+        } else if ( type == double.class ) {
+            field.setDouble( item, buffer.getDouble( at ) );
+        } else if ( type == float.class ) {
+            field.setFloat( item, buffer.getFloat( at ) );
+        } else if ( type == short.class ) {
+            field.setShort( item, buffer.getShort( at ) );
+        } else if ( type == char.class ) {
+            field.setChar( item, buffer.getChar( at ) );
+        } else if ( type == byte.class ) {
+            field.setByte( item, buffer.get( at ) );
+        } else if ( type == boolean.class ) {
+            field.setBoolean( item, buffer.get( at ) != 0 );
+        } else {
+            long time = buffer.getLong( at );
+            field.setObject( item, time == NULL_DATE ? null : new Date( time ) );
+        }
+    }
+
+    @Override
+    Object value( int row ) {
+        ByteBuffer buffer = region.buffer();
+        int at = row * width;
+        if ( type == int.class ) {
+            return buffer.getInt( at );
+        } else if ( type == long.class ) {
+            return buffer.getLong( at );
+        } else if ( type == double.class ) {
+            return buffer.getDouble( at );
+        } else if ( type == float.class ) {
+            return buffer.getFloat( at );
+        } else if ( type == short.class ) {
+            return buffer.getShort( at );
+        } else if ( type == char.class ) {
+            return buffer.getChar( at );
+        } else if ( type == byte.class ) {
+            return buffer.get( at );
+        } else if ( type == boolean.class ) {
+            return buffer.get( at ) != 0;
+        } else {
+            long time = buffer.getLong( at );
+            return time == NULL_DATE ? null : new Date( time );
+        }
+    }
+
+    /**
+     * The row as a long that sorts the same way the value does.
+     */
+    private long sortable( ByteBuffer buffer, int row ) {
+        int at = row * width;
+        if ( type == int.class ) {
+            return buffer.getInt( at );
+        } else if ( type == long.class || type == Date.class ) {
+            return buffer.getLong( at );
+        } else if ( type == double.class ) {
+            return sortable( buffer.getDouble( at ) );
+        } else if ( type == float.class ) {
+            return sortable( buffer.getFloat( at ) );
+        } else if ( type == short.class ) {
+            return buffer.getShort( at );
+        } else if ( type == char.class ) {
+            return buffer.getChar( at );
+        } else {
+            return buffer.get( at );
+        }
+    }
+
+    private static long sortable( double value ) {
+        long bits = Double.doubleToLongBits( value );
+        return bits ^ ( ( bits >> 63 ) & 0x7fffffffffffffffL );
+    }
+
+    /**
+     * A criterion value as a sortable long.
+     */
+    private long key( Object value ) {
+        if ( floating ) {
+            return sortable( Conversions.toDouble( value ) );
+        } else if ( type == Date.class ) {
+            return Conversions.toDate( value ).getTime();
+        } else if ( type == boolean.class ) {
+            return Conversions.toBoolean( value ) ? 1 : 0;
+        } else if ( type == char.class ) {
+            return Conversions.toChar( value );
+        }
+        return Conversions.toLong( value );
+    }
+
+    @Override
+    int compare( int row, int other ) {
+        ByteBuffer buffer = region.buffer();
+        return Long.compare( sortable( buffer, row ), sortable( buffer, other ) );
+    }
+
+    @Override
+    RowTest test( Operator operator, Object[] values ) {
+        final ByteBuffer buffer = region.buffer();
+        final boolean date = type == Date.class;
+
+        switch ( operator ) {
+            case IS_NULL:
+            case NOT_NULL:
+                if ( !date ) {
+                    return null;
+                }
+                final boolean isNull = operator == Operator.IS_NULL;
+                return new RowTest() {
+                    @Override
+                    public boolean test( int row ) {
+                        return ( buffer.getLong( row * width ) == NULL_DATE ) == isNull;
+                    }
+                };
+            case IN:
+            case NOT_IN:
+                final long[] keys = new long[ values.length ];
+                for ( int index = 0; index < values.length; index++ ) {
+                    keys[ index ] = key( values[ index ] );
+                }
+                final boolean in = operator == Operator.IN;
+                return new RowTest() {
+                    @Override
+                    public boolean test( int row ) {
+                        long value = sortable( buffer, row );
+                        if ( date && value == NULL_DATE ) {
+                            return false;
+                        }
+                        for ( long key : keys ) {
+                            if ( key == value ) {
+                                return in;
+                            }
+                        }
+                        return !in;
+                    }
+                };
+            case EQUAL:
+            case NOT_EQUAL:
+            case GREATER_THAN:
+            case GREATER_THAN_EQUAL:
+            case LESS_THAN:
+            case LESS_THAN_EQUAL:
+            case BETWEEN:
+                return range( buffer, date, operator, values );
+            default:
+                return null;
+        }
+    }
+
+    private RowTest range( final ByteBuffer buffer, final boolean date, final Operator operator, Object[] values ) {
+        final long key = key( values[ 0 ] );
+        final long end = operator == Operator.BETWEEN ? key( values[ 1 ] ) : 0;
+
+        return new RowTest() {
+            @Override
+            public boolean test( int row ) {
+                long value = sortable( buffer, row );
+                if ( date && value == NULL_DATE ) {
+                    return false;
+                }
+                switch ( operator ) {
+                    case EQUAL:
+                        return value == key;
+                    case NOT_EQUAL:
+                        return value != key;
+                    case GREATER_THAN:
+                        return value > key;
+                    case GREATER_THAN_EQUAL:
+                        return value >= key;
+                    case LESS_THAN:
+                        return value < key;
+                    case LESS_THAN_EQUAL:
+                        return value <= key;
+                    default:
+                        return value >= key && value <= end;
+                }
+            }
+        };
+    }
+
+    @Override
+    void close() {
+        region.close();
+    }
+}
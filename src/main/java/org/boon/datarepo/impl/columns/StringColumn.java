@@ -0,0 +1,255 @@
+package org.boon.datarepo.impl.columns;
+
+import org.boon.core.reflection.fields.FieldAccess;
+import org.boon.criteria.internal.Operator;
+import org.boon.datarepo.DataRepoException;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Column for a string field. Each row holds where its string starts in a mapped string heap, plus one,
+ * so an empty slot reads as null. The heap holds the length and then the UTF-8 bytes.
+ * <p/>
+ * Writing a row only appends to the heap when the string changed. The space of replaced and forgotten
+ * strings is given back by sliding the live strings down, once the heap would have to grow and at least
+ * half of it is unused. The heap is one mapping, so the live strings must fit in 2 GB.
+ */
+final class StringColumn extends Column {
+
+    private final MappedRegion slots;
+    private final MappedRegion heap;
+    private long heapEnd;
+    private int rows;
+
+    /* Bytes of the heap that no row points at any more. */
+    private long garbage;
+
+
+    StringColumn( FieldAccess field, File directory, int initialRows ) {
+        super( field );
+        this.slots = new MappedRegion( new File( directory, name + ".col" ), initialRows * 8 );
+        this.heap = new MappedRegion( new File( directory, name + ".heap" ), initialRows * 16 );
+    }
+
+    @Override
+    void write( int row, Object item ) {
+        String value = ( String ) field.getObject( item );
+        ByteBuffer buffer = slots.ensure( ( long ) ( row + 1 ) * 8 );
+        rows = Math.max( rows, row + 1 );
+
+        long slot = buffer.getLong( row * 8 );
+        if ( slot != 0 && value != null && value.equals( string( slot - 1 ) ) ) {
+            return;
+        }
+        forget( row );
+        if ( value == null ) {
+            return;
+        }
+
+        int at = append( value.getBytes( StandardCharsets.UTF_8 ) );
+        slots.buffer().putLong( row * 8, at + 1 );
+    }
+
+    @Override
+    void forget( int row ) {
+        if ( row >= rows ) {
+            return;
+        }
+        ByteBuffer buffer = slots.buffer();
+        long slot = buffer.getLong( row * 8 );
+        if ( slot != 0 ) {
+            garbage += 4 + heap.buffer().getInt( ( int ) ( slot - 1 ) );
+            buffer.putLong( row * 8, 0 );
+        }
+    }
+
+    private int append( byte[] bytes ) {
+        long end = heapEnd + 4 + bytes.length;
+        if ( garbage > 0 && end > heap.buffer().capacity() && ( garbage * 2 >= heapEnd || end > Integer.MAX_VALUE ) ) {
+            compact();
+            end = heapEnd + 4 + bytes.length;
+        }
+        if ( end > Integer.MAX_VALUE ) {
+            throw new DataRepoException( String.format( "The strings of column %s do not fit in 2 GB", name ) );
+        }
+
+        ByteBuffer strings = heap.ensure( end );
+        int at = ( int ) heapEnd;
+        strings.putInt( at, bytes.length );
+        ByteBuffer view = strings.duplicate();
+        view.position( at + 4 );
+        view.put( bytes );
+        heapEnd = end;
+        return at;
+    }
+
+    /**
+     * Slides every live string down over the unused space. They are moved in heap order,
+     * so a string is never written over before it has moved.
+     */
+    private void compact() {
+        ByteBuffer buffer = slots.buffer();
+        long[] live = new long[ rows ];
+        int count = 0;
+        for ( int row = 0; row < rows; row++ ) {
+            long slot = buffer.getLong( row * 8 );
+            if ( slot != 0 ) {
+                live[ count++ ] = ( slot - 1 ) << 32 | row;
+            }
+        }
+        Arrays.sort( live, 0, count );
+
+        ByteBuffer view = heap.buffer().duplicate();
+        int end = 0;
+        for ( int index = 0; index < count; index++ ) {
+            int at = ( int ) ( live[ index ] >>> 32 );
+            int row = ( int ) live[ index ];
+            int length = 4 + view.getInt( at );
+            if ( at != end ) {
+                byte[] bytes = new byte[ length ];
+                view.position( at );
+                view.get( bytes );
+                view.position( end );
+                view.put( bytes );
+                buffer.putLong( row * 8, end + 1 );
+            }
+            end += length;
+        }
+        heapEnd = end;
+        garbage = 0;
+    }
+
+    private String string( long at ) {
+        ByteBuffer strings = heap.buffer();
+        int position = ( int ) at;
+        byte[] bytes = new byte[ strings.getInt( position ) ];
+        ByteBuffer view = strings.duplicate();
+        view.position( position + 4 );
+        view.get( bytes );
+        return new String( bytes, StandardCharsets.UTF_8 );
+    }
+
+    String string( int row ) {
+        long slot = slots.buffer().getLong( row * 8 );
+        return slot == 0 ? null : string( slot - 1 );
+    }
+
+    @Override
+    void read( int row, Object item ) {
+        field.setObject( item, string( row ) );
+    }
+
+    @Override
+    Object value( int row ) {
+        return string( row );
+    }
+
+    @Override
+    int compare( int row, int other ) {
+        String value = string( row );
+        String otherValue = string( other );
+        if ( value == null ) {
+            return otherValue == null ? 0 : -1;
+        }
+        return otherValue == null ? 1 : value.compareTo( otherValue );
+    }
+
+    @Override
+    RowTest test( final Operator operator, final Object[] values ) {
+        switch ( operator ) {
+            case IS_NULL:
+            case NOT_NULL:
+                final boolean isNull = operator == Operator.IS_NULL;
+                return new RowTest() {
+                    @Override
+                    public boolean test( int row ) {
+                        return ( slots.buffer().getLong( row * 8 ) == 0 ) == isNull;
+                    }
+                };
+            case IN:
+            case NOT_IN:
+                final Set<String> keys = new HashSet<>();
+                for ( Object value : values ) {
+                    keys.add( String.valueOf( value ) );
+                }
+                final boolean in = operator == Operator.IN;
+                return new RowTest() {
+                    @Override
+                    public boolean test( int row ) {
+                        String value = string( row );
+                        return value != null && keys.contains( value ) == in;
+                    }
+                };
+            case EQUAL:
+            case NOT_EQUAL:
+            case GREATER_THAN:
+            case GREATER_THAN_EQUAL:
+            case LESS_THAN:
+            case LESS_THAN_EQUAL:
+            case BETWEEN:
+            case STARTS_WITH:
+            case ENDS_WITH:
+            case CONTAINS:
+            case NOT_CONTAINS:
+                final String key = String.valueOf( values[ 0 ] );
+                final String end = operator == Operator.BETWEEN ? String.valueOf( values[ 1 ] ) : null;
+                return new RowTest() {
+                    @Override
+                    public boolean test( int row ) {
+                        String value = string( row );
+                        if ( value == null ) {
+                            return false;
+                        }
+                        switch ( operator ) {
+                            case EQUAL:
+                                return value.equals( key );
+                            case NOT_EQUAL:
+                                return !value.equals( key );
+                            case GREATER_THAN:
+                                return value.compareTo( key ) > 0;
+                            case GREATER_THAN_EQUAL:
+                                return value.compareTo( key ) >= 0;
+                            case LESS_THAN:
+                                return value.compareTo( key ) < 0;
+                            case LESS_THAN_EQUAL:
+                                return value.compareTo( key ) <= 0;
+                            case BETWEEN:
+                                return value.compareTo( key ) >= 0 && value.compareTo( end ) <= 0;
+                            case STARTS_WITH:
+                                return value.startsWith( key );
+                            case ENDS_WITH:
+                                return value.endsWith( key );
+                            case CONTAINS:
+                                return value.contains( key );
+                            default:
+                                return !value.contains( key );
+                        }
+                    }
+                };
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    void clear() {
+        ByteBuffer buffer = slots.buffer();
+        for ( int row = 0; row < rows; row++ ) {
+            buffer.putLong( row * 8, 0 );
+        }
+        rows = 0;
+        heapEnd = 0;
+        garbage = 0;
+    }
+
+    @Override
+    void close() {
+        slots.close();
+        heap.close();
+    }
+}
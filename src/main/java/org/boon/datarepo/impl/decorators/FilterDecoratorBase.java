@@ -2,7 +2,11 @@ package org.boon.datarepo.impl.decorators;
 
 import org.boon.criteria.internal.Criteria;
 import org.boon.datarepo.Filter;
+import org.boon.datarepo.Page;
 import org.boon.datarepo.ResultSet;
+import org.boon.sort.Sort;
+
+import java.util.List;
 
 /**
  * Checking
@@ -20,8 +24,36 @@ public class FilterDecoratorBase implements Filter {
         return delegate.filter( expressions );
     }
 
+    /**
+     * Lazy results are read as they go, so there is nothing to cache.
+     */
+    @Override
+    public ResultSet lazyFilter( Criteria... expressions ) {
+        return delegate.lazyFilter( expressions );
+    }
+
+    @Override
+    public Page page( String sortBy, String cursor, int size, Criteria... expressions ) {
+        return delegate.page( sortBy, cursor, size, expressions );
+    }
+
+    @Override
+    public List sortedFilter( Sort sort, int start, int size, Criteria... expressions ) {
+        return delegate.sortedFilter( sort, start, size, expressions );
+    }
+
     @Override
     public void invalidate() {
         delegate.invalidate();
     }
+
+    @Override
+    public void invalidate( String property, Object item ) {
+        delegate.invalidate( property, item );
+    }
+
+    @Override
+    public void validate( String property, Object item ) {
+        delegate.validate( property, item );
+    }
 }
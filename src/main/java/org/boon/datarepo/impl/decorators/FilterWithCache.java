@@ -1,51 +1,272 @@
 package org.boon.datarepo.impl.decorators;
 
 import org.boon.cache.Cache;
+import org.boon.core.Function;
 import org.boon.core.Supplier;
 import org.boon.criteria.ObjectFilter;
 import org.boon.criteria.internal.Criteria;
 import org.boon.criteria.internal.Group;
+import org.boon.criteria.internal.QueryFactory;
 import org.boon.datarepo.Filter;
 import org.boon.datarepo.ResultSet;
+import org.boon.datarepo.spi.ResultSetInternal;
 
+import java.util.*;
+
+/**
+ * Caches the results of each query until a change touches them.
+ * <p/>
+ * Each cached query remembers the properties its criteria name. A change to a property of an item
+ * only touches the queries that name it: the item is taken out of their results before the change
+ * and put back where it was afterwards if it still matches. Adding or removing an item patches every
+ * cached query the same way. Queries on other properties keep their results, so writes do not empty
+ * the cache. A result that can not be patched, or is too big to copy on each write, is dropped and
+ * run again the next time it is asked for.
+ *
+ * @author Rick Hightower
+ */
 public class FilterWithCache extends FilterDecoratorBase {
 
+    /* Results bigger than this are dropped on a change instead of copied. */
+    static final int PATCH_LIMIT = 1_000;
+
     private final Supplier<Cache<Group, ResultSet>> cacheFactory;
 
+    /* Finds an item in the results after it changed. Without it items are found by identity. */
+    private final Function<Object, Object> keyGetter;
+
     private Cache<Group, ResultSet> cache;
 
+    /* Cached queries and the properties they name, null when the criteria can not be walked. */
+    private final Map<Group, Set<String>> queries = new LinkedHashMap<>();
+    private final Map<String, Set<Group>> queriesByProperty = new HashMap<>();
+    private final Set<Group> queriesOnAnything = new LinkedHashSet<>();
+
+    /* Where a changing item sat in each result it was taken out of, so it goes back in the same place. */
+    private final Map<Object, Map<Group, Integer>> removedAt;
+
+    /* Counts changes so a query that ran while one was made does not cache what it found. */
+    private long changes;
+
     public FilterWithCache( final Filter delegate, final Supplier<Cache<Group, ResultSet>> cacheFactory ) {
+        this( delegate, cacheFactory, null );
+    }
+
+    public FilterWithCache( final Filter delegate, final Supplier<Cache<Group, ResultSet>> cacheFactory,
+                            final Function<Object, Object> keyGetter ) {
         super( delegate );
         this.cacheFactory = cacheFactory;
+        this.keyGetter = keyGetter;
         this.cache = cacheFactory.get();
+        this.removedAt = keyGetter == null ? new IdentityHashMap<Object, Map<Group, Integer>>()
+                : new HashMap<Object, Map<Group, Integer>>();
     }
 
     @Override
     public ResultSet filter( Criteria... expressions ) {
         Group and = ObjectFilter.and( expressions );
 
-        ResultSet results = cache.get( and );
-
-
-        if ( results != null ) {
-            cache.put( and, results );
-            return results;
+        long seen;
+        synchronized ( this ) {
+            ResultSet results = cache.get( and );
+            if ( results != null ) {
+                return results;
+            }
+            seen = changes;
         }
 
+        ResultSet results = super.filter( expressions );
 
-        results = super.filter( expressions );
-
-        cache.put( and, results );
+        synchronized ( this ) {
+            if ( seen == changes ) {
+                remember( and, results );
+            }
+        }
 
         return results;
     }
 
     @Override
     public void invalidate() {
-
-        cache = this.cacheFactory.get();
+        synchronized ( this ) {
+            changes++;
+            cache = this.cacheFactory.get();
+            queries.clear();
+            queriesByProperty.clear();
+            queriesOnAnything.clear();
+            removedAt.clear();
+        }
         super.invalidate();
     }
 
+    @Override
+    public void invalidate( String property, Object item ) {
+        synchronized ( this ) {
+            changes++;
+            Map<Group, Integer> positions = new HashMap<>();
+            for ( Group query : dependingOn( property ) ) {
+                remove( query, item, positions );
+            }
+            /* A removed item does not come back, so only a change remembers where it was. */
+            if ( property != null && positions.size() > 0 ) {
+                Object key = keyOf( item );
+                Map<Group, Integer> earlier = removedAt.get( key );
+                if ( earlier != null ) {
+                    positions.putAll( earlier );
+                }
+                removedAt.put( key, positions );
+            } else if ( property == null ) {
+                removedAt.remove( keyOf( item ) );
+            }
+        }
+        super.invalidate( property, item );
+    }
+
+    @Override
+    public void validate( String property, Object item ) {
+        synchronized ( this ) {
+            changes++;
+            Map<Group, Integer> positions = removedAt.remove( keyOf( item ) );
+            for ( Group query : dependingOn( property ) ) {
+                add( query, item, positions == null ? null : positions.get( query ) );
+            }
+        }
+        super.validate( property, item );
+    }
+
+    private List<Group> dependingOn( String property ) {
+        if ( property == null ) {
+            return new ArrayList<>( queries.keySet() );
+        }
+        List<Group> depending = new ArrayList<>( queriesOnAnything );
+        Set<Group> naming = queriesByProperty.get( property );
+        if ( naming != null ) {
+            depending.addAll( naming );
+        }
+        return depending;
+    }
+
+    private void remember( Group query, ResultSet results ) {
+        cache.put( query, results );
+        if ( queries.containsKey( query ) ) {
+            return;
+        }
+
+        Set<String> properties = new HashSet<>();
+        if ( !QueryFactory.properties( query, properties ) ) {
+            properties = null;
+            queriesOnAnything.add( query );
+        } else {
+            for ( String property : properties ) {
+                Set<Group> naming = queriesByProperty.get( property );
+                if ( naming == null ) {
+                    naming = new LinkedHashSet<>();
+                    queriesByProperty.put( property, naming );
+                }
+                naming.add( query );
+            }
+        }
+        queries.put( query, properties );
+    }
+
+    private void forget( Group query ) {
+        cache.remove( query );
+        Set<String> properties = queries.remove( query );
+        if ( properties == null ) {
+            queriesOnAnything.remove( query );
+            return;
+        }
+        for ( String property : properties ) {
+            Set<Group> naming = queriesByProperty.get( property );
+            naming.remove( query );
+            if ( naming.size() == 0 ) {
+                queriesByProperty.remove( property );
+            }
+        }
+    }
+
+    private Object keyOf( Object item ) {
+        return keyGetter == null ? item : keyGetter.apply( item );
+    }
+
+    /**
+     * Takes the item out of the cached results of the query and notes where it was.
+     * Only results the item matches can hold it, so the rest are not searched or copied.
+     */
+    private void remove( Group query, Object item, Map<Group, Integer> positions ) {
+        ResultSet results = patchable( query );
+        if ( results == null ) {
+            return;
+        }
+
+        try {
+            if ( !query.test( item ) ) {
+                return;
+            }
+            List<Object> before = results.asList();
+            int index = indexOf( before, item );
+            if ( index != -1 ) {
+                List<Object> after = new ArrayList<>( before );
+                after.remove( index );
+                replace( query, results, after );
+                positions.put( query, index );
+            }
+        } catch ( RuntimeException ex ) {
+            forget( query );
+        }
+    }
 
+    /**
+     * Puts the item in the cached results of the query if it matches: back where it was taken out,
+     * or at the end when it is new to them. Results handed out by an index may be the index's own list,
+     * which already holds the item again.
+     */
+    private void add( Group query, Object item, Integer position ) {
+        ResultSet results = patchable( query );
+        if ( results == null ) {
+            return;
+        }
+
+        try {
+            if ( !query.test( item ) ) {
+                return;
+            }
+            List<Object> before = results.asList();
+            if ( indexOf( before, item ) != -1 ) {
+                return;
+            }
+            List<Object> after = new ArrayList<>( before.size() + 1 );
+            after.addAll( before );
+            after.add( position == null ? after.size() : Math.min( position, after.size() ), item );
+            replace( query, results, after );
+        } catch ( RuntimeException ex ) {
+            forget( query );
+        }
+    }
+
+    private int indexOf( List<Object> results, Object item ) {
+        Object key = keyOf( item );
+        for ( int index = 0; index < results.size(); index++ ) {
+            Object result = results.get( index );
+            if ( keyGetter == null ? result == item : key.equals( keyGetter.apply( result ) ) ) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /* The cached results of the query if they can be patched. Ones that can not are dropped. */
+    private ResultSet patchable( Group query ) {
+        ResultSet results = cache.getSilent( query );
+        if ( !( results instanceof ResultSetInternal ) || results.size() > PATCH_LIMIT ) {
+            forget( query );
+            return null;
+        }
+        return results;
+    }
+
+    /* The cached result set is replaced, not changed, since callers may still be reading it. */
+    private void replace( Group query, ResultSet results, List<Object> after ) {
+        cache.put( query, ( ( ResultSetInternal ) results ).withResults( after ) );
+    }
 }
@@ -6,14 +6,26 @@ import org.boon.cache.SimpleConcurrentCache;
 import org.boon.criteria.ObjectFilter;
 import org.boon.criteria.internal.Criteria;
 import org.boon.criteria.internal.Group;
+import org.boon.criteria.internal.QueryFactory;
 import org.boon.datarepo.Filter;
 import org.boon.datarepo.ResultSet;
 
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 public class FilterWithSimpleCache extends FilterDecoratorBase {
 
     /* The fifo cache is meant for a routine that is maybe using a few queries in a loop. */
-    private Cache<Criteria, ResultSet> fifoCache = new SimpleConcurrentCache<>( 50, false, CacheType.FIFO );
-    private Cache<Criteria, ResultSet> lruCache = new SimpleConcurrentCache<>( 1_000, false, CacheType.LRU );
+    private volatile Cache<Criteria, ResultSet> fifoCache = new SimpleConcurrentCache<>( 50, false, CacheType.FIFO );
+    private volatile Cache<Criteria, ResultSet> lruCache = new SimpleConcurrentCache<>( 1_000, false, CacheType.LRU );
+
+    /* Cached queries by the properties they name, so a change only drops the queries it can touch. */
+    private final ConcurrentMap<String, Set<Criteria>> queriesByProperty = new ConcurrentHashMap<>();
+    private final Set<Criteria> queriesOnAnything = newSet();
+    private final Set<Criteria> queries = newSet();
 
 
     @Override
@@ -22,13 +34,14 @@ public class FilterWithSimpleCache extends FilterDecoratorBase {
 
         ResultSet results = fifoCache.get( and );
 
+        if ( results != null ) {
+            return results;
+        }
 
-        if ( results == null ) {
-            results = lruCache.get( and );
-            if ( results != null ) {
-                fifoCache.put( and, results );
-                return results;
-            }
+        results = lruCache.get( and );
+        if ( results != null ) {
+            fifoCache.put( and, results );
+            return results;
         }
 
 
@@ -36,17 +49,90 @@ public class FilterWithSimpleCache extends FilterDecoratorBase {
 
         fifoCache.put( and, results );
         lruCache.put( and, results );
+        remember( and );
 
         return results;
     }
 
     @Override
     public void invalidate() {
+        clearCaches();
+        super.invalidate();
+    }
+
+    /* A change to one property only drops the queries that name it. A removed item drops everything. */
+    @Override
+    public void invalidate( String property, Object item ) {
+        if ( property == null ) {
+            clearCaches();
+        } else {
+            forget( queriesOnAnything );
+            Set<Criteria> naming = queriesByProperty.get( property );
+            if ( naming != null ) {
+                forget( naming );
+            }
+        }
+        super.invalidate( property, item );
+    }
+
+    /* A new item may match any query. */
+    @Override
+    public void validate( String property, Object item ) {
+        if ( property == null ) {
+            clearCaches();
+        }
+        super.validate( property, item );
+    }
 
-          /* The fifo cache is meant for a routine that is maybe using a few queries in a loop. */
+    private void remember( Group query ) {
+        if ( !queries.add( query ) ) {
+            return;
+        }
+
+        /* Queries the caches evicted are still tracked, so start over once there are far too many. */
+        if ( queries.size() > 2_000 ) {
+            clearCaches();
+            return;
+        }
+
+        Set<String> properties = new HashSet<>();
+        if ( !QueryFactory.properties( query, properties ) ) {
+            queriesOnAnything.add( query );
+            return;
+        }
+        for ( String property : properties ) {
+            Set<Criteria> naming = queriesByProperty.get( property );
+            if ( naming == null ) {
+                Set<Criteria> created = newSet();
+                naming = queriesByProperty.putIfAbsent( property, created );
+                if ( naming == null ) {
+                    naming = created;
+                }
+            }
+            naming.add( query );
+        }
+    }
+
+    private void forget( Set<Criteria> dropped ) {
+        for ( Criteria query : dropped ) {
+            dropped.remove( query );
+            fifoCache.remove( query );
+            lruCache.remove( query );
+            queries.remove( query );
+        }
+    }
+
+    private void clearCaches() {
+        /* The fifo cache is meant for a routine that is maybe using a few queries in a loop. */
         fifoCache = new SimpleConcurrentCache<>( 50, false, CacheType.FIFO );
         lruCache = new SimpleConcurrentCache<>( 1_000, false, CacheType.LRU );
-        super.invalidate();
+        queries.clear();
+        queriesByProperty.clear();
+        queriesOnAnything.clear();
+    }
+
+    private static Set<Criteria> newSet() {
+        return Collections.newSetFromMap( new ConcurrentHashMap<Criteria, Boolean>() );
     }
 
     public FilterWithSimpleCache( Filter delegate ) {
@@ -5,6 +5,7 @@ import org.boon.datarepo.ObjectEditor;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Future;
 
 public class ObjectEditorDecoratorBase<KEY, ITEM> implements ObjectEditor<KEY, ITEM> {
     private final ObjectEditor<KEY, ITEM> objectEditorDefault;
@@ -42,8 +43,13 @@ public class ObjectEditorDecoratorBase<KEY, ITEM> implements ObjectEditor<KEY, I
         objectEditorDefault.addAll( items );
     }
 
+    /* Decorators that load their own way only override submitAll. */
     public void addAllAsync( Collection<ITEM> items ) {
-        objectEditorDefault.addAllAsync( items );
+        submitAll( items );
+    }
+
+    public Future<?> submitAll( Collection<ITEM> items ) {
+        return objectEditorDefault.submitAll( items );
     }
 
     public void modifyAll( ITEM... items ) {
@@ -0,0 +1,612 @@
+package org.boon.datarepo.impl.decorators;
+
+import org.boon.core.reflection.BeanUtils;
+import org.boon.core.reflection.fields.FieldAccess;
+import org.boon.core.timer.TimeKeeper;
+import org.boon.criteria.Update;
+import org.boon.datarepo.ObjectEditor;
+import org.boon.datarepo.impl.TimingWheel;
+import org.boon.datarepo.modification.ModificationListener;
+import org.boon.datarepo.modification.ModificationType;
+
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.boon.datarepo.modification.ModificationEvent.createModification;
+import static org.boon.datarepo.modification.ModificationType.AFTER_EXPIRE;
+import static org.boon.datarepo.modification.ModificationType.BEFORE_EXPIRE;
+
+/**
+ * Removes items once their time to live is up, and the least recently written items once the repo holds
+ * more than its maximum size. An item's time starts when it is added or written whole, and is read from its
+ * time to live property if it has one, otherwise the repo's time to live is used. Updating the time to live
+ * property starts the time again.
+ * <p/>
+ * Due items are kept on a {@link TimingWheel} driven by the {@link TimeKeeper}, so nothing ever scans the repo.
+ * The wheel is turned by every call through this editor, and by the repo before each query, so a query never
+ * returns an item that is due. A concurrent repo also has it turned in the background, a repo that is not
+ * concurrent only from the threads that use it.
+ * <p/>
+ * The removal goes through the editors underneath, so the item leaves every index and the journal,
+ * and each one fires {@link ModificationType#BEFORE_EXPIRE} and
+ * {@link ModificationType#AFTER_EXPIRE}.
+ */
+public class ObjectEditorExpiryDecorator<KEY, ITEM> extends ObjectEditorDecoratorBase<KEY, ITEM> {
+
+    private static final long TICK_MILLIS = 10;
+
+    private static ScheduledExecutorService sweeper;
+
+    private final TimeKeeper timeKeeper;
+    private final long timeToLive;
+    private final String timeToLiveProperty;
+    private final TimeUnit timeToLiveUnit;
+    private final int maxSize;
+    private final List<ModificationListener> listeners;
+
+    /* Guarded by the wheel. Written keys in the order they were last written, only kept with a max size. */
+    private final TimingWheel<KEY> wheel;
+    private final LinkedHashMap<KEY, Boolean> written = new LinkedHashMap<>();
+    private FieldAccess timeToLiveField;
+
+    private volatile long nextTick;
+
+
+    /**
+     * @param timeToLive         time to live in milliseconds, 0 for none
+     * @param timeToLiveProperty property of the item that holds its own time to live, or null
+     * @param maxSize            most items to keep, 0 for no limit
+     * @param listeners          told of each expiry, may be empty
+     */
+    public ObjectEditorExpiryDecorator( ObjectEditor oe, TimeKeeper timeKeeper, long timeToLive,
+                                        String timeToLiveProperty, TimeUnit timeToLiveUnit, int maxSize,
+                                        List<ModificationListener> listeners ) {
+        super( oe );
+        this.timeKeeper = timeKeeper;
+        this.timeToLive = timeToLive;
+        this.timeToLiveProperty = timeToLiveProperty;
+        this.timeToLiveUnit = timeToLiveUnit;
+        this.maxSize = maxSize;
+        this.listeners = listeners;
+        long now = timeKeeper.time();
+        this.wheel = new TimingWheel<>( TICK_MILLIS, now );
+        this.nextTick = now + TICK_MILLIS;
+
+        /* Items already in the repo, recovered from a journal say, start their time now. */
+        for ( ITEM item : delegate().all() ) {
+            written( item );
+        }
+    }
+
+    /**
+     * Turns the wheel every ten ticks on a daemon thread. The repo is only weakly held,
+     * so a repo nobody uses any more is not kept alive and its task stops.
+     */
+    public void sweepInBackground() {
+        final WeakReference<ObjectEditorExpiryDecorator> reference = new WeakReference<ObjectEditorExpiryDecorator>( this );
+        final Future<?>[] task = new Future<?>[ 1 ];
+        synchronized ( ObjectEditorExpiryDecorator.class ) {
+            if ( sweeper == null ) {
+                sweeper = Executors.newSingleThreadScheduledExecutor( new ThreadFactory() {
+                    @Override
+                    public Thread newThread( Runnable runnable ) {
+                        Thread thread = new Thread( runnable, "repo-expiry" );
+                        thread.setDaemon( true );
+                        return thread;
+                    }
+                } );
+            }
+            task[ 0 ] = sweeper.scheduleWithFixedDelay( new Runnable() {
+                @Override
+                public void run() {
+                    ObjectEditorExpiryDecorator editor = reference.get();
+                    if ( editor == null ) {
+                        task[ 0 ].cancel( false );
+                    } else {
+                        editor.expire();
+                    }
+                }
+            }, TICK_MILLIS * 10, TICK_MILLIS * 10, TimeUnit.MILLISECONDS );
+        }
+    }
+
+    /**
+     * Removes whatever is due. Cheap when the clock has not moved a tick since the last time.
+     */
+    public void expire() {
+        long now = timeKeeper.time();
+        if ( now < nextTick ) {
+            return;
+        }
+        List<KEY> due;
+        synchronized ( wheel ) {
+            nextTick = ( now / TICK_MILLIS + 1 ) * TICK_MILLIS;
+            due = wheel.advance( now );
+            for ( KEY key : due ) {
+                written.remove( key );
+            }
+        }
+        remove( due );
+    }
+
+    private long timeToLive( ITEM item ) {
+        if ( timeToLiveProperty != null ) {
+            if ( timeToLiveField == null ) {
+                timeToLiveField = BeanUtils.getFieldsFromObject( item ).get( timeToLiveProperty );
+            }
+            Object value = timeToLiveField == null ? null : timeToLiveField.getValue( item );
+            if ( value instanceof Number && ( ( Number ) value ).longValue() > 0 ) {
+                return timeToLiveUnit.toMillis( ( ( Number ) value ).longValue() );
+            }
+        }
+        return timeToLive;
+    }
+
+    /**
+     * Starts the item's time again and, with a max size, evicts the least recently written over it.
+     */
+    private void written( ITEM item ) {
+        KEY key = super.getKey( item );
+        long timeToLive = timeToLive( item );
+        List<KEY> evicted = Collections.emptyList();
+        synchronized ( wheel ) {
+            if ( timeToLive > 0 ) {
+                wheel.schedule( key, timeKeeper.time() + timeToLive );
+            } else {
+                wheel.cancel( key );
+            }
+            if ( maxSize > 0 ) {
+                written.remove( key );
+                written.put( key, Boolean.TRUE );
+                if ( written.size() > maxSize ) {
+                    evicted = new ArrayList<>();
+                    Iterator<KEY> oldest = written.keySet().iterator();
+                    while ( written.size() > maxSize ) {
+                        KEY evict = oldest.next();
+                        oldest.remove();
+                        wheel.cancel( evict );
+                        evicted.add( evict );
+                    }
+                }
+            }
+        }
+        remove( evicted );
+    }
+
+    private void writtenAll( Collection<ITEM> items ) {
+        for ( ITEM item : items ) {
+            written( item );
+        }
+    }
+
+    private void removed( KEY key ) {
+        synchronized ( wheel ) {
+            wheel.cancel( key );
+            written.remove( key );
+        }
+    }
+
+    /**
+     * Keys written again since they came due are left alone.
+     */
+    private void remove( List<KEY> keys ) {
+        for ( KEY key : keys ) {
+            synchronized ( wheel ) {
+                if ( wheel.isScheduled( key ) || written.containsKey( key ) ) {
+                    continue;
+                }
+            }
+            ITEM item = super.get( key );
+            if ( item == null ) {
+                continue;
+            }
+            fire( BEFORE_EXPIRE, key, item );
+            super.removeByKey( key );
+            fire( AFTER_EXPIRE, key, item );
+        }
+    }
+
+    private void fire( ModificationType type, KEY key, ITEM item ) {
+        for ( ModificationListener listener : listeners ) {
+            listener.modification( createModification( type, key, item, null, null ) );
+        }
+    }
+
+    @Override
+    public boolean add( ITEM item ) {
+        expire();
+        boolean added = super.add( item );
+        if ( added ) {
+            written( item );
+        }
+        return added;
+    }
+
+    @Override
+    public void put( ITEM item ) {
+        expire();
+        super.put( item );
+        written( item );
+    }
+
+    @Override
+    public void addAll( ITEM... items ) {
+        expire();
+        super.addAll( items );
+        writtenAll( Arrays.asList( items ) );
+    }
+
+    @Override
+    public void addAll( List<ITEM> items ) {
+        expire();
+        super.addAll( items );
+        writtenAll( items );
+    }
+
+    @Override
+    public Future<?> submitAll( Collection<ITEM> items ) {
+        expire();
+        Future<?> future = super.submitAll( items );
+        writtenAll( items );
+        return future;
+    }
+
+    @Override
+    public void modify( ITEM item ) {
+        expire();
+        super.modify( item );
+        written( item );
+    }
+
+    @Override
+    public void update( ITEM item ) {
+        expire();
+        super.update( item );
+        written( item );
+    }
+
+    @Override
+    public void modifyAll( ITEM... items ) {
+        expire();
+        super.modifyAll( items );
+        writtenAll( Arrays.asList( items ) );
+    }
+
+    @Override
+    public void modifyAll( Collection<ITEM> items ) {
+        expire();
+        super.modifyAll( items );
+        writtenAll( items );
+    }
+
+    @Override
+    public void modify( ITEM item, String property, Object value ) {
+        expire();
+        super.modify( item, property, value );
+        edited( super.getKey( item ), property );
+    }
+
+    @Override
+    public void modifyByValue( ITEM item, String property, String value ) {
+        expire();
+        super.modifyByValue( item, property, value );
+        edited( super.getKey( item ), property );
+    }
+
+    @Override
+    public void modify( ITEM item, String property, int value ) {
+        expire();
+        super.modify( item, property, value );
+        edited( super.getKey( item ), property );
+    }
+
+    @Override
+    public void modify( ITEM item, String property, long value ) {
+        expire();
+        super.modify( item, property, value );
+        edited( super.getKey( item ), property );
+    }
+
+    @Override
+    public void modify( ITEM item, String property, char value ) {
+        expire();
+        super.modify( item, property, value );
+        edited( super.getKey( item ), property );
+    }
+
+    @Override
+    public void modify( ITEM item, String property, short value ) {
+        expire();
+        super.modify( item, property, value );
+        edited( super.getKey( item ), property );
+    }
+
+    @Override
+    public void modify( ITEM item, String property, byte value ) {
+        expire();
+        super.modify( item, property, value );
+        edited( super.getKey( item ), property );
+    }
+
+    @Override
+    public void modify( ITEM item, String property, float value ) {
+        expire();
+        super.modify( item, property, value );
+        edited( super.getKey( item ), property );
+    }
+
+    @Override
+    public void modify( ITEM item, String property, double value ) {
+        expire();
+        super.modify( item, property, value );
+        edited( super.getKey( item ), property );
+    }
+
+    @Override
+    public void modify( ITEM item, Update... values ) {
+        expire();
+        super.modify( item, values );
+        edited( super.getKey( item ), values );
+    }
+
+    @Override
+    public void update( KEY key, String property, Object value ) {
+        expire();
+        super.update( key, property, value );
+        edited( key, property );
+    }
+
+    @Override
+    public void updateByValue( KEY key, String property, String value ) {
+        expire();
+        super.updateByValue( key, property, value );
+        edited( key, property );
+    }
+
+    @Override
+    public void update( KEY key, String property, int value ) {
+        expire();
+        super.update( key, property, value );
+        edited( key, property );
+    }
+
+    @Override
+    public void update( KEY key, String property, long value ) {
+        expire();
+        super.update( key, property, value );
+        edited( key, property );
+    }
+
+    @Override
+    public void update( KEY key, String property, char value ) {
+        expire();
+        super.update( key, property, value );
+        edited( key, property );
+    }
+
+    @Override
+    public void update( KEY key, String property, short value ) {
+        expire();
+        super.update( key, property, value );
+        edited( key, property );
+    }
+
+    @Override
+    public void update( KEY key, String property, byte value ) {
+        expire();
+        super.update( key, property, value );
+        edited( key, property );
+    }
+
+    @Override
+    public void update( KEY key, String property, float value ) {
+        expire();
+        super.update( key, property, value );
+        edited( key, property );
+    }
+
+    @Override
+    public void update( KEY key, String property, double value ) {
+        expire();
+        super.update( key, property, value );
+        edited( key, property );
+    }
+
+    @Override
+    public void update( KEY key, Update... values ) {
+        expire();
+        super.update( key, values );
+        edited( key, values );
+    }
+
+    @Override
+    public boolean compareAndUpdate( KEY key, String property, Object compare, Object value ) {
+        expire();
+        boolean updated = super.compareAndUpdate( key, property, compare, value );
+        if ( updated ) {
+            edited( key, property );
+        }
+        return updated;
+    }
+
+    @Override
+    public boolean compareAndUpdate( KEY key, String property, int compare, int value ) {
+        expire();
+        boolean updated = super.compareAndUpdate( key, property, compare, value );
+        if ( updated ) {
+            edited( key, property );
+        }
+        return updated;
+    }
+
+    @Override
+    public boolean compareAndUpdate( KEY key, String property, long compare, long value ) {
+        expire();
+        boolean updated = super.compareAndUpdate( key, property, compare, value );
+        if ( updated ) {
+            edited( key, property );
+        }
+        return updated;
+    }
+
+    @Override
+    public boolean compareAndUpdate( KEY key, String property, char compare, char value ) {
+        expire();
+        boolean updated = super.compareAndUpdate( key, property, compare, value );
+        if ( updated ) {
+            edited( key, property );
+        }
+        return updated;
+    }
+
+    @Override
+    public boolean compareAndUpdate( KEY key, String property, short compare, short value ) {
+        expire();
+        boolean updated = super.compareAndUpdate( key, property, compare, value );
+        if ( updated ) {
+            edited( key, property );
+        }
+        return updated;
+    }
+
+    @Override
+    public boolean compareAndUpdate( KEY key, String property, byte compare, byte value ) {
+        expire();
+        boolean updated = super.compareAndUpdate( key, property, compare, value );
+        if ( updated ) {
+            edited( key, property );
+        }
+        return updated;
+    }
+
+    @Override
+    public boolean compareAndUpdate( KEY key, String property, float compare, float value ) {
+        expire();
+        boolean updated = super.compareAndUpdate( key, property, compare, value );
+        if ( updated ) {
+            edited( key, property );
+        }
+        return updated;
+    }
+
+    @Override
+    public boolean compareAndUpdate( KEY key, String property, double compare, double value ) {
+        expire();
+        boolean updated = super.compareAndUpdate( key, property, compare, value );
+        if ( updated ) {
+            edited( key, property );
+        }
+        return updated;
+    }
+
+    @Override
+    public boolean compareAndIncrement( KEY key, String property, int compare ) {
+        expire();
+        boolean updated = super.compareAndIncrement( key, property, compare );
+        if ( updated ) {
+            edited( key, property );
+        }
+        return updated;
+    }
+
+    @Override
+    public boolean compareAndIncrement( KEY key, String property, long compare ) {
+        expire();
+        boolean updated = super.compareAndIncrement( key, property, compare );
+        if ( updated ) {
+            edited( key, property );
+        }
+        return updated;
+    }
+
+    @Override
+    public boolean compareAndIncrement( KEY key, String property, short compare ) {
+        expire();
+        boolean updated = super.compareAndIncrement( key, property, compare );
+        if ( updated ) {
+            edited( key, property );
+        }
+        return updated;
+    }
+
+    @Override
+    public boolean compareAndIncrement( KEY key, String property, byte compare ) {
+        expire();
+        boolean updated = super.compareAndIncrement( key, property, compare );
+        if ( updated ) {
+            edited( key, property );
+        }
+        return updated;
+    }
+
+    /**
+     * Every edit of single properties ends here. Setting the time to live property starts the item's time again.
+     */
+    private void edited( KEY key, String property ) {
+        if ( timeToLiveProperty != null && timeToLiveProperty.equals( property ) ) {
+            ITEM item = super.get( key );
+            if ( item != null ) {
+                written( item );
+            }
+        }
+    }
+
+    /* An update that does not name its property may have set the time to live. */
+    private void edited( KEY key, Update... values ) {
+        for ( Update value : values ) {
+            if ( value.getName() == null || value.getName().equals( timeToLiveProperty ) ) {
+                edited( key, timeToLiveProperty );
+                return;
+            }
+        }
+    }
+
+    @Override
+    public boolean delete( ITEM item ) {
+        expire();
+        boolean deleted = super.delete( item );
+        removed( super.getKey( item ) );
+        return deleted;
+    }
+
+    @Override
+    public void removeByKey( KEY key ) {
+        expire();
+        super.removeByKey( key );
+        removed( key );
+    }
+
+    @Override
+    public void removeAll( ITEM... items ) {
+        expire();
+        super.removeAll( items );
+        for ( ITEM item : items ) {
+            removed( super.getKey( item ) );
+        }
+    }
+
+    @Override
+    public void removeAllAsync( Collection<ITEM> items ) {
+        expire();
+        super.removeAllAsync( items );
+        for ( ITEM item : items ) {
+            removed( super.getKey( item ) );
+        }
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        synchronized ( wheel ) {
+            wheel.clear();
+            written.clear();
+        }
+    }
+
+    @Override
+    public ITEM get( KEY key ) {
+        expire();
+        return super.get( key );
+    }
+}
@@ -0,0 +1,325 @@
+package org.boon.datarepo.impl.decorators;
+
+import org.boon.criteria.Update;
+import org.boon.datarepo.ObjectEditor;
+import org.boon.datarepo.impl.journal.ChangeLog;
+import org.boon.datarepo.impl.journal.Journal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * Logs every change to a {@link ChangeLog} once the editor underneath has made it.
+ * With a {@link Journal} the change is on disk by the time the call returns.
+ */
+public class ObjectEditorJournalDecorator<KEY, ITEM> extends ObjectEditorDecoratorBase<KEY, ITEM> {
+
+    private final ChangeLog journal;
+
+    public ObjectEditorJournalDecorator( ObjectEditor oe, ChangeLog journal ) {
+        super( oe );
+        this.journal = journal;
+    }
+
+    private void journalKey( KEY key ) {
+        journal.log( delegate(), key );
+    }
+
+    private void journalItem( ITEM item ) {
+        journal.log( delegate(), super.getKey( item ) );
+    }
+
+    private void journalAll( Collection<ITEM> items ) {
+        List<KEY> keys = new ArrayList<>( items.size() );
+        for ( ITEM item : items ) {
+            keys.add( super.getKey( item ) );
+        }
+        journal.log( delegate(), keys );
+    }
+
+    private void journalAll( ITEM[] items ) {
+        List<KEY> keys = new ArrayList<>( items.length );
+        for ( ITEM item : items ) {
+            keys.add( super.getKey( item ) );
+        }
+        journal.log( delegate(), keys );
+    }
+
+    @Override
+    public boolean add( ITEM item ) {
+        boolean added = super.add( item );
+        if ( added ) {
+            journalItem( item );
+        }
+        return added;
+    }
+
+    @Override
+    public void put( ITEM item ) {
+        super.put( item );
+        journalItem( item );
+    }
+
+    @Override
+    public boolean delete( ITEM item ) {
+        boolean deleted = super.delete( item );
+        journalItem( item );
+        return deleted;
+    }
+
+    @Override
+    public void removeByKey( KEY key ) {
+        super.removeByKey( key );
+        journalKey( key );
+    }
+
+    @Override
+    public void removeAll( ITEM... items ) {
+        super.removeAll( items );
+        journalAll( items );
+    }
+
+    @Override
+    public void removeAllAsync( Collection<ITEM> items ) {
+        super.removeAllAsync( items );
+        journalAll( items );
+    }
+
+    @Override
+    public void addAll( ITEM... items ) {
+        super.addAll( items );
+        journalAll( items );
+    }
+
+    @Override
+    public Future<?> submitAll( Collection<ITEM> items ) {
+        Future<?> load = super.submitAll( items );
+        journalAll( items );
+        return load;
+    }
+
+    @Override
+    public void addAll( List<ITEM> items ) {
+        super.addAll( items );
+        journalAll( items );
+    }
+
+    @Override
+    public void modifyAll( ITEM... items ) {
+        super.modifyAll( items );
+        journalAll( items );
+    }
+
+    @Override
+    public void modifyAll( Collection<ITEM> items ) {
+        super.modifyAll( items );
+        journalAll( items );
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        journal.clear( delegate() );
+    }
+
+    @Override
+    public void modify( ITEM item ) {
+        super.modify( item );
+        journalItem( item );
+    }
+
+    @Override
+    public void update( ITEM item ) {
+        super.update( item );
+        journalItem( item );
+    }
+
+    @Override
+    public void modify( ITEM item, String property, Object value ) {
+        super.modify( item, property, value );
+        journalItem( item );
+    }
+
+    @Override
+    public void modifyByValue( ITEM item, String property, String value ) {
+        super.modifyByValue( item, property, value );
+        journalItem( item );
+    }
+
+    @Override
+    public void modify( ITEM item, String property, int value ) {
+        super.modify( item, property, value );
+        journalItem( item );
+    }
+
+    @Override
+    public void modify( ITEM item, String property, long value ) {
+        super.modify( item, property, value );
+        journalItem( item );
+    }
+
+    @Override
+    public void modify( ITEM item, String property, char value ) {
+        super.modify( item, property, value );
+        journalItem( item );
+    }
+
+    @Override
+    public void modify( ITEM item, String property, short value ) {
+        super.modify( item, property, value );
+        journalItem( item );
+    }
+
+    @Override
+    public void modify( ITEM item, String property, byte value ) {
+        super.modify( item, property, value );
+        journalItem( item );
+    }
+
+    @Override
+    public void modify( ITEM item, String property, float value ) {
+        super.modify( item, property, value );
+        journalItem( item );
+    }
+
+    @Override
+    public void modify( ITEM item, String property, double value ) {
+        super.modify( item, property, value );
+        journalItem( item );
+    }
+
+    @Override
+    public void modify( ITEM item, Update... values ) {
+        super.modify( item, values );
+        journalItem( item );
+    }
+
+    @Override
+    public void update( KEY key, String property, Object value ) {
+        super.update( key, property, value );
+        journalKey( key );
+    }
+
+    @Override
+    public void updateByValue( KEY key, String property, String value ) {
+        super.updateByValue( key, property, value );
+        journalKey( key );
+    }
+
+    @Override
+    public void update( KEY key, String property, int value ) {
+        super.update( key, property, value );
+        journalKey( key );
+    }
+
+    @Override
+    public void update( KEY key, String property, long value ) {
+        super.update( key, property, value );
+        journalKey( key );
+    }
+
+    @Override
+    public void update( KEY key, String property, char value ) {
+        super.update( key, property, value );
+        journalKey( key );
+    }
+
+    @Override
+    public void update( KEY key, String property, short value ) {
+        super.update( key, property, value );
+        journalKey( key );
+    }
+
+    @Override
+    public void update( KEY key, String property, byte value ) {
+        super.update( key, property, value );
+        journalKey( key );
+    }
+
+    @Override
+    public void update( KEY key, String property, float value ) {
+        super.update( key, property, value );
+        journalKey( key );
+    }
+
+    @Override
+    public void update( KEY key, String property, double value ) {
+        super.update( key, property, value );
+        journalKey( key );
+    }
+
+    @Override
+    public void update( KEY key, Update... values ) {
+        super.update( key, values );
+        journalKey( key );
+    }
+
+    @Override
+    public boolean compareAndUpdate( KEY key, String property, Object compare, Object value ) {
+        return journalIf( super.compareAndUpdate( key, property, compare, value ), key );
+    }
+
+    @Override
+    public boolean compareAndUpdate( KEY key, String property, int compare, int value ) {
+        return journalIf( super.compareAndUpdate( key, property, compare, value ), key );
+    }
+
+    @Override
+    public boolean compareAndUpdate( KEY key, String property, long compare, long value ) {
+        return journalIf( super.compareAndUpdate( key, property, compare, value ), key );
+    }
+
+    @Override
+    public boolean compareAndUpdate( KEY key, String property, char compare, char value ) {
+        return journalIf( super.compareAndUpdate( key, property, compare, value ), key );
+    }
+
+    @Override
+    public boolean compareAndUpdate( KEY key, String property, short compare, short value ) {
+        return journalIf( super.compareAndUpdate( key, property, compare, value ), key );
+    }
+
+    @Override
+    public boolean compareAndUpdate( KEY key, String property, byte compare, byte value ) {
+        return journalIf( super.compareAndUpdate( key, property, compare, value ), key );
+    }
+
+    @Override
+    public boolean compareAndUpdate( KEY key, String property, float compare, float value ) {
+        return journalIf( super.compareAndUpdate( key, property, compare, value ), key );
+    }
+
+    @Override
+    public boolean compareAndUpdate( KEY key, String property, double compare, double value ) {
+        return journalIf( super.compareAndUpdate( key, property, compare, value ), key );
+    }
+
+    @Override
+    public boolean compareAndIncrement( KEY key, String property, int compare ) {
+        return journalIf( super.compareAndIncrement( key, property, compare ), key );
+    }
+
+    @Override
+    public boolean compareAndIncrement( KEY key, String property, long compare ) {
+        return journalIf( super.compareAndIncrement( key, property, compare ), key );
+    }
+
+    @Override
+    public boolean compareAndIncrement( KEY key, String property, short compare ) {
+        return journalIf( super.compareAndIncrement( key, property, compare ), key );
+    }
+
+    @Override
+    public boolean compareAndIncrement( KEY key, String property, byte compare ) {
+        return journalIf( super.compareAndIncrement( key, property, compare ), key );
+    }
+
+    private boolean journalIf( boolean changed, KEY key ) {
+        if ( changed ) {
+            journalKey( key );
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,481 @@
+package org.boon.datarepo.impl.decorators;
+
+import org.boon.criteria.Update;
+import org.boon.datarepo.ObjectEditor;
+import org.boon.datarepo.impl.LoadQueue;
+import org.boon.datarepo.impl.StripedLocks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Serializes writers that touch the same primary key.
+ * Each edit holds the lock stripe for its key while the indexes are invalidated,
+ * the field is set and the indexes are validated again.
+ * Reads are passed straight through and never wait on a writer.
+ */
+public class ObjectEditorLockDecorator<KEY, ITEM> extends ObjectEditorDecoratorBase<KEY, ITEM> {
+
+    private final StripedLocks locks;
+    private final LoadQueue loads = new LoadQueue();
+
+    public ObjectEditorLockDecorator( ObjectEditor oe ) {
+        this( oe, new StripedLocks() );
+    }
+
+    public ObjectEditorLockDecorator( ObjectEditor oe, StripedLocks locks ) {
+        super( oe );
+        this.locks = locks;
+    }
+
+    private Lock lockItem( ITEM item ) {
+        return locks.lock( super.getKey( item ) );
+    }
+
+    @Override
+    public boolean add( ITEM item ) {
+        Lock lock = lockItem( item );
+        try {
+            return super.add( item );
+        } finally {
+            locks.unlock( lock );
+        }
+    }
+
+    @Override
+    public void put( ITEM item ) {
+        Lock lock = lockItem( item );
+        try {
+            super.put( item );
+        } finally {
+            locks.unlock( lock );
+        }
+    }
+
+    @Override
+    public boolean delete( ITEM item ) {
+        Lock lock = lockItem( item );
+        try {
+            return super.delete( item );
+        } finally {
+            locks.unlock( lock );
+        }
+    }
+
+    @Override
+    public void removeByKey( KEY key ) {
+        Lock lock = locks.lock( key );
+        try {
+            super.removeByKey( key );
+        } finally {
+            locks.unlock( lock );
+        }
+    }
+
+    @Override
+    public void removeAll( ITEM... items ) {
+        for ( ITEM item : items ) {
+            this.delete( item );
+        }
+    }
+
+    @Override
+    public void removeAllAsync( Collection<ITEM> items ) {
+        for ( ITEM item : items ) {
+            this.delete( item );
+        }
+    }
+
+    @Override
+    public void addAll( ITEM... items ) {
+        for ( ITEM item : items ) {
+            this.add( item );
+        }
+    }
+
+    @Override
+    public void addAll( List<ITEM> items ) {
+        for ( ITEM item : items ) {
+            this.add( item );
+        }
+    }
+
+    @Override
+    public Future<?> submitAll( Collection<ITEM> items ) {
+        final List<ITEM> batch = new ArrayList<>( items );
+        return loads.submit( new Runnable() {
+            @Override
+            public void run() {
+                addAll( batch );
+            }
+        } );
+    }
+
+    @Override
+    public void modifyAll( ITEM... items ) {
+        for ( ITEM item : items ) {
+            this.modify( item );
+        }
+    }
+
+    @Override
+    public void modifyAll( Collection<ITEM> items ) {
+        for ( ITEM item : items ) {
+            this.modify( item );
+        }
+    }
+
+    @Override
+    public void modify( ITEM item ) {
+        Lock lock = lockItem( item );
+        try {
+            super.modify( item );
+        } finally {
+            locks.unlock( lock );
+        }
+    }
+
+    @Override
+    public void update( ITEM item ) {
+        Lock lock = lockItem( item );
+        try {
+            super.update( item );
+        } finally {
+            locks.unlock( lock );
+        }
+    }
+
+    @Override
+    public void modify( ITEM item, String property, Object value ) {
+        Lock lock = lockItem( item );
+        try {
+            super.modify( item, property, value );
+        } finally {
+            locks.unlock( lock );
+        }
+    }
+
+    @Override
+    public void modifyByValue( ITEM item, String property, String value ) {
+        Lock lock = lockItem( item );
+        try {
+            super.modifyByValue( item, property, value );
+        } finally {
+            locks.unlock( lock );
+        }
+    }
+
+    @Override
+    public void modify( ITEM item, String property, int value ) {
+        Lock lock = lockItem( item );
+        try {
+            super.modify( item, property, value );
+        } finally {
+            locks.unlock( lock );
+        }
+    }
+
+    @Override
+    public void modify( ITEM item, String property, long value ) {
+        Lock lock = lockItem( item );
+        try {
+            super.modify( item, property, value );
+        } finally {
+            locks.unlock( lock );
+        }
+    }
+
+    @Override
+    public void modify( ITEM item, String property, char value ) {
+        Lock lock = lockItem( item );
+        try {
+            super.modify( item, property, value );
+        } finally {
+            locks.unlock( lock );
+        }
+    }
+
+    @Override
+    public void modify( ITEM item, String property, short value ) {
+        Lock lock = lockItem( item );
+        try {
+            super.modify( item, property, value );
+        } finally {
+            locks.unlock( lock );
+        }
+    }
+
+    @Override
+    public void modify( ITEM item, String property, byte value ) {
+        Lock lock = lockItem( item );
+        try {
+            super.modify( item, property, value );
+        } finally {
+            locks.unlock( lock );
+        }
+    }
+
+    @Override
+    public void modify( ITEM item, String property, float value ) {
+        Lock lock = lockItem( item );
+        try {
+            super.modify( item, property, value );
+        } finally {
+            locks.unlock( lock );
+        }
+    }
+
+    @Override
+    public void modify( ITEM item, String property, double value ) {
+        Lock lock = lockItem( item );
+        try {
+            super.modify( item, property, value );
+        } finally {
+            locks.unlock( lock );
+        }
+    }
+
+    @Override
+    public void modify( ITEM item, Update... values ) {
+        Lock lock = lockItem( item );
+        try {
+            super.modify( item, values );
+        } finally {
+            locks.unlock( lock );
+        }
+    }
+
+    @Override
+    public void update( KEY key, String property, Object value ) {
+        Lock lock = locks.lock( key );
+        try {
+            super.update( key, property, value );
+        } finally {
+            locks.unlock( lock );
+        }
+    }
+
+    @Override
+    public void updateByValue( KEY key, String property, String value ) {
+        Lock lock = locks.lock( key );
+        try {
+            super.updateByValue( key, property, value );
+        } finally {
+            locks.unlock( lock );
+        }
+    }
+
+    @Override
+    public void update( KEY key, String property, int value ) {
+        Lock lock = locks.lock( key );
+        try {
+            super.update( key, property, value );
+        } finally {
+            locks.unlock( lock );
+        }
+    }
+
+    @Override
+    public void update( KEY key, String property, long value ) {
+        Lock lock = locks.lock( key );
+        try {
+            super.update( key, property, value );
+        } finally {
+            locks.unlock( lock );
+        }
+    }
+
+    @Override
+    public void update( KEY key, String property, char value ) {
+        Lock lock = locks.lock( key );
+        try {
+            super.update( key, property, value );
+        } finally {
+            locks.unlock( lock );
+        }
+    }
+
+    @Override
+    public void update( KEY key, String property, short value ) {
+        Lock lock = locks.lock( key );
+        try {
+            super.update( key, property, value );
+        } finally {
+            locks.unlock( lock );
+        }
+    }
+
+    @Override
+    public void update( KEY key, String property, byte value ) {
+        Lock lock = locks.lock( key );
+        try {
+            super.update( key, property, value );
+        } finally {
+            locks.unlock( lock );
+        }
+    }
+
+    @Override
+    public void update( KEY key, String property, float value ) {
+        Lock lock = locks.lock( key );
+        try {
+            super.update( key, property, value );
+        } finally {
+            locks.unlock( lock );
+        }
+    }
+
+    @Override
+    public void update( KEY key, String property, double value ) {
+        Lock lock = locks.lock( key );
+        try {
+            super.update( key, property, value );
+        } finally {
+            locks.unlock( lock );
+        }
+    }
+
+    @Override
+    public void update( KEY key, Update... values ) {
+        Lock lock = locks.lock( key );
+        try {
+            super.update( key, values );
+        } finally {
+            locks.unlock( lock );
+        }
+    }
+
+    @Override
+    public boolean compareAndUpdate( KEY key, String property, Object compare, Object value ) {
+        Lock lock = locks.lock( key );
+        try {
+            return super.compareAndUpdate( key, property, compare, value );
+        } finally {
+            locks.unlock( lock );
+        }
+    }
+
+    @Override
+    public boolean compareAndUpdate( KEY key, String property, int compare, int value ) {
+        Lock lock = locks.lock( key );
+        try {
+            return super.compareAndUpdate( key, property, compare, value );
+        } finally {
+            locks.unlock( lock );
+        }
+    }
+
+    @Override
+    public boolean compareAndUpdate( KEY key, String property, long compare, long value ) {
+        Lock lock = locks.lock( key );
+        try {
+            return super.compareAndUpdate( key, property, compare, value );
+        } finally {
+            locks.unlock( lock );
+        }
+    }
+
+    @Override
+    public boolean compareAndUpdate( KEY key, String property, char compare, char value ) {
+        Lock lock = locks.lock( key );
+        try {
+            return super.compareAndUpdate( key, property, compare, value );
+        } finally {
+            locks.unlock( lock );
+        }
+    }
+
+    @Override
+    public boolean compareAndUpdate( KEY key, String property, short compare, short value ) {
+        Lock lock = locks.lock( key );
+        try {
+            return super.compareAndUpdate( key, property, compare, value );
+        } finally {
+            locks.unlock( lock );
+        }
+    }
+
+    @Override
+    public boolean compareAndUpdate( KEY key, String property, byte compare, byte value ) {
+        Lock lock = locks.lock( key );
+        try {
+            return super.compareAndUpdate( key, property, compare, value );
+        } finally {
+            locks.unlock( lock );
+        }
+    }
+
+    @Override
+    public boolean compareAndUpdate( KEY key, String property, float compare, float value ) {
+        Lock lock = locks.lock( key );
+        try {
+            return super.compareAndUpdate( key, property, compare, value );
+        } finally {
+            locks.unlock( lock );
+        }
+    }
+
+    @Override
+    public boolean compareAndUpdate( KEY key, String property, double compare, double value ) {
+        Lock lock = locks.lock( key );
+        try {
+            return super.compareAndUpdate( key, property, compare, value );
+        } finally {
+            locks.unlock( lock );
+        }
+    }
+
+    @Override
+    public boolean compareAndIncrement( KEY key, String property, int compare ) {
+        Lock lock = locks.lock( key );
+        try {
+            return super.compareAndIncrement( key, property, compare );
+        } finally {
+            locks.unlock( lock );
+        }
+    }
+
+    @Override
+    public boolean compareAndIncrement( KEY key, String property, long compare ) {
+        Lock lock = locks.lock( key );
+        try {
+            return super.compareAndIncrement( key, property, compare );
+        } finally {
+            locks.unlock( lock );
+        }
+    }
+
+    @Override
+    public boolean compareAndIncrement( KEY key, String property, short compare ) {
+        Lock lock = locks.lock( key );
+        try {
+            return super.compareAndIncrement( key, property, compare );
+        } finally {
+            locks.unlock( lock );
+        }
+    }
+
+    @Override
+    public boolean compareAndIncrement( KEY key, String property, byte compare ) {
+        Lock lock = locks.lock( key );
+        try {
+            return super.compareAndIncrement( key, property, compare );
+        } finally {
+            locks.unlock( lock );
+        }
+    }
+
+    @Override
+    public void clear() {
+        locks.lockAll();
+        try {
+            super.clear();
+        } finally {
+            locks.unlockAll();
+        }
+    }
+
+}
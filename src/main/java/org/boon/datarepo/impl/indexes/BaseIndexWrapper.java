@@ -5,7 +5,9 @@ import org.boon.core.Function;
 
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 
 /**
@@ -103,6 +105,21 @@ public abstract class BaseIndexWrapper implements SearchIndex {
         return index.count( o );
     }
 
+    @Override
+    public Iterator iteratorFrom( Object start, boolean startInclusive ) {
+        return index.iteratorFrom( start, startInclusive );
+    }
+
+    @Override
+    public Iterator descendingIterator() {
+        return index.descendingIterator();
+    }
+
+    @Override
+    public int estimateBetween( Object start, boolean startInclusive, Object end, boolean endInclusive ) {
+        return index.estimateBetween( start, startInclusive, end, endInclusive );
+    }
+
     @Override
     public void setComparator( Comparator collator ) {
         index.setComparator( collator );
@@ -146,6 +163,18 @@ public abstract class BaseIndexWrapper implements SearchIndex {
     @Override
     public abstract boolean add( Object o );
 
+    @Override
+    public Map buckets() {
+        return null;
+    }
+
+    @Override
+    public void addAll( List items ) {
+        for ( Object item : items ) {
+            add( item );
+        }
+    }
+
     protected abstract List getKeys( Object o );
 
     @Override
@@ -175,8 +204,42 @@ public abstract class BaseIndexWrapper implements SearchIndex {
         index.setBucketSize( size );
     }
 
+    public void setConcurrent( boolean concurrent ) {
+        index.setConcurrent( concurrent );
+    }
+
+    public void setVersioned( boolean versioned ) {
+        index.setVersioned( versioned );
+    }
+
 
     public boolean has( Object key ) {
         return index.has( key );
     }
+
+    @Override
+    public SearchIndex snapshot() {
+        final SearchIndexDefault frozen = ( SearchIndexDefault ) index.snapshot();
+
+        return new BaseIndexWrapper( path ) {
+            {
+                index = frozen;
+            }
+
+            @Override
+            public boolean add( Object o ) {
+                throw new UnsupportedOperationException( "snapshot is read only" );
+            }
+
+            @Override
+            protected List getKeys( Object o ) {
+                throw new UnsupportedOperationException( "snapshot is read only" );
+            }
+
+            @Override
+            public boolean delete( Object o ) {
+                throw new UnsupportedOperationException( "snapshot is read only" );
+            }
+        };
+    }
 }
@@ -0,0 +1,235 @@
+package org.boon.datarepo.impl.indexes;
+
+import org.boon.Exceptions;
+import org.boon.core.Function;
+import org.boon.datarepo.LookupIndex;
+
+import java.util.*;
+
+/**
+ * Lookup index for fields with few distinct values like a department, a status or a flag.
+ * Each key holds a {@link RowBitmap} of row ids instead of a list of items, so the filter
+ * can and, or and not several of these together before it touches a single item.
+ * <p/>
+ * All bitmap indexes of a repo share one {@link RowIds}.
+ * This index is not thread safe, so the builder does not allow it in concurrent repos.
+ *
+ * @param <KEY>  key to lookup
+ * @param <ITEM> value
+ */
+public class BitmapLookupIndex<KEY, ITEM> implements LookupIndex<KEY, ITEM> {
+
+    private final RowIds<ITEM> rowIds;
+    private final Map<KEY, RowBitmap> map = new HashMap<>();
+
+    private Function<ITEM, KEY> keyGetter;
+    private Function<Object, KEY> keyTransformer;
+
+
+    public BitmapLookupIndex( RowIds<ITEM> rowIds ) {
+        Exceptions.requireNonNull( rowIds, "rowIds cannot be null" );
+        this.rowIds = rowIds;
+    }
+
+    public RowIds<ITEM> rowIds() {
+        return rowIds;
+    }
+
+    /**
+     * Rows that have this key. Never null. Callers must not change it.
+     */
+    public RowBitmap rows( KEY key ) {
+        RowBitmap rows = map.get( getKey( key ) );
+        return rows == null ? new RowBitmap() : rows;
+    }
+
+
+    @Override
+    public Map<KEY, List<ITEM>> buckets() {
+        return null;
+    }
+
+    @Override
+    public void addAll( List<ITEM> items ) {
+        for ( ITEM item : items ) {
+            add( item );
+        }
+    }
+
+    @Override
+    public boolean add( ITEM item ) {
+        KEY key = keyGetter.apply( item );
+        if ( key == null ) {
+            return false;
+        }
+
+        /* The collection has usually numbered the item already. */
+        int id = rowIds.idOf( item );
+        if ( id == -1 ) {
+            id = rowIds.assign( item );
+        }
+
+        if ( key instanceof Collection ) {
+            for ( Object keyComponent : ( Collection ) key ) {
+                rowsForAdd( ( KEY ) keyComponent ).add( id );
+            }
+        } else {
+            rowsForAdd( key ).add( id );
+        }
+        return true;
+    }
+
+    private RowBitmap rowsForAdd( KEY key ) {
+        key = getKey( key );
+        RowBitmap rows = map.get( key );
+        if ( rows == null ) {
+            rows = new RowBitmap();
+            map.put( key, rows );
+        }
+        return rows;
+    }
+
+    @Override
+    public boolean delete( ITEM item ) {
+        KEY key = keyGetter.apply( item );
+        int id = rowIds.idOf( item );
+        if ( key == null || id == -1 ) {
+            return false;
+        }
+
+        if ( key instanceof Collection ) {
+            for ( Object keyComponent : ( Collection ) key ) {
+                removeRow( ( KEY ) keyComponent, id );
+            }
+        } else {
+            removeRow( key, id );
+        }
+        return true;
+    }
+
+    private void removeRow( KEY key, int id ) {
+        key = getKey( key );
+        RowBitmap rows = map.get( key );
+        if ( rows != null ) {
+            rows.remove( id );
+            if ( rows.isEmpty() ) {
+                map.remove( key );
+            }
+        }
+    }
+
+    @Override
+    public ITEM get( KEY key ) {
+        RowBitmap rows = map.get( getKey( key ) );
+        if ( rows == null ) {
+            return null;
+        }
+        return rowIds.get( rows.first() );
+    }
+
+    @Override
+    public List<ITEM> getAll( KEY key ) {
+        RowBitmap rows = map.get( getKey( key ) );
+        if ( rows == null ) {
+            return null;
+        }
+        return rowIds.items( rows );
+    }
+
+    @Override
+    public boolean deleteByKey( KEY key ) {
+        map.remove( getKey( key ) );
+        return true;
+    }
+
+    @Override
+    public boolean has( KEY key ) {
+        return map.containsKey( getKey( key ) );
+    }
+
+    @Override
+    public int count( KEY key ) {
+        RowBitmap rows = map.get( getKey( key ) );
+        return rows == null ? 0 : rows.cardinality();
+    }
+
+    protected KEY getKey( KEY key ) {
+        if ( keyTransformer != null ) {
+            key = this.keyTransformer.apply( key );
+        }
+        return key;
+    }
+
+    @Override
+    public List<ITEM> all() {
+        RowBitmap rows = new RowBitmap();
+        for ( RowBitmap keyRows : map.values() ) {
+            rows = rows.or( keyRows );
+        }
+        return rowIds.items( rows );
+    }
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public Collection<ITEM> toCollection() {
+        return all();
+    }
+
+    @Override
+    public void clear() {
+        map.clear();
+    }
+
+
+    @Override
+    public void setKeyGetter( Function<ITEM, KEY> keyGetter ) {
+        Exceptions.requireNonNull( keyGetter, "keyGetter cannot be null" );
+        this.keyGetter = keyGetter;
+    }
+
+    @Override
+    public boolean isPrimaryKeyOnly() {
+        return false;
+    }
+
+    @Override
+    public void setInputKeyTransformer( Function<Object, KEY> func ) {
+        this.keyTransformer = func;
+    }
+
+    /**
+     * There are no buckets.
+     */
+    @Override
+    public void setBucketSize( int size ) {
+    }
+
+    @Override
+    public void setConcurrent( boolean concurrent ) {
+        if ( concurrent ) {
+            throw new IllegalStateException( "bitmap indexes are not thread safe, use a lookup index in concurrent repos" );
+        }
+    }
+
+    /**
+     * Copies the bitmaps and the row ids they point at, so later edits do not show through.
+     */
+    @Override
+    public LookupIndex<KEY, ITEM> snapshot() {
+        BitmapLookupIndex<KEY, ITEM> copy = new BitmapLookupIndex<>( rowIds.snapshot() );
+        for ( Map.Entry<KEY, RowBitmap> entry : map.entrySet() ) {
+            copy.map.put( entry.getKey(), entry.getValue().copy() );
+        }
+        copy.keyGetter = this.keyGetter;
+        copy.keyTransformer = this.keyTransformer;
+        return copy;
+    }
+
+    @Override
+    public void init() {
+    }
+}
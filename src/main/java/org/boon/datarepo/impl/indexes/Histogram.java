@@ -0,0 +1,129 @@
+package org.boon.datarepo.impl.indexes;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.NavigableMap;
+
+/**
+ * Equi-depth histogram over the keys of a sorted index, used to guess how many items a range will return.
+ * Each bucket holds about the same number of items, so a range is worth roughly the number of buckets it spans.
+ * <p/>
+ * It is a picture of the index at the time it was built. The index builds a new one once enough has changed.
+ */
+final class Histogram {
+
+    private static final int BUCKETS = 64;
+
+    /* bounds[ i ] is the lowest key of bucket i, the last bound is the highest key. */
+    private final Object[] bounds;
+    private final int buckets;
+    private final int total;
+    private final int keys;
+    private final Comparator comparator;
+
+
+    private Histogram( Object[] bounds, int buckets, int total, int keys, Comparator comparator ) {
+        this.bounds = bounds;
+        this.buckets = buckets;
+        this.total = total;
+        this.keys = keys;
+        this.comparator = comparator;
+    }
+
+    /**
+     * Values are either a {@link MultiValue} or a single item.
+     */
+    static Histogram build( NavigableMap<?, ?> map ) {
+        int total = 0;
+        for ( Object value : map.values() ) {
+            total += count( value );
+        }
+
+        int buckets = Math.max( 1, Math.min( BUCKETS, map.size() ) );
+        Object[] bounds = new Object[ buckets + 1 ];
+        int perBucket = Math.max( 1, total / buckets );
+
+        int bucket = 0;
+        int seen = 0;
+        int keys = 0;
+        Object last = null;
+        for ( Map.Entry<?, ?> entry : map.entrySet() ) {
+            if ( bucket < buckets && seen >= bucket * perBucket ) {
+                bounds[ bucket++ ] = entry.getKey();
+            }
+            seen += count( entry.getValue() );
+            keys++;
+            last = entry.getKey();
+        }
+
+        /* Fewer buckets than planned when a few keys hold most of the items. */
+        bounds[ bucket ] = last;
+        return new Histogram( bounds, bucket, total, keys, map.comparator() );
+    }
+
+    private static int count( Object value ) {
+        return value instanceof MultiValue ? ( ( MultiValue ) value ).size() : 1;
+    }
+
+    int total() {
+        return total;
+    }
+
+    /**
+     * Distinct keys when it was built.
+     */
+    int keys() {
+        return keys;
+    }
+
+    /**
+     * About how many items have a key in the range. A null bound is open on that side.
+     */
+    int estimate( Object start, boolean startInclusive, Object end, boolean endInclusive ) {
+        if ( total == 0 || buckets == 0 ) {
+            return 0;
+        }
+
+        int first = start == null ? 0 : bucketOf( start );
+        int last = end == null ? buckets - 1 : bucketOf( end );
+
+        if ( first > last || ( start != null && compare( start, bounds[ buckets ] ) > 0 )
+                || ( end != null && compare( end, bounds[ 0 ] ) < 0 ) ) {
+            return 0;
+        }
+
+        /* Count whole buckets, then take back half of each bucket the range only cuts into. */
+        double estimate = last - first + 1;
+        if ( start != null && compare( start, bounds[ first ] ) > 0 ) {
+            estimate -= 0.5;
+        }
+        if ( end != null && compare( end, bounds[ last + 1 ] ) < 0 ) {
+            estimate -= 0.5;
+        }
+        return ( int ) Math.max( 1, Math.min( total, estimate * total / buckets ) );
+    }
+
+    /**
+     * The bucket whose range holds this key, clamped to the first and last bucket.
+     */
+    private int bucketOf( Object key ) {
+        int low = 0;
+        int high = buckets - 1;
+        while ( low < high ) {
+            int middle = ( low + high + 1 ) >>> 1;
+            if ( compare( bounds[ middle ], key ) <= 0 ) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    private int compare( Object a, Object b ) {
+        if ( comparator != null ) {
+            return comparator.compare( a, b );
+        }
+        return ( ( Comparable ) a ).compareTo( b );
+    }
+}
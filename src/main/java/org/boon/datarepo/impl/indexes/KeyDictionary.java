@@ -0,0 +1,215 @@
+package org.boon.datarepo.impl.indexes;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Strings the indexes of one repo share. Each distinct key is kept once and gets a dense int id,
+ * and an index that has the key holds on to that one instance instead of a copy of its own.
+ * This matters most for indexes that transform their keys, upper case or camel case say, where every
+ * item would otherwise leave a new string in the index.
+ * <p/>
+ * Keys are counted, an index takes a key when it makes a bucket for it and gives it back when the bucket
+ * goes, and the id of a key nobody holds is used again.
+ * <p/>
+ * For sorted indexes with a collator the dictionary also keeps a rank per id, the position of the key in
+ * collator order. Two ranked keys compare as two ints instead of going through the collator. Ranks of keys
+ * that were already ranked stay in order as new keys come in, so the ranks are only worked out again once
+ * enough new keys have no rank.
+ */
+public class KeyDictionary {
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private String[] keys = new String[ 16 ];
+    private int[] counts = new int[ 16 ];
+    private int nextId;
+    private final Deque<Integer> freeIds = new ArrayDeque<>();
+
+    /* Keys added since the ranks were last worked out. */
+    private volatile int unranked;
+
+    private final Map<Comparator, RankedComparator> comparators = new HashMap<>();
+
+
+    /**
+     * The instance every index should hold for this key. Counts one more holder.
+     */
+    public synchronized String intern( String key ) {
+        Integer id = ids.get( key );
+        if ( id != null ) {
+            counts[ id ]++;
+            return keys[ id ];
+        }
+
+        int newId = freeIds.isEmpty() ? nextId++ : freeIds.pop();
+        if ( newId == keys.length ) {
+            keys = Arrays.copyOf( keys, newId * 2 );
+            counts = Arrays.copyOf( counts, newId * 2 );
+        }
+        keys[ newId ] = key;
+        counts[ newId ] = 1;
+        ids.put( key, newId );
+        unranked++;
+        return key;
+    }
+
+    /**
+     * One less holder of the key. Once none are left its id is free.
+     */
+    public synchronized void release( String key ) {
+        Integer id = ids.get( key );
+        if ( id == null ) {
+            return;
+        }
+        if ( --counts[ id ] == 0 ) {
+            ids.remove( key );
+            keys[ id ] = null;
+            freeIds.push( id );
+        }
+    }
+
+    /**
+     * The id of the key, or -1 if no index holds it.
+     */
+    public int id( String key ) {
+        Integer id = ids.get( key );
+        return id == null ? -1 : id;
+    }
+
+    public synchronized String key( int id ) {
+        return id >= 0 && id < keys.length ? keys[ id ] : null;
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    /**
+     * Sorts like the collator but compares keys of the dictionary by rank. Keys it does not hold,
+     * or holds but has not ranked yet, go to the collator.
+     */
+    public synchronized Comparator comparator( Comparator collator ) {
+        RankedComparator comparator = comparators.get( collator );
+        if ( comparator == null ) {
+            comparator = new RankedComparator( collator );
+            comparators.put( collator, comparator );
+        }
+        return comparator;
+    }
+
+    /**
+     * The keys and their positions in collator order as they were when it was worked out.
+     * A rank only counts if the key at that id is still the same key.
+     */
+    private static final class Ranks {
+        final String[] keys;
+        final int[] ranks;
+
+        Ranks( String[] keys, int[] ranks ) {
+            this.keys = keys;
+            this.ranks = ranks;
+        }
+
+        int rank( int id, Object key ) {
+            if ( id < 0 || id >= keys.length || keys[ id ] == null || !keys[ id ].equals( key ) ) {
+                return -1;
+            }
+            return ranks[ id ];
+        }
+    }
+
+    private final class RankedComparator implements Comparator<Object> {
+
+        private final Comparator collator;
+        private volatile Ranks ranks = new Ranks( new String[ 0 ], new int[ 0 ] );
+        private int rankedAt;
+
+        RankedComparator( Comparator collator ) {
+            this.collator = collator;
+        }
+
+        @Override
+        public int compare( Object key, Object other ) {
+            if ( key == other ) {
+                return 0;
+            }
+            Ranks current = current();
+            if ( key instanceof String && other instanceof String ) {
+                int rank = current.rank( id( ( String ) key ), key );
+                if ( rank != -1 ) {
+                    int otherRank = current.rank( id( ( String ) other ), other );
+                    if ( otherRank != -1 ) {
+                        return Integer.compare( rank, otherRank );
+                    }
+                }
+            }
+            return collator.compare( key, other );
+        }
+
+        /**
+         * Works the ranks out again once a quarter of the keys are newer than them.
+         */
+        private Ranks current() {
+            Ranks current = ranks;
+            if ( unranked - rankedAt > current.keys.length / 4 + 64 ) {
+                synchronized ( KeyDictionary.this ) {
+                    if ( unranked - rankedAt > ranks.keys.length / 4 + 64 ) {
+                        rankedAt = unranked;
+                        ranks = rank();
+                    }
+                    current = ranks;
+                }
+            }
+            return current;
+        }
+
+        /**
+         * A collator sorts by collation key, worked out once per key instead of once per compare.
+         * Keys the collator calls equal get the same rank.
+         */
+        private Ranks rank() {
+            final String[] snapshot = Arrays.copyOf( keys, nextId );
+            List<Integer> held = new ArrayList<>( snapshot.length );
+            for ( int id = 0; id < snapshot.length; id++ ) {
+                if ( snapshot[ id ] != null ) {
+                    held.add( id );
+                }
+            }
+            Integer[] order = held.toArray( new Integer[ held.size() ] );
+
+            final Comparator<Integer> byKey;
+            if ( collator instanceof Collator ) {
+                final CollationKey[] collationKeys = new CollationKey[ snapshot.length ];
+                for ( Integer id : order ) {
+                    collationKeys[ id ] = ( ( Collator ) collator ).getCollationKey( snapshot[ id ] );
+                }
+                byKey = new Comparator<Integer>() {
+                    @Override
+                    public int compare( Integer id, Integer other ) {
+                        return collationKeys[ id ].compareTo( collationKeys[ other ] );
+                    }
+                };
+            } else {
+                byKey = new Comparator<Integer>() {
+                    @Override
+                    public int compare( Integer id, Integer other ) {
+                        return collator.compare( snapshot[ id ], snapshot[ other ] );
+                    }
+                };
+            }
+            Arrays.sort( order, byKey );
+
+            int[] ranks = new int[ snapshot.length ];
+            int rank = 0;
+            for ( int index = 0; index < order.length; index++ ) {
+                if ( index > 0 && byKey.compare( order[ index - 1 ], order[ index ] ) != 0 ) {
+                    rank++;
+                }
+                ranks[ order[ index ] ] = rank;
+            }
+            return new Ranks( snapshot, ranks );
+        }
+    }
+}
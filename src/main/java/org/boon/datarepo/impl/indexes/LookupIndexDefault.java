@@ -2,10 +2,15 @@ package org.boon.datarepo.impl.indexes;
 
 import org.boon.Exceptions;
 import org.boon.datarepo.LookupIndex;
+import org.boon.datarepo.impl.StripedLocks;
+import org.boon.datarepo.impl.maps.JavaUtilMap;
+import org.boon.datarepo.impl.maps.PersistentHashMap;
+import org.boon.datarepo.impl.maps.PersistentNavigableMap;
 import org.boon.datarepo.spi.SPIFactory;
 import org.boon.core.Function;
 
 import java.util.*;
+import java.util.concurrent.locks.Lock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -29,6 +34,22 @@ public class LookupIndexDefault<KEY, ITEM> implements LookupIndex<KEY, ITEM> {
 
     protected int keyBucketSize = 3;
 
+    /**
+     * Only set when the repo is concurrent. Guards the read, update, write of a single bucket.
+     */
+    private StripedLocks bucketLocks;
+
+    /**
+     * Set when the repo shares its string keys between indexes. A bucket holds its key from the dictionary.
+     */
+    protected KeyDictionary dictionary;
+
+    /**
+     * Snapshot query mode. The buckets live in a persistent map and are copied on write,
+     * so a snapshot shares them instead of copying each one.
+     */
+    protected boolean versioned;
+
 
     public LookupIndexDefault( Class<?> keyType ) {
 
@@ -70,6 +91,72 @@ public class LookupIndexDefault<KEY, ITEM> implements LookupIndex<KEY, ITEM> {
 
     }
 
+    /**
+     * On an empty index the map is sized for the keys in the batch up front, so it does not
+     * grow and rehash while loading.
+     */
+    @Override
+    public void addAll( List<ITEM> items ) {
+        List<Map.Entry<KEY, Object>> entries = entries( items );
+        if ( map.isEmpty() && bucketLocks == null && map instanceof JavaUtilMap ) {
+            map = new JavaUtilMap<>( estimateKeys( entries ) );
+        }
+        for ( Map.Entry<KEY, Object> entry : entries ) {
+            putInBucket( entry.getKey(), entry.getValue() );
+        }
+    }
+
+    @Override
+    public Map<KEY, List<ITEM>> buckets() {
+        if ( storeKeyInIndexOnly ) {
+            return null;
+        }
+        Map<KEY, List<ITEM>> buckets = new LinkedHashMap<>( map.size() * 4 / 3 + 1 );
+        for ( Map.Entry<KEY, MultiValue> entry : map.entrySet() ) {
+            buckets.put( entry.getKey(), Collections.unmodifiableList( entry.getValue().getValues() ) );
+        }
+        return buckets;
+    }
+
+    /**
+     * Guesses the number of distinct keys from the first few thousand entries.
+     */
+    private static int estimateKeys( List<? extends Map.Entry<?, ?>> entries ) {
+        int sample = Math.min( entries.size(), 4096 );
+        Set<Object> keys = new HashSet<>( sample * 2 );
+        for ( int index = 0; index < sample; index++ ) {
+            keys.add( entries.get( index ).getKey() );
+        }
+        return sample == 0 ? 16 : ( int ) ( ( long ) keys.size() * entries.size() / sample );
+    }
+
+    /**
+     * The key and bucket value each add of the items would make, in order.
+     */
+    protected List<Map.Entry<KEY, Object>> entries( List<ITEM> items ) {
+        List<Map.Entry<KEY, Object>> entries = new ArrayList<>( items.size() );
+        for ( ITEM item : items ) {
+            KEY key = keyGetter.apply( item );
+            if ( key == null ) {
+                continue;
+            }
+            key = getKey( key );
+            if ( key instanceof Collection ) {
+                for ( Object keyComponent : ( Collection ) key ) {
+                    entries.add( new AbstractMap.SimpleEntry<KEY, Object>( ( KEY ) keyComponent, item ) );
+                }
+            } else if ( key != null ) {
+                Object value = storeKeyInIndexOnly ? internValue( primaryKeyGetter.apply( item ) ) : item;
+                entries.add( new AbstractMap.SimpleEntry<>( key, value ) );
+            }
+        }
+        return entries;
+    }
+
+    protected boolean isConcurrent() {
+        return bucketLocks != null;
+    }
+
     private void put( ITEM item, KEY key ) {
 
 
@@ -87,29 +174,37 @@ public class LookupIndexDefault<KEY, ITEM> implements LookupIndex<KEY, ITEM> {
             Collection collection = (Collection) key;
 
             for (Object keyComponent : collection) {
-
-                MultiValue mv = map.get( keyComponent );
-                mv = mvCreateOrAddToMV( mv, item );
-                map.put((KEY) keyComponent, mv );
+                putInBucket( ( KEY ) keyComponent, item );
             }
             return;
         }
 
 
-        MultiValue mv = map.get( key );
         if ( storeKeyInIndexOnly ) {
-            Object primaryKey = primaryKeyGetter.apply( item );
+            Object primaryKey = internValue( primaryKeyGetter.apply( item ) );
 
-            mv = mvCreateOrAddToMV( mv, primaryKey );
+            putInBucket( key, primaryKey );
         } else {
-            mv = mvCreateOrAddToMV( mv, item );
+            putInBucket( key, item );
         }
+    }
 
-        map.put( key, mv );
+    private void putInBucket( KEY key, Object value ) {
+        Lock lock = lockBucket( key );
+        try {
+            MultiValue mv = map.get( key );
+            if ( mv == null ) {
+                key = internKey( key );
+            }
+            mv = versioned ? MultiValue.with( mv, value, keyBucketSize ) : mvCreateOrAddToMV( mv, value );
+            map.put( key, mv );
+        } finally {
+            unlockBucket( lock );
+        }
     }
 
     private MultiValue mvCreateOrAddToMV( MultiValue mv, Object obj ) {
-        return MultiValue.add( mv, obj, keyBucketSize );
+        return MultiValue.add( mv, obj, keyBucketSize, bucketLocks != null );
     }
 
 
@@ -143,20 +238,46 @@ public class LookupIndexDefault<KEY, ITEM> implements LookupIndex<KEY, ITEM> {
                 removeKey ( item, (KEY) objKey );
             }
         } else {
-            MultiValue mv = map.get( key );
-
-            if ( mv == null ) {
-                return false;
+            Lock lock = lockBucket( key );
+            try {
+                MultiValue mv = map.get( key );
+
+                if ( mv == null ) {
+                    return false;
+                }
+
+                Object value = storeKeyInIndexOnly ? primaryKeyGetter.apply( item ) : item;
+                int size = mv.size();
+                mv = versioned ? MultiValue.without( mv, value ) : MultiValue.remove( mv, value );
+                if ( mv == null || mv.size() < size ) {
+                    releaseValue( value );
+                }
+
+                if ( mv == null ) {
+                    map.remove( key );
+                    releaseKey( key );
+                } else if ( versioned ) {
+                    map.put( key, mv );
+                }
+            } finally {
+                unlockBucket( lock );
             }
+        }
+        return true;
 
-            mv = MultiValue.remove( mv, item );
+    }
 
-            if ( mv == null ) {
-                map.remove( key );
-            }
+    private Lock lockBucket( KEY key ) {
+        if ( bucketLocks == null ) {
+            return null;
         }
-        return true;
+        return bucketLocks.lock( key );
+    }
 
+    private void unlockBucket( Lock lock ) {
+        if ( lock != null ) {
+            lock.unlock();
+        }
     }
 
 
@@ -217,6 +338,16 @@ public class LookupIndexDefault<KEY, ITEM> implements LookupIndex<KEY, ITEM> {
     }
 
 
+    @Override
+    public int count( KEY key ) {
+        key = getKey( key );
+        if ( key == null ) {
+            return 0;
+        }
+        MultiValue mv = map.get( key );
+        return mv == null ? 0 : mv.size();
+    }
+
     public List<ITEM> getAll( KEY key ) {
         key = getKey( key );
 
@@ -232,10 +363,74 @@ public class LookupIndexDefault<KEY, ITEM> implements LookupIndex<KEY, ITEM> {
     public boolean deleteByKey( KEY key ) {
         key = getKey( key );
 
-        this.map.remove( key );
+        MultiValue mv = this.map.remove( key );
+        if ( mv != null ) {
+            release( key, mv );
+        }
         return true;
     }
 
+    public void setKeyDictionary( KeyDictionary dictionary ) {
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * The dictionary's instance of a string key for a new bucket. Other keys are kept as they are.
+     */
+    protected KEY internKey( KEY key ) {
+        if ( dictionary != null && key instanceof String ) {
+            return ( KEY ) dictionary.intern( ( String ) key );
+        }
+        return key;
+    }
+
+    /**
+     * The instance of the key a bucket already holds, so others can point at it too.
+     */
+    protected KEY canonicalKey( KEY key ) {
+        if ( dictionary != null && key instanceof String ) {
+            String canonical = dictionary.key( dictionary.id( ( String ) key ) );
+            if ( key.equals( canonical ) ) {
+                return ( KEY ) canonical;
+            }
+        }
+        return key;
+    }
+
+    protected void releaseKey( KEY key ) {
+        if ( dictionary != null && key instanceof String ) {
+            dictionary.release( ( String ) key );
+        }
+    }
+
+    /**
+     * Indexes that keep only primary keys put string primary keys in the dictionary as well.
+     */
+    private Object internValue( Object value ) {
+        if ( dictionary != null && value instanceof String ) {
+            return dictionary.intern( ( String ) value );
+        }
+        return value;
+    }
+
+    private void releaseValue( Object value ) {
+        if ( storeKeyInIndexOnly && dictionary != null && value instanceof String ) {
+            dictionary.release( ( String ) value );
+        }
+    }
+
+    /**
+     * Gives back the key of a bucket that is gone, and its primary keys.
+     */
+    protected void release( KEY key, MultiValue<?> mv ) {
+        releaseKey( key );
+        if ( storeKeyInIndexOnly ) {
+            for ( Object value : mv.getValues() ) {
+                releaseValue( value );
+            }
+        }
+    }
+
 
     //TODO implement so we can store only primary keys in a index to make indexes smaller if
     //we ever decide to cache actual items
@@ -254,10 +449,51 @@ public class LookupIndexDefault<KEY, ITEM> implements LookupIndex<KEY, ITEM> {
         this.keyBucketSize = size;
     }
 
+    @Override
+    public void setConcurrent( boolean concurrent ) {
+        this.bucketLocks = concurrent ? new StripedLocks() : null;
+    }
+
+    public void setVersioned( boolean versioned ) {
+        this.versioned = versioned;
+        if ( versioned ) {
+            map = new PersistentHashMap<>();
+        }
+    }
+
     @Override
     public void init() {
     }
 
+    @Override
+    public LookupIndex<KEY, ITEM> snapshot() {
+        LookupIndexDefault<KEY, ITEM> copy = new LookupIndexDefault<>( null );
+        copyInto( copy, versioned ? null : new HashMap<KEY, MultiValue>( map.size() ) );
+        return copy;
+    }
+
+    /**
+     * Copies the settings and the buckets. The buckets are copied too since they change in place,
+     * unless the index is versioned, in which case the copy shares a snapshot of the map and copyMap is not used.
+     */
+    protected void copyInto( LookupIndexDefault<KEY, ITEM> copy, Map<KEY, MultiValue> copyMap ) {
+        copy.keyGetter = this.keyGetter;
+        copy.primaryKeyGetter = this.primaryKeyGetter;
+        copy.storeKeyInIndexOnly = this.storeKeyInIndexOnly;
+        copy.keyTransformer = this.keyTransformer;
+        copy.keyBucketSize = this.keyBucketSize;
+
+        if ( versioned ) {
+            copy.map = map instanceof PersistentNavigableMap ? ( ( PersistentNavigableMap<KEY, MultiValue> ) map ).snapshot()
+                    : ( ( PersistentHashMap<KEY, MultiValue> ) map ).snapshot();
+            return;
+        }
+        for ( Map.Entry<KEY, MultiValue> entry : map.entrySet() ) {
+            copyMap.put( entry.getKey(), entry.getValue().copy() );
+        }
+        copy.map = copyMap;
+    }
+
     @Override
     public boolean has( KEY key ) {
         return this.map.containsKey( key );
@@ -270,6 +506,11 @@ public class LookupIndexDefault<KEY, ITEM> implements LookupIndex<KEY, ITEM> {
         if ( log.isLoggable( Level.FINE ) ) {
             log.fine( "clear called" );
         }
+        if ( dictionary != null ) {
+            for ( Map.Entry<KEY, MultiValue> entry : map.entrySet() ) {
+                release( entry.getKey(), entry.getValue() );
+            }
+        }
         this.map.clear();
     }
 
@@ -1,7 +1,11 @@
 package org.boon.datarepo.impl.indexes;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Internal class support class.
@@ -13,8 +17,15 @@ class MultiValue<T> {
     List<T> values = null;
 
     public static <T> MultiValue<T> add( MultiValue<T> org, T newItem, int bucketSize ) {
+        return add( org, newItem, bucketSize, false );
+    }
+
+    /**
+     * Concurrent buckets are copy on write so readers can walk them without a lock.
+     */
+    public static <T> MultiValue<T> add( MultiValue<T> org, T newItem, int bucketSize, boolean concurrent ) {
         if ( org == null ) {
-            return new MultiValue<>( newItem, bucketSize );
+            return new MultiValue<>( newItem, bucketSize, concurrent );
         } else {
 
             org.add( newItem );
@@ -34,12 +45,44 @@ class MultiValue<T> {
         return org.size() == 0 ? null : org;
     }
 
+    /**
+     * A new bucket with the item added. The old bucket is left as it was, so a snapshot
+     * that holds it does not see the change.
+     */
+    public static <T> MultiValue<T> with( MultiValue<T> org, T newItem, int bucketSize ) {
+        MultiValue<T> copy = new MultiValue<>();
+        copy.values = new ArrayList<>( org == null ? bucketSize : org.values.size() + 1 );
+        if ( org != null ) {
+            copy.values.addAll( org.values );
+        }
+        copy.values.add( newItem );
+        return copy;
+    }
+
+    /**
+     * A new bucket without the item, or null when nothing is left. The old bucket is left as it was.
+     */
+    public static <T> MultiValue<T> without( MultiValue<T> org, T removeItem ) {
+        if ( org == null ) {
+            return null;
+        }
+        MultiValue<T> copy = org.copy();
+        if ( removeItem != null ) {
+            copy.remove( removeItem );
+        }
+        return copy.size() == 0 ? null : copy;
+    }
+
     private MultiValue() {
 
     }
 
-    private MultiValue( T item, int bucketSize ) {
-        values = new ArrayList( bucketSize );
+    private MultiValue( T item, int bucketSize, boolean concurrent ) {
+        if ( concurrent ) {
+            values = new CopyOnWriteArrayList<>();
+        } else {
+            values = new ArrayList( bucketSize );
+        }
         values.add( item );
 
     }
@@ -63,6 +106,12 @@ class MultiValue<T> {
     }
 
 
+    MultiValue<T> copy() {
+        MultiValue<T> copy = new MultiValue<>();
+        copy.values = new ArrayList<>( values );
+        return copy;
+    }
+
     int size() {
         return values.size();
     }
@@ -71,5 +120,38 @@ class MultiValue<T> {
         results.addAll( values );
     }
 
+    /**
+     * Walks the values of each bucket in turn.
+     */
+    static <T> Iterator<T> flatten( final Iterator<MultiValue<T>> buckets ) {
+        return new Iterator<T>() {
+            Iterator<T> current = Collections.<T>emptyList().iterator();
+
+            @Override
+            public boolean hasNext() {
+                while ( !current.hasNext() ) {
+                    if ( !buckets.hasNext() ) {
+                        return false;
+                    }
+                    current = buckets.next().values.iterator();
+                }
+                return true;
+            }
+
+            @Override
+            public T next() {
+                if ( !hasNext() ) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException( "remove Not supported" );
+            }
+        };
+    }
+
 
 }
@@ -0,0 +1,381 @@
+package org.boon.datarepo.impl.indexes;
+
+import org.boon.datarepo.impl.maps.PersistentHashMap;
+import org.boon.datarepo.spi.SearchIndex;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Search index for string fields that also answers contains, ends with and regex matches without
+ * looking at every key. Next to the sorted keys it keeps a trigram index, every run of three characters
+ * of a key points to the keys that have it. A key is padded with a start and an end mark first, so a
+ * fragment at the end of a key has trigrams of its own.
+ * <p/>
+ * A search intersects the keys of the fragment's trigrams, smallest first, and then checks only those keys.
+ * Fragments too short to have a trigram fall back to checking every key, which is still one check per
+ * key instead of one per item.
+ *
+ * @param <KEY>  Key we are indexing on.
+ * @param <ITEM> The items we are indexing.
+ */
+public class NGramSearchIndex<KEY, ITEM> extends SearchIndexDefault<KEY, ITEM> {
+
+    private static final char START = '\u0002';
+    private static final char END = '\u0003';
+
+    /* Trigram packed into a long, to the keys that have it. Guarded by itself. */
+    private Map<Long, Set<String>> grams = new HashMap<>();
+
+
+    public NGramSearchIndex( Class<?> keyType ) {
+        super( keyType );
+    }
+
+    /**
+     * The trigrams go in a persistent map too, and each set of keys is copied on write.
+     */
+    @Override
+    public void setVersioned( boolean versioned ) {
+        super.setVersioned( versioned );
+        if ( versioned ) {
+            grams = new PersistentHashMap<>();
+        }
+    }
+
+    @Override
+    public boolean add( ITEM item ) {
+        boolean added = super.add( item );
+        if ( added ) {
+            synchronized ( grams ) {
+                for ( String key : stringKeys( item ) ) {
+                    addGrams( ( String ) canonicalKey( ( KEY ) key ) );
+                }
+            }
+        }
+        return added;
+    }
+
+    @Override
+    public boolean delete( ITEM item ) {
+        List<String> keys = stringKeys( item );
+        boolean deleted = super.delete( item );
+        synchronized ( grams ) {
+            for ( String key : keys ) {
+                if ( !map.containsKey( key ) ) {
+                    removeGrams( key );
+                }
+            }
+        }
+        return deleted;
+    }
+
+    @Override
+    public boolean deleteByKey( KEY key ) {
+        boolean deleted = super.deleteByKey( key );
+        KEY indexKey = getKey( key );
+        if ( indexKey instanceof String ) {
+            synchronized ( grams ) {
+                removeGrams( ( String ) indexKey );
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * The tree is built from the batch first, then the trigrams of every key.
+     */
+    @Override
+    public void addAll( List<ITEM> items ) {
+        super.addAll( items );
+        synchronized ( grams ) {
+            for ( KEY key : map.keySet() ) {
+                if ( key instanceof String ) {
+                    addGrams( ( String ) key );
+                }
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        synchronized ( grams ) {
+            grams.clear();
+        }
+    }
+
+    @Override
+    public SearchIndex<KEY, ITEM> snapshot() {
+        NGramSearchIndex<KEY, ITEM> copy = ( NGramSearchIndex<KEY, ITEM> ) super.snapshot();
+        if ( versioned ) {
+            copy.grams = ( ( PersistentHashMap<Long, Set<String>> ) grams ).snapshot();
+            return copy;
+        }
+        synchronized ( grams ) {
+            for ( Map.Entry<Long, Set<String>> entry : grams.entrySet() ) {
+                copy.grams.put( entry.getKey(), new HashSet<>( entry.getValue() ) );
+            }
+        }
+        return copy;
+    }
+
+    @Override
+    protected SearchIndexDefault<KEY, ITEM> newCopy() {
+        return new NGramSearchIndex<>( null );
+    }
+
+    @Override
+    public List<ITEM> findContains( KEY keyFrag ) {
+        keyFrag = getKey( keyFrag );
+        if ( !( keyFrag instanceof String ) ) {
+            return Collections.emptyList();
+        }
+        String fragment = ( String ) keyFrag;
+        List<ITEM> results = new ArrayList<>();
+        for ( String key : candidates( fragment ) ) {
+            if ( key.contains( fragment ) ) {
+                addItems( key, results );
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public List<ITEM> findEndsWith( KEY keyFrag ) {
+        keyFrag = getKey( keyFrag );
+        if ( !( keyFrag instanceof String ) ) {
+            return Collections.emptyList();
+        }
+        String fragment = ( String ) keyFrag;
+        List<ITEM> results = new ArrayList<>();
+        for ( String key : candidates( fragment + END ) ) {
+            if ( key.endsWith( fragment ) ) {
+                addItems( key, results );
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Items whose whole key matches the regular expression. The longest run of plain characters the
+     * expression can not match without picks the candidates, every candidate is then matched in full.
+     */
+    public List<ITEM> findMatches( String regex ) {
+        Pattern pattern = Pattern.compile( regex );
+        String literal = requiredLiteral( regex );
+        List<ITEM> results = new ArrayList<>();
+        for ( String key : candidates( literal == null ? "" : literal ) ) {
+            if ( pattern.matcher( key ).matches() ) {
+                addItems( key, results );
+            }
+        }
+        return results;
+    }
+
+    /**
+     * About how many keys could hold the fragment, the size of its rarest trigram.
+     * Fragments with no trigram count every key.
+     */
+    public int estimateContains( String fragment ) {
+        List<Long> fragmentGrams = grams( fragment, false );
+        synchronized ( grams ) {
+            if ( fragmentGrams.isEmpty() ) {
+                return map.size();
+            }
+            int smallest = Integer.MAX_VALUE;
+            for ( Long gram : fragmentGrams ) {
+                Set<String> keys = grams.get( gram );
+                smallest = Math.min( smallest, keys == null ? 0 : keys.size() );
+            }
+            return smallest;
+        }
+    }
+
+    public int estimateEndsWith( String fragment ) {
+        return estimateContains( fragment + END );
+    }
+
+    public int estimateMatches( String regex ) {
+        String literal = requiredLiteral( regex );
+        return estimateContains( literal == null ? "" : literal );
+    }
+
+    private void addItems( String key, List<ITEM> results ) {
+        MultiValue<ITEM> values = map.get( key );
+        if ( values != null ) {
+            values.addTo( results );
+        }
+    }
+
+    /**
+     * Keys that have every trigram of the fragment. With no trigram to go on, every key.
+     */
+    private Collection<String> candidates( String fragment ) {
+        List<Long> fragmentGrams = grams( fragment, false );
+        if ( fragmentGrams.isEmpty() ) {
+            List<String> keys = new ArrayList<>( map.size() );
+            for ( KEY key : map.keySet() ) {
+                if ( key instanceof String ) {
+                    keys.add( ( String ) key );
+                }
+            }
+            return keys;
+        }
+
+        synchronized ( grams ) {
+            List<Set<String>> postings = new ArrayList<>( fragmentGrams.size() );
+            for ( Long gram : fragmentGrams ) {
+                Set<String> keys = grams.get( gram );
+                if ( keys == null ) {
+                    return Collections.emptyList();
+                }
+                postings.add( keys );
+            }
+            Collections.sort( postings, new Comparator<Set<String>>() {
+                @Override
+                public int compare( Set<String> a, Set<String> b ) {
+                    return Integer.compare( a.size(), b.size() );
+                }
+            } );
+
+            List<String> keys = new ArrayList<>( postings.get( 0 ) );
+            for ( int index = 1; index < postings.size() && keys.size() > 0; index++ ) {
+                keys.retainAll( postings.get( index ) );
+            }
+            return keys;
+        }
+    }
+
+    private List<String> stringKeys( ITEM item ) {
+        KEY key = getKey( keyGetter.apply( item ) );
+        if ( key instanceof String ) {
+            return Collections.singletonList( ( String ) key );
+        } else if ( key instanceof Collection ) {
+            List<String> keys = new ArrayList<>();
+            for ( Object component : ( Collection ) key ) {
+                if ( component instanceof String ) {
+                    keys.add( ( String ) component );
+                }
+            }
+            return keys;
+        }
+        return Collections.emptyList();
+    }
+
+    private void addGrams( String key ) {
+        for ( Long gram : grams( key, true ) ) {
+            Set<String> keys = grams.get( gram );
+            if ( keys == null || versioned ) {
+                keys = keys == null ? new HashSet<String>( 4 ) : new HashSet<>( keys );
+                keys.add( key );
+                grams.put( gram, keys );
+            } else {
+                keys.add( key );
+            }
+        }
+    }
+
+    private void removeGrams( String key ) {
+        for ( Long gram : grams( key, true ) ) {
+            Set<String> keys = grams.get( gram );
+            if ( keys != null ) {
+                if ( versioned ) {
+                    keys = new HashSet<>( keys );
+                }
+                keys.remove( key );
+                if ( keys.isEmpty() ) {
+                    grams.remove( gram );
+                } else if ( versioned ) {
+                    grams.put( gram, keys );
+                }
+            }
+        }
+    }
+
+    /**
+     * The trigrams of the text, each packed into a long. A key gets the start and end marks around it.
+     */
+    private static List<Long> grams( String text, boolean key ) {
+        if ( key ) {
+            text = START + text + END;
+        }
+        if ( text.length() < 3 ) {
+            return Collections.emptyList();
+        }
+        List<Long> grams = new ArrayList<>( text.length() - 2 );
+        for ( int index = 0; index + 3 <= text.length(); index++ ) {
+            grams.add( ( ( long ) text.charAt( index ) << 32 )
+                    | ( ( long ) text.charAt( index + 1 ) << 16 )
+                    | text.charAt( index + 2 ) );
+        }
+        return grams;
+    }
+
+    /**
+     * The longest run of plain characters every match of the expression has to contain, or null.
+     * Only runs outside of groups and classes count, a character followed by ?, * or { is optional,
+     * and an expression with alternation or inline flags has none.
+     */
+    static String requiredLiteral( String regex ) {
+        if ( regex.indexOf( '|' ) != -1 || regex.contains( "(?" ) ) {
+            return null;
+        }
+
+        String best = "";
+        StringBuilder run = new StringBuilder();
+        int depth = 0;
+        for ( int index = 0; index < regex.length(); index++ ) {
+            char c = regex.charAt( index );
+            switch ( c ) {
+                case '\\':
+                    index++;
+                    best = longer( best, run );
+                    break;
+                case '[':
+                    best = longer( best, run );
+                    while ( index < regex.length() && regex.charAt( index ) != ']' ) {
+                        if ( regex.charAt( index ) == '\\' ) {
+                            index++;
+                        }
+                        index++;
+                    }
+                    break;
+                case '(':
+                    depth++;
+                    best = longer( best, run );
+                    break;
+                case ')':
+                    depth--;
+                    break;
+                case '?':
+                case '*':
+                case '{':
+                    if ( run.length() > 0 ) {
+                        run.setLength( run.length() - 1 );
+                    }
+                    best = longer( best, run );
+                    break;
+                case '.':
+                case '+':
+                case '^':
+                case '$':
+                case '}':
+                    best = longer( best, run );
+                    break;
+                default:
+                    if ( depth == 0 ) {
+                        run.append( c );
+                    }
+            }
+        }
+        best = longer( best, run );
+        return best.length() == 0 ? null : best;
+    }
+
+    private static String longer( String best, StringBuilder run ) {
+        String candidate = run.toString();
+        run.setLength( 0 );
+        return candidate.length() > best.length() ? candidate : best;
+    }
+}
@@ -0,0 +1,752 @@
+package org.boon.datarepo.impl.indexes;
+
+import org.boon.Exceptions;
+import org.boon.core.Conversions;
+import org.boon.core.Function;
+import org.boon.core.reflection.fields.FieldAccess;
+import org.boon.datarepo.spi.SearchIndex;
+
+import java.util.*;
+
+/**
+ * Search index for int, long, short, byte, char, float and double fields.
+ * Keys are kept as a sorted long[] next to an Object[] of items, so range lookups are two binary searches
+ * and an array copy. Nothing is boxed and there is no bucket per key.
+ * Floats and doubles are stored as longs that sort the same way the numbers do.
+ * <p/>
+ * Adds go to a small sorted buffer that is merged in once it grows past the square root of the index,
+ * so an add shifts at most that many slots and lookups binary search the buffer too.
+ * Deletes null out the slot and the hole is dropped at the next merge.
+ * <p/>
+ * This index is not thread safe. Concurrent repos use {@link SearchIndexDefault}.
+ *
+ * @param <KEY>  Key we are indexing on.
+ * @param <ITEM> The items we are indexing.
+ */
+public class PrimitiveSearchIndex<KEY, ITEM> implements SearchIndex<KEY, ITEM> {
+
+    private static final int MIN_PENDING = 1024;
+
+    private final FieldAccess field;
+    private final Class<?> keyType;
+    private final boolean floating;
+
+    private Function<ITEM, KEY> keyGetter;
+    private Function<Object, KEY> keyTransformer;
+
+    /* Sorted by key. Deleted slots are null until the next merge. */
+    private long[] keys = new long[ 0 ];
+    private Object[] items = new Object[ 0 ];
+    private int length;
+    private int deleted;
+
+    /* Added since the last merge, sorted by key. Equal keys stay in the order they came. */
+    private long[] pendingKeys = new long[ 16 ];
+    private Object[] pendingItems = new Object[ 16 ];
+    private int pending;
+
+
+    public PrimitiveSearchIndex( FieldAccess field ) {
+        Exceptions.requireNonNull( field, "field cannot be null" );
+        this.field = field;
+        this.keyType = field.type();
+        this.floating = keyType == double.class || keyType == float.class;
+
+        if ( !supports( keyType ) ) {
+            throw new IllegalArgumentException( String.format( "No primitive search index for type %s", keyType ) );
+        }
+    }
+
+    public static boolean supports( Class<?> type ) {
+        return type == int.class || type == long.class || type == short.class || type == byte.class
+                || type == char.class || type == double.class || type == float.class;
+    }
+
+
+    @Override
+    public boolean add( ITEM item ) {
+        if ( pending == pendingKeys.length ) {
+            pendingKeys = Arrays.copyOf( pendingKeys, pending * 2 );
+            pendingItems = Arrays.copyOf( pendingItems, pending * 2 );
+        }
+        long key = keyOf( item );
+        int at = pendingUpperBound( key );
+        System.arraycopy( pendingKeys, at, pendingKeys, at + 1, pending - at );
+        System.arraycopy( pendingItems, at, pendingItems, at + 1, pending - at );
+        pendingKeys[ at ] = key;
+        pendingItems[ at ] = item;
+        pending++;
+
+        if ( pending > MIN_PENDING && ( long ) pending * pending > length ) {
+            merge();
+        }
+        return true;
+    }
+
+    /**
+     * Null, this index does not keep buckets.
+     */
+    @Override
+    public Map<KEY, List<ITEM>> buckets() {
+        return null;
+    }
+
+    /**
+     * Puts the whole batch in the pending buffer and merges once, one sort for the batch.
+     */
+    @Override
+    public void addAll( List<ITEM> items ) {
+        int needed = pending + items.size();
+        if ( needed > pendingKeys.length ) {
+            pendingKeys = Arrays.copyOf( pendingKeys, needed );
+            pendingItems = Arrays.copyOf( pendingItems, needed );
+        }
+        for ( ITEM item : items ) {
+            pendingKeys[ pending ] = keyOf( item );
+            pendingItems[ pending ] = item;
+            pending++;
+        }
+        sort( pendingKeys, pendingItems, pending );
+        merge();
+    }
+
+    @Override
+    public boolean delete( ITEM item ) {
+        long key = keyOf( item );
+
+        for ( int index = lowerBound( key ); index < length && keys[ index ] == key; index++ ) {
+            if ( items[ index ] != null && items[ index ].equals( item ) ) {
+                items[ index ] = null;
+                deleted++;
+                if ( deleted > MIN_PENDING && deleted > ( length >> 1 ) ) {
+                    merge();
+                }
+                return true;
+            }
+        }
+
+        for ( int index = pendingLowerBound( key ); index < pending && pendingKeys[ index ] == key; index++ ) {
+            if ( pendingItems[ index ].equals( item ) ) {
+                removePending( index, index + 1 );
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean deleteByKey( KEY key ) {
+        long k = toSortable( key );
+
+        for ( int index = lowerBound( k ); index < length && keys[ index ] == k; index++ ) {
+            if ( items[ index ] != null ) {
+                items[ index ] = null;
+                deleted++;
+            }
+        }
+
+        removePending( pendingLowerBound( k ), pendingUpperBound( k ) );
+        return true;
+    }
+
+    /**
+     * Shifts the pending slots from end down over the ones from start, keeping the buffer sorted.
+     */
+    private void removePending( int start, int end ) {
+        int removed = end - start;
+        if ( removed == 0 ) {
+            return;
+        }
+        System.arraycopy( pendingKeys, end, pendingKeys, start, pending - end );
+        System.arraycopy( pendingItems, end, pendingItems, start, pending - end );
+        Arrays.fill( pendingItems, pending - removed, pending, null );
+        pending -= removed;
+    }
+
+
+    @Override
+    public ITEM get( KEY key ) {
+        List<ITEM> results = findEquals( key );
+        return results == null ? null : results.get( 0 );
+    }
+
+    @Override
+    public List<ITEM> getAll( KEY key ) {
+        return findEquals( key );
+    }
+
+    @Override
+    public boolean has( KEY key ) {
+        return findEquals( key ) != null;
+    }
+
+    @Override
+    public int count( KEY key ) {
+        List<ITEM> results = findEquals( key );
+        return results == null ? 0 : results.size();
+    }
+
+    @Override
+    public List<ITEM> findEquals( KEY key ) {
+        long k = toSortable( key );
+        List<ITEM> results = range( k, true, k, true );
+        return results.size() == 0 ? null : results;
+    }
+
+    @Override
+    public List<ITEM> findBetween( KEY start, KEY end ) {
+        return range( toSortable( start ), true, toSortable( end ), false );
+    }
+
+    @Override
+    public List<ITEM> findGreaterThan( KEY key ) {
+        return range( toSortable( key ), false, Long.MAX_VALUE, true );
+    }
+
+    @Override
+    public List<ITEM> findGreaterThanEqual( KEY key ) {
+        return range( toSortable( key ), true, Long.MAX_VALUE, true );
+    }
+
+    @Override
+    public List<ITEM> findLessThan( KEY key ) {
+        return range( Long.MIN_VALUE, true, toSortable( key ), false );
+    }
+
+    @Override
+    public List<ITEM> findLessThanEqual( KEY key ) {
+        return range( Long.MIN_VALUE, true, toSortable( key ), true );
+    }
+
+    /**
+     * Numbers have no prefix or suffix.
+     */
+    @Override
+    public List<ITEM> findStartsWith( KEY keyFrag ) {
+        return Collections.EMPTY_LIST;
+    }
+
+    @Override
+    public List<ITEM> findEndsWith( KEY keyFrag ) {
+        return Collections.EMPTY_LIST;
+    }
+
+    @Override
+    public List<ITEM> findContains( KEY keyFrag ) {
+        return Collections.EMPTY_LIST;
+    }
+
+    /**
+     * Binary searches over the sorted arrays and the pending adds. Deleted slots that have not been merged out yet
+     * are still counted.
+     */
+    @Override
+    public int estimateBetween( KEY start, boolean startInclusive, KEY end, boolean endInclusive ) {
+        long from = start == null ? Long.MIN_VALUE : toSortable( start );
+        long to = end == null ? Long.MAX_VALUE : toSortable( end );
+
+        if ( !startInclusive && start != null ) {
+            if ( from == Long.MAX_VALUE ) {
+                return 0;
+            }
+            from++;
+        }
+        if ( !endInclusive && end != null ) {
+            if ( to == Long.MIN_VALUE ) {
+                return 0;
+            }
+            to--;
+        }
+        if ( from > to ) {
+            return 0;
+        }
+
+        int count = ( to == Long.MAX_VALUE ? length : lowerBound( to + 1 ) ) - lowerBound( from );
+        return count + pendingUpperBound( to ) - pendingLowerBound( from );
+    }
+
+    /**
+     * Merges the pending adds first so the walk is one pass over the sorted arrays.
+     */
+    @Override
+    public Iterator<ITEM> iteratorFrom( KEY start, boolean startInclusive ) {
+        if ( pending > 0 ) {
+            merge();
+        }
+
+        int from = 0;
+        if ( start != null ) {
+            long key = toSortable( start );
+            if ( !startInclusive && key == Long.MAX_VALUE ) {
+                from = length;
+            } else {
+                from = lowerBound( startInclusive ? key : key + 1 );
+            }
+        }
+
+        final int first = from;
+        return new Iterator<ITEM>() {
+            int index = skipDeleted( first );
+
+            @Override
+            public boolean hasNext() {
+                return index < length;
+            }
+
+            @Override
+            public ITEM next() {
+                if ( index >= length ) {
+                    throw new NoSuchElementException();
+                }
+                ITEM item = ( ITEM ) items[ index ];
+                index = skipDeleted( index + 1 );
+                return item;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException( "remove Not supported" );
+            }
+        };
+    }
+
+    private int skipDeleted( int index ) {
+        while ( index < length && items[ index ] == null ) {
+            index++;
+        }
+        return index;
+    }
+
+    @Override
+    public Iterator<ITEM> descendingIterator() {
+        if ( pending > 0 ) {
+            merge();
+        }
+
+        return new Iterator<ITEM>() {
+            int index = skipDeletedDown( length - 1 );
+
+            @Override
+            public boolean hasNext() {
+                return index >= 0;
+            }
+
+            @Override
+            public ITEM next() {
+                if ( index < 0 ) {
+                    throw new NoSuchElementException();
+                }
+                ITEM item = ( ITEM ) items[ index ];
+                index = skipDeletedDown( index - 1 );
+                return item;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException( "remove Not supported" );
+            }
+        };
+    }
+
+    private int skipDeletedDown( int index ) {
+        while ( index >= 0 && items[ index ] == null ) {
+            index--;
+        }
+        return index;
+    }
+
+    private List<ITEM> range( long start, boolean startInclusive, long end, boolean endInclusive ) {
+
+        if ( !startInclusive ) {
+            if ( start == Long.MAX_VALUE ) {
+                return Collections.EMPTY_LIST;
+            }
+            start++;
+        }
+        if ( !endInclusive ) {
+            if ( end == Long.MIN_VALUE ) {
+                return Collections.EMPTY_LIST;
+            }
+            end--;
+        }
+        if ( start > end ) {
+            return Collections.EMPTY_LIST;
+        }
+
+        int from = lowerBound( start );
+        int to = end == Long.MAX_VALUE ? length : lowerBound( end + 1 );
+
+        List<ITEM> results = new ArrayList<>( to - from + 16 );
+        for ( int index = from; index < to; index++ ) {
+            Object item = items[ index ];
+            if ( item != null ) {
+                results.add( ( ITEM ) item );
+            }
+        }
+
+        for ( int index = pendingLowerBound( start ), last = pendingUpperBound( end ); index < last; index++ ) {
+            results.add( ( ITEM ) pendingItems[ index ] );
+        }
+        return results;
+    }
+
+
+    @Override
+    public ITEM min() {
+        int index = firstLive();
+        int pendingIndex = pendingMin();
+        if ( pendingIndex != -1 && ( index == -1 || pendingKeys[ pendingIndex ] < keys[ index ] ) ) {
+            return ( ITEM ) pendingItems[ pendingIndex ];
+        }
+        return index == -1 ? null : ( ITEM ) items[ index ];
+    }
+
+    @Override
+    public ITEM max() {
+        int index = lastLive();
+        int pendingIndex = pendingMax();
+        if ( pendingIndex != -1 && ( index == -1 || pendingKeys[ pendingIndex ] > keys[ index ] ) ) {
+            return ( ITEM ) pendingItems[ pendingIndex ];
+        }
+        return index == -1 ? null : ( ITEM ) items[ index ];
+    }
+
+    @Override
+    public ITEM findFirst() {
+        return min();
+    }
+
+    @Override
+    public ITEM findLast() {
+        return max();
+    }
+
+    @Override
+    public KEY findFirstKey() {
+        ITEM item = min();
+        return item == null ? null : toKey( keyOf( item ) );
+    }
+
+    @Override
+    public KEY findLastKey() {
+        ITEM item = max();
+        return item == null ? null : toKey( keyOf( item ) );
+    }
+
+    private int firstLive() {
+        for ( int index = 0; index < length; index++ ) {
+            if ( items[ index ] != null ) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private int lastLive() {
+        for ( int index = length - 1; index >= 0; index-- ) {
+            if ( items[ index ] != null ) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private int pendingMin() {
+        return pending == 0 ? -1 : 0;
+    }
+
+    private int pendingMax() {
+        return pending - 1;
+    }
+
+
+    /**
+     * First slot whose key is not less than this key.
+     */
+    private int lowerBound( long key ) {
+        int low = 0;
+        int high = length;
+        while ( low < high ) {
+            int middle = ( low + high ) >>> 1;
+            if ( keys[ middle ] < key ) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * First pending slot whose key is not less than this key.
+     */
+    private int pendingLowerBound( long key ) {
+        int low = 0;
+        int high = pending;
+        while ( low < high ) {
+            int middle = ( low + high ) >>> 1;
+            if ( pendingKeys[ middle ] < key ) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * First pending slot whose key is greater than this key.
+     */
+    private int pendingUpperBound( long key ) {
+        int low = 0;
+        int high = pending;
+        while ( low < high ) {
+            int middle = ( low + high ) >>> 1;
+            if ( pendingKeys[ middle ] <= key ) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Merges the sorted pending adds into the sorted arrays, dropping deleted slots on the way.
+     */
+    private void merge() {
+
+        int size = length - deleted + pending;
+        long[] newKeys = new long[ size ];
+        Object[] newItems = new Object[ size ];
+
+        int index = 0;
+        int pendingIndex = 0;
+        int out = 0;
+        while ( index < length || pendingIndex < pending ) {
+            if ( index < length && items[ index ] == null ) {
+                index++;
+            } else if ( pendingIndex == pending || ( index < length && keys[ index ] <= pendingKeys[ pendingIndex ] ) ) {
+                newKeys[ out ] = keys[ index ];
+                newItems[ out ] = items[ index ];
+                out++;
+                index++;
+            } else {
+                newKeys[ out ] = pendingKeys[ pendingIndex ];
+                newItems[ out ] = pendingItems[ pendingIndex ];
+                out++;
+                pendingIndex++;
+            }
+        }
+
+        keys = newKeys;
+        items = newItems;
+        length = out;
+        deleted = 0;
+
+        Arrays.fill( pendingItems, 0, pending, null );
+        pending = 0;
+    }
+
+    /**
+     * Bottom up merge sort of the two arrays together by key. Stable, so equal keys keep the order they came in.
+     */
+    private static void sort( long[] keys, Object[] items, int length ) {
+        long[] fromKeys = keys;
+        Object[] fromItems = items;
+        long[] toKeys = new long[ length ];
+        Object[] toItems = new Object[ length ];
+
+        for ( int width = 1; width < length; width <<= 1 ) {
+            for ( int low = 0; low < length; low += width << 1 ) {
+                int middle = Math.min( low + width, length );
+                int high = Math.min( low + ( width << 1 ), length );
+                int left = low;
+                int right = middle;
+                for ( int out = low; out < high; out++ ) {
+                    if ( right == high || ( left < middle && fromKeys[ left ] <= fromKeys[ right ] ) ) {
+                        toKeys[ out ] = fromKeys[ left ];
+                        toItems[ out ] = fromItems[ left ];
+                        left++;
+                    } else {
+                        toKeys[ out ] = fromKeys[ right ];
+                        toItems[ out ] = fromItems[ right ];
+                        right++;
+                    }
+                }
+            }
+            long[] swapKeys = fromKeys;
+            fromKeys = toKeys;
+            toKeys = swapKeys;
+            Object[] swapItems = fromItems;
+            fromItems = toItems;
+            toItems = swapItems;
+        }
+
+        if ( fromKeys != keys ) {
+            System.arraycopy( fromKeys, 0, keys, 0, length );
+            System.arraycopy( fromItems, 0, items, 0, length );
+        }
+    }
+
+
+    private long keyOf( Object item ) {
+        if ( keyType == int.class ) {
+            return field.getInt( item );
+        } else if ( keyType == long.class ) {
+            return field.getLong( item );
+        } else if ( keyType == double.class ) {
+            return sortable( field.getDouble( item ) );
+        } else if ( keyType == float.class ) {
+            return sortable( field.getFloat( item ) );
+        } else if ( keyType == short.class ) {
+            return field.getShort( item );
+        } else if ( keyType == byte.class ) {
+            return field.getByte( item );
+        } else {
+            return field.getChar( item );
+        }
+    }
+
+    private long toSortable( Object key ) {
+        if ( keyTransformer != null ) {
+            key = keyTransformer.apply( key );
+        }
+
+        if ( floating ) {
+            return sortable( Conversions.toDouble( key ) );
+        } else if ( key instanceof Character ) {
+            return ( Character ) key;
+        } else {
+            return Conversions.toLong( key );
+        }
+    }
+
+    private KEY toKey( long key ) {
+        Object value;
+        if ( keyType == int.class ) {
+            value = ( int ) key;
+        } else if ( keyType == long.class ) {
+            value = key;
+        } else if ( keyType == double.class ) {
+            value = fromSortable( key );
+        } else if ( keyType == float.class ) {
+            value = ( float ) fromSortable( key );
+        } else if ( keyType == short.class ) {
+            value = ( short ) key;
+        } else if ( keyType == byte.class ) {
+            value = ( byte ) key;
+        } else {
+            value = ( char ) key;
+        }
+        return ( KEY ) value;
+    }
+
+    /**
+     * Flips the bits of negative doubles so the longs sort in the same order as the doubles.
+     */
+    private static long sortable( double value ) {
+        long bits = Double.doubleToLongBits( value );
+        return bits ^ ( ( bits >> 63 ) & Long.MAX_VALUE );
+    }
+
+    private static double fromSortable( long bits ) {
+        return Double.longBitsToDouble( bits ^ ( ( bits >> 63 ) & Long.MAX_VALUE ) );
+    }
+
+
+    @Override
+    public List<ITEM> all() {
+        List<ITEM> results = new ArrayList<>( length - deleted + pending );
+        for ( int index = 0; index < length; index++ ) {
+            if ( items[ index ] != null ) {
+                results.add( ( ITEM ) items[ index ] );
+            }
+        }
+        for ( int index = 0; index < pending; index++ ) {
+            results.add( ( ITEM ) pendingItems[ index ] );
+        }
+        return results;
+    }
+
+    /**
+     * Number of items, not number of keys.
+     */
+    @Override
+    public int size() {
+        return length - deleted + pending;
+    }
+
+    @Override
+    public Collection<ITEM> toCollection() {
+        return all();
+    }
+
+    @Override
+    public void clear() {
+        keys = new long[ 0 ];
+        items = new Object[ 0 ];
+        length = 0;
+        deleted = 0;
+        Arrays.fill( pendingItems, 0, pending, null );
+        pending = 0;
+    }
+
+
+    @Override
+    public void setKeyGetter( Function<ITEM, KEY> keyGetter ) {
+        Exceptions.requireNonNull( keyGetter, "keyGetter cannot be null" );
+        this.keyGetter = keyGetter;
+    }
+
+    @Override
+    public boolean isPrimaryKeyOnly() {
+        return false;
+    }
+
+    @Override
+    public void setInputKeyTransformer( Function<Object, KEY> func ) {
+        this.keyTransformer = func;
+    }
+
+    /**
+     * There are no buckets.
+     */
+    @Override
+    public void setBucketSize( int size ) {
+    }
+
+    @Override
+    public void setConcurrent( boolean concurrent ) {
+        if ( concurrent ) {
+            throw new UnsupportedOperationException( "concurrent primitive search index Not supported" );
+        }
+    }
+
+    /**
+     * Primitive keys always sort in natural order.
+     */
+    @Override
+    public void setComparator( Comparator<KEY> collator ) {
+    }
+
+    @Override
+    public void init() {
+    }
+
+    @Override
+    public SearchIndex<KEY, ITEM> snapshot() {
+        PrimitiveSearchIndex<KEY, ITEM> copy = new PrimitiveSearchIndex<>( field );
+        copy.keyGetter = this.keyGetter;
+        copy.keyTransformer = this.keyTransformer;
+        copy.keys = Arrays.copyOf( keys, length );
+        copy.items = Arrays.copyOf( items, length );
+        copy.length = this.length;
+        copy.deleted = this.deleted;
+        copy.pendingKeys = Arrays.copyOf( pendingKeys, pendingKeys.length );
+        copy.pendingItems = Arrays.copyOf( pendingItems, pendingItems.length );
+        copy.pending = this.pending;
+        return copy;
+    }
+
+}
@@ -0,0 +1,419 @@
+package org.boon.datarepo.impl.indexes;
+
+import java.util.Arrays;
+
+/**
+ * Compressed set of row ids in the style of a roaring bitmap.
+ * Ids are split on their high 16 bits into containers. A container with few rows is a sorted char[],
+ * a container with more than 4096 rows is a 1024 word bitset.
+ * <p/>
+ * and, or and andNot hand back new bitmaps and never change their inputs.
+ */
+public final class RowBitmap {
+
+    private static final int ARRAY_MAX = 4096;
+    private static final int WORDS = 1024;
+
+    private char[] highs = new char[ 4 ];
+    private Container[] containers = new Container[ 4 ];
+    private int size;
+
+
+    private static final class Container {
+
+        /* Exactly one of these is set. */
+        char[] values;
+        long[] bits;
+        int count;
+
+        static Container ofValues( char[] values, int count ) {
+            if ( count == 0 ) {
+                return null;
+            }
+            Container container = new Container();
+            container.values = values;
+            container.count = count;
+            return container;
+        }
+
+        static Container ofBits( long[] bits ) {
+            int count = 0;
+            for ( long word : bits ) {
+                count += Long.bitCount( word );
+            }
+            if ( count == 0 ) {
+                return null;
+            }
+            Container container = new Container();
+            container.bits = bits;
+            container.count = count;
+            return count <= ARRAY_MAX ? container.toArrayContainer() : container;
+        }
+
+        boolean contains( char low ) {
+            if ( bits != null ) {
+                return ( bits[ low >>> 6 ] & ( 1L << low ) ) != 0;
+            }
+            return Arrays.binarySearch( values, 0, count, low ) >= 0;
+        }
+
+        boolean add( char low ) {
+            if ( bits != null ) {
+                long word = bits[ low >>> 6 ];
+                long set = word | ( 1L << low );
+                if ( set == word ) {
+                    return false;
+                }
+                bits[ low >>> 6 ] = set;
+                count++;
+                return true;
+            }
+
+            int index = Arrays.binarySearch( values, 0, count, low );
+            if ( index >= 0 ) {
+                return false;
+            }
+            index = -index - 1;
+            if ( count == values.length ) {
+                values = Arrays.copyOf( values, Math.min( ARRAY_MAX + 1, Math.max( 4, count * 2 ) ) );
+            }
+            System.arraycopy( values, index, values, index + 1, count - index );
+            values[ index ] = low;
+            count++;
+
+            if ( count > ARRAY_MAX ) {
+                bits = toBits();
+                values = null;
+            }
+            return true;
+        }
+
+        boolean remove( char low ) {
+            if ( bits != null ) {
+                long word = bits[ low >>> 6 ];
+                long cleared = word & ~( 1L << low );
+                if ( cleared == word ) {
+                    return false;
+                }
+                bits[ low >>> 6 ] = cleared;
+                count--;
+                if ( count <= ARRAY_MAX / 2 ) {
+                    values = toArrayContainer().values;
+                    bits = null;
+                }
+                return true;
+            }
+
+            int index = Arrays.binarySearch( values, 0, count, low );
+            if ( index < 0 ) {
+                return false;
+            }
+            System.arraycopy( values, index + 1, values, index, count - index - 1 );
+            count--;
+            return true;
+        }
+
+        long[] toBits() {
+            if ( bits != null ) {
+                return bits.clone();
+            }
+            long[] result = new long[ WORDS ];
+            for ( int index = 0; index < count; index++ ) {
+                char low = values[ index ];
+                result[ low >>> 6 ] |= 1L << low;
+            }
+            return result;
+        }
+
+        Container toArrayContainer() {
+            char[] result = new char[ count ];
+            int out = 0;
+            for ( int word = 0; word < WORDS; word++ ) {
+                long bitsLeft = bits[ word ];
+                while ( bitsLeft != 0 ) {
+                    result[ out++ ] = ( char ) ( ( word << 6 ) + Long.numberOfTrailingZeros( bitsLeft ) );
+                    bitsLeft &= bitsLeft - 1;
+                }
+            }
+            return ofValues( result, count );
+        }
+
+        Container copy() {
+            Container copy = new Container();
+            copy.values = values == null ? null : Arrays.copyOf( values, count );
+            copy.bits = bits == null ? null : bits.clone();
+            copy.count = count;
+            return copy;
+        }
+
+        /**
+         * Values of an array container that are, or are not, in the other container.
+         */
+        static Container filter( Container array, Container other, boolean keep ) {
+            char[] result = new char[ array.count ];
+            int out = 0;
+            for ( int index = 0; index < array.count; index++ ) {
+                char low = array.values[ index ];
+                if ( other.contains( low ) == keep ) {
+                    result[ out++ ] = low;
+                }
+            }
+            return ofValues( result, out );
+        }
+
+        static Container and( Container a, Container b ) {
+            if ( a.bits == null ) {
+                return filter( a, b, true );
+            } else if ( b.bits == null ) {
+                return filter( b, a, true );
+            }
+            long[] result = new long[ WORDS ];
+            for ( int index = 0; index < WORDS; index++ ) {
+                result[ index ] = a.bits[ index ] & b.bits[ index ];
+            }
+            return ofBits( result );
+        }
+
+        static Container andNot( Container a, Container b ) {
+            if ( a.bits == null ) {
+                return filter( a, b, false );
+            }
+            long[] result = a.bits.clone();
+            if ( b.bits == null ) {
+                for ( int index = 0; index < b.count; index++ ) {
+                    char low = b.values[ index ];
+                    result[ low >>> 6 ] &= ~( 1L << low );
+                }
+            } else {
+                for ( int index = 0; index < WORDS; index++ ) {
+                    result[ index ] &= ~b.bits[ index ];
+                }
+            }
+            return ofBits( result );
+        }
+
+        static Container or( Container a, Container b ) {
+            if ( a.bits == null && b.bits == null && a.count + b.count <= ARRAY_MAX ) {
+                char[] result = new char[ a.count + b.count ];
+                int left = 0;
+                int right = 0;
+                int out = 0;
+                while ( left < a.count || right < b.count ) {
+                    if ( right == b.count || ( left < a.count && a.values[ left ] < b.values[ right ] ) ) {
+                        result[ out++ ] = a.values[ left++ ];
+                    } else if ( left == a.count || b.values[ right ] < a.values[ left ] ) {
+                        result[ out++ ] = b.values[ right++ ];
+                    } else {
+                        result[ out++ ] = a.values[ left++ ];
+                        right++;
+                    }
+                }
+                return ofValues( result, out );
+            }
+
+            long[] result = a.toBits();
+            if ( b.bits == null ) {
+                for ( int index = 0; index < b.count; index++ ) {
+                    char low = b.values[ index ];
+                    result[ low >>> 6 ] |= 1L << low;
+                }
+            } else {
+                for ( int index = 0; index < WORDS; index++ ) {
+                    result[ index ] |= b.bits[ index ];
+                }
+            }
+            return ofBits( result );
+        }
+    }
+
+
+    public boolean add( int row ) {
+        char high = ( char ) ( row >>> 16 );
+        int index = find( high );
+        if ( index < 0 ) {
+            index = -index - 1;
+            Container container = new Container();
+            container.values = new char[ 4 ];
+            insert( index, high, container );
+        }
+        return containers[ index ].add( ( char ) row );
+    }
+
+    public boolean remove( int row ) {
+        int index = find( ( char ) ( row >>> 16 ) );
+        if ( index < 0 ) {
+            return false;
+        }
+        Container container = containers[ index ];
+        boolean removed = container.remove( ( char ) row );
+        if ( container.count == 0 ) {
+            System.arraycopy( highs, index + 1, highs, index, size - index - 1 );
+            System.arraycopy( containers, index + 1, containers, index, size - index - 1 );
+            size--;
+            containers[ size ] = null;
+        }
+        return removed;
+    }
+
+    public boolean contains( int row ) {
+        int index = find( ( char ) ( row >>> 16 ) );
+        return index >= 0 && containers[ index ].contains( ( char ) row );
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int cardinality() {
+        int count = 0;
+        for ( int index = 0; index < size; index++ ) {
+            count += containers[ index ].count;
+        }
+        return count;
+    }
+
+    /**
+     * The lowest row, or -1 if there are none.
+     */
+    public int first() {
+        if ( size == 0 ) {
+            return -1;
+        }
+        Container container = containers[ 0 ];
+        int low;
+        if ( container.bits == null ) {
+            low = container.values[ 0 ];
+        } else {
+            int word = 0;
+            while ( container.bits[ word ] == 0 ) {
+                word++;
+            }
+            low = ( word << 6 ) + Long.numberOfTrailingZeros( container.bits[ word ] );
+        }
+        return ( highs[ 0 ] << 16 ) | low;
+    }
+
+    /**
+     * Rows in ascending order.
+     */
+    public int[] toArray() {
+        int[] rows = new int[ cardinality() ];
+        int out = 0;
+        for ( int index = 0; index < size; index++ ) {
+            int high = highs[ index ] << 16;
+            Container container = containers[ index ];
+            if ( container.bits == null ) {
+                for ( int value = 0; value < container.count; value++ ) {
+                    rows[ out++ ] = high | container.values[ value ];
+                }
+            } else {
+                for ( int word = 0; word < WORDS; word++ ) {
+                    long bitsLeft = container.bits[ word ];
+                    while ( bitsLeft != 0 ) {
+                        rows[ out++ ] = high | ( ( word << 6 ) + Long.numberOfTrailingZeros( bitsLeft ) );
+                        bitsLeft &= bitsLeft - 1;
+                    }
+                }
+            }
+        }
+        return rows;
+    }
+
+    public RowBitmap copy() {
+        RowBitmap copy = new RowBitmap();
+        for ( int index = 0; index < size; index++ ) {
+            copy.append( highs[ index ], containers[ index ].copy() );
+        }
+        return copy;
+    }
+
+    public RowBitmap and( RowBitmap other ) {
+        RowBitmap result = new RowBitmap();
+        int left = 0;
+        int right = 0;
+        while ( left < size && right < other.size ) {
+            if ( highs[ left ] < other.highs[ right ] ) {
+                left++;
+            } else if ( highs[ left ] > other.highs[ right ] ) {
+                right++;
+            } else {
+                result.append( highs[ left ], Container.and( containers[ left ], other.containers[ right ] ) );
+                left++;
+                right++;
+            }
+        }
+        return result;
+    }
+
+    public RowBitmap or( RowBitmap other ) {
+        RowBitmap result = new RowBitmap();
+        int left = 0;
+        int right = 0;
+        while ( left < size || right < other.size ) {
+            if ( right == other.size || ( left < size && highs[ left ] < other.highs[ right ] ) ) {
+                result.append( highs[ left ], containers[ left ].copy() );
+                left++;
+            } else if ( left == size || other.highs[ right ] < highs[ left ] ) {
+                result.append( other.highs[ right ], other.containers[ right ].copy() );
+                right++;
+            } else {
+                result.append( highs[ left ], Container.or( containers[ left ], other.containers[ right ] ) );
+                left++;
+                right++;
+            }
+        }
+        return result;
+    }
+
+    public RowBitmap andNot( RowBitmap other ) {
+        RowBitmap result = new RowBitmap();
+        int right = 0;
+        for ( int left = 0; left < size; left++ ) {
+            while ( right < other.size && other.highs[ right ] < highs[ left ] ) {
+                right++;
+            }
+            if ( right < other.size && other.highs[ right ] == highs[ left ] ) {
+                result.append( highs[ left ], Container.andNot( containers[ left ], other.containers[ right ] ) );
+            } else {
+                result.append( highs[ left ], containers[ left ].copy() );
+            }
+        }
+        return result;
+    }
+
+    public void clear() {
+        Arrays.fill( containers, 0, size, null );
+        size = 0;
+    }
+
+
+    private int find( char high ) {
+        return Arrays.binarySearch( highs, 0, size, high );
+    }
+
+    /**
+     * Adds a container after all the others. Empty containers are dropped.
+     */
+    private void append( char high, Container container ) {
+        if ( container != null ) {
+            insert( size, high, container );
+        }
+    }
+
+    private void insert( int index, char high, Container container ) {
+        if ( size == highs.length ) {
+            highs = Arrays.copyOf( highs, size * 2 );
+            containers = Arrays.copyOf( containers, size * 2 );
+        }
+        System.arraycopy( highs, index, highs, index + 1, size - index );
+        System.arraycopy( containers, index, containers, index + 1, size - index );
+        highs[ index ] = high;
+        containers[ index ] = container;
+        size++;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString( toArray() );
+    }
+}
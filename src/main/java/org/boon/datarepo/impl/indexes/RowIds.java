@@ -0,0 +1,152 @@
+package org.boon.datarepo.impl.indexes;
+
+import org.boon.Exceptions;
+import org.boon.core.Function;
+
+import java.util.*;
+
+/**
+ * Hands out small int row ids to the items of one repo so bitmap indexes can share them.
+ * An item keeps its id for as long as its primary key is in the repo.
+ * Ids of deleted items are reused.
+ * <p/>
+ * The items themselves are kept by store, load and forget, which subclasses can override to keep
+ * them somewhere other than an array of references.
+ *
+ * @param <ITEM> The items we are numbering.
+ */
+public class RowIds<ITEM> {
+
+    private final Function<ITEM, Object> primaryKeyGetter;
+    private final Map<Object, Integer> ids = new HashMap<>();
+    private final RowBitmap live = new RowBitmap();
+
+    private Object[] items = new Object[ 16 ];
+    private int next;
+
+    private int[] free = new int[ 16 ];
+    private int freeCount;
+
+
+    public RowIds( Function<ITEM, Object> primaryKeyGetter ) {
+        Exceptions.requireNonNull( primaryKeyGetter, "primaryKeyGetter cannot be null" );
+        this.primaryKeyGetter = primaryKeyGetter;
+    }
+
+    /**
+     * The id for this item, given out now if it does not have one yet.
+     * An edited copy of an item takes over the id of the original.
+     */
+    public int assign( ITEM item ) {
+        Object key = primaryKeyGetter.apply( item );
+        Integer id = ids.get( key );
+        if ( id == null ) {
+            id = freeCount > 0 ? free[ --freeCount ] : next++;
+            ids.put( key, id );
+            live.add( id );
+        }
+        store( id, item );
+        return id;
+    }
+
+    /**
+     * The id for this item or -1.
+     */
+    public int idOf( ITEM item ) {
+        return idOfKey( primaryKeyGetter.apply( item ) );
+    }
+
+    /**
+     * The id for the item with this primary key or -1.
+     */
+    public int idOfKey( Object key ) {
+        Integer id = ids.get( key );
+        return id == null ? -1 : id;
+    }
+
+    public void release( ITEM item ) {
+        Integer id = ids.remove( primaryKeyGetter.apply( item ) );
+        if ( id == null ) {
+            return;
+        }
+        forget( id );
+        live.remove( id );
+        if ( freeCount == free.length ) {
+            free = Arrays.copyOf( free, freeCount * 2 );
+        }
+        free[ freeCount++ ] = id;
+    }
+
+    public ITEM get( int id ) {
+        return load( id );
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    /**
+     * Every id in use. Used to answer NOT.
+     */
+    public RowBitmap live() {
+        return live;
+    }
+
+    /**
+     * Turns rows back into items, in row order.
+     */
+    public List<ITEM> items( RowBitmap rows ) {
+        int[] ids = rows.toArray();
+        List<ITEM> results = new ArrayList<>( ids.length );
+        for ( int id : ids ) {
+            ITEM item = load( id );
+            if ( item != null ) {
+                results.add( item );
+            }
+        }
+        return results;
+    }
+
+    /**
+     * A copy that later assigns and releases do not change. The items are loaded into a plain array.
+     */
+    public RowIds<ITEM> snapshot() {
+        RowIds<ITEM> copy = new RowIds<>( primaryKeyGetter );
+        copy.ids.putAll( ids );
+        for ( int id : live.toArray() ) {
+            copy.live.add( id );
+            copy.store( id, load( id ) );
+        }
+        copy.next = next;
+        copy.free = Arrays.copyOf( free, free.length );
+        copy.freeCount = freeCount;
+        return copy;
+    }
+
+    public void clear() {
+        ids.clear();
+        live.clear();
+        forgetAll();
+        next = 0;
+        freeCount = 0;
+    }
+
+    protected void store( int id, ITEM item ) {
+        if ( id >= items.length ) {
+            items = Arrays.copyOf( items, Math.max( id + 1, items.length * 2 ) );
+        }
+        items[ id ] = item;
+    }
+
+    protected ITEM load( int id ) {
+        return ( ITEM ) items[ id ];
+    }
+
+    protected void forget( int id ) {
+        items[ id ] = null;
+    }
+
+    protected void forgetAll() {
+        Arrays.fill( items, null );
+    }
+}
@@ -1,5 +1,7 @@
 package org.boon.datarepo.impl.indexes;
 
+import org.boon.datarepo.impl.maps.JavaUtilNavigableMap;
+import org.boon.datarepo.impl.maps.PersistentNavigableMap;
 import org.boon.datarepo.spi.SPIFactory;
 import org.boon.datarepo.spi.SearchIndex;
 import org.boon.core.Function;
@@ -7,6 +9,7 @@ import org.boon.primitive.CharBuf;
 
 import java.text.Collator;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Default Search Index which uses a TreeMap
@@ -21,6 +24,10 @@ public class SearchIndexDefault<KEY, ITEM> extends LookupIndexDefault<KEY, ITEM>
 
     private Class<?> keyType;
 
+    /* Key statistics for the query planner, rebuilt once enough has changed. */
+    private volatile Histogram histogram;
+    private final AtomicInteger changes = new AtomicInteger();
+
 
     public SearchIndexDefault( Class<?> keyType ) {
         super( keyType );
@@ -62,7 +69,16 @@ public class SearchIndexDefault<KEY, ITEM> extends LookupIndexDefault<KEY, ITEM>
 
     @Override
     public void init() {
-        super.map = SPIFactory.getMapCreatorFactory().get().createNavigableMap( this.keyType, this.collator );
+        Comparator comparator = this.collator;
+        if ( comparator != null && dictionary != null && keyType == String.class ) {
+            comparator = dictionary.comparator( comparator );
+        }
+        if ( versioned ) {
+            /* Like the map creator, only string keys sort with the comparator. */
+            super.map = new PersistentNavigableMap<>( keyType == String.class ? comparator : null );
+        } else {
+            super.map = SPIFactory.getMapCreatorFactory().get().createNavigableMap( this.keyType, comparator );
+        }
         this.navigableMap = ( NavigableMap<KEY, MultiValue> ) super.map;
     }
 
@@ -169,7 +185,7 @@ public class SearchIndexDefault<KEY, ITEM> extends LookupIndexDefault<KEY, ITEM>
                 for ( ITEM value : mv.getValues() ) {
 
                     String svalue = ( String ) this.keyGetter.apply( value );
-                    if ( svalue.endsWith( ( String ) keyFrag ) ) {
+                    if ( svalue.contains( ( String ) keyFrag ) ) {
                         results.add( value );
                     }
                 }
@@ -257,9 +273,93 @@ public class SearchIndexDefault<KEY, ITEM> extends LookupIndexDefault<KEY, ITEM>
         return ( ITEM ) this.navigableMap.lastEntry().getValue().getValue();
     }
 
+    @Override
+    public boolean add( ITEM item ) {
+        changes.incrementAndGet();
+        return super.add( item );
+    }
+
+    @Override
+    public boolean delete( ITEM item ) {
+        changes.incrementAndGet();
+        return super.delete( item );
+    }
+
+    /**
+     * An empty index sorts the batch and builds the tree from it in one pass, grouping equal keys into buckets
+     * as it goes. Otherwise the items are added one at a time.
+     */
+    @Override
+    public void addAll( List<ITEM> items ) {
+        if ( !navigableMap.isEmpty() || isConcurrent() || !( navigableMap instanceof JavaUtilNavigableMap ) ) {
+            for ( ITEM item : items ) {
+                add( item );
+            }
+            return;
+        }
+
+        Comparator<? super KEY> comparator = navigableMap.comparator();
+        List<Map.Entry<KEY, Object>> entries = entries( items );
+        SortedEntries.sort( entries, comparator );
+
+        List<Map.Entry<KEY, MultiValue>> buckets = new ArrayList<>();
+        Map.Entry<KEY, MultiValue> bucket = null;
+        for ( Map.Entry<KEY, Object> entry : entries ) {
+            if ( bucket != null && SortedEntries.compare( comparator, bucket.getKey(), entry.getKey() ) == 0 ) {
+                MultiValue.add( bucket.getValue(), entry.getValue(), keyBucketSize );
+            } else {
+                bucket = new AbstractMap.SimpleEntry<KEY, MultiValue>( internKey( entry.getKey() ), MultiValue.add( null, entry.getValue(), keyBucketSize ) );
+                buckets.add( bucket );
+            }
+        }
+
+        /* Plain fields are enough, only an index that is not concurrent is swapped and one thread uses it. */
+        this.navigableMap = new JavaUtilNavigableMap<>( new SortedEntries<>( buckets, comparator ) );
+        super.map = this.navigableMap;
+        changes.addAndGet( items.size() );
+    }
+
     @Override
     public int count( KEY key ) {
-        return this.navigableMap.get( key ).size();
+        key = getKey( key );
+        if ( key == null ) {
+            return 0;
+        }
+        MultiValue mv = this.navigableMap.get( key );
+        return mv == null ? 0 : mv.size();
+    }
+
+    @Override
+    public Iterator<ITEM> iteratorFrom( KEY start, boolean startInclusive ) {
+        NavigableMap<KEY, MultiValue> tail = start == null ? navigableMap
+                : navigableMap.tailMap( getKey( start ), startInclusive );
+        return MultiValue.flatten( ( Iterator ) tail.values().iterator() );
+    }
+
+    @Override
+    public Iterator<ITEM> descendingIterator() {
+        return MultiValue.flatten( ( Iterator ) navigableMap.descendingMap().values().iterator() );
+    }
+
+    @Override
+    public int estimateBetween( KEY start, boolean startInclusive, KEY end, boolean endInclusive ) {
+        return histogram().estimate( getKey( start ), startInclusive, getKey( end ), endInclusive );
+    }
+
+    /**
+     * Builds the histogram again once a tenth of the index has changed since the last one.
+     * It is also rebuilt when the key count drifts that far, since keys added through the wrappers are not counted.
+     */
+    private Histogram histogram() {
+        Histogram current = histogram;
+        int size = navigableMap.size();
+        int slack = size / 10 + 100;
+        if ( current == null || changes.get() > slack || Math.abs( current.keys() - size ) > slack ) {
+            changes.set( 0 );
+            current = Histogram.build( navigableMap );
+            histogram = current;
+        }
+        return current;
     }
 
 
@@ -268,4 +368,25 @@ public class SearchIndexDefault<KEY, ITEM> extends LookupIndexDefault<KEY, ITEM>
         return this.navigableMap.size();
     }
 
+    @Override
+    public SearchIndex<KEY, ITEM> snapshot() {
+        SearchIndexDefault<KEY, ITEM> copy = newCopy();
+        copy.keyType = this.keyType;
+        copy.collator = this.collator;
+        copy.histogram = this.histogram;
+        copy.changes.set( this.changes.get() );
+
+        /* Unless versioned the buckets go in a TreeMap, which keeps the comparator of the map it copies. */
+        copyInto( copy, versioned ? null : new TreeMap<KEY, MultiValue>( navigableMap.comparator() ) );
+        copy.navigableMap = ( NavigableMap<KEY, MultiValue> ) copy.map;
+        return copy;
+    }
+
+    /**
+     * The empty index snapshot copies into. Subclasses that keep more than the tree hand back one of their own.
+     */
+    protected SearchIndexDefault<KEY, ITEM> newCopy() {
+        return new SearchIndexDefault<>( null );
+    }
+
 }
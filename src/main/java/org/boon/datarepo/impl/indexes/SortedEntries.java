@@ -0,0 +1,93 @@
+package org.boon.datarepo.impl.indexes;
+
+import java.util.*;
+
+/**
+ * Entries that are already in key order, passed to a sorted map constructor so the map is built
+ * in one pass instead of one put at a time. Only what the constructors read is supported.
+ *
+ * @param <K> key
+ * @param <V> value
+ */
+class SortedEntries<K, V> extends AbstractMap<K, V> implements SortedMap<K, V> {
+
+    private final List<Map.Entry<K, V>> entries;
+    private final Comparator<? super K> comparator;
+
+    SortedEntries( List<Map.Entry<K, V>> entries, Comparator<? super K> comparator ) {
+        this.entries = entries;
+        this.comparator = comparator;
+    }
+
+    /**
+     * Sorts the entries by key. The sort is stable, so entries with equal keys keep the order they came in.
+     */
+    static <K, V> void sort( List<Map.Entry<K, V>> entries, final Comparator<? super K> comparator ) {
+        Collections.sort( entries, new Comparator<Map.Entry<K, V>>() {
+            @Override
+            public int compare( Map.Entry<K, V> entry, Map.Entry<K, V> other ) {
+                return SortedEntries.compare( comparator, entry.getKey(), other.getKey() );
+            }
+        } );
+    }
+
+    static <K> int compare( Comparator<? super K> comparator, K key, K other ) {
+        return comparator == null ? ( ( Comparable ) key ).compareTo( other ) : comparator.compare( key, other );
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<Entry<K, V>>() {
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                return entries.iterator();
+            }
+
+            @Override
+            public int size() {
+                return entries.size();
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public Comparator<? super K> comparator() {
+        return comparator;
+    }
+
+    @Override
+    public K firstKey() {
+        if ( entries.isEmpty() ) {
+            throw new NoSuchElementException();
+        }
+        return entries.get( 0 ).getKey();
+    }
+
+    @Override
+    public K lastKey() {
+        if ( entries.isEmpty() ) {
+            throw new NoSuchElementException();
+        }
+        return entries.get( entries.size() - 1 ).getKey();
+    }
+
+    @Override
+    public SortedMap<K, V> subMap( K fromKey, K toKey ) {
+        throw new UnsupportedOperationException( "subMap Not supported" );
+    }
+
+    @Override
+    public SortedMap<K, V> headMap( K toKey ) {
+        throw new UnsupportedOperationException( "headMap Not supported" );
+    }
+
+    @Override
+    public SortedMap<K, V> tailMap( K fromKey ) {
+        throw new UnsupportedOperationException( "tailMap Not supported" );
+    }
+}
@@ -1,6 +1,8 @@
 package org.boon.datarepo.impl.indexes;
 
 import org.boon.datarepo.LookupIndex;
+import org.boon.datarepo.impl.maps.JavaUtilMap;
+import org.boon.datarepo.impl.maps.PersistentHashMap;
 import org.boon.datarepo.spi.SPIFactory;
 import org.boon.core.Function;
 
@@ -15,6 +17,11 @@ public class UniqueLookupIndex<KEY, ITEM> implements LookupIndex<KEY, ITEM> {
     protected Function<ITEM, KEY> keyGetter;
     protected Map<KEY, ITEM> map = null;
 
+    /**
+     * Snapshot query mode. The items live in a persistent map, so a snapshot shares it instead of copying.
+     */
+    protected boolean versioned;
+
 
     private Logger log = Logger.getLogger( UniqueLookupIndex.class.getName() );
 
@@ -61,6 +68,27 @@ public class UniqueLookupIndex<KEY, ITEM> implements LookupIndex<KEY, ITEM> {
 
     }
 
+    /**
+     * Null, this index does not keep buckets.
+     */
+    @Override
+    public Map<KEY, List<ITEM>> buckets() {
+        return null;
+    }
+
+    /**
+     * On an empty index the map is sized for the batch up front.
+     */
+    @Override
+    public void addAll( List<ITEM> items ) {
+        if ( map.isEmpty() && map instanceof JavaUtilMap ) {
+            map = new JavaUtilMap<>( items.size() );
+        }
+        for ( ITEM item : items ) {
+            add( item );
+        }
+    }
+
     @Override
     public boolean delete( ITEM item ) {
 
@@ -103,6 +131,18 @@ public class UniqueLookupIndex<KEY, ITEM> implements LookupIndex<KEY, ITEM> {
         return new HashSet( this.map.values() );
     }
 
+    /**
+     * Live view of the items. Nothing is copied, so the index must not be written to while
+     * the view is walked unless it is concurrent.
+     */
+    public Collection<ITEM> values() {
+        return this.map.values();
+    }
+
+    public KEY keyOf( ITEM item ) {
+        return keyGetter.apply( item );
+    }
+
     @Override
     public void clear() {
         this.map.clear();
@@ -119,11 +159,31 @@ public class UniqueLookupIndex<KEY, ITEM> implements LookupIndex<KEY, ITEM> {
         return false;
     }
 
+    public void setVersioned( boolean versioned ) {
+        this.versioned = versioned;
+        if ( versioned ) {
+            map = new PersistentHashMap<>();
+        }
+    }
+
     @Override
     public void init() {
 
     }
 
+    @Override
+    public LookupIndex<KEY, ITEM> snapshot() {
+        UniqueLookupIndex<KEY, ITEM> copy = new UniqueLookupIndex<>( null );
+        copyInto( copy );
+        copy.map = versioned ? ( ( PersistentHashMap<KEY, ITEM> ) this.map ).snapshot() : new HashMap<>( this.map );
+        return copy;
+    }
+
+    protected void copyInto( UniqueLookupIndex<KEY, ITEM> copy ) {
+        copy.keyGetter = this.keyGetter;
+        copy.keyTransformer = this.keyTransformer;
+    }
+
     @Override
     public boolean has( KEY key ) {
         if ( key == null ) {
@@ -132,6 +192,12 @@ public class UniqueLookupIndex<KEY, ITEM> implements LookupIndex<KEY, ITEM> {
         return this.map.containsKey( key );
     }
 
+    @Override
+    public int count( KEY key ) {
+        key = getKey( key );
+        return key != null && this.map.containsKey( key ) ? 1 : 0;
+    }
+
 
     @Override
     public void setInputKeyTransformer( Function<Object, KEY> func ) {
@@ -143,6 +209,13 @@ public class UniqueLookupIndex<KEY, ITEM> implements LookupIndex<KEY, ITEM> {
 
     }
 
+    /* No buckets to guard, the map is already a concurrent map and the
+       repo serializes writers to the same key. */
+    @Override
+    public void setConcurrent( boolean concurrent ) {
+
+    }
+
     protected KEY getKey( KEY key ) {
         if ( keyTransformer != null ) {
             key = this.keyTransformer.apply( key );
@@ -1,5 +1,7 @@
 package org.boon.datarepo.impl.indexes;
 
+import org.boon.datarepo.impl.maps.JavaUtilNavigableMap;
+import org.boon.datarepo.impl.maps.PersistentNavigableMap;
 import org.boon.datarepo.spi.SPIFactory;
 import org.boon.datarepo.spi.SearchIndex;
 import org.boon.core.Function;
@@ -21,6 +23,9 @@ public class UniqueSearchIndex<KEY, ITEM> extends UniqueLookupIndex<KEY, ITEM> i
     private NavigableMap<KEY, ITEM> navigableMap;
     private Comparator collator;
 
+    /* Key statistics for the query planner, rebuilt once enough has changed. */
+    private volatile Histogram histogram;
+
     public UniqueSearchIndex( Class<?> keyType ) {
         super( keyType );
         this.keyType = keyType;
@@ -49,13 +54,53 @@ public class UniqueSearchIndex<KEY, ITEM> extends UniqueLookupIndex<KEY, ITEM> i
 
     @Override
     public void init() {
-        super.map
-                = SPIFactory.getMapCreatorFactory().get().createNavigableMap( keyType, collator );
+        if ( versioned ) {
+            /* Like the map creator, only string keys sort with the comparator. */
+            super.map = new PersistentNavigableMap<>( keyType == String.class ? collator : null );
+        } else {
+            super.map
+                    = SPIFactory.getMapCreatorFactory().get().createNavigableMap( keyType, collator );
+        }
 
         this.navigableMap = ( NavigableMap<KEY, ITEM> ) super.map;
 
     }
 
+    /**
+     * An empty index sorts the batch and builds the tree from it in one pass.
+     * As with add, the first item with a key wins.
+     */
+    @Override
+    public void addAll( List<ITEM> items ) {
+        if ( !navigableMap.isEmpty() || !( navigableMap instanceof JavaUtilNavigableMap ) ) {
+            for ( ITEM item : items ) {
+                add( item );
+            }
+            return;
+        }
+
+        Comparator<? super KEY> comparator = navigableMap.comparator();
+        List<Map.Entry<KEY, ITEM>> entries = new ArrayList<>( items.size() );
+        for ( ITEM item : items ) {
+            KEY key = keyGetter.apply( item );
+            if ( key != null ) {
+                entries.add( new AbstractMap.SimpleEntry<>( key, item ) );
+            }
+        }
+        SortedEntries.sort( entries, comparator );
+
+        List<Map.Entry<KEY, ITEM>> unique = new ArrayList<>( entries.size() );
+        for ( Map.Entry<KEY, ITEM> entry : entries ) {
+            if ( unique.isEmpty()
+                    || SortedEntries.compare( comparator, unique.get( unique.size() - 1 ).getKey(), entry.getKey() ) != 0 ) {
+                unique.add( entry );
+            }
+        }
+
+        this.navigableMap = new JavaUtilNavigableMap<>( new SortedEntries<>( unique, comparator ) );
+        super.map = this.navigableMap;
+    }
+
     @Override
     public ITEM findFirst() {
         return this.navigableMap.firstEntry().getValue();
@@ -194,7 +239,47 @@ public class UniqueSearchIndex<KEY, ITEM> extends UniqueLookupIndex<KEY, ITEM> i
 
     @Override
     public int count( KEY key ) {
-        return this.navigableMap.containsKey( key ) ? 1 : 0;
+        key = getKey( key );
+        return key != null && this.navigableMap.containsKey( key ) ? 1 : 0;
+    }
+
+    @Override
+    public Iterator<ITEM> iteratorFrom( KEY start, boolean startInclusive ) {
+        NavigableMap<KEY, ITEM> tail = start == null ? navigableMap
+                : navigableMap.tailMap( getKey( start ), startInclusive );
+        return tail.values().iterator();
+    }
+
+    @Override
+    public Iterator<ITEM> descendingIterator() {
+        return navigableMap.descendingMap().values().iterator();
+    }
+
+    /**
+     * One item per key, so the histogram is rebuilt once the key count moves by a tenth.
+     */
+    @Override
+    public int estimateBetween( KEY start, boolean startInclusive, KEY end, boolean endInclusive ) {
+        Histogram current = histogram;
+        int size = navigableMap.size();
+        if ( current == null || Math.abs( current.keys() - size ) > size / 10 + 100 ) {
+            current = Histogram.build( navigableMap );
+            histogram = current;
+        }
+        return current.estimate( getKey( start ), startInclusive, getKey( end ), endInclusive );
+    }
+
+    @Override
+    public SearchIndex<KEY, ITEM> snapshot() {
+        UniqueSearchIndex<KEY, ITEM> copy = new UniqueSearchIndex<>( null );
+        copyInto( copy );
+        copy.keyType = this.keyType;
+        copy.collator = this.collator;
+        copy.histogram = this.histogram;
+        copy.navigableMap = versioned ? ( ( PersistentNavigableMap<KEY, ITEM> ) this.navigableMap ).snapshot()
+                : new TreeMap<>( this.navigableMap );
+        copy.map = copy.navigableMap;
+        return copy;
     }
 
 
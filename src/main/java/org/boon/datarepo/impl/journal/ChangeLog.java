@@ -0,0 +1,23 @@
+package org.boon.datarepo.impl.journal;
+
+import org.boon.datarepo.ObjectEditor;
+
+import java.util.Collection;
+
+/**
+ * Something that records each change to a repo as the item under the key after the change,
+ * or the key's removal if the item is gone.
+ *
+ * @see Journal
+ */
+public interface ChangeLog {
+
+    /**
+     * Records the item under the key as it is now in the editor, or its removal if it is not there.
+     */
+    void log( ObjectEditor editor, Object key );
+
+    void log( ObjectEditor editor, Collection<?> keys );
+
+    void clear( ObjectEditor editor );
+}
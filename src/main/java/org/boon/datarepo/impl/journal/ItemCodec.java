@@ -0,0 +1,306 @@
+package org.boon.datarepo.impl.journal;
+
+import org.boon.core.reflection.BeanUtils;
+import org.boon.core.reflection.Reflection;
+import org.boon.core.reflection.fields.FieldAccess;
+import org.boon.datarepo.DataRepoException;
+import org.boon.primitive.Input;
+import org.boon.primitive.Output;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Writes items field by field with the primitive {@link Output} and reads them back with {@link Input}.
+ * Primitive fields go out raw. Other fields get a one byte tag; strings, boxed primitives, dates and enums
+ * go out as themselves, arrays, collections and maps element by element, and any other object field by field.
+ * Items have to be trees, an object reachable twice is written twice.
+ * <p/>
+ * Fields are written in name order so the layout does not depend on reflection order.
+ * Properties without a field behind them are skipped, the field is written instead.
+ */
+public final class ItemCodec {
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INTEGER = 2;
+    private static final byte LONG = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte FLOAT = 5;
+    private static final byte SHORT = 6;
+    private static final byte BYTE = 7;
+    private static final byte CHAR = 8;
+    private static final byte BOOLEAN = 9;
+    private static final byte DATE = 10;
+    private static final byte ENUM = 11;
+    private static final byte ARRAY = 12;
+    private static final byte COLLECTION = 13;
+    private static final byte MAP = 14;
+    private static final byte OBJECT = 15;
+
+    private final Class<?> itemClass;
+    private final Map<Class<?>, Field[]> layouts = new ConcurrentHashMap<>();
+
+
+    public ItemCodec( Class<?> itemClass ) {
+        this.itemClass = itemClass;
+    }
+
+    private Field[] layout( Class<?> cls ) {
+        Field[] layout = layouts.get( cls );
+        if ( layout == null ) {
+            List<Field> fields = new ArrayList<>();
+            for ( FieldAccess access : new TreeMap<>( BeanUtils.getFieldsFromObject( cls ) ).values() ) {
+                Field field = access.getField();
+                /* The field maps are shared, and the builder adds subclass fields to the base class map. */
+                if ( field == null || Modifier.isStatic( field.getModifiers() )
+                        || Modifier.isTransient( field.getModifiers() )
+                        || !field.getDeclaringClass().isAssignableFrom( cls ) ) {
+                    continue;
+                }
+                field.setAccessible( true );
+                fields.add( field );
+            }
+            layout = fields.toArray( new Field[ fields.size() ] );
+            layouts.put( cls, layout );
+        }
+        return layout;
+    }
+
+    public void writeItem( Output out, Object item ) {
+        Class<?> cls = item.getClass();
+        if ( cls == itemClass ) {
+            out.writeBoolean( false );
+        } else {
+            out.writeBoolean( true );
+            out.writeMediumString( cls.getName() );
+        }
+        writeFields( out, item );
+    }
+
+    public Object readItem( Input in ) {
+        Class<?> cls = itemClass;
+        if ( in.readBoolean() ) {
+            cls = loadClass( in.readMediumString() );
+        }
+        return readFields( in, cls );
+    }
+
+    private void writeFields( Output out, Object object ) {
+        Class<?> cls = object.getClass();
+        try {
+            for ( Field field : layout( cls ) ) {
+                Class<?> type = field.getType();
+                if ( type == int.class ) {
+                    out.writeInt( field.getInt( object ) );
+                } else if ( type == long.class ) {
+                    out.writeLong( field.getLong( object ) );
+                } else if ( type == double.class ) {
+                    out.writeDouble( field.getDouble( object ) );
+                } else if ( type == float.class ) {
+                    out.writeFloat( field.getFloat( object ) );
+                } else if ( type == short.class ) {
+                    out.writeShort( field.getShort( object ) );
+                } else if ( type == byte.class ) {
+                    out.writeByte( field.getByte( object ) );
+                } else if ( type == char.class ) {
+                    out.writeChar( field.getChar( object ) );
+                } else if ( type == boolean.class ) {
+                    out.writeBoolean( field.getBoolean( object ) );
+                } else {
+                    writeValue( out, field.get( object ) );
+                }
+            }
+        } catch ( IllegalAccessException ex ) {
+            throw new DataRepoException( "Unable to journal " + cls.getName(), ex );
+        }
+    }
+
+    private Object readFields( Input in, Class<?> cls ) {
+        Object object = Reflection.newInstance( cls );
+        try {
+            for ( Field field : layout( cls ) ) {
+                Class<?> type = field.getType();
+                if ( type == int.class ) {
+                    field.setInt( object, in.readInt() );
+                } else if ( type == long.class ) {
+                    field.setLong( object, in.readLong() );
+                } else if ( type == double.class ) {
+                    field.setDouble( object, in.readDouble() );
+                } else if ( type == float.class ) {
+                    field.setFloat( object, in.readFloat() );
+                } else if ( type == short.class ) {
+                    field.setShort( object, in.readShort() );
+                } else if ( type == byte.class ) {
+                    field.setByte( object, in.readByte() );
+                } else if ( type == char.class ) {
+                    field.setChar( object, in.readChar() );
+                } else if ( type == boolean.class ) {
+                    field.setBoolean( object, in.readBoolean() );
+                } else {
+                    field.set( object, readValue( in ) );
+                }
+            }
+        } catch ( IllegalAccessException ex ) {
+            throw new DataRepoException( "Unable to read journaled " + cls.getName(), ex );
+        }
+        return object;
+    }
+
+    private Class<?> loadClass( String name ) {
+        try {
+            return Class.forName( name, true, itemClass.getClassLoader() );
+        } catch ( ClassNotFoundException ex ) {
+            throw new DataRepoException( "Journal has an item of a class that is gone " + name, ex );
+        }
+    }
+
+    public void writeValue( Output out, Object value ) {
+        if ( value == null ) {
+            out.writeByte( NULL );
+        } else if ( value instanceof String ) {
+            out.writeByte( STRING );
+            out.writeLargeString( ( String ) value );
+        } else if ( value instanceof Integer ) {
+            out.writeByte( INTEGER );
+            out.writeInt( ( Integer ) value );
+        } else if ( value instanceof Long ) {
+            out.writeByte( LONG );
+            out.writeLong( ( Long ) value );
+        } else if ( value instanceof Double ) {
+            out.writeByte( DOUBLE );
+            out.writeDouble( ( Double ) value );
+        } else if ( value instanceof Float ) {
+            out.writeByte( FLOAT );
+            out.writeFloat( ( Float ) value );
+        } else if ( value instanceof Short ) {
+            out.writeByte( SHORT );
+            out.writeShort( ( Short ) value );
+        } else if ( value instanceof Byte ) {
+            out.writeByte( BYTE );
+            out.writeByte( ( Byte ) value );
+        } else if ( value instanceof Character ) {
+            out.writeByte( CHAR );
+            out.writeChar( ( Character ) value );
+        } else if ( value instanceof Boolean ) {
+            out.writeByte( BOOLEAN );
+            out.writeBoolean( ( Boolean ) value );
+        } else if ( value instanceof Date ) {
+            out.writeByte( DATE );
+            out.writeLong( ( ( Date ) value ).getTime() );
+        } else if ( value instanceof Enum ) {
+            out.writeByte( ENUM );
+            out.writeMediumString( ( ( Enum ) value ).getDeclaringClass().getName() );
+            out.writeMediumString( ( ( Enum ) value ).name() );
+        } else if ( value.getClass().isArray() ) {
+            int length = Array.getLength( value );
+            out.writeByte( ARRAY );
+            out.writeMediumString( value.getClass().getComponentType().getName() );
+            out.writeInt( length );
+            for ( int index = 0; index < length; index++ ) {
+                writeValue( out, Array.get( value, index ) );
+            }
+        } else if ( value instanceof Collection ) {
+            Collection<?> collection = ( Collection<?> ) value;
+            out.writeByte( COLLECTION );
+            out.writeBoolean( value instanceof Set );
+            out.writeInt( collection.size() );
+            for ( Object element : collection ) {
+                writeValue( out, element );
+            }
+        } else if ( value instanceof Map ) {
+            Map<?, ?> map = ( Map<?, ?> ) value;
+            out.writeByte( MAP );
+            out.writeInt( map.size() );
+            for ( Map.Entry<?, ?> entry : map.entrySet() ) {
+                writeValue( out, entry.getKey() );
+                writeValue( out, entry.getValue() );
+            }
+        } else {
+            out.writeByte( OBJECT );
+            out.writeMediumString( value.getClass().getName() );
+            writeFields( out, value );
+        }
+    }
+
+    public Object readValue( Input in ) {
+        switch ( in.readByte() ) {
+            case NULL:
+                return null;
+            case STRING:
+                return in.readLargeString();
+            case INTEGER:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case DOUBLE:
+                return in.readDouble();
+            case FLOAT:
+                return in.readFloat();
+            case SHORT:
+                return in.readShort();
+            case BYTE:
+                return in.readByte();
+            case CHAR:
+                return in.readChar();
+            case BOOLEAN:
+                return in.readBoolean();
+            case DATE:
+                return new Date( in.readLong() );
+            case ENUM:
+                return Enum.valueOf( ( Class ) loadClass( in.readMediumString() ), in.readMediumString() );
+            case ARRAY:
+                Class<?> componentType = componentClass( in.readMediumString() );
+                Object array = Array.newInstance( componentType, in.readInt() );
+                for ( int index = 0; index < Array.getLength( array ); index++ ) {
+                    Array.set( array, index, readValue( in ) );
+                }
+                return array;
+            case COLLECTION:
+                boolean set = in.readBoolean();
+                int size = in.readInt();
+                Collection<Object> collection = set ? new LinkedHashSet<>( size * 2 ) : new ArrayList<>( size );
+                for ( int index = 0; index < size; index++ ) {
+                    collection.add( readValue( in ) );
+                }
+                return collection;
+            case MAP:
+                int entries = in.readInt();
+                Map<Object, Object> map = new LinkedHashMap<>( entries * 2 );
+                for ( int index = 0; index < entries; index++ ) {
+                    map.put( readValue( in ), readValue( in ) );
+                }
+                return map;
+            case OBJECT:
+                return readFields( in, loadClass( in.readMediumString() ) );
+            default:
+                throw new DataRepoException( "Unknown value tag in journal" );
+        }
+    }
+
+    private Class<?> componentClass( String name ) {
+        switch ( name ) {
+            case "int":
+                return int.class;
+            case "long":
+                return long.class;
+            case "double":
+                return double.class;
+            case "float":
+                return float.class;
+            case "short":
+                return short.class;
+            case "byte":
+                return byte.class;
+            case "char":
+                return char.class;
+            case "boolean":
+                return boolean.class;
+            default:
+                return loadClass( name );
+        }
+    }
+}
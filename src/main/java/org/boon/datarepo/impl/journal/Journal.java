@@ -0,0 +1,404 @@
+package org.boon.datarepo.impl.journal;
+
+import org.boon.Exceptions;
+import org.boon.datarepo.DataRepoException;
+import org.boon.datarepo.ObjectEditor;
+import org.boon.primitive.ByteBuf;
+import org.boon.primitive.InputByteArray;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Append only log of repo changes plus the latest snapshot, kept in one directory.
+ * <p/>
+ * Every change is logged as the whole item after the change, or as the key that was removed,
+ * so replaying a record twice does no harm. Writers append to a shared buffer and then wait for it
+ * to be forced to disk. Whoever gets to the disk first writes and forces everything appended so far,
+ * so writers that pile up behind one fsync all ride on the next one.
+ * <p/>
+ * Once the log passes snapshotAfterBytes the whole repo is written to a new snapshot and the log
+ * starts over. On startup the snapshot is loaded and the logs written after it are replayed.
+ * A record torn by a crash fails its checksum and ends the replay of that log.
+ * <p/>
+ * Once a write or fsync fails the journal is broken for good: what reached the file is unknown,
+ * so no later commit can vouch for the records before it and every one of them throws.
+ */
+public class Journal implements ChangeLog {
+
+    private static final int SNAPSHOT_MAGIC = 0x424F4F4E;
+
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final byte CLEAR = 3;
+
+    private final File directory;
+    private final long snapshotAfterBytes;
+    private final ItemCodec codec;
+
+    /* Held while writing to the log. Taken before this when both are needed. */
+    private final Object commitLock = new Object();
+
+    /* Guarded by this. */
+    private ByteBuf pending = ByteBuf.create( 4096 );
+    private ByteBuf spare = ByteBuf.create( 4096 );
+    private long appended;
+    private final ByteBuf record = ByteBuf.create( 256 );
+    private final CRC32 crc = new CRC32();
+
+    /* Guarded by commitLock. */
+    private FileChannel log;
+    private long generation;
+    private volatile long committed;
+    private volatile long logBytes;
+
+    /* The write that broke the journal, if one has. */
+    private volatile DataRepoException failed;
+
+    private boolean snapshotting;
+
+
+    public Journal( File directory, Class<?> itemClass, long snapshotAfterBytes ) {
+        Exceptions.requireNonNull( directory, "directory cannot be null" );
+        this.directory = directory;
+        this.snapshotAfterBytes = snapshotAfterBytes;
+        this.codec = new ItemCodec( itemClass );
+        if ( !directory.isDirectory() && !directory.mkdirs() ) {
+            throw new DataRepoException( "Unable to create journal directory " + directory );
+        }
+    }
+
+    /**
+     * Loads the snapshot and replays the logs after it into the editor, then starts a new log.
+     * The editor must not be journaled itself.
+     */
+    public void recover( ObjectEditor editor ) {
+        long first = 0;
+        File snapshot = new File( directory, "snapshot" );
+
+        try {
+            if ( snapshot.exists() ) {
+                try ( DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( snapshot ), 1 << 16 ) ) ) {
+                    if ( in.readInt() != SNAPSHOT_MAGIC ) {
+                        throw new DataRepoException( "Not a repo snapshot " + snapshot );
+                    }
+                    first = in.readLong();
+                    long count = in.readLong();
+                    for ( long index = 0; index < count; index++ ) {
+                        byte[] bytes = new byte[ in.readInt() ];
+                        in.readFully( bytes );
+                        editor.add( codec.readItem( new InputByteArray( bytes ) ) );
+                    }
+                }
+            }
+
+            long last = first;
+            for ( long number : logNumbers() ) {
+                if ( number >= first ) {
+                    replay( logFile( number ), editor );
+                }
+                last = Math.max( last, number );
+            }
+
+            synchronized ( commitLock ) {
+                generation = last + 1;
+                log = open( generation );
+                logBytes = 0;
+            }
+        } catch ( IOException ex ) {
+            throw new DataRepoException( "Unable to recover repo from " + directory, ex );
+        }
+    }
+
+    private void replay( File file, ObjectEditor editor ) throws IOException {
+        try ( DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ), 1 << 16 ) ) ) {
+            CRC32 check = new CRC32();
+            while ( true ) {
+                byte[] bytes;
+                int sum;
+                try {
+                    int length = in.readInt();
+                    sum = in.readInt();
+                    if ( length <= 0 ) {
+                        return;
+                    }
+                    bytes = new byte[ length ];
+                    in.readFully( bytes );
+                } catch ( EOFException ex ) {
+                    return;
+                }
+
+                check.reset();
+                check.update( bytes, 0, bytes.length );
+                if ( ( int ) check.getValue() != sum ) {
+                    return;
+                }
+                apply( new InputByteArray( bytes ), editor );
+            }
+        }
+    }
+
+    private void apply( InputByteArray in, ObjectEditor editor ) {
+        switch ( in.readByte() ) {
+            case PUT:
+                Object item = codec.readItem( in );
+                if ( editor.get( editor.getKey( item ) ) != null ) {
+                    editor.modify( item );
+                } else {
+                    editor.add( item );
+                }
+                break;
+            case REMOVE:
+                editor.removeByKey( codec.readValue( in ) );
+                break;
+            case CLEAR:
+                editor.clear();
+                break;
+            default:
+                throw new DataRepoException( "Unknown journal record" );
+        }
+    }
+
+    /**
+     * Logs the item under the key as it is now, or its removal if it is gone, and waits until it is on disk.
+     * The item is read while holding the log, so the last record for a key always has its latest state.
+     * Takes a snapshot afterwards if the log has grown past snapshotAfterBytes.
+     */
+    @Override
+    public void log( ObjectEditor editor, Object key ) {
+        long ticket;
+        synchronized ( this ) {
+            ticket = append( editor, key );
+        }
+        commit( ticket );
+        snapshotIfNeeded( editor );
+    }
+
+    /**
+     * Same as log for each key, with one wait for the disk at the end.
+     */
+    @Override
+    public void log( ObjectEditor editor, Collection<?> keys ) {
+        long ticket = 0;
+        synchronized ( this ) {
+            for ( Object key : keys ) {
+                ticket = append( editor, key );
+            }
+        }
+        commit( ticket );
+        snapshotIfNeeded( editor );
+    }
+
+    @Override
+    public void clear( ObjectEditor editor ) {
+        long ticket;
+        synchronized ( this ) {
+            record.readForRecycle();
+            record.writeByte( CLEAR );
+            ticket = append();
+        }
+        commit( ticket );
+        snapshotIfNeeded( editor );
+    }
+
+    private long append( ObjectEditor editor, Object key ) {
+        Object item = editor.get( key );
+        record.readForRecycle();
+        if ( item == null ) {
+            record.writeByte( REMOVE );
+            codec.writeValue( record, key );
+        } else {
+            record.writeByte( PUT );
+            codec.writeItem( record, item );
+        }
+        return append();
+    }
+
+    private void snapshotIfNeeded( ObjectEditor editor ) {
+        if ( logBytes > snapshotAfterBytes ) {
+            snapshot( editor );
+        }
+    }
+
+    /**
+     * Frames the record with its length and checksum. Caller holds this.
+     */
+    private long append() {
+        int length = record.len();
+        byte[] bytes = record.readForRecycle();
+        crc.reset();
+        crc.update( bytes, 0, length );
+        pending.writeInt( length );
+        pending.writeInt( ( int ) crc.getValue() );
+        pending.write( bytes, 0, length );
+        return ++appended;
+    }
+
+    /**
+     * Returns once everything up to the ticket is forced to disk.
+     */
+    private void commit( long ticket ) {
+        synchronized ( commitLock ) {
+            if ( committed >= ticket ) {
+                return;
+            }
+            checkNotFailed();
+            if ( log == null ) {
+                throw new IllegalStateException( "Journal was never recovered" );
+            }
+
+            ByteBuf batch;
+            long upTo;
+            synchronized ( this ) {
+                batch = pending;
+                pending = spare;
+                upTo = appended;
+            }
+
+            int length = batch.len();
+            try {
+                write( batch.readForRecycle(), length );
+            } finally {
+                spare = batch;
+            }
+            committed = upTo;
+        }
+    }
+
+    private void checkNotFailed() {
+        if ( failed != null ) {
+            throw new DataRepoException( "Repo journal failed earlier, changes since then are not on disk", failed );
+        }
+    }
+
+    /**
+     * Caller holds commitLock. A failure breaks the journal, see checkNotFailed.
+     */
+    private void write( byte[] bytes, int length ) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap( bytes, 0, length );
+            while ( buffer.hasRemaining() ) {
+                log.write( buffer );
+            }
+            log.force( false );
+            logBytes += length;
+        } catch ( IOException | RuntimeException ex ) {
+            failed = new DataRepoException( "Unable to write repo journal", ex );
+            throw failed;
+        }
+    }
+
+    /**
+     * Starts a new log, then writes everything in the editor to a new snapshot and drops the old logs.
+     * Changes logged while the snapshot is written go to the new log and are replayed over it.
+     */
+    public void snapshot( ObjectEditor editor ) {
+        synchronized ( this ) {
+            if ( snapshotting ) {
+                return;
+            }
+            snapshotting = true;
+        }
+
+        try {
+            long first;
+            List items;
+            synchronized ( commitLock ) {
+                checkNotFailed();
+                synchronized ( this ) {
+                    int length = pending.len();
+                    write( pending.readForRecycle(), length );
+                    committed = appended;
+                    log.close();
+
+                    first = ++generation;
+                    log = open( first );
+                    logBytes = 0;
+                    items = new ArrayList( editor.all() );
+                }
+            }
+
+            File temp = new File( directory, "snapshot.tmp" );
+            try ( FileOutputStream file = new FileOutputStream( temp ) ) {
+                DataOutputStream out = new DataOutputStream( new BufferedOutputStream( file, 1 << 16 ) );
+                out.writeInt( SNAPSHOT_MAGIC );
+                out.writeLong( first );
+                out.writeLong( items.size() );
+                ByteBuf buf = ByteBuf.create( 256 );
+                for ( Object item : items ) {
+                    buf.readForRecycle();
+                    codec.writeItem( buf, item );
+                    int length = buf.len();
+                    out.writeInt( length );
+                    out.write( buf.readForRecycle(), 0, length );
+                }
+                out.flush();
+                file.getFD().sync();
+            }
+            Files.move( temp.toPath(), new File( directory, "snapshot" ).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+
+            for ( long number : logNumbers() ) {
+                if ( number < first ) {
+                    Files.deleteIfExists( logFile( number ).toPath() );
+                }
+            }
+        } catch ( IOException ex ) {
+            throw new DataRepoException( "Unable to snapshot repo to " + directory, ex );
+        } finally {
+            synchronized ( this ) {
+                snapshotting = false;
+            }
+        }
+    }
+
+    public void close() {
+        synchronized ( commitLock ) {
+            try {
+                if ( log != null ) {
+                    log.close();
+                    log = null;
+                }
+            } catch ( IOException ex ) {
+                throw new DataRepoException( "Unable to close repo journal", ex );
+            }
+        }
+    }
+
+    private FileChannel open( long number ) throws IOException {
+        return FileChannel.open( logFile( number ).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND );
+    }
+
+    private File logFile( long number ) {
+        return new File( directory, "log." + number );
+    }
+
+    private long[] logNumbers() {
+        List<Long> numbers = new ArrayList<>();
+        String[] names = directory.list();
+        if ( names != null ) {
+            for ( String name : names ) {
+                if ( name.startsWith( "log." ) ) {
+                    try {
+                        numbers.add( Long.parseLong( name.substring( 4 ) ) );
+                    } catch ( NumberFormatException ex ) {
+                        /* Not one of ours. */
+                    }
+                }
+            }
+        }
+        long[] sorted = new long[ numbers.size() ];
+        for ( int index = 0; index < sorted.length; index++ ) {
+            sorted[ index ] = numbers.get( index );
+        }
+        Arrays.sort( sorted );
+        return sorted;
+    }
+}
@@ -12,6 +12,10 @@ public class JavaUtilMap<K, V> extends ConcurrentHashMap<K, V> implements TypedM
         super();
     }
 
+    public JavaUtilMap( int initialCapacity ) {
+        super( initialCapacity );
+    }
+
     @Override
     public final boolean put( K key, boolean i ) {
         return ( Boolean ) super.put( key, ( V ) wrapAsObject( i ) );
@@ -3,6 +3,7 @@ package org.boon.datarepo.impl.maps;
 import org.boon.datarepo.spi.TypedMap;
 
 import java.util.Comparator;
+import java.util.SortedMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 
 import static org.boon.core.Conversions.wrapAsObject;
@@ -17,6 +18,13 @@ public class JavaUtilNavigableMap<K, V> extends ConcurrentSkipListMap<K, V> impl
         super( comparator );
     }
 
+    /**
+     * Built in one pass from a map that is already sorted, and ordered by its comparator.
+     */
+    public JavaUtilNavigableMap( SortedMap<K, ? extends V> sorted ) {
+        super( sorted );
+    }
+
     @Override
     public final boolean put( K key, boolean i ) {
         return ( Boolean ) super.put( key, ( V ) wrapAsObject( i ) );
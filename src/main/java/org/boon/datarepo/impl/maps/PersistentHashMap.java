@@ -0,0 +1,213 @@
+package org.boon.datarepo.impl.maps;
+
+import org.boon.datarepo.impl.maps.PersistentNavigableMap.Node;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hash map kept in a {@link PersistentNavigableMap} tree keyed by hash code, each node holding
+ * the keys that share that hash. Writes copy the path to the hash and swap the new tree in with
+ * a compare and set, so {@link #snapshot()} is a read only map made in constant time.
+ */
+public class PersistentHashMap<K, V> extends AbstractMap<K, V> {
+
+    /* Tree and entry count, swapped together so a snapshot sees a size that matches its tree. */
+    private static final class State {
+        final Node<Integer, Object[]> root;
+        final int size;
+
+        State( Node<Integer, Object[]> root, int size ) {
+            this.root = root;
+            this.size = size;
+        }
+    }
+
+    private static final State EMPTY = new State( null, 0 );
+
+    private final AtomicReference<State> state;
+    private final boolean readOnly;
+
+    public PersistentHashMap() {
+        this( EMPTY, false );
+    }
+
+    private PersistentHashMap( State state, boolean readOnly ) {
+        this.state = new AtomicReference<>( state );
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * Read only copy of the map as it is now. Later writes to this map do not show in it.
+     */
+    public PersistentHashMap<K, V> snapshot() {
+        return new PersistentHashMap<>( state.get(), true );
+    }
+
+    @Override
+    public V get( Object key ) {
+        Object[] chain = chain( state.get().root, key );
+        int at = indexOf( chain, key );
+        return at < 0 ? null : ( V ) chain[ at + 1 ];
+    }
+
+    @Override
+    public boolean containsKey( Object key ) {
+        return indexOf( chain( state.get().root, key ), key ) >= 0;
+    }
+
+    @Override
+    public V put( K key, V value ) {
+        writable();
+        int hash = hash( key );
+        Object[] previous = new Object[ 1 ];
+        while ( true ) {
+            State current = state.get();
+            Object[] chain = chain( current.root, key );
+            int at = indexOf( chain, key );
+            Object[] updated;
+            int size = current.size;
+            if ( at >= 0 ) {
+                updated = chain.clone();
+                updated[ at + 1 ] = value;
+            } else if ( chain == null ) {
+                updated = new Object[]{ key, value };
+                size++;
+            } else {
+                updated = Arrays.copyOf( chain, chain.length + 2 );
+                updated[ chain.length ] = key;
+                updated[ chain.length + 1 ] = value;
+                size++;
+            }
+            Node<Integer, Object[]> root = PersistentNavigableMap.insert( null, current.root, hash, updated, previous );
+            if ( state.compareAndSet( current, new State( root, size ) ) ) {
+                return at < 0 ? null : ( V ) chain[ at + 1 ];
+            }
+        }
+    }
+
+    @Override
+    public V remove( Object key ) {
+        writable();
+        int hash = hash( key );
+        Object[] removed = new Object[ 1 ];
+        while ( true ) {
+            State current = state.get();
+            Object[] chain = chain( current.root, key );
+            int at = indexOf( chain, key );
+            if ( at < 0 ) {
+                return null;
+            }
+            Node<Integer, Object[]> root;
+            if ( chain.length == 2 ) {
+                root = PersistentNavigableMap.delete( null, current.root, hash, removed );
+            } else {
+                Object[] updated = new Object[ chain.length - 2 ];
+                System.arraycopy( chain, 0, updated, 0, at );
+                System.arraycopy( chain, at + 2, updated, at, chain.length - at - 2 );
+                root = PersistentNavigableMap.insert( null, current.root, hash, updated, removed );
+            }
+            if ( state.compareAndSet( current, new State( root, current.size - 1 ) ) ) {
+                return ( V ) chain[ at + 1 ];
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        writable();
+        state.set( EMPTY );
+    }
+
+    @Override
+    public int size() {
+        return state.get().size;
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        final State current = state.get();
+        return new AbstractSet<Entry<K, V>>() {
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                return new EntryIterator( current.root );
+            }
+
+            @Override
+            public int size() {
+                return current.size;
+            }
+        };
+    }
+
+    private void writable() {
+        if ( readOnly ) {
+            throw new UnsupportedOperationException( "snapshot is read only" );
+        }
+    }
+
+    private static int hash( Object key ) {
+        int h = key.hashCode();
+        return h ^ ( h >>> 16 );
+    }
+
+    private static Object[] chain( Node<Integer, Object[]> root, Object key ) {
+        Node<Integer, Object[]> node = PersistentNavigableMap.find( null, root, hash( key ) );
+        return node == null ? null : node.value;
+    }
+
+    private static int indexOf( Object[] chain, Object key ) {
+        if ( chain != null ) {
+            for ( int index = 0; index < chain.length; index += 2 ) {
+                if ( key.equals( chain[ index ] ) ) {
+                    return index;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private final class EntryIterator implements Iterator<Entry<K, V>> {
+
+        private final ArrayDeque<Node<Integer, Object[]>> stack = new ArrayDeque<>();
+        private Object[] chain;
+        private int index;
+
+        EntryIterator( Node<Integer, Object[]> root ) {
+            push( root );
+        }
+
+        private void push( Node<Integer, Object[]> node ) {
+            while ( node != null ) {
+                stack.push( node );
+                node = node.left;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return ( chain != null && index < chain.length ) || !stack.isEmpty();
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            if ( chain == null || index >= chain.length ) {
+                if ( stack.isEmpty() ) {
+                    throw new NoSuchElementException();
+                }
+                Node<Integer, Object[]> node = stack.pop();
+                push( node.right );
+                chain = node.value;
+                index = 0;
+            }
+            Entry<K, V> entry = new SimpleImmutableEntry<>( ( K ) chain[ index ], ( V ) chain[ index + 1 ] );
+            index += 2;
+            return entry;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException( "snapshot is read only" );
+        }
+    }
+}
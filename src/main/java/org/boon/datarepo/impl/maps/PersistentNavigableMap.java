@@ -0,0 +1,752 @@
+package org.boon.datarepo.impl.maps;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Sorted map whose tree is never changed in place. A put or a remove copies the path from
+ * the root down to the key and swaps the new root in with a compare and set, so writers to
+ * different keys can run at once and {@link #snapshot()} is a read only map over the current
+ * root made in constant time. Views (subMap, headMap, descendingMap...) read the tree as it
+ * was when they were taken.
+ */
+public class PersistentNavigableMap<K, V> extends AbstractMap<K, V> implements NavigableMap<K, V> {
+
+    @SuppressWarnings( "rawtypes" )
+    private static final AtomicReferenceFieldUpdater<PersistentNavigableMap, Node> ROOT =
+            AtomicReferenceFieldUpdater.newUpdater( PersistentNavigableMap.class, Node.class, "root" );
+
+    private final Comparator<? super K> comparator;
+    private final boolean readOnly;
+    private final boolean descending;
+
+    /* Bounds of a view, always in ascending order. */
+    private final boolean hasLo, loInclusive, hasHi, hiInclusive;
+    private final K lo, hi;
+
+    private volatile Node<K, V> root;
+
+    public PersistentNavigableMap() {
+        this( null );
+    }
+
+    public PersistentNavigableMap( Comparator<? super K> comparator ) {
+        this( comparator, null, false, false, false, null, false, false, null, false );
+    }
+
+    private PersistentNavigableMap( Comparator<? super K> comparator, Node<K, V> root, boolean readOnly, boolean descending,
+                                    boolean hasLo, K lo, boolean loInclusive, boolean hasHi, K hi, boolean hiInclusive ) {
+        this.comparator = comparator;
+        this.root = root;
+        this.readOnly = readOnly;
+        this.descending = descending;
+        this.hasLo = hasLo;
+        this.lo = lo;
+        this.loInclusive = loInclusive;
+        this.hasHi = hasHi;
+        this.hi = hi;
+        this.hiInclusive = hiInclusive;
+    }
+
+    /**
+     * Read only copy of the map as it is now. Later writes to this map do not show in it.
+     */
+    public PersistentNavigableMap<K, V> snapshot() {
+        return new PersistentNavigableMap<>( comparator, root, true, descending, hasLo, lo, loInclusive, hasHi, hi, hiInclusive );
+    }
+
+    @Override
+    public V put( K key, V value ) {
+        writable();
+        Object[] previous = new Object[ 1 ];
+        while ( true ) {
+            Node<K, V> current = root;
+            Node<K, V> updated = insert( comparator, current, key, value, previous );
+            if ( ROOT.compareAndSet( this, current, updated ) ) {
+                return ( V ) previous[ 0 ];
+            }
+        }
+    }
+
+    @Override
+    public V remove( Object key ) {
+        writable();
+        Object[] removed = new Object[ 1 ];
+        while ( true ) {
+            Node<K, V> current = root;
+            Node<K, V> updated = delete( comparator, current, key, removed );
+            if ( updated == current || ROOT.compareAndSet( this, current, updated ) ) {
+                return ( V ) removed[ 0 ];
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        writable();
+        root = null;
+    }
+
+    @Override
+    public V get( Object key ) {
+        if ( !inRange( key ) ) {
+            return null;
+        }
+        Node<K, V> node = find( comparator, root, key );
+        return node == null ? null : node.value;
+    }
+
+    @Override
+    public boolean containsKey( Object key ) {
+        return inRange( key ) && find( comparator, root, key ) != null;
+    }
+
+    @Override
+    public int size() {
+        Node<K, V> tree = root;
+        int high = hasHi ? below( tree, hi, hiInclusive ) : size( tree );
+        int low = hasLo ? below( tree, lo, !loInclusive ) : 0;
+        return Math.max( 0, high - low );
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return firstEntry() == null;
+    }
+
+    @Override
+    public Comparator<? super K> comparator() {
+        if ( descending ) {
+            if ( comparator == null ) {
+                return ( Comparator ) Collections.reverseOrder();
+            }
+            return Collections.reverseOrder( comparator );
+        }
+        return comparator;
+    }
+
+    @Override
+    public Entry<K, V> firstEntry() {
+        Node<K, V> tree = root;
+        return descending ? highest( tree ) : lowest( tree );
+    }
+
+    @Override
+    public Entry<K, V> lastEntry() {
+        Node<K, V> tree = root;
+        return descending ? lowest( tree ) : highest( tree );
+    }
+
+    @Override
+    public Entry<K, V> ceilingEntry( K key ) {
+        Node<K, V> tree = root;
+        return descending ? floor( tree, key, true ) : ceiling( tree, key, true );
+    }
+
+    @Override
+    public Entry<K, V> higherEntry( K key ) {
+        Node<K, V> tree = root;
+        return descending ? floor( tree, key, false ) : ceiling( tree, key, false );
+    }
+
+    @Override
+    public Entry<K, V> floorEntry( K key ) {
+        Node<K, V> tree = root;
+        return descending ? ceiling( tree, key, true ) : floor( tree, key, true );
+    }
+
+    @Override
+    public Entry<K, V> lowerEntry( K key ) {
+        Node<K, V> tree = root;
+        return descending ? ceiling( tree, key, false ) : floor( tree, key, false );
+    }
+
+    @Override
+    public K firstKey() {
+        return keyOrThrow( firstEntry() );
+    }
+
+    @Override
+    public K lastKey() {
+        return keyOrThrow( lastEntry() );
+    }
+
+    @Override
+    public K ceilingKey( K key ) {
+        return keyOf( ceilingEntry( key ) );
+    }
+
+    @Override
+    public K higherKey( K key ) {
+        return keyOf( higherEntry( key ) );
+    }
+
+    @Override
+    public K floorKey( K key ) {
+        return keyOf( floorEntry( key ) );
+    }
+
+    @Override
+    public K lowerKey( K key ) {
+        return keyOf( lowerEntry( key ) );
+    }
+
+    @Override
+    public Entry<K, V> pollFirstEntry() {
+        throw new UnsupportedOperationException( "pollFirstEntry is not supported" );
+    }
+
+    @Override
+    public Entry<K, V> pollLastEntry() {
+        throw new UnsupportedOperationException( "pollLastEntry is not supported" );
+    }
+
+    @Override
+    public NavigableMap<K, V> descendingMap() {
+        return new PersistentNavigableMap<>( comparator, root, true, !descending, hasLo, lo, loInclusive, hasHi, hi, hiInclusive );
+    }
+
+    @Override
+    public NavigableMap<K, V> subMap( K fromKey, boolean fromInclusive, K toKey, boolean toInclusive ) {
+        return descending ? bounded( true, toKey, toInclusive, true, fromKey, fromInclusive )
+                : bounded( true, fromKey, fromInclusive, true, toKey, toInclusive );
+    }
+
+    @Override
+    public NavigableMap<K, V> headMap( K toKey, boolean inclusive ) {
+        return descending ? bounded( true, toKey, inclusive, false, null, false )
+                : bounded( false, null, false, true, toKey, inclusive );
+    }
+
+    @Override
+    public NavigableMap<K, V> tailMap( K fromKey, boolean inclusive ) {
+        return descending ? bounded( false, null, false, true, fromKey, inclusive )
+                : bounded( true, fromKey, inclusive, false, null, false );
+    }
+
+    @Override
+    public SortedMap<K, V> subMap( K fromKey, K toKey ) {
+        return subMap( fromKey, true, toKey, false );
+    }
+
+    @Override
+    public SortedMap<K, V> headMap( K toKey ) {
+        return headMap( toKey, false );
+    }
+
+    @Override
+    public SortedMap<K, V> tailMap( K fromKey ) {
+        return tailMap( fromKey, true );
+    }
+
+    @Override
+    public NavigableSet<K> navigableKeySet() {
+        return new KeySet<>( this );
+    }
+
+    @Override
+    public NavigableSet<K> descendingKeySet() {
+        return new KeySet<>( descendingMap() );
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return navigableKeySet();
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        final Node<K, V> tree = root;
+        return new AbstractSet<Entry<K, V>>() {
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                return new EntryIterator( tree );
+            }
+
+            @Override
+            public int size() {
+                return PersistentNavigableMap.this.size();
+            }
+        };
+    }
+
+    private void writable() {
+        if ( readOnly ) {
+            throw new UnsupportedOperationException( "snapshot is read only" );
+        }
+    }
+
+    /* Narrows this view to the given ascending bounds, keeping whichever bound is tighter. */
+    private PersistentNavigableMap<K, V> bounded( boolean hasLo, K lo, boolean loInclusive, boolean hasHi, K hi, boolean hiInclusive ) {
+        if ( hasLo && hasHi && compare( comparator, lo, hi ) > 0 ) {
+            throw new IllegalArgumentException( "fromKey > toKey" );
+        }
+        if ( this.hasLo && ( !hasLo || tighter( this.lo, this.loInclusive, lo, loInclusive, 1 ) ) ) {
+            hasLo = true;
+            lo = this.lo;
+            loInclusive = this.loInclusive;
+        }
+        if ( this.hasHi && ( !hasHi || tighter( this.hi, this.hiInclusive, hi, hiInclusive, -1 ) ) ) {
+            hasHi = true;
+            hi = this.hi;
+            hiInclusive = this.hiInclusive;
+        }
+        return new PersistentNavigableMap<>( comparator, root, true, descending, hasLo, lo, loInclusive, hasHi, hi, hiInclusive );
+    }
+
+    private boolean tighter( K mine, boolean mineInclusive, K theirs, boolean theirsInclusive, int direction ) {
+        int c = compare( comparator, mine, theirs ) * direction;
+        return c > 0 || ( c == 0 && !mineInclusive );
+    }
+
+    private boolean tooLow( Object key ) {
+        if ( !hasLo ) {
+            return false;
+        }
+        int c = compare( comparator, key, lo );
+        return c < 0 || ( c == 0 && !loInclusive );
+    }
+
+    private boolean tooHigh( Object key ) {
+        if ( !hasHi ) {
+            return false;
+        }
+        int c = compare( comparator, key, hi );
+        return c > 0 || ( c == 0 && !hiInclusive );
+    }
+
+    private boolean inRange( Object key ) {
+        return !tooLow( key ) && !tooHigh( key );
+    }
+
+    private Node<K, V> lowest( Node<K, V> tree ) {
+        Node<K, V> node = hasLo ? ceilingNode( comparator, tree, lo, loInclusive ) : first( tree );
+        return node == null || tooHigh( node.key ) ? null : node;
+    }
+
+    private Node<K, V> highest( Node<K, V> tree ) {
+        Node<K, V> node = hasHi ? floorNode( comparator, tree, hi, hiInclusive ) : last( tree );
+        return node == null || tooLow( node.key ) ? null : node;
+    }
+
+    private Node<K, V> ceiling( Node<K, V> tree, K key, boolean inclusive ) {
+        if ( tooLow( key ) ) {
+            return lowest( tree );
+        }
+        Node<K, V> node = ceilingNode( comparator, tree, key, inclusive );
+        return node == null || tooHigh( node.key ) ? null : node;
+    }
+
+    private Node<K, V> floor( Node<K, V> tree, K key, boolean inclusive ) {
+        if ( tooHigh( key ) ) {
+            return highest( tree );
+        }
+        Node<K, V> node = floorNode( comparator, tree, key, inclusive );
+        return node == null || tooLow( node.key ) ? null : node;
+    }
+
+    /* Number of keys below the given key, or at or below it when inclusive. */
+    private int below( Node<K, V> node, K key, boolean inclusive ) {
+        int count = 0;
+        while ( node != null ) {
+            int c = compare( comparator, node.key, key );
+            if ( c < 0 || ( c == 0 && inclusive ) ) {
+                count += size( node.left ) + 1;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return count;
+    }
+
+    private static <K> K keyOf( Entry<K, ?> entry ) {
+        return entry == null ? null : entry.getKey();
+    }
+
+    private static <K> K keyOrThrow( Entry<K, ?> entry ) {
+        if ( entry == null ) {
+            throw new NoSuchElementException();
+        }
+        return entry.getKey();
+    }
+
+    private final class EntryIterator implements Iterator<Entry<K, V>> {
+
+        private final ArrayDeque<Node<K, V>> stack = new ArrayDeque<>();
+        private Node<K, V> next;
+
+        EntryIterator( Node<K, V> tree ) {
+            push( tree );
+            advance();
+        }
+
+        private void push( Node<K, V> node ) {
+            while ( node != null ) {
+                if ( descending ? tooHigh( node.key ) : tooLow( node.key ) ) {
+                    node = descending ? node.left : node.right;
+                } else {
+                    stack.push( node );
+                    node = descending ? node.right : node.left;
+                }
+            }
+        }
+
+        private void advance() {
+            if ( stack.isEmpty() ) {
+                next = null;
+                return;
+            }
+            Node<K, V> node = stack.pop();
+            push( descending ? node.left : node.right );
+            if ( descending ? tooLow( node.key ) : tooHigh( node.key ) ) {
+                stack.clear();
+                node = null;
+            }
+            next = node;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            if ( next == null ) {
+                throw new NoSuchElementException();
+            }
+            Node<K, V> node = next;
+            advance();
+            return node;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException( "snapshot is read only" );
+        }
+    }
+
+    private static final class KeySet<K> extends AbstractSet<K> implements NavigableSet<K> {
+
+        private final NavigableMap<K, ?> map;
+
+        KeySet( NavigableMap<K, ?> map ) {
+            this.map = map;
+        }
+
+        @Override
+        public Iterator<K> iterator() {
+            final Iterator<? extends Entry<K, ?>> entries = map.entrySet().iterator();
+            return new Iterator<K>() {
+                public boolean hasNext() {
+                    return entries.hasNext();
+                }
+
+                public K next() {
+                    return entries.next().getKey();
+                }
+
+                public void remove() {
+                    throw new UnsupportedOperationException( "snapshot is read only" );
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public boolean contains( Object o ) {
+            return map.containsKey( o );
+        }
+
+        @Override
+        public K lower( K k ) {
+            return map.lowerKey( k );
+        }
+
+        @Override
+        public K floor( K k ) {
+            return map.floorKey( k );
+        }
+
+        @Override
+        public K ceiling( K k ) {
+            return map.ceilingKey( k );
+        }
+
+        @Override
+        public K higher( K k ) {
+            return map.higherKey( k );
+        }
+
+        @Override
+        public K pollFirst() {
+            throw new UnsupportedOperationException( "pollFirst is not supported" );
+        }
+
+        @Override
+        public K pollLast() {
+            throw new UnsupportedOperationException( "pollLast is not supported" );
+        }
+
+        @Override
+        public NavigableSet<K> descendingSet() {
+            return new KeySet<>( map.descendingMap() );
+        }
+
+        @Override
+        public Iterator<K> descendingIterator() {
+            return descendingSet().iterator();
+        }
+
+        @Override
+        public NavigableSet<K> subSet( K from, boolean fromInclusive, K to, boolean toInclusive ) {
+            return new KeySet<>( map.subMap( from, fromInclusive, to, toInclusive ) );
+        }
+
+        @Override
+        public NavigableSet<K> headSet( K to, boolean inclusive ) {
+            return new KeySet<>( map.headMap( to, inclusive ) );
+        }
+
+        @Override
+        public NavigableSet<K> tailSet( K from, boolean inclusive ) {
+            return new KeySet<>( map.tailMap( from, inclusive ) );
+        }
+
+        @Override
+        public SortedSet<K> subSet( K from, K to ) {
+            return subSet( from, true, to, false );
+        }
+
+        @Override
+        public SortedSet<K> headSet( K to ) {
+            return headSet( to, false );
+        }
+
+        @Override
+        public SortedSet<K> tailSet( K from ) {
+            return tailSet( from, true );
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            return map.comparator();
+        }
+
+        @Override
+        public K first() {
+            return map.firstKey();
+        }
+
+        @Override
+        public K last() {
+            return map.lastKey();
+        }
+    }
+
+    /**
+     * Immutable AVL node. Each node knows the size of its subtree so views can count in log time.
+     */
+    static final class Node<K, V> implements Entry<K, V> {
+        final K key;
+        final V value;
+        final Node<K, V> left, right;
+        final int height, size;
+
+        Node( K key, V value, Node<K, V> left, Node<K, V> right ) {
+            this.key = key;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.height = Math.max( height( left ), height( right ) ) + 1;
+            this.size = size( left ) + size( right ) + 1;
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public V setValue( V value ) {
+            throw new UnsupportedOperationException( "snapshot is read only" );
+        }
+
+        @Override
+        public boolean equals( Object o ) {
+            if ( !( o instanceof Entry ) ) {
+                return false;
+            }
+            Entry<?, ?> e = ( Entry<?, ?> ) o;
+            return ( key == null ? e.getKey() == null : key.equals( e.getKey() ) )
+                    && ( value == null ? e.getValue() == null : value.equals( e.getValue() ) );
+        }
+
+        @Override
+        public int hashCode() {
+            return ( key == null ? 0 : key.hashCode() ) ^ ( value == null ? 0 : value.hashCode() );
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    static int height( Node<?, ?> node ) {
+        return node == null ? 0 : node.height;
+    }
+
+    static int size( Node<?, ?> node ) {
+        return node == null ? 0 : node.size;
+    }
+
+    @SuppressWarnings( "unchecked" )
+    static int compare( Comparator comparator, Object a, Object b ) {
+        return comparator == null ? ( ( Comparable ) a ).compareTo( b ) : comparator.compare( a, b );
+    }
+
+    static <K, V> Node<K, V> find( Comparator<? super K> comparator, Node<K, V> node, Object key ) {
+        while ( node != null ) {
+            int c = compare( comparator, key, node.key );
+            if ( c == 0 ) {
+                return node;
+            }
+            node = c < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    static <K, V> Node<K, V> first( Node<K, V> node ) {
+        if ( node != null ) {
+            while ( node.left != null ) {
+                node = node.left;
+            }
+        }
+        return node;
+    }
+
+    static <K, V> Node<K, V> last( Node<K, V> node ) {
+        if ( node != null ) {
+            while ( node.right != null ) {
+                node = node.right;
+            }
+        }
+        return node;
+    }
+
+    static <K, V> Node<K, V> ceilingNode( Comparator<? super K> comparator, Node<K, V> node, Object key, boolean inclusive ) {
+        Node<K, V> best = null;
+        while ( node != null ) {
+            int c = compare( comparator, node.key, key );
+            if ( c > 0 || ( c == 0 && inclusive ) ) {
+                best = node;
+                node = node.left;
+            } else {
+                node = node.right;
+            }
+        }
+        return best;
+    }
+
+    static <K, V> Node<K, V> floorNode( Comparator<? super K> comparator, Node<K, V> node, Object key, boolean inclusive ) {
+        Node<K, V> best = null;
+        while ( node != null ) {
+            int c = compare( comparator, node.key, key );
+            if ( c < 0 || ( c == 0 && inclusive ) ) {
+                best = node;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns a new tree with the key set to the value. The old value, if any, lands in previous[0].
+     */
+    static <K, V> Node<K, V> insert( Comparator<? super K> comparator, Node<K, V> node, K key, V value, Object[] previous ) {
+        if ( node == null ) {
+            previous[ 0 ] = null;
+            return new Node<>( key, value, null, null );
+        }
+        int c = compare( comparator, key, node.key );
+        if ( c < 0 ) {
+            return balance( node.key, node.value, insert( comparator, node.left, key, value, previous ), node.right );
+        } else if ( c > 0 ) {
+            return balance( node.key, node.value, node.left, insert( comparator, node.right, key, value, previous ) );
+        }
+        previous[ 0 ] = node.value;
+        return new Node<>( node.key, value, node.left, node.right );
+    }
+
+    /**
+     * Returns a new tree without the key, or the same tree when the key is not there.
+     * The removed value lands in removed[0].
+     */
+    static <K, V> Node<K, V> delete( Comparator<? super K> comparator, Node<K, V> node, Object key, Object[] removed ) {
+        if ( node == null ) {
+            removed[ 0 ] = null;
+            return null;
+        }
+        int c = compare( comparator, key, node.key );
+        if ( c < 0 ) {
+            Node<K, V> left = delete( comparator, node.left, key, removed );
+            return left == node.left ? node : balance( node.key, node.value, left, node.right );
+        } else if ( c > 0 ) {
+            Node<K, V> right = delete( comparator, node.right, key, removed );
+            return right == node.right ? node : balance( node.key, node.value, node.left, right );
+        }
+        removed[ 0 ] = node.value;
+        if ( node.left == null ) {
+            return node.right;
+        }
+        if ( node.right == null ) {
+            return node.left;
+        }
+        Node<K, V> next = first( node.right );
+        return balance( next.key, next.value, node.left, deleteFirst( node.right ) );
+    }
+
+    private static <K, V> Node<K, V> deleteFirst( Node<K, V> node ) {
+        if ( node.left == null ) {
+            return node.right;
+        }
+        return balance( node.key, node.value, deleteFirst( node.left ), node.right );
+    }
+
+    private static <K, V> Node<K, V> balance( K key, V value, Node<K, V> left, Node<K, V> right ) {
+        int hl = height( left );
+        int hr = height( right );
+        if ( hl > hr + 1 ) {
+            if ( height( left.left ) >= height( left.right ) ) {
+                return new Node<>( left.key, left.value, left.left, new Node<>( key, value, left.right, right ) );
+            }
+            Node<K, V> pivot = left.right;
+            return new Node<>( pivot.key, pivot.value,
+                    new Node<>( left.key, left.value, left.left, pivot.left ),
+                    new Node<>( key, value, pivot.right, right ) );
+        }
+        if ( hr > hl + 1 ) {
+            if ( height( right.right ) >= height( right.left ) ) {
+                return new Node<>( right.key, right.value, new Node<>( key, value, left, right.left ), right.right );
+            }
+            Node<K, V> pivot = right.left;
+            return new Node<>( pivot.key, pivot.value,
+                    new Node<>( key, value, left, pivot.left ),
+                    new Node<>( right.key, right.value, pivot.right, right.right ) );
+        }
+        return new Node<>( key, value, left, right );
+    }
+}
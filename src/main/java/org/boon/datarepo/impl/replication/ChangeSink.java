@@ -0,0 +1,19 @@
+package org.boon.datarepo.impl.replication;
+
+import java.io.IOException;
+
+/**
+ * Where a {@link ReplicationLeader} sends the frames of its change stream for one follower.
+ * Frames are sent one at a time and in order, each whole, from a thread the leader keeps for this follower.
+ *
+ * @see StreamChangeSink
+ */
+public interface ChangeSink {
+
+    /**
+     * Sends the first length bytes of the frame. A sink that throws is dropped by the leader and closed.
+     */
+    void send( byte[] frame, int length ) throws IOException;
+
+    void close();
+}
@@ -0,0 +1,191 @@
+package org.boon.datarepo.impl.replication;
+
+import org.boon.Exceptions;
+import org.boon.datarepo.DataRepoException;
+import org.boon.datarepo.ObjectEditor;
+import org.boon.datarepo.impl.journal.ItemCodec;
+import org.boon.primitive.InputByteArray;
+
+import java.io.*;
+import java.net.Socket;
+import java.util.zip.CRC32;
+
+import static org.boon.datarepo.impl.replication.ReplicationLeader.*;
+
+/**
+ * Applies a {@link ReplicationLeader}'s change stream to a repo so it catches up with the leader's.
+ * <p/>
+ * Keeps the sequence number of the last change applied. Snapshots and batches already applied are skipped,
+ * so a stream can be read again from the start, a file say, and only what is new gets applied.
+ * A batch that starts past the next change means changes were missed, and the follower needs a new snapshot.
+ * <p/>
+ * The repo being followed should not be edited any other way.
+ */
+public class ReplicationFollower {
+
+    private final ObjectEditor editor;
+    private final ItemCodec codec;
+    private final CRC32 crc = new CRC32();
+
+    /* Written holding this. */
+    private volatile long sequence = -1;
+
+
+    public ReplicationFollower( ObjectEditor editor, Class<?> itemClass ) {
+        Exceptions.requireNonNull( editor, "editor cannot be null" );
+        this.editor = editor;
+        this.codec = new ItemCodec( itemClass );
+    }
+
+    /**
+     * Sequence number of the last change applied, -1 until a snapshot has been applied.
+     */
+    public long sequence() {
+        return sequence;
+    }
+
+    /**
+     * Applies frames from the stream until it ends. A frame cut short or failing its checksum
+     * ends it too, it is the unfinished tail of a file or a dropped connection.
+     */
+    public synchronized void apply( InputStream stream ) {
+        DataInputStream in = new DataInputStream( new BufferedInputStream( stream, 1 << 16 ) );
+        try {
+            while ( true ) {
+                byte[] bytes;
+                int sum;
+                try {
+                    int length = in.readInt();
+                    sum = in.readInt();
+                    if ( length <= 0 ) {
+                        return;
+                    }
+                    bytes = new byte[ length ];
+                    in.readFully( bytes );
+                } catch ( EOFException ex ) {
+                    return;
+                }
+
+                crc.reset();
+                crc.update( bytes, 0, bytes.length );
+                if ( ( int ) crc.getValue() != sum ) {
+                    return;
+                }
+                apply( new InputByteArray( bytes ) );
+            }
+        } catch ( IOException ex ) {
+            /* The connection went away, what came whole is applied. */
+        }
+    }
+
+    private void apply( InputByteArray in ) {
+        byte kind = in.readByte();
+        long first = in.readLong();
+        int count = in.readInt();
+
+        switch ( kind ) {
+            case SNAPSHOT:
+                if ( first <= sequence ) {
+                    return;
+                }
+                editor.clear();
+                for ( int index = 0; index < count; index++ ) {
+                    editor.add( codec.readItem( in ) );
+                }
+                sequence = first;
+                break;
+            case BATCH:
+                if ( sequence < 0 ) {
+                    throw new DataRepoException( "Change stream has no snapshot before change " + first );
+                }
+                if ( first > sequence + 1 ) {
+                    throw new DataRepoException( "Missed changes " + ( sequence + 1 ) + " to " + ( first - 1 ) );
+                }
+                for ( int index = 0; index < count; index++ ) {
+                    long number = first + index;
+                    byte type = in.readByte();
+                    if ( number <= sequence ) {
+                        skip( type, in );
+                    } else {
+                        change( type, in );
+                        sequence = number;
+                    }
+                }
+                break;
+            default:
+                throw new DataRepoException( "Unknown change stream frame" );
+        }
+    }
+
+    private void change( byte type, InputByteArray in ) {
+        switch ( type ) {
+            case PUT:
+                Object item = codec.readItem( in );
+                if ( editor.get( editor.getKey( item ) ) != null ) {
+                    editor.modify( item );
+                } else {
+                    editor.add( item );
+                }
+                break;
+            case REMOVE:
+                editor.removeByKey( codec.readValue( in ) );
+                break;
+            case CLEAR:
+                editor.clear();
+                break;
+            default:
+                throw new DataRepoException( "Unknown change stream record" );
+        }
+    }
+
+    private void skip( byte type, InputByteArray in ) {
+        switch ( type ) {
+            case PUT:
+                codec.readItem( in );
+                break;
+            case REMOVE:
+                codec.readValue( in );
+                break;
+            case CLEAR:
+                break;
+            default:
+                throw new DataRepoException( "Unknown change stream record" );
+        }
+    }
+
+    /**
+     * Applies the stream on a daemon thread until it ends.
+     */
+    public Thread follow( final InputStream stream ) {
+        Thread thread = new Thread( new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    apply( stream );
+                } finally {
+                    try {
+                        stream.close();
+                    } catch ( IOException ex ) {
+                        /* Done with it either way. */
+                    }
+                }
+            }
+        }, "repo-follower" );
+        thread.setDaemon( true );
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Follows a leader served by a {@link ReplicationServer}.
+     */
+    public Thread connect( String host, int port ) {
+        try {
+            Socket socket = new Socket( host, port );
+            socket.setTcpNoDelay( true );
+            return follow( socket.getInputStream() );
+        } catch ( IOException ex ) {
+            throw new DataRepoException( "Unable to connect to repo leader " + host + ":" + port, ex );
+        }
+    }
+}
@@ -0,0 +1,409 @@
+package org.boon.datarepo.impl.replication;
+
+import org.boon.datarepo.ObjectEditor;
+import org.boon.datarepo.impl.journal.ChangeLog;
+import org.boon.datarepo.impl.journal.ItemCodec;
+import org.boon.primitive.ByteBuf;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Publishes every change to a repo as an ordered binary stream that {@link ReplicationFollower}s
+ * apply to their own copy of the repo.
+ * <p/>
+ * Each change gets the next sequence number and is encoded like the journal does it, as the whole item
+ * after the change or as the key that was removed, written with the primitive {@link org.boon.primitive.Output}.
+ * So applying a change twice does no harm. Writers append to a shared batch and then wait for it to be framed.
+ * Whoever gets there first frames everything appended so far, so writers that pile up behind one all ride
+ * on the next frame.
+ * <p/>
+ * Each follower has its own bounded queue of frames and its own thread writing them out, so a writer never
+ * waits on a follower's socket. A follower that falls more than {@link #QUEUE_FRAMES} frames behind is dropped
+ * and its sink closed. It catches up by following again, which starts it over from a fresh snapshot.
+ * <p/>
+ * A follower that joins gets a snapshot of the whole repo first, marked with the sequence number of
+ * the last change framed before it joined, then every batch after it. The snapshot is read after joining,
+ * outside the lock writers frame under, so it may already hold some of those batches. Applying them
+ * again does no harm.
+ * <p/>
+ * A frame is its length, a CRC32 of what follows the length and checksum, the frame kind,
+ * the sequence number of its first change (or the snapshot's sequence number), a count and then
+ * the changes or the snapshot's items.
+ */
+public class ReplicationLeader implements ChangeLog {
+
+    static final byte SNAPSHOT = 1;
+    static final byte BATCH = 2;
+
+    static final byte PUT = 1;
+    static final byte REMOVE = 2;
+    static final byte CLEAR = 3;
+
+    /* Frames a follower may fall behind by before it is dropped. */
+    static final int QUEUE_FRAMES = 4_096;
+
+    private static final long CLOSE_MILLIS = 10_000;
+
+    /* Queued last to tell a follower's thread to stop. */
+    private static final byte[] END = new byte[ 0 ];
+
+    private final ItemCodec codec;
+
+    /* Held while framing. Taken before this when both are needed. */
+    private final Object sendLock = new Object();
+
+    /* Guarded by this. */
+    private ByteBuf pending = ByteBuf.create( 4096 );
+    private ByteBuf spare = ByteBuf.create( 4096 );
+    private long appended;
+    private final ByteBuf record = ByteBuf.create( 256 );
+
+    /* Guarded by sendLock. */
+    private final List<Follower> followers = new ArrayList<>();
+    private final ByteBuf frame = ByteBuf.create( 4096 );
+    private final CRC32 crc = new CRC32();
+    private ObjectEditor editor;
+    private volatile long sent;
+
+
+    public ReplicationLeader( Class<?> itemClass ) {
+        this.codec = new ItemCodec( itemClass );
+    }
+
+    /**
+     * The editor snapshots are read from. The builder hands over the editor under the one that publishes.
+     */
+    public void attach( ObjectEditor editor ) {
+        synchronized ( sendLock ) {
+            this.editor = editor;
+        }
+    }
+
+    /**
+     * Sequence number of the last change framed and queued for every follower.
+     */
+    public long sequence() {
+        return sent;
+    }
+
+    public int followers() {
+        synchronized ( sendLock ) {
+            return followers.size();
+        }
+    }
+
+    /**
+     * Sends the sink a snapshot of the repo and from then on every change after it.
+     * The snapshot is read on the caller's thread, without holding up writers, and sent on the follower's own.
+     */
+    public void follow( ChangeSink sink ) {
+        Follower follower = new Follower( sink );
+        ObjectEditor editor;
+        long sequence;
+        synchronized ( sendLock ) {
+            if ( this.editor == null ) {
+                throw new IllegalStateException( "Leader was never attached to a repo" );
+            }
+            editor = this.editor;
+            send( Long.MAX_VALUE );
+            sequence = sent;
+            followers.add( follower );
+        }
+
+        ByteBuf snapshot = ByteBuf.create( 4096 );
+        try {
+            List items = new ArrayList( editor.all() );
+            startFrame( snapshot, SNAPSHOT, sequence, items.size() );
+            for ( Object item : items ) {
+                codec.writeItem( snapshot, item );
+            }
+        } catch ( RuntimeException ex ) {
+            failed( follower );
+            sink.close();
+            throw ex;
+        }
+        follower.start( finishFrame( snapshot, new CRC32() ) );
+    }
+
+    /**
+     * Waits until every follower has written out every frame queued for it so far.
+     *
+     * @return false if the time ran out first
+     */
+    public boolean flush( long timeout, TimeUnit unit ) throws InterruptedException {
+        send( Long.MAX_VALUE );
+        List<Follower> following;
+        synchronized ( sendLock ) {
+            following = new ArrayList<>( followers );
+        }
+        long end = System.nanoTime() + unit.toNanos( timeout );
+        for ( Follower follower : following ) {
+            if ( !follower.await( follower.queued(), end ) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Appends the item under the key as it is now, or its removal if it is gone, and waits until it is sent.
+     * The item is read while holding the batch, so the last change for a key always has its latest state.
+     */
+    @Override
+    public void log( ObjectEditor editor, Object key ) {
+        long ticket;
+        synchronized ( this ) {
+            ticket = append( editor, key );
+        }
+        send( ticket );
+    }
+
+    /**
+     * Same as log for each key, all in one batch.
+     */
+    @Override
+    public void log( ObjectEditor editor, Collection<?> keys ) {
+        long ticket = 0;
+        synchronized ( this ) {
+            for ( Object key : keys ) {
+                ticket = append( editor, key );
+            }
+        }
+        send( ticket );
+    }
+
+    @Override
+    public void clear( ObjectEditor editor ) {
+        long ticket;
+        synchronized ( this ) {
+            record.readForRecycle();
+            record.writeByte( CLEAR );
+            ticket = append();
+        }
+        send( ticket );
+    }
+
+    private long append( ObjectEditor editor, Object key ) {
+        Object item = editor.get( key );
+        record.readForRecycle();
+        if ( item == null ) {
+            record.writeByte( REMOVE );
+            codec.writeValue( record, key );
+        } else {
+            record.writeByte( PUT );
+            codec.writeItem( record, item );
+        }
+        return append();
+    }
+
+    /**
+     * Caller holds this.
+     */
+    private long append() {
+        int length = record.len();
+        pending.write( record.readForRecycle(), 0, length );
+        return ++appended;
+    }
+
+    /**
+     * Returns once everything up to the ticket is framed and queued for every follower.
+     * Followers too far behind to take the frame are dropped.
+     */
+    private void send( long ticket ) {
+        synchronized ( sendLock ) {
+            if ( sent >= ticket ) {
+                return;
+            }
+
+            ByteBuf batch;
+            long upTo;
+            synchronized ( this ) {
+                if ( appended == sent ) {
+                    return;
+                }
+                batch = pending;
+                pending = spare;
+                upTo = appended;
+            }
+
+            int length = batch.len();
+            try {
+                startFrame( frame, BATCH, sent + 1, ( int ) ( upTo - sent ) );
+                frame.write( batch.readForRecycle(), 0, length );
+            } finally {
+                spare = batch;
+            }
+            byte[] bytes = finishFrame( frame, crc );
+            sent = upTo;
+
+            for ( int index = followers.size() - 1; index >= 0; index-- ) {
+                Follower follower = followers.get( index );
+                if ( !follower.queue( bytes ) ) {
+                    followers.remove( index );
+                    follower.drop();
+                }
+            }
+        }
+    }
+
+    /**
+     * Room is left for the length and checksum, which finishFrame fills in.
+     */
+    private static void startFrame( ByteBuf frame, byte kind, long sequence, int count ) {
+        frame.readForRecycle();
+        frame.writeInt( 0 );
+        frame.writeInt( 0 );
+        frame.writeByte( kind );
+        frame.writeLong( sequence );
+        frame.writeInt( count );
+    }
+
+    /**
+     * A copy of the frame, so followers can share it while the buffer is reused.
+     */
+    private static byte[] finishFrame( ByteBuf frame, CRC32 crc ) {
+        int length = frame.len();
+        byte[] bytes = Arrays.copyOf( frame.readForRecycle(), length );
+        crc.reset();
+        crc.update( bytes, 8, length - 8 );
+        putInt( bytes, 0, length - 8 );
+        putInt( bytes, 4, ( int ) crc.getValue() );
+        return bytes;
+    }
+
+    private static void putInt( byte[] bytes, int offset, int value ) {
+        bytes[ offset ] = ( byte ) ( value >>> 24 );
+        bytes[ offset + 1 ] = ( byte ) ( value >>> 16 );
+        bytes[ offset + 2 ] = ( byte ) ( value >>> 8 );
+        bytes[ offset + 3 ] = ( byte ) value;
+    }
+
+    /**
+     * Sends what is still pending and closes every follower once it has written out its frames,
+     * giving up on followers that take longer than ten seconds.
+     */
+    public void close() {
+        send( Long.MAX_VALUE );
+        List<Follower> following;
+        synchronized ( sendLock ) {
+            following = new ArrayList<>( followers );
+            followers.clear();
+        }
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( CLOSE_MILLIS );
+        try {
+            for ( Follower follower : following ) {
+                follower.finish( end );
+            }
+        } catch ( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void failed( Follower follower ) {
+        synchronized ( sendLock ) {
+            followers.remove( follower );
+        }
+    }
+
+    /**
+     * One follower's queue of frames and the thread that writes them to its sink, snapshot first.
+     */
+    private final class Follower implements Runnable {
+
+        private final ChangeSink sink;
+        private final BlockingQueue<byte[]> frames = new ArrayBlockingQueue<>( QUEUE_FRAMES );
+        private final Thread thread;
+        private byte[] snapshot;
+
+        /* Frames queued, only counted under sendLock, and frames written, only counted by the thread. */
+        private volatile long queued;
+        private volatile long written;
+        private volatile boolean done;
+
+        Follower( ChangeSink sink ) {
+            this.sink = sink;
+            this.thread = new Thread( this, "repo-follower" );
+            this.thread.setDaemon( true );
+        }
+
+        void start( byte[] snapshot ) {
+            this.snapshot = snapshot;
+            thread.start();
+        }
+
+        long queued() {
+            return queued;
+        }
+
+        boolean queue( byte[] frame ) {
+            if ( !frames.offer( frame ) ) {
+                return false;
+            }
+            queued++;
+            return true;
+        }
+
+        /**
+         * Called with sendLock held, so the queue is not cleared from under a frame being queued.
+         * The sink is closed by the thread, which may be in the middle of writing to it.
+         */
+        void drop() {
+            frames.clear();
+            frames.offer( END );
+        }
+
+        void finish( long end ) throws InterruptedException {
+            long wait = end - System.nanoTime();
+            if ( wait > 0 && frames.offer( END, wait, TimeUnit.NANOSECONDS ) ) {
+                thread.join( Math.max( 1, TimeUnit.NANOSECONDS.toMillis( end - System.nanoTime() ) ) );
+            }
+            if ( thread.isAlive() ) {
+                thread.interrupt();
+            }
+        }
+
+        synchronized boolean await( long frames, long end ) throws InterruptedException {
+            while ( written < frames && !done ) {
+                long millis = TimeUnit.NANOSECONDS.toMillis( end - System.nanoTime() );
+                if ( millis <= 0 ) {
+                    return false;
+                }
+                wait( millis );
+            }
+            return true;
+        }
+
+        private synchronized void wrote() {
+            written++;
+            notifyAll();
+        }
+
+        @Override
+        public void run() {
+            try {
+                sink.send( snapshot, snapshot.length );
+                snapshot = null;
+                for ( byte[] frame = frames.take(); frame != END; frame = frames.take() ) {
+                    sink.send( frame, frame.length );
+                    wrote();
+                }
+            } catch ( IOException | InterruptedException ex ) {
+                failed( this );
+            } finally {
+                sink.close();
+                synchronized ( this ) {
+                    done = true;
+                    notifyAll();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package org.boon.datarepo.impl.replication;
+
+import org.boon.datarepo.DataRepoException;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * Serves a {@link ReplicationLeader}'s change stream over sockets. Each connection is a new follower,
+ * sent a snapshot and then every change. Followers connect with {@link ReplicationFollower#connect(String, int)}.
+ */
+public class ReplicationServer {
+
+    private final ReplicationLeader leader;
+    private final ServerSocket server;
+
+
+    /**
+     * Listens on the port, 0 for any free one, and accepts followers on a daemon thread.
+     */
+    public ReplicationServer( ReplicationLeader leader, int port ) {
+        this( leader, port, null );
+    }
+
+    public ReplicationServer( ReplicationLeader leader, int port, InetAddress address ) {
+        this.leader = leader;
+        try {
+            this.server = new ServerSocket( port, 50, address );
+        } catch ( IOException ex ) {
+            throw new DataRepoException( "Unable to listen for repo followers on " + port, ex );
+        }
+
+        Thread thread = new Thread( new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        }, "repo-leader" );
+        thread.setDaemon( true );
+        thread.start();
+    }
+
+    public int port() {
+        return server.getLocalPort();
+    }
+
+    private void accept() {
+        while ( !server.isClosed() ) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay( true );
+                leader.follow( new StreamChangeSink( new BufferedOutputStream( socket.getOutputStream(), 1 << 16 ) ) );
+            } catch ( IOException ex ) {
+                /* Closed, or one follower failed to connect. */
+            }
+        }
+    }
+
+    /**
+     * Stops taking followers. The ones already following keep following until the leader is closed.
+     */
+    public void close() {
+        try {
+            server.close();
+        } catch ( IOException ex ) {
+            throw new DataRepoException( "Unable to close repo leader socket", ex );
+        }
+    }
+}
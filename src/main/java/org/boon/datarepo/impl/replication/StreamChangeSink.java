@@ -0,0 +1,32 @@
+package org.boon.datarepo.impl.replication;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Sends the change stream down any output stream, a file or a socket say.
+ * Each frame is flushed as it is sent.
+ */
+public class StreamChangeSink implements ChangeSink {
+
+    private final OutputStream out;
+
+    public StreamChangeSink( OutputStream out ) {
+        this.out = out;
+    }
+
+    @Override
+    public void send( byte[] frame, int length ) throws IOException {
+        out.write( frame, 0, length );
+        out.flush();
+    }
+
+    @Override
+    public void close() {
+        try {
+            out.close();
+        } catch ( IOException ex ) {
+            /* Nothing more can go to it either way. */
+        }
+    }
+}
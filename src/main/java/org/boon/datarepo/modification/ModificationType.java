@@ -17,4 +17,7 @@ public enum ModificationType {
     BEFORE_UPDATE_BY_VALUE_SETTERS,
     AFTER_UPDATE_BY_VALUE_SETTERS,
 
+    BEFORE_EXPIRE,  //time to live is up or the repo is over its max size, remove it
+    AFTER_EXPIRE,
+
 }
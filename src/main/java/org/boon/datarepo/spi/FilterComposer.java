@@ -4,8 +4,10 @@ package org.boon.datarepo.spi;
 import org.boon.core.reflection.fields.FieldAccess;
 import org.boon.datarepo.LookupIndex;
 import org.boon.datarepo.SearchableCollection;
+import org.boon.datarepo.impl.indexes.UniqueLookupIndex;
 
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 public interface FilterComposer {
 
@@ -17,5 +19,15 @@ public interface FilterComposer {
 
     public void setLookupIndexMap( Map<String, LookupIndex> lookupIndexMap );
 
+    /**
+     * Pool for scans that no index can answer. Null scans on the calling thread.
+     */
+    public void setScanPool( ForkJoinPool scanPool );
+
+    /**
+     * Lazy results walk the primary index instead of copying every item.
+     */
+    public void setPrimaryIndex( UniqueLookupIndex primaryIndex );
+
     public void init();
 }
@@ -14,6 +14,11 @@ public interface ObjectEditorComposer<KEY, ITEM> {
 
     void hashCodeOptimizationOn();
 
+    /**
+     * Edits change a copy of the stored item and put the copy in its place.
+     */
+    void copyOnWriteOn();
+
     public void setLookupAndExcept( boolean lookupAndExcept );
 
 }
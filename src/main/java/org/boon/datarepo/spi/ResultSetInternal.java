@@ -1,9 +1,12 @@
 package org.boon.datarepo.spi;
 
 import org.boon.criteria.internal.Criteria;
+import org.boon.datarepo.LookupIndex;
+import org.boon.datarepo.PlanStep;
 import org.boon.datarepo.ResultSet;
 
 import java.util.List;
+import java.util.Map;
 
 public interface ResultSetInternal<T> extends ResultSet<T> {
 
@@ -14,4 +17,20 @@ public interface ResultSetInternal<T> extends ResultSet<T> {
     void andResults();
 
     int lastSize();
+
+    /**
+     * Records what the filter did so {@link ResultSet#queryPlan()} can show it.
+     */
+    void addPlanStep( PlanStep step );
+
+    /**
+     * A new result set with the same fields and plan holding these results instead.
+     */
+    ResultSetInternal<T> withResults( List<T> results );
+
+    /**
+     * Says the results are every item in the collection, so a group by can read its groups from these indexes.
+     * Anything that narrows the results afterwards forgets them.
+     */
+    void allItems( Map<String, LookupIndex> indexes );
 }
@@ -3,6 +3,7 @@ package org.boon.datarepo.spi;
 import org.boon.datarepo.LookupIndex;
 
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -45,8 +46,29 @@ public interface SearchIndex<KEY, ITEM> extends LookupIndex<KEY, ITEM> {
 
     int count( KEY key );
 
+    /**
+     * About how many items have a key in the range, without building the list.
+     * A null start or end leaves that side open.
+     * Sorted indexes answer from statistics, so the number may be off by a few percent.
+     */
+    int estimateBetween( KEY start, boolean startInclusive, KEY end, boolean endInclusive );
+
+    /**
+     * Items in key order starting at start, or at the first key if start is null.
+     * Nothing is copied up front so the caller can stop whenever it has enough.
+     * The index must not be written to while the iterator is in use unless it is concurrent.
+     */
+    Iterator<ITEM> iteratorFrom( KEY start, boolean startInclusive );
+
+    /**
+     * Items from the last key down to the first, with the same rules as iteratorFrom.
+     */
+    Iterator<ITEM> descendingIterator();
+
     void setComparator( Comparator<KEY> collator );
 
+    SearchIndex<KEY, ITEM> snapshot();
+
 
 //      List <ITEM> findEquals (KEY key, int start, int length);
 //      List <ITEM> findStartsWith(KEY keyFrag, int start, int length);
@@ -2,9 +2,12 @@ package org.boon.datarepo.spi;
 
 import org.boon.core.reflection.fields.FieldAccess;
 import org.boon.datarepo.Filter;
+import org.boon.datarepo.impl.VersionGate;
+import org.boon.datarepo.impl.indexes.RowIds;
 import org.boon.core.Function;
 
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 public interface SearchableCollectionComposer {
     void setPrimaryKeyName( String primaryKey );
@@ -19,4 +22,19 @@ public interface SearchableCollectionComposer {
     void setFilter( Filter filter );
 
     void setRemoveDuplication( boolean b );
+
+    /**
+     * Turns on snapshot queries. Editors pass through the gate, which publishes the versions queries read.
+     */
+    void setVersionGate( VersionGate versionGate );
+
+    /**
+     * Row ids shared by the bitmap indexes. Items get an id when they are added and give it back when deleted.
+     */
+    void setRowIds( RowIds rowIds );
+
+    /**
+     * Full scans are split up and run on this pool. Handed to the filter.
+     */
+    void setScanPool( ForkJoinPool scanPool );
 }
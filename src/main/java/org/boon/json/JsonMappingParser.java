@@ -19,6 +19,7 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -158,6 +159,21 @@ public class JsonMappingParser implements JsonParserAndMapper {
         return objectParser.parseListFromFile( componentType, fileName);
     }
 
+    @Override
+    public <T> Iterator<T> parseIterator( Class<T> componentType, Reader reader ) {
+        return objectParser.parseIterator( componentType, reader );
+    }
+
+    @Override
+    public <T> Iterator<T> parseIterator( Class<T> componentType, InputStream input ) {
+        return objectParser.parseIterator( componentType, input, charset );
+    }
+
+    @Override
+    public <T> Iterator<T> parseIterator( Class<T> componentType, InputStream input, Charset charset ) {
+        return objectParser.parseIterator( componentType, input, charset );
+    }
+
     @Override
     public final <T> T parse( Class<T> type, String value ) {
 
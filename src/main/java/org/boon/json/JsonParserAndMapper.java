@@ -6,6 +6,7 @@ import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.nio.charset.Charset;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -32,6 +33,11 @@ public interface JsonParserAndMapper extends JsonParser {
     <T> List<T>  parseList(  Class<T> componentType, CharSequence jsonSeq );
     <T> List<T>  parseListFromFile(  Class<T> componentType, String fileName );
 
+    /** Maps records one at a time, the items of a top level array or newline delimited values. */
+    <T> Iterator<T> parseIterator(  Class<T> componentType, Reader reader );
+    <T> Iterator<T> parseIterator(  Class<T> componentType, InputStream input );
+    <T> Iterator<T> parseIterator(  Class<T> componentType, InputStream input, Charset charset );
+
     <T> T parse( Class<T> type, String jsonString );
     <T> T parse( Class<T> type, byte[] bytes );
     <T> T parse( Class<T> type, byte[] bytes, Charset charset );
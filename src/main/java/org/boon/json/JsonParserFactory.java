@@ -3,8 +3,12 @@ package org.boon.json;
 import org.boon.core.reflection.fields.*;
 import org.boon.json.implementation.*;
 
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ForkJoinPool;
 
 public class JsonParserFactory {
 
@@ -121,6 +125,33 @@ public class JsonParserFactory {
         return jsonParser;
     }
 
+    /**
+     * A pull parser that reads the input a buffer at a time rather than all at once.
+     */
+    public JsonStreamParser createStreamParser( Reader reader ) {
+        return new JsonStreamParser( reader );
+    }
+
+    public JsonStreamParser createStreamParser( InputStream input ) {
+        return new JsonStreamParser( new InputStreamReader( input, charset ) );
+    }
+
+    /**
+     * Parses newline delimited JSON files on every core of the pool.
+     */
+    public ParallelJsonLinesParser createParallelLinesParser( ForkJoinPool pool ) {
+        return new ParallelJsonLinesParser( FieldAccessMode.create( fieldAccessType, useAnnotations ), pool );
+    }
+
+    /**
+     * Maps JSON onto objects of a class without building maps first, see {@link JsonSchemaParser}.
+     */
+    public JsonSchemaParser createSchemaParser() {
+        JsonSchemaParser jsonParser = new JsonSchemaParser( FieldAccessMode.create( fieldAccessType, useAnnotations ) );
+        jsonParser.setCharset ( charset );
+        return jsonParser;
+    }
+
     public JsonParserAndMapper createJsonCharArrayParser() {
         BaseJsonParserAndMapper jsonParser = new BaseJsonParserAndMapper( new JsonParserCharArray( ),  FieldAccessMode.create( fieldAccessType, useAnnotations ));
 
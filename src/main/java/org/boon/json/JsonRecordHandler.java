@@ -0,0 +1,9 @@
+package org.boon.json;
+
+/**
+ * Takes the records of a newline delimited JSON file as they are parsed.
+ */
+public interface JsonRecordHandler<T> {
+
+    void handle( T record );
+}
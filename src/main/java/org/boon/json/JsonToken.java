@@ -0,0 +1,19 @@
+package org.boon.json;
+
+/**
+ * The tokens a {@link org.boon.json.implementation.JsonStreamParser} pulls out of its input one at a time.
+ */
+public enum JsonToken {
+
+    START_OBJECT,
+    END_OBJECT,
+    START_ARRAY,
+    END_ARRAY,
+    FIELD_NAME,
+    STRING,
+    NUMBER,
+    TRUE,
+    FALSE,
+    NULL
+
+}
@@ -15,11 +15,15 @@ import org.boon.primitive.CharBuf;
 import java.io.*;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -155,6 +159,22 @@ public class BaseJsonParserAndMapper implements JsonParserAndMapper {
     }
 
 
+    @Override
+    public <T> Iterator<T> parseIterator ( Class<T> componentType, Reader reader ) {
+        return new JsonStreamIterator<>( this, new JsonStreamParser( reader ), componentType );
+    }
+
+    @Override
+    public <T> Iterator<T> parseIterator ( Class<T> componentType, InputStream input ) {
+        return parseIterator( componentType, input, charset );
+    }
+
+    @Override
+    public <T> Iterator<T> parseIterator ( Class<T> componentType, InputStream input, Charset charset ) {
+        return parseIterator( componentType, new InputStreamReader( input, charset ) );
+    }
+
+
     @Override
     public <T> T parse( Class<T> type, String jsonString ) {
         return convert( type, parse( jsonString ) );
@@ -621,6 +641,36 @@ public class BaseJsonParserAndMapper implements JsonParserAndMapper {
 
     }
 
+    /**
+     * Same as parseFile, but a byte parser maps the file and parses it in place, so maps and lists come back
+     * lazy and their strings and numbers are only decoded when asked for. They read the mapped file until then.
+     * Other parsers and files over 2GB are read the same way parseFile reads them.
+     *
+     * @see JsonBaseByteArrayParser#parseInPlace(java.nio.ByteBuffer)
+     */
+    public Object parseMappedFile ( String fileName ) {
+        try {
+            Path filePath = IO.path ( fileName );
+            long size = Files.size ( filePath );
+            if ( parser instanceof JsonBaseByteArrayParser && size <= Integer.MAX_VALUE ) {
+                return ( ( JsonBaseByteArrayParser ) parser ).parseInPlace ( map ( filePath, size ) );
+            }
+        } catch ( IOException ex ) {
+            return Exceptions.handle ( Object.class, fileName, ex );
+        }
+        return parseFile ( fileName );
+    }
+
+    public <T> T parseMappedFile ( Class<T> type, String fileName ) {
+        return convert ( type, parseMappedFile ( fileName ) );
+    }
+
+    private static MappedByteBuffer map( Path filePath, long size ) throws IOException {
+        try ( FileChannel channel = FileChannel.open ( filePath, StandardOpenOption.READ ) ) {
+            return channel.map ( FileChannel.MapMode.READ_ONLY, 0, size );
+        }
+    }
+
     @Override
     public void close() {
 
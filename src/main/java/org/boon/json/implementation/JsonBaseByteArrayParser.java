@@ -12,6 +12,7 @@ import org.boon.primitive.CharBuf;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.*;
 
@@ -604,6 +605,28 @@ public abstract class JsonBaseByteArrayParser extends BaseJsonParser {
         return parse ( new String (chars) );
     }
 
+
+    /**
+     * Parses the bytes from the buffer's position to its limit the same way parse(byte[]) does.
+     * The buffer's position is left alone.
+     */
+    public Object parse ( ByteBuffer buffer ) {
+        byte[] bytes = new byte[ buffer.remaining () ];
+        buffer.duplicate ().get ( bytes );
+        return parse ( bytes );
+    }
+
+    /**
+     * Parses straight over the buffer, a memory mapped file say, without copying it into an array first.
+     * Strings and numbers stay in the buffer until they are asked for, and are decoded with this parser's charset.
+     * Like this parser, strings are never turned into dates.
+     *
+     * @see JsonByteBufferParser
+     */
+    public Object parseInPlace ( ByteBuffer buffer ) {
+        return new JsonByteBufferParser ( charset, false ).parse ( buffer );
+    }
+
     @Override
     public Object parse ( String string ) {
         return parse ( string.getBytes ( charset ) );
@@ -0,0 +1,217 @@
+package org.boon.json.implementation;
+
+import org.boon.core.Type;
+import org.boon.core.Value;
+import org.boon.core.value.ByteBufferValue;
+import org.boon.core.value.LazyValueMap;
+import org.boon.core.value.MapItemValue;
+import org.boon.core.value.ValueContainer;
+import org.boon.core.value.ValueList;
+import org.boon.json.JsonException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Index overlay parser that works straight over a byte buffer, a memory mapped file say,
+ * without copying or decoding it first. Objects and arrays come back as lazy maps and lists whose strings
+ * and numbers are {@link ByteBufferValue}s pointing at their bytes, decoded the first time they are asked for.
+ * So opening a large file costs one pass to find where things are, and only the fields used get decoded.
+ * <p/>
+ * The values hold on to the buffer until they are decoded or chopped.
+ */
+public class JsonByteBufferParser {
+
+    private static final byte[] TRUE = { 't', 'r', 'u', 'e' };
+    private static final byte[] FALSE = { 'f', 'a', 'l', 's', 'e' };
+    private static final byte[] NULL = { 'n', 'u', 'l', 'l' };
+
+    private final Charset charset;
+    private final boolean checkDates;
+
+    private ByteBuffer buffer;
+    private int index;
+    private int limit;
+
+
+    public JsonByteBufferParser( Charset charset, boolean checkDates ) {
+        this.charset = charset;
+        this.checkDates = checkDates;
+    }
+
+    /**
+     * Parses from the buffer's position to its limit. The buffer's position is left alone.
+     * A lone string or number at the top is decoded, there is nothing to save by leaving it.
+     */
+    public Object parse( ByteBuffer buffer ) {
+        this.buffer = buffer;
+        this.index = buffer.position();
+        this.limit = buffer.limit();
+
+        try {
+            return decodeValue().toValue();
+        } finally {
+            this.buffer = null;
+        }
+    }
+
+
+    private int skipWhiteSpace() {
+        for (; index < limit; index++ ) {
+            byte b = buffer.get( index );
+            if ( b != ' ' && b != '\n' && b != '\r' && b != '\t' ) {
+                return b;
+            }
+        }
+        return -1;
+    }
+
+    private Value decodeValue() {
+        int c = skipWhiteSpace();
+
+        switch ( c ) {
+            case '"':
+                return decodeString();
+            case '{':
+                return decodeObject();
+            case '[':
+                return decodeArray();
+            case 't':
+                literal( TRUE );
+                return ValueContainer.TRUE;
+            case 'f':
+                literal( FALSE );
+                return ValueContainer.FALSE;
+            case 'n':
+                literal( NULL );
+                return ValueContainer.NULL;
+            case '-':
+            case '0':
+            case '1':
+            case '2':
+            case '3':
+            case '4':
+            case '5':
+            case '6':
+            case '7':
+            case '8':
+            case '9':
+                return decodeNumber();
+            case -1:
+                return complain( "expecting a value but the input ended" );
+            default:
+                return complain( "Unable to determine the current character, it is not a string, number, array, or object" );
+        }
+    }
+
+    private Value decodeObject() {
+        index++;
+        LazyValueMap map = new LazyValueMap( false );
+        Value value = new ValueContainer( map );
+
+        if ( skipWhiteSpace() == '}' ) {
+            index++;
+            return value;
+        }
+
+        while ( true ) {
+            if ( skipWhiteSpace() != '"' ) {
+                complain( "expecting a field name" );
+            }
+            Value key = decodeString();
+
+            if ( skipWhiteSpace() != ':' ) {
+                complain( "expecting ':' after a field name" );
+            }
+            index++;
+
+            map.add( new MapItemValue( key, decodeValue() ) );
+
+            int c = skipWhiteSpace();
+            index++;
+            if ( c == '}' ) {
+                return value;
+            } else if ( c != ',' ) {
+                index--;
+                complain( "expecting '}' or ','" );
+            }
+        }
+    }
+
+    private Value decodeArray() {
+        index++;
+        ValueList list = new ValueList( false );
+        Value value = new ValueContainer( list );
+
+        if ( skipWhiteSpace() == ']' ) {
+            index++;
+            return value;
+        }
+
+        while ( true ) {
+            list.add( decodeValue() );
+
+            int c = skipWhiteSpace();
+            index++;
+            if ( c == ']' ) {
+                return value;
+            } else if ( c != ',' ) {
+                index--;
+                complain( "expecting ']' or ','" );
+            }
+        }
+    }
+
+    private Value decodeString() {
+        index++;
+        final int start = index;
+        boolean encoded = false;
+
+        for (; index < limit; index++ ) {
+            byte b = buffer.get( index );
+            if ( b == '"' ) {
+                Value value = new ByteBufferValue( Type.STRING, start, index, buffer, encoded, charset, checkDates );
+                index++;
+                return value;
+            } else if ( b == '\\' ) {
+                encoded = true;
+                index++;
+            }
+        }
+        return complain( "unable to find the end of the string" );
+    }
+
+    private Value decodeNumber() {
+        final int start = index;
+        boolean doubleFloat = false;
+
+        index++;
+        for (; index < limit; index++ ) {
+            byte b = buffer.get( index );
+            if ( b >= '0' && b <= '9' ) {
+                continue;
+            } else if ( b == '.' || b == 'e' || b == 'E' || b == '-' || b == '+' ) {
+                doubleFloat = true;
+            } else {
+                break;
+            }
+        }
+        return new ByteBufferValue( doubleFloat ? Type.DOUBLE : Type.INTEGER, start, index, buffer, false, charset, checkDates );
+    }
+
+    private void literal( byte[] bytes ) {
+        if ( index + bytes.length > limit ) {
+            complain( "expecting " + new String( bytes, charset ) );
+        }
+        for ( int at = 0; at < bytes.length; at++ ) {
+            if ( buffer.get( index + at ) != bytes[ at ] ) {
+                complain( "expecting " + new String( bytes, charset ) );
+            }
+        }
+        index += bytes.length;
+    }
+
+    private <T> T complain( String complaint ) {
+        throw new JsonException( complaint + " at byte " + index );
+    }
+}
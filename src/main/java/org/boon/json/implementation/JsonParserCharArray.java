@@ -303,7 +303,7 @@ public class JsonParserCharArray extends BaseJsonParser  {
 
     private CharBuf builder = CharBuf.create( 20 );
 
-    private String decodeString() {
+    final String decodeString() {
 
         char[] array = charArray;
         int index = __index;
@@ -0,0 +1,459 @@
+package org.boon.json.implementation;
+
+import org.boon.Exceptions;
+import org.boon.core.Conversions;
+import org.boon.core.Type;
+import org.boon.core.reflection.FastStringUtils;
+import org.boon.core.reflection.Reflection;
+import org.boon.core.reflection.fields.FieldAccess;
+import org.boon.core.reflection.fields.FieldsAccessor;
+import org.boon.primitive.CharScanner;
+
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps JSON straight onto objects without building a map for each one first.
+ * <p/>
+ * The first time a class is asked for, its fields are compiled into a {@link Schema}: a table where every
+ * field name has a slot of its own, found by a hash whose seed was picked so that no two names collide.
+ * Field names are hashed where they sit in the char array and checked against the one name in their slot,
+ * and the value is then decoded from the cursor into the field with the field's own setter, which with the
+ * default field access is an {@link org.boon.core.reflection.fields.UnsafeField} write.
+ * Numbers, strings, booleans, nested objects and collections of objects take this direct path.
+ * Anything else, dates, enums, maps and arrays say, is decoded as usual and handed to
+ * {@link FieldAccess#setValue(Object, Object)} for the same conversions the map route does.
+ * Fields the class does not have are skipped.
+ * <p/>
+ * Like the other parsers this one keeps state, so use one per thread. Schemas live as long as the parser.
+ */
+public class JsonSchemaParser extends JsonParserCharArray {
+
+    private final FieldsAccessor fieldsAccessor;
+    private final Map<Class<?>, Schema> schemas = new HashMap<>();
+
+
+    public JsonSchemaParser( FieldsAccessor fieldsAccessor ) {
+        this.fieldsAccessor = fieldsAccessor;
+    }
+
+
+    public <T> T parse( Class<T> type, String jsonString ) {
+        return parse( type, FastStringUtils.toCharArray( jsonString ) );
+    }
+
+    public <T> T parse( Class<T> type, byte[] bytes ) {
+        return parse( type, FastStringUtils.toCharArrayFromBytes( bytes, charset ) );
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T parse( Class<T> type, char[] chars ) {
+        if ( Type.getType( type ) != Type.INSTANCE ) {
+            return Conversions.coerce( type, parse( chars ) );
+        }
+
+        start( chars );
+        if ( __currentChar == '{' ) {
+            return ( T ) decodeObject( schema( type ) );
+        } else if ( __currentChar == 'n' ) {
+            return ( T ) decodeNull();
+        }
+        complain( "expecting a JSON object for " + type.getName() );
+        return null;
+    }
+
+    public <T> List<T> parseList( Class<T> componentType, String jsonString ) {
+        return parseList( componentType, FastStringUtils.toCharArray( jsonString ) );
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> List<T> parseList( Class<T> componentType, char[] chars ) {
+        start( chars );
+        if ( __currentChar != '[' ) {
+            complain( "expecting a JSON array of " + componentType.getName() );
+        }
+        List<Object> list = new ArrayList<>();
+        decodeObjects( schema( componentType ), list );
+        return ( List<T> ) list;
+    }
+
+
+    private void start( char[] chars ) {
+        __index = 0;
+        charArray = chars;
+        lastIndex = chars.length - 1;
+        skipWhiteSpaceIfNeeded();
+    }
+
+    private Schema schema( Class<?> type ) {
+        Schema schema = schemas.get( type );
+        if ( schema == null ) {
+            schema = new Schema( type, fieldsAccessor.getFields( type ) );
+            schemas.put( type, schema );
+        }
+        return schema;
+    }
+
+    /* The schema of a nested object or of the items of a collection, remembered in the field's slot. */
+    private Schema nested( Schema schema, int slot, Class<?> type ) {
+        Schema nested = schema.nested[ slot ];
+        if ( nested == null ) {
+            nested = schema( type );
+            schema.nested[ slot ] = nested;
+        }
+        return nested;
+    }
+
+
+    private Object decodeObject( Schema schema ) {
+        Object object = schema.newInstance();
+
+        __index++;
+        for (; __index < charArray.length; __index++ ) {
+            skipWhiteSpaceIfNeeded();
+
+            if ( __currentChar == '"' ) {
+                int slot = decodeFieldName( schema );
+
+                skipWhiteSpaceIfNeeded();
+                if ( __currentChar != ':' ) {
+                    complain( "expecting current character to be ':' but got " + charDescription( __currentChar ) + "\n" );
+                }
+                __index++;
+
+                if ( slot == -1 ) {
+                    decodeValue();
+                } else {
+                    decodeField( object, schema, slot );
+                }
+                skipWhiteSpaceIfNeeded();
+            }
+
+            if ( __currentChar == '}' ) {
+                __index++;
+                return object;
+            } else if ( __currentChar != ',' ) {
+                complain( "expecting '}' or ',' but got current char " + charDescription( __currentChar ) );
+            }
+        }
+
+        complain( "Did not find end of Json Object" );
+        return null;
+    }
+
+    /* Leaves the cursor past the closing quote and returns the field's slot, or -1 if the class has no such field. */
+    private int decodeFieldName( Schema schema ) {
+        final char[] array = charArray;
+        final int seed = schema.seed;
+        final int start = __index + 1;
+        int hash = 0;
+
+        for ( int index = start; index < array.length; index++ ) {
+            char c = array[ index ];
+            if ( c == '"' ) {
+                __index = index + 1;
+                return schema.slot( array, start, index, hash );
+            } else if ( c == '\\' ) {
+                /* Escaped names are rare enough to decode first. */
+                char[] name = FastStringUtils.toCharArray( decodeString() );
+                return schema.slot( name, 0, name.length, schema.hash( name, 0, name.length ) );
+            }
+            hash = hash * seed + c;
+        }
+
+        complain( "unable to find the end of the field name" );
+        return -1;
+    }
+
+    private void decodeField( Object object, Schema schema, int slot ) {
+        FieldAccess field = schema.fields[ slot ];
+
+        skipWhiteSpaceIfNeeded();
+        char c = __currentChar;
+
+        if ( c == 'n' ) {
+            decodeNull();
+            if ( !field.isPrimitive() ) {
+                field.setObject( object, null );
+            }
+            return;
+        }
+
+        switch ( field.typeEnum() ) {
+            case INT:
+            case LONG:
+            case SHORT:
+            case BYTE:
+            case DOUBLE:
+            case FLOAT:
+            case INTEGER_WRAPPER:
+            case LONG_WRAPPER:
+            case DOUBLE_WRAPPER:
+            case FLOAT_WRAPPER:
+                if ( c == '-' || isNumberDigit( c ) ) {
+                    decodeNumber( object, field );
+                    return;
+                }
+                break;
+
+            case BOOLEAN:
+            case BOOLEAN_WRAPPER:
+                if ( c == 't' || c == 'f' ) {
+                    boolean value = c == 't' ? decodeTrue() : decodeFalse();
+                    if ( field.isPrimitive() ) {
+                        field.setBoolean( object, value );
+                    } else {
+                        field.setObject( object, value );
+                    }
+                    return;
+                }
+                break;
+
+            case STRING:
+            case CHAR_SEQUENCE:
+                if ( c == '"' ) {
+                    field.setObject( object, decodeString() );
+                    return;
+                }
+                break;
+
+            case INSTANCE:
+                if ( c == '{' ) {
+                    field.setObject( object, decodeObject( nested( schema, slot, field.type() ) ) );
+                    return;
+                }
+                break;
+
+            case LIST:
+            case SET:
+            case COLLECTION:
+                Class<?> componentClass = field.getComponentClass();
+                if ( c == '[' && componentClass != null && Type.getType( componentClass ) == Type.INSTANCE ) {
+                    Collection<Object> collection = Reflection.createCollection( field.type(), 16 );
+                    decodeObjects( nested( schema, slot, componentClass ), collection );
+                    field.setObject( object, collection );
+                    return;
+                }
+                break;
+        }
+
+        field.setValue( object, decodeValue() );
+    }
+
+    private void decodeNumber( Object object, FieldAccess field ) {
+        final char[] array = charArray;
+        final int start = __index;
+        boolean simple = true;
+
+        int index = start + 1;
+        for (; index < array.length; index++ ) {
+            char c = array[ index ];
+            if ( isNumberDigit( c ) ) {
+                continue;
+            } else if ( isDecimalChar( c ) ) {
+                simple = false;
+            } else {
+                break;
+            }
+        }
+        __index = index;
+
+        int length = index - start;
+        switch ( field.typeEnum() ) {
+            case INT:
+                if ( simple && CharScanner.isInteger( array, start, length ) ) {
+                    field.setInt( object, CharScanner.parseIntFromTo( array, start, index ) );
+                    return;
+                }
+                break;
+            case INTEGER_WRAPPER:
+                if ( simple && CharScanner.isInteger( array, start, length ) ) {
+                    field.setObject( object, CharScanner.parseIntFromTo( array, start, index ) );
+                    return;
+                }
+                break;
+            case LONG:
+                if ( simple && CharScanner.isLong( array, start, length ) ) {
+                    field.setLong( object, CharScanner.parseLongFromTo( array, start, index ) );
+                    return;
+                }
+                break;
+            case LONG_WRAPPER:
+                if ( simple && CharScanner.isLong( array, start, length ) ) {
+                    field.setObject( object, CharScanner.parseLongFromTo( array, start, index ) );
+                    return;
+                }
+                break;
+            case DOUBLE:
+                field.setDouble( object, CharScanner.parseDouble( array, start, index ) );
+                return;
+            case DOUBLE_WRAPPER:
+                field.setObject( object, CharScanner.parseDouble( array, start, index ) );
+                return;
+            case FLOAT:
+                field.setFloat( object, ( float ) CharScanner.parseDouble( array, start, index ) );
+                return;
+            case FLOAT_WRAPPER:
+                field.setObject( object, ( float ) CharScanner.parseDouble( array, start, index ) );
+                return;
+        }
+
+        field.setValue( object, CharScanner.parseJsonNumber( array, start, index ) );
+    }
+
+    private void decodeObjects( Schema schema, Collection<Object> collection ) {
+        __index++;
+        skipWhiteSpaceIfNeeded();
+        if ( __currentChar == ']' ) {
+            __index++;
+            return;
+        }
+
+        while ( true ) {
+            skipWhiteSpaceIfNeeded();
+            if ( __currentChar == '{' ) {
+                collection.add( decodeObject( schema ) );
+            } else if ( __currentChar == 'n' ) {
+                collection.add( decodeNull() );
+            } else {
+                complain( "expecting a JSON object for " + schema.type.getName() );
+            }
+
+            skipWhiteSpaceIfNeeded();
+            if ( __currentChar == ',' ) {
+                __index++;
+            } else if ( __currentChar == ']' ) {
+                __index++;
+                return;
+            } else {
+                complain( "expecting a ',' or a ']' but got " + charDescription( __currentChar ) );
+            }
+        }
+    }
+
+
+    /**
+     * The fields of one class laid out by a collision free hash of their names.
+     */
+    static final class Schema {
+
+        final Class<?> type;
+        final int seed;
+        final int mask;
+        final char[][] names;
+        final FieldAccess[] fields;
+        final Schema[] nested;
+
+        private final Constructor<?> constructor;
+
+        Schema( Class<?> type, Map<String, FieldAccess> fieldMap ) {
+            this.type = type;
+
+            List<String> keys = new ArrayList<>();
+            for ( Map.Entry<String, FieldAccess> entry : fieldMap.entrySet() ) {
+                if ( !entry.getValue().isStatic() ) {
+                    keys.add( entry.getKey() );
+                }
+            }
+
+            /* Try seeds for the smallest power of two table at least twice the field count, then grow the table until one has no collisions. */
+            int size = Integer.highestOneBit( Math.max( 2 * keys.size() - 1, 1 ) ) << 1;
+            int found = 0;
+            search:
+            for (; size <= 1 << 20; size <<= 1 ) {
+                for ( int seed = 31; seed < 31 + 2 * 64; seed += 2 ) {
+                    if ( collisionFree( keys, seed, size - 1 ) ) {
+                        found = seed;
+                        break search;
+                    }
+                }
+            }
+            if ( found == 0 ) {
+                Exceptions.die( "Unable to lay out the fields of " + type.getName() );
+            }
+
+            this.seed = found;
+            this.mask = size - 1;
+            this.names = new char[ size ][];
+            this.fields = new FieldAccess[ size ];
+            this.nested = new Schema[ size ];
+
+            for ( String key : keys ) {
+                char[] name = key.toCharArray();
+                int slot = spread( hash( name, 0, name.length ) ) & mask;
+                names[ slot ] = name;
+                fields[ slot ] = fieldMap.get( key );
+            }
+
+            this.constructor = constructor( type );
+        }
+
+        private static boolean collisionFree( List<String> keys, int seed, int mask ) {
+            boolean[] used = new boolean[ mask + 1 ];
+            for ( String key : keys ) {
+                int hash = 0;
+                for ( int index = 0; index < key.length(); index++ ) {
+                    hash = hash * seed + key.charAt( index );
+                }
+                int slot = spread( hash ) & mask;
+                if ( used[ slot ] ) {
+                    return false;
+                }
+                used[ slot ] = true;
+            }
+            return true;
+        }
+
+        private static int spread( int hash ) {
+            return hash ^ ( hash >>> 16 );
+        }
+
+        private static Constructor<?> constructor( Class<?> type ) {
+            try {
+                Constructor<?> constructor = type.getDeclaredConstructor();
+                constructor.setAccessible( true );
+                return constructor;
+            } catch ( NoSuchMethodException ex ) {
+                return null;
+            }
+        }
+
+        int hash( char[] chars, int start, int end ) {
+            int hash = 0;
+            for ( int index = start; index < end; index++ ) {
+                hash = hash * seed + chars[ index ];
+            }
+            return hash;
+        }
+
+        /* Only the one name in the hash's slot can match. */
+        int slot( char[] chars, int start, int end, int hash ) {
+            int slot = spread( hash ) & mask;
+            char[] name = names[ slot ];
+            if ( name == null || name.length != end - start ) {
+                return -1;
+            }
+            for ( int index = 0; index < name.length; index++ ) {
+                if ( name[ index ] != chars[ start + index ] ) {
+                    return -1;
+                }
+            }
+            return slot;
+        }
+
+        Object newInstance() {
+            if ( constructor == null ) {
+                return Reflection.newInstance( type );
+            }
+            try {
+                return constructor.newInstance();
+            } catch ( Exception ex ) {
+                return Exceptions.handle( Object.class, "Unable to create " + type.getName(), ex );
+            }
+        }
+    }
+}
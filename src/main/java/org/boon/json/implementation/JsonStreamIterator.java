@@ -0,0 +1,100 @@
+package org.boon.json.implementation;
+
+import org.boon.core.Type;
+import org.boon.json.JsonToken;
+import org.boon.primitive.CharBuf;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Maps the records of a JSON stream one at a time, either the items of one top level array
+ * or values one after the other such as newline delimited JSON.
+ * <p/>
+ * Each record's chars are copied into one buffer that is reused from record to record, and parsed
+ * there by the mapper's parser, so the overlays the index overlay parsers make point into the same buffer
+ * every time. That is safe because mapping to an object copies the values out. When records are
+ * wanted as maps or lists, which would keep the overlays, they get a buffer of their own.
+ * <p/>
+ * Not thread safe. Closing it closes the underlying reader.
+ */
+public class JsonStreamIterator<T> implements Iterator<T>, AutoCloseable {
+
+    private final BaseJsonParserAndMapper mapper;
+    private final JsonStreamParser stream;
+    private final Class<T> type;
+    private final boolean keepsChars;
+    private final CharBuf raw = CharBuf.create( 1024 );
+
+    private boolean started;
+    private boolean inArray;
+    private boolean done;
+
+    private boolean ready;
+    private T next;
+
+
+    public JsonStreamIterator( BaseJsonParserAndMapper mapper, JsonStreamParser stream, Class<T> type ) {
+        this.mapper = mapper;
+        this.stream = stream;
+        this.type = type;
+
+        Type coerceTo = Type.getType( type );
+        this.keepsChars = coerceTo == Type.MAP || coerceTo == Type.LIST || coerceTo == Type.OBJECT;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if ( !ready && !done ) {
+            advance();
+        }
+        return ready;
+    }
+
+    @Override
+    public T next() {
+        if ( !hasNext() ) {
+            throw new NoSuchElementException();
+        }
+        ready = false;
+        T record = next;
+        next = null;
+        return record;
+    }
+
+    private void advance() {
+        if ( !started ) {
+            started = true;
+            if ( stream.peek() == '[' ) {
+                stream.next();
+                inArray = true;
+            }
+        }
+
+        JsonToken token = stream.copyNext( raw );
+        if ( token == null || ( inArray && token == JsonToken.END_ARRAY ) ) {
+            done = true;
+            return;
+        }
+
+        if ( token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY ) {
+            char[] chars = keepsChars ? Arrays.copyOf( raw.toCharArray(), raw.len() ) : raw.toCharArray();
+            next = mapper.convert( type, mapper.parser.parse( chars ) );
+        } else {
+            next = mapper.convert( type, stream.value() );
+        }
+        ready = true;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException( "remove Not supported" );
+    }
+
+    @Override
+    public void close() {
+        done = true;
+        stream.close();
+    }
+}
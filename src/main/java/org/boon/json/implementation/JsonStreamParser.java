@@ -0,0 +1,480 @@
+package org.boon.json.implementation;
+
+import org.boon.core.LazyMap;
+import org.boon.json.JsonException;
+import org.boon.json.JsonToken;
+import org.boon.primitive.CharBuf;
+import org.boon.primitive.CharScanner;
+import org.boon.primitive.ReaderCharacterSource;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Pulls JSON out of a reader one token at a time through a fixed size buffer that is refilled
+ * as it is used up, so the memory it takes does not grow with the input, a multi gigabyte export
+ * reads in the same buffer as a small one.
+ * <p/>
+ * Call {@link #next()} to move to the next token, then {@link #fieldName()}, {@link #text()} or {@link #number()}
+ * to look at it. {@link #value()} builds the object, array or value at the current token, the same
+ * maps and lists the tree parsers build, and leaves the parser at its last token, and {@link #skip()}
+ * passes over it without building anything. So a large array of records can be walked a record at a time.
+ * <p/>
+ * Several values one after the other, newline delimited JSON say, are read as a stream of values.
+ * Not thread safe.
+ */
+public class JsonStreamParser extends ReaderCharacterSource {
+
+    private static final byte OBJECT_START = 0;
+    private static final byte OBJECT_VALUE = 1;
+    private static final byte OBJECT_NEXT = 2;
+    private static final byte ARRAY_START = 3;
+    private static final byte ARRAY_NEXT = 4;
+
+    private static final char[] TRUE = "true".toCharArray();
+    private static final char[] FALSE = "false".toCharArray();
+    private static final char[] NULL = "null".toCharArray();
+
+    private final CharBuf text = CharBuf.create( 64 );
+
+    /* What each open object or array expects next, one entry per level. */
+    private byte[] states = new byte[ 16 ];
+    private int depth;
+
+    private JsonToken token;
+    private String fieldName;
+
+
+    public JsonStreamParser( Reader reader ) {
+        super( reader );
+    }
+
+    public JsonStreamParser( Reader reader, int bufferSize ) {
+        super( reader, bufferSize );
+    }
+
+
+    /**
+     * Moves to the next token, null once the input ends between values.
+     */
+    public JsonToken next() {
+        return next( null );
+    }
+
+    /**
+     * Like {@link #next()}, but an object or array that comes next is copied into raw as it stands
+     * rather than read token by token. Returns its start token and leaves the parser at its end token,
+     * as {@link #value()} would, so raw can be handed to a char array parser.
+     */
+    public JsonToken copyNext( CharBuf raw ) {
+        raw.recycle();
+        return next( raw );
+    }
+
+    private JsonToken next( CharBuf raw ) {
+        int c = peek();
+
+        if ( depth == 0 ) {
+            if ( c == -1 ) {
+                return token = null;
+            }
+            return value( c, raw );
+        }
+
+        switch ( states[ depth - 1 ] ) {
+            case OBJECT_START:
+                if ( c == '}' ) {
+                    return end( JsonToken.END_OBJECT );
+                }
+                return token = fieldName( c );
+
+            case OBJECT_VALUE:
+                states[ depth - 1 ] = OBJECT_NEXT;
+                return value( c, raw );
+
+            case OBJECT_NEXT:
+                if ( c == '}' ) {
+                    return end( JsonToken.END_OBJECT );
+                } else if ( c == ',' ) {
+                    index++;
+                    return token = fieldName( peek() );
+                }
+                return complain( "expecting '}' or ',' but got " + describe( c ) );
+
+            case ARRAY_START:
+                if ( c == ']' ) {
+                    return end( JsonToken.END_ARRAY );
+                }
+                states[ depth - 1 ] = ARRAY_NEXT;
+                return value( c, raw );
+
+            default:
+                if ( c == ']' ) {
+                    return end( JsonToken.END_ARRAY );
+                } else if ( c == ',' ) {
+                    index++;
+                    return value( peek(), raw );
+                }
+                return complain( "expecting ']' or ',' but got " + describe( c ) );
+        }
+    }
+
+    /**
+     * The token last returned by {@link #next()}.
+     */
+    public JsonToken token() {
+        return token;
+    }
+
+    /**
+     * How many objects and arrays are open, 0 between top level values.
+     */
+    public int depth() {
+        return depth;
+    }
+
+    /**
+     * The name of the field the parser is in, set by a {@link JsonToken#FIELD_NAME} token.
+     */
+    public String fieldName() {
+        return fieldName;
+    }
+
+    /**
+     * The chars of the current string, field name or number.
+     */
+    public String text() {
+        return token == JsonToken.FIELD_NAME ? fieldName : text.toString();
+    }
+
+    public Number number() {
+        if ( token != JsonToken.NUMBER ) {
+            complain( "current token is " + token + " not a number" );
+        }
+        return CharScanner.parseJsonNumber( text.toCharArray(), 0, text.len() );
+    }
+
+    /**
+     * Builds the value at the current token, reading all of it if it is an object or array.
+     * At a field name it builds the field's value. Afterwards the current token is the value's last one.
+     */
+    public Object value() {
+        if ( token == JsonToken.FIELD_NAME ) {
+            next();
+        }
+        if ( token == null ) {
+            return complain( "no value, the input has ended" );
+        }
+
+        switch ( token ) {
+            case START_OBJECT:
+                LazyMap map = new LazyMap();
+                while ( next() == JsonToken.FIELD_NAME ) {
+                    String key = fieldName;
+                    next();
+                    map.put( key, value() );
+                }
+                return map;
+
+            case START_ARRAY:
+                List<Object> list = new ArrayList<>();
+                while ( next() != JsonToken.END_ARRAY ) {
+                    list.add( value() );
+                }
+                return list;
+
+            case STRING:
+                return text.toString();
+            case NUMBER:
+                return number();
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case NULL:
+                return null;
+            default:
+                return complain( "no value starts at " + token );
+        }
+    }
+
+    /**
+     * Passes over the object or array at the current token without building it.
+     */
+    public void skip() {
+        if ( token == JsonToken.FIELD_NAME ) {
+            next();
+        }
+        if ( token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY ) {
+            int level = depth;
+            while ( depth >= level ) {
+                if ( next() == null ) {
+                    complain( "input ended inside an object or array" );
+                }
+            }
+        }
+    }
+
+    public void close() {
+        try {
+            reader.close();
+        } catch ( IOException ex ) {
+            throw new JsonException( "Unable to close JSON stream", ex );
+        }
+    }
+
+
+    /* Skips white space, refilling as needed, and returns the next char without reading it, -1 at the end. */
+    int peek() {
+        while ( true ) {
+            index = CharScanner.skipWhiteSpace( readBuf, index, length );
+            if ( index < length ) {
+                return readBuf[ index ];
+            }
+            if ( !fill() ) {
+                if ( depth > 0 ) {
+                    complain( "input ended inside an object or array" );
+                }
+                return -1;
+            }
+        }
+    }
+
+    private JsonToken value( int c, CharBuf raw ) {
+        if ( raw != null && ( c == '{' || c == '[' ) ) {
+            copy( raw );
+            token = c == '{' ? JsonToken.END_OBJECT : JsonToken.END_ARRAY;
+            return c == '{' ? JsonToken.START_OBJECT : JsonToken.START_ARRAY;
+        }
+        return token = startValue( c );
+    }
+
+    /* Copies chars up to the close of the object or array that starts at index, minding strings. */
+    private void copy( CharBuf raw ) {
+        int level = 0;
+        boolean inString = false;
+        boolean escaped = false;
+
+        while ( true ) {
+            char[] chars = readBuf;
+            int start = index;
+            int end = length;
+
+            for ( int idx = start; idx < end; idx++ ) {
+                char c = chars[ idx ];
+                if ( inString ) {
+                    if ( escaped ) {
+                        escaped = false;
+                    } else if ( c == '\\' ) {
+                        escaped = true;
+                    } else if ( c == '"' ) {
+                        inString = false;
+                    }
+                } else if ( c == '"' ) {
+                    inString = true;
+                } else if ( c == '{' || c == '[' ) {
+                    level++;
+                } else if ( ( c == '}' || c == ']' ) && --level == 0 ) {
+                    raw.add( chars, start, idx + 1 );
+                    index = idx + 1;
+                    return;
+                }
+            }
+            raw.add( chars, start, end );
+            index = end;
+            if ( !fill() ) {
+                complain( "input ended inside an object or array" );
+            }
+        }
+    }
+
+    private JsonToken end( JsonToken end ) {
+        index++;
+        depth--;
+        return token = end;
+    }
+
+    private void push( byte state ) {
+        if ( depth == states.length ) {
+            states = Arrays.copyOf( states, depth * 2 );
+        }
+        states[ depth++ ] = state;
+    }
+
+    private JsonToken fieldName( int c ) {
+        if ( c != '"' ) {
+            complain( "expecting a field name but got " + describe( c ) );
+        }
+        index++;
+        readString();
+        fieldName = text.toString();
+
+        if ( peek() != ':' ) {
+            complain( "expecting ':' after field " + fieldName );
+        }
+        index++;
+        states[ depth - 1 ] = OBJECT_VALUE;
+        return JsonToken.FIELD_NAME;
+    }
+
+    private JsonToken startValue( int c ) {
+        switch ( c ) {
+            case '{':
+                index++;
+                push( OBJECT_START );
+                return JsonToken.START_OBJECT;
+            case '[':
+                index++;
+                push( ARRAY_START );
+                return JsonToken.START_ARRAY;
+            case '"':
+                index++;
+                readString();
+                return JsonToken.STRING;
+            case 't':
+                literal( TRUE );
+                return JsonToken.TRUE;
+            case 'f':
+                literal( FALSE );
+                return JsonToken.FALSE;
+            case 'n':
+                literal( NULL );
+                return JsonToken.NULL;
+            case '-':
+            case '0':
+            case '1':
+            case '2':
+            case '3':
+            case '4':
+            case '5':
+            case '6':
+            case '7':
+            case '8':
+            case '9':
+                readNumber( c );
+                return JsonToken.NUMBER;
+            default:
+                return complain( "expecting a string, number, array, object, true, false or null but got " + describe( c ) );
+        }
+    }
+
+    private void literal( char[] chars ) {
+        if ( !consumeIfMatch( chars ) ) {
+            complain( "expecting " + new String( chars ) );
+        }
+    }
+
+    /* Reads up to the closing quote into text, decoding escapes, across as many refills as it takes. */
+    private void readString() {
+        text.recycle();
+        while ( true ) {
+            char[] chars = readBuf;
+            int start = index;
+            int end = length;
+            int idx = start;
+            char c = 0;
+
+            for (; idx < end; idx++ ) {
+                c = chars[ idx ];
+                if ( c == '"' || c == '\\' ) {
+                    break;
+                }
+            }
+            text.add( chars, start, idx );
+            index = idx;
+
+            if ( idx == end ) {
+                if ( !fill() ) {
+                    complain( "unable to find the end of the string" );
+                }
+            } else if ( c == '"' ) {
+                index++;
+                return;
+            } else {
+                escape();
+            }
+        }
+    }
+
+    private void escape() {
+        if ( !ensure( 2 ) ) {
+            complain( "string ends inside an escape" );
+        }
+        char c = readBuf[ index + 1 ];
+        switch ( c ) {
+            case 'n':
+                text.add( '\n' );
+                break;
+            case 't':
+                text.add( '\t' );
+                break;
+            case 'r':
+                text.add( '\r' );
+                break;
+            case 'b':
+                text.add( '\b' );
+                break;
+            case 'f':
+                text.add( '\f' );
+                break;
+            case '"':
+            case '\\':
+            case '/':
+                text.add( c );
+                break;
+            case 'u':
+                if ( !ensure( 6 ) ) {
+                    complain( "string ends inside a unicode escape" );
+                }
+                int code = 0;
+                for ( int idx = index + 2; idx < index + 6; idx++ ) {
+                    int digit = Character.digit( readBuf[ idx ], 16 );
+                    if ( digit == -1 ) {
+                        complain( "bad unicode escape" );
+                    }
+                    code = code * 16 + digit;
+                }
+                text.add( ( char ) code );
+                index += 4;
+                break;
+            default:
+                complain( "unknown escape " + describe( c ) );
+        }
+        index += 2;
+    }
+
+    private void readNumber( int first ) {
+        text.recycle();
+        text.add( ( char ) first );
+        index++;
+        while ( true ) {
+            char[] chars = readBuf;
+            int start = index;
+            int end = length;
+            int idx = start;
+
+            for (; idx < end; idx++ ) {
+                if ( !CharScanner.isDecimalDigit( chars[ idx ] ) ) {
+                    break;
+                }
+            }
+            text.add( chars, start, idx );
+            index = idx;
+
+            if ( idx < end || !fill() ) {
+                return;
+            }
+        }
+    }
+
+    private <T> T complain( String complaint ) {
+        throw new JsonException( errorDetails( complaint ) );
+    }
+
+    private static String describe( int c ) {
+        return c == -1 ? "the end of the input" : "'" + ( char ) c + "'";
+    }
+}
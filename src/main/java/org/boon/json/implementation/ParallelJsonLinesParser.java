@@ -0,0 +1,289 @@
+package org.boon.json.implementation;
+
+import org.boon.Exceptions;
+import org.boon.core.reflection.fields.FieldsAccessor;
+import org.boon.json.JsonException;
+import org.boon.json.JsonRecordHandler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Parses a newline delimited UTF-8 JSON file on every core of a fork join pool.
+ * <p/>
+ * The file is split into chunks that end on a newline, and each chunk is memory mapped and parsed
+ * on a worker with a {@link JsonUTF8Parser} of its own, the parsers keep state and cannot be shared.
+ * Records come out either as the workers parse them, on the worker threads, or in file order with a few
+ * chunks parsed ahead of the one being handed out. Blank lines are skipped.
+ */
+public class ParallelJsonLinesParser {
+
+    private final FieldsAccessor fieldsAccessor;
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+
+
+    public ParallelJsonLinesParser( FieldsAccessor fieldsAccessor, ForkJoinPool pool ) {
+        this( fieldsAccessor, pool, 4 << 20 );
+    }
+
+    public ParallelJsonLinesParser( FieldsAccessor fieldsAccessor, ForkJoinPool pool, int chunkSize ) {
+        Exceptions.requireNonNull( pool, "pool cannot be null" );
+        this.fieldsAccessor = fieldsAccessor;
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
+
+    /**
+     * Hands each record to the handler on the worker that parsed it, in no particular order,
+     * so the handler has to be thread safe. Returns once the whole file is handled.
+     */
+    public <T> void forEach( Path file, final Class<T> type, final JsonRecordHandler<T> handler ) {
+        try ( final FileChannel channel = open( file ) ) {
+            final long[] bounds = split( channel );
+            List<Callable<Object>> calls = new ArrayList<>( bounds.length - 1 );
+            for ( int index = 0; index < bounds.length - 1; index++ ) {
+                final int chunk = index;
+                calls.add( new Callable<Object>() {
+                    @Override
+                    public Object call() throws IOException {
+                        parse( channel, bounds[ chunk ], bounds[ chunk + 1 ], type, handler );
+                        return null;
+                    }
+                } );
+            }
+            for ( Future<Object> answer : pool.invokeAll( calls ) ) {
+                get( answer );
+            }
+        } catch ( IOException ex ) {
+            Exceptions.handle( "Unable to read JSON lines from " + file, ex );
+        }
+    }
+
+    /**
+     * Hands each record to the handler on the calling thread in file order.
+     */
+    public <T> void forEachInOrder( Path file, Class<T> type, JsonRecordHandler<T> handler ) {
+        try ( LinesIterator<T> records = iterator( file, type ) ) {
+            while ( records.hasNext() ) {
+                handler.handle( records.next() );
+            }
+        }
+    }
+
+    /**
+     * Records in file order. Closes the file once it is read to the end, or call close to stop early.
+     */
+    public <T> LinesIterator<T> iterator( Path file, Class<T> type ) {
+        FileChannel channel = open( file );
+        try {
+            return new LinesIterator<>( channel, split( channel ), type );
+        } catch ( IOException ex ) {
+            close( channel );
+            return Exceptions.handle( LinesIterator.class, "Unable to read JSON lines from " + file, ex );
+        }
+    }
+
+
+    public class LinesIterator<T> implements Iterator<T>, AutoCloseable {
+
+        private final FileChannel channel;
+        private final long[] bounds;
+        private final Class<T> type;
+        private final Deque<Future<List<T>>> ahead = new ArrayDeque<>();
+        private final int window = pool.getParallelism() * 2;
+
+        private int nextChunk;
+        private Iterator<T> current = Collections.<T>emptyList().iterator();
+        private boolean closed;
+
+        LinesIterator( FileChannel channel, long[] bounds, Class<T> type ) {
+            this.channel = channel;
+            this.bounds = bounds;
+            this.type = type;
+            submit();
+        }
+
+        private void submit() {
+            while ( ahead.size() < window && nextChunk < bounds.length - 1 ) {
+                final long start = bounds[ nextChunk ];
+                final long end = bounds[ ++nextChunk ];
+                ahead.add( pool.submit( new Callable<List<T>>() {
+                    @Override
+                    public List<T> call() throws IOException {
+                        final List<T> records = new ArrayList<>();
+                        parse( channel, start, end, type, new JsonRecordHandler<T>() {
+                            @Override
+                            public void handle( T record ) {
+                                records.add( record );
+                            }
+                        } );
+                        return records;
+                    }
+                } ) );
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while ( !current.hasNext() ) {
+                if ( ahead.isEmpty() ) {
+                    close();
+                    return false;
+                }
+                current = get( ahead.poll() ).iterator();
+                submit();
+            }
+            return true;
+        }
+
+        @Override
+        public T next() {
+            if ( !hasNext() ) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException( "remove Not supported" );
+        }
+
+        @Override
+        public void close() {
+            if ( !closed ) {
+                closed = true;
+                for ( Future<List<T>> chunk : ahead ) {
+                    chunk.cancel( false );
+                }
+                ahead.clear();
+                ParallelJsonLinesParser.close( channel );
+            }
+        }
+    }
+
+
+    /* Parses the lines of one chunk with a parser of the worker's own. */
+    private <T> void parse( FileChannel channel, long start, long end, Class<T> type,
+                            JsonRecordHandler<T> handler ) throws IOException {
+
+        MappedByteBuffer buffer = channel.map( FileChannel.MapMode.READ_ONLY, start, end - start );
+        BaseJsonParserAndMapper mapper = new BaseJsonParserAndMapper( new JsonUTF8Parser(), fieldsAccessor );
+
+        int limit = buffer.limit();
+        int from = 0;
+        while ( from < limit ) {
+            int to = from;
+            boolean blank = true;
+            for (; to < limit; to++ ) {
+                byte b = buffer.get( to );
+                if ( b == '\n' ) {
+                    break;
+                } else if ( b > 32 ) {
+                    blank = false;
+                }
+            }
+
+            if ( !blank ) {
+                /* The parser reads to the end of the array, so each line gets one of its own
+                   sized to fit, plus a space that ends a bare number. */
+                int length = to - from;
+                byte[] line = new byte[ length + 1 ];
+                buffer.position( from );
+                buffer.get( line, 0, length );
+                line[ length ] = ' ';
+                try {
+                    handler.handle( mapper.convert( type, mapper.parser.parse( line ) ) );
+                } catch ( JsonException ex ) {
+                    throw new JsonException( "Unable to parse JSON line at byte " + ( start + from ), ex );
+                }
+            }
+            from = to + 1;
+        }
+    }
+
+    /* Chunk bounds, each past the first newline at or after chunkSize bytes from the one before. */
+    private long[] split( FileChannel channel ) throws IOException {
+        long size = channel.size();
+        List<Long> bounds = new ArrayList<>();
+        bounds.add( 0L );
+
+        ByteBuffer window = ByteBuffer.allocate( 8 * 1024 );
+        long bound = 0;
+        while ( bound < size ) {
+            long position = Math.min( bound + chunkSize, size );
+            bound = size;
+            scan:
+            while ( position < size ) {
+                window.clear();
+                int count = channel.read( window, position );
+                if ( count <= 0 ) {
+                    break;
+                }
+                for ( int index = 0; index < count; index++ ) {
+                    if ( window.get( index ) == '\n' ) {
+                        bound = position + index + 1;
+                        break scan;
+                    }
+                }
+                position += count;
+            }
+            bounds.add( bound );
+        }
+
+        long[] array = new long[ bounds.size() ];
+        for ( int index = 0; index < array.length; index++ ) {
+            array[ index ] = bounds.get( index );
+        }
+        return array;
+    }
+
+    private static <T> T get( Future<T> answer ) {
+        try {
+            return answer.get();
+        } catch ( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+            Exceptions.handle( ex );
+            return null;
+        } catch ( ExecutionException ex ) {
+            if ( ex.getCause() instanceof RuntimeException ) {
+                throw ( RuntimeException ) ex.getCause();
+            }
+            Exceptions.handle( "Unable to parse JSON lines", ex.getCause() );
+            return null;
+        }
+    }
+
+    private static FileChannel open( Path file ) {
+        try {
+            return FileChannel.open( file, StandardOpenOption.READ );
+        } catch ( IOException ex ) {
+            return Exceptions.handle( FileChannel.class, "Unable to open JSON lines file " + file, ex );
+        }
+    }
+
+    private static void close( FileChannel channel ) {
+        try {
+            channel.close();
+        } catch ( IOException ex ) {
+            Exceptions.handle( "Unable to close JSON lines file", ex );
+        }
+    }
+}
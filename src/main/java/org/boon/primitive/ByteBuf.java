@@ -222,7 +222,7 @@ public class ByteBuf implements Output {
             buffer = Byt.grow( buffer, buffer.length * 2 + length );
             capacity = buffer.length;
 
-            Byt._idx( buffer, length, array, length );
+            Byt._idx( buffer, this.length, array, length );
 
         }
         this.length += length;
@@ -231,12 +231,12 @@ public class ByteBuf implements Output {
 
     public ByteBuf add( byte[] array, final int offset, final int length ) {
         if ( ( this.length + length ) < capacity ) {
-            Byt._idx( buffer, length, array, offset, length );
+            Byt._idx( buffer, this.length, array, offset, length );
         } else {
             buffer = Byt.grow( buffer, buffer.length * 2 + length );
             capacity = buffer.length;
 
-            Byt._idx( buffer, length, array, offset, length );
+            Byt._idx( buffer, this.length, array, offset, length );
 
         }
         this.length += length;
@@ -396,7 +396,7 @@ public class ByteBuf implements Output {
 
     @Override
     public void write( byte[] b, int off, int len ) {
-        this.add( b, len );
+        this.add( b, off, len );
     }
 
     @Override
@@ -659,6 +659,17 @@ public class CharBuf extends Writer implements CharSequence {
         return this;
     }
 
+    public CharBuf add( char[] chars, int start, int end ) {
+        int charsLength = end - start;
+        if ( charsLength + location >= capacity ) {
+            buffer = Chr.grow( buffer, buffer.length * 2 + charsLength );
+            capacity = buffer.length;
+        }
+        System.arraycopy( chars, start, buffer, location, charsLength );
+        location += charsLength;
+        return this;
+    }
+
     public CharBuf add( byte[] chars ) {
         if ( chars.length + location < capacity ) {
             Chr._idx( buffer, location, chars );
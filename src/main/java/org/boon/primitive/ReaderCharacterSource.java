@@ -14,22 +14,22 @@ public class ReaderCharacterSource implements CharacterSource {
 
     private static final int MAX_TOKEN_SIZE=5;
 
-    private final Reader reader;
+    protected final Reader reader;
     private int readAheadSize;
     private int ch = -2;
 
     private boolean foundEscape;
 
 
-    private char[] readBuf;
+    protected char[] readBuf;
 
-    private int index;
+    protected int index;
 
-    private int length;
+    protected int length;
 
 
     boolean more = true;
-    private boolean done = false;
+    protected boolean done = false;
 
     public ReaderCharacterSource( final Reader reader, final int readAheadSize ) {
         this.reader = reader;
@@ -48,14 +48,49 @@ public class ReaderCharacterSource implements CharacterSource {
     }
 
 
-    private void readForToken() {
+    /**
+     * Moves the chars not read yet to the front of the buffer and reads more in after them,
+     * so a token that straddles two reads ends up whole in the buffer.
+     * Returns false once the reader is done or the buffer has no room left.
+     */
+    protected final boolean fill() {
+        if ( done ) {
+            return false;
+        }
+        int remaining = length - index;
+        if ( remaining > 0 && index > 0 ) {
+            System.arraycopy ( readBuf, index, readBuf, 0, remaining );
+        }
+        index = 0;
+        length = remaining < 0 ? 0 : remaining;
+
         try {
-            length += reader.read ( readBuf, readBuf.length-MAX_TOKEN_SIZE, MAX_TOKEN_SIZE );
+            int count = reader.read ( readBuf, length, readBuf.length - length );
+            if ( count == -1 ) {
+                done = true;
+                more = length > 0;
+                return false;
+            }
+            length += count;
+            more = true;
+            return count > 0;
         } catch ( IOException e ) {
-            Exceptions.handle ( e );
+            return Exceptions.handle ( boolean.class, e );
         }
     }
 
+    /**
+     * Refills until there are at least count chars left to read, false if the input ends first.
+     */
+    protected final boolean ensure( int count ) {
+        while ( length - index < count ) {
+            if ( !fill () ) {
+                return length - index >= count;
+            }
+        }
+        return true;
+    }
+
     private void ensureBuffer() {
 
         try {
@@ -108,15 +143,15 @@ public class ReaderCharacterSource implements CharacterSource {
     public  final boolean consumeIfMatch( char[] match ) {
         try {
 
+            if ( !ensure ( match.length ) ) {
+                return false;
+            }
+
             char [] _chars = readBuf;
             int i=0;
             int idx = index;
             boolean ok = true;
 
-            if ( idx + match.length > length ) {
-                readForToken ();
-            }
-
             for (; i < match.length; i++, idx++) {
                     ok &=  ( match[i] == _chars[idx] );
                     if (!ok) break;
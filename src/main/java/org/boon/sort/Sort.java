@@ -132,6 +132,50 @@ public class Sort {
         Collections.sort( list, this.comparator( fields ) );
     }
 
+    /**
+     * Same as sorting the items and taking start to start + size, but only start + size items are
+     * kept around, in a bounded heap. Ties keep the order the items came in, just like a full sort.
+     */
+    public <T> List<T> page( Iterable<T> items, int start, int size, Map<String, FieldAccess> fields ) {
+        final int limit = start + size;
+        if ( size <= 0 ) {
+            return new ArrayList<>();
+        }
+
+        final Comparator comparator = this.comparator( fields );
+
+        /* Worst of the best so far on top, ties broken by arrival so later items lose. */
+        Comparator<Object[]> worstFirst = new Comparator<Object[]>() {
+            @Override
+            public int compare( Object[] a, Object[] b ) {
+                int compare = comparator.compare( b[ 0 ], a[ 0 ] );
+                return compare != 0 ? compare : Long.compare( ( Long ) b[ 1 ], ( Long ) a[ 1 ] );
+            }
+        };
+        PriorityQueue<Object[]> heap = new PriorityQueue<>( Math.min( limit, 1024 ) + 1, worstFirst );
+
+        long arrival = 0;
+        for ( T item : items ) {
+            Object[] entry = new Object[]{ item, arrival++ };
+            if ( heap.size() < limit ) {
+                heap.add( entry );
+            } else if ( worstFirst.compare( entry, heap.peek() ) > 0 ) {
+                heap.poll();
+                heap.add( entry );
+            }
+        }
+
+        int count = heap.size() - start;
+        if ( count <= 0 ) {
+            return new ArrayList<>();
+        }
+        Object[] best = new Object[ count ];
+        while ( heap.size() > start ) {
+            best[ heap.size() - start - 1 ] = heap.poll()[ 0 ];
+        }
+        return ( List<T> ) new ArrayList<>( Arrays.asList( best ) );
+    }
+
     public Comparator comparator( Map<String, FieldAccess> fields ) {
         if ( comparator == null ) {
             comparator = Ordering.universalComparator( this.getName(), fields,
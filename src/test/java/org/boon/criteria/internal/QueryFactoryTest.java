@@ -0,0 +1,60 @@
+package org.boon.criteria.internal;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.boon.criteria.ObjectFilter.*;
+
+public class QueryFactoryTest {
+
+    public static class Reading {
+        int id;
+        String name;
+
+        Reading( int id ) {
+            this.id = id;
+            this.name = "reading" + ( id % 10 );
+        }
+    }
+
+    @Test
+    public void testParallelFilterKeepsOrder() throws Exception {
+
+        List<Reading> readings = new ArrayList<>();
+        for ( int id = 0; id < 100_000; id++ ) {
+            readings.add( new Reading( id ) );
+        }
+
+        ForkJoinPool pool = new ForkJoinPool( 4 );
+        try {
+            /* Each run gets new criteria, so the parallel one is initialized by the parallel filter. */
+            for ( int run = 0; run < 5; run++ ) {
+                List<Reading> expected = QueryFactory.filter( readings, query() );
+                List<Reading> actual = QueryFactory.filter( readings, query(), pool );
+
+                Assert.assertEquals( 29_700, expected.size() );
+                Assert.assertEquals( expected, actual );
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static Criteria query() {
+        return and( gte( "id", "1000" ),
+                or( eq( "name", "reading3" ), eq( "name", "reading7" ), startsWith( "name", "reading9" ) ) );
+    }
+
+    @Test
+    public void testSmallListsStayOnCallingThread() throws Exception {
+        List<Reading> readings = new ArrayList<>();
+        for ( int id = 0; id < 10; id++ ) {
+            readings.add( new Reading( id ) );
+        }
+        Assert.assertEquals( 5, QueryFactory.filter( readings, lt( "id", 5 ), new ForkJoinPool( 2 ) ).size() );
+    }
+}
@@ -0,0 +1,63 @@
+package org.boon.datarepo.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+
+public class TimingWheelTest {
+
+    @Test
+    public void testDueOnTime() {
+        TimingWheel<String> wheel = new TimingWheel<>( 10, 1_000 );
+        wheel.schedule( "a", 1_050 );
+        wheel.schedule( "b", 1_055 );
+
+        Assert.assertEquals( Collections.emptyList(), wheel.advance( 1_049 ) );
+        Assert.assertEquals( Arrays.asList( "a" ), wheel.advance( 1_050 ) );
+        Assert.assertEquals( Collections.emptyList(), wheel.advance( 1_059 ) );
+        Assert.assertEquals( Arrays.asList( "b" ), wheel.advance( 1_060 ) );
+        Assert.assertEquals( 0, wheel.size() );
+    }
+
+    @Test
+    public void testCancelAndReschedule() {
+        TimingWheel<String> wheel = new TimingWheel<>( 10, 0 );
+        wheel.schedule( "a", 100 );
+        wheel.schedule( "b", 100 );
+        wheel.schedule( "c", 100 );
+        Assert.assertTrue( wheel.cancel( "b" ) );
+        Assert.assertFalse( wheel.cancel( "b" ) );
+        wheel.schedule( "c", 5_000 );
+
+        Assert.assertEquals( Arrays.asList( "a" ), wheel.advance( 4_990 ) );
+        Assert.assertEquals( Arrays.asList( "c" ), wheel.advance( 5_000 ) );
+    }
+
+    @Test
+    public void testEveryLevelAgainstSortedDeadlines() {
+        Random random = new Random( 11 );
+        TimingWheel<Integer> wheel = new TimingWheel<>( 1, 0 );
+        long[] dueAt = new long[ 5_000 ];
+        for ( int key = 0; key < dueAt.length; key++ ) {
+            /* Spread over all four wheels and past the last one. */
+            dueAt[ key ] = 1 + ( long ) Math.pow( 2, random.nextDouble() * 26 );
+            wheel.schedule( key, dueAt[ key ] );
+        }
+
+        long now = 0;
+        int seen = 0;
+        while ( wheel.size() > 0 ) {
+            now += 1 + random.nextInt( 5_000 );
+            for ( Integer key : wheel.advance( now ) ) {
+                Assert.assertTrue( dueAt[ key ] <= now );
+                dueAt[ key ] = -1;
+                seen++;
+            }
+            for ( long due : dueAt ) {
+                Assert.assertTrue( due == -1 || due > now );
+            }
+        }
+        Assert.assertEquals( dueAt.length, seen );
+    }
+}
@@ -0,0 +1,100 @@
+package org.boon.datarepo.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class VersionGateTest {
+
+    /* Versions are numbered by build, so a test can tell which build got installed. */
+    private static class Counting implements VersionGate.Publisher<Integer> {
+        final AtomicInteger builds = new AtomicInteger();
+        volatile Integer installed;
+        volatile CountDownLatch building;
+        volatile CountDownLatch release;
+
+        @Override
+        public Integer build() {
+            int build = builds.incrementAndGet();
+            if ( release != null ) {
+                building.countDown();
+                try {
+                    release.await();
+                } catch ( InterruptedException e ) {
+                    throw new RuntimeException( e );
+                }
+            }
+            return build;
+        }
+
+        @Override
+        public void install( Integer version ) {
+            installed = version;
+        }
+    }
+
+    @Test
+    public void testLastWriterOutPublishes() {
+        VersionGate gate = new VersionGate();
+        Counting publisher = new Counting();
+        gate.setPublisher( publisher );
+
+        gate.enter();
+        gate.enter();
+        gate.exit();
+        Assert.assertEquals( 0, publisher.builds.get() );
+        gate.exit();
+        Assert.assertEquals( Integer.valueOf( 1 ), publisher.installed );
+
+        gate.publish();
+        Assert.assertEquals( 1, publisher.builds.get() );
+    }
+
+    @Test
+    public void testEnterDoesNotWaitOnABuild() throws Exception {
+        final VersionGate gate = new VersionGate();
+        final Counting publisher = new Counting();
+        gate.setPublisher( publisher );
+        CountDownLatch release = new CountDownLatch( 1 );
+        publisher.building = new CountDownLatch( 1 );
+        publisher.release = release;
+
+        ExecutorService executor = Executors.newFixedThreadPool( 2 );
+        try {
+            Future<?> first = executor.submit( new Runnable() {
+                @Override
+                public void run() {
+                    gate.enter();
+                    gate.exit();
+                }
+            } );
+            publisher.building.await();
+
+            Future<?> second = executor.submit( new Runnable() {
+                @Override
+                public void run() {
+                    gate.enter();
+                }
+            } );
+            second.get( 10, TimeUnit.SECONDS );
+
+            /* The writer came in while the build ran, so that build may be torn and is thrown away. */
+            release.countDown();
+            first.get( 10, TimeUnit.SECONDS );
+            Assert.assertNull( publisher.installed );
+
+            publisher.release = null;
+            gate.exit();
+            Assert.assertEquals( Integer.valueOf( 2 ), publisher.installed );
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+}
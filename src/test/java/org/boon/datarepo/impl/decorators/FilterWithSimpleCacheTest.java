@@ -0,0 +1,86 @@
+package org.boon.datarepo.impl.decorators;
+
+import org.boon.criteria.internal.Criteria;
+import org.boon.datarepo.Filter;
+import org.boon.datarepo.Page;
+import org.boon.datarepo.ResultSet;
+import org.boon.datarepo.impl.ResultSetImpl;
+import org.boon.sort.Sort;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.boon.criteria.ObjectFilter.eq;
+
+public class FilterWithSimpleCacheTest {
+
+    /* Counts the queries that get past the cache. */
+    private static class Counting implements Filter {
+        int runs;
+
+        @Override
+        public ResultSet filter( Criteria... expressions ) {
+            runs++;
+            return new ResultSetImpl<>( new ArrayList<>() );
+        }
+
+        @Override
+        public ResultSet lazyFilter( Criteria... expressions ) {
+            return filter( expressions );
+        }
+
+        @Override
+        public Page page( String sortBy, String cursor, int size, Criteria... expressions ) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List sortedFilter( Sort sort, int start, int size, Criteria... expressions ) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void invalidate() {
+        }
+
+        @Override
+        public void invalidate( String property, Object item ) {
+        }
+
+        @Override
+        public void validate( String property, Object item ) {
+        }
+    }
+
+    @Test
+    public void testChangeOnlyDropsQueriesNamingTheProperty() {
+        Counting delegate = new Counting();
+        FilterWithSimpleCache filter = new FilterWithSimpleCache( delegate );
+
+        filter.filter( eq( "lastName", "Hightower" ) );
+        filter.filter( eq( "salary", 10 ) );
+        Assert.assertEquals( 2, delegate.runs );
+
+        filter.invalidate( "salary", "item" );
+        filter.validate( "salary", "item" );
+
+        filter.filter( eq( "lastName", "Hightower" ) );
+        Assert.assertEquals( 2, delegate.runs );
+        filter.filter( eq( "salary", 10 ) );
+        Assert.assertEquals( 3, delegate.runs );
+    }
+
+    @Test
+    public void testAddingAnItemDropsEverything() {
+        Counting delegate = new Counting();
+        FilterWithSimpleCache filter = new FilterWithSimpleCache( delegate );
+
+        filter.filter( eq( "lastName", "Hightower" ) );
+        filter.validate( null, "item" );
+
+        filter.filter( eq( "lastName", "Hightower" ) );
+        Assert.assertEquals( 2, delegate.runs );
+    }
+}
@@ -0,0 +1,40 @@
+package org.boon.datarepo.impl.indexes;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.TreeMap;
+
+public class HistogramTest {
+
+    @Test
+    public void testRangeEstimatesAreClose() throws Exception {
+
+        TreeMap<Integer, Object> map = new TreeMap<>();
+        for ( int key = 0; key < 10_000; key++ ) {
+            map.put( key, key );
+        }
+
+        Histogram histogram = Histogram.build( map );
+
+        Assert.assertEquals( 10_000, histogram.total() );
+        Assert.assertEquals( 10_000, histogram.keys() );
+        Assert.assertEquals( 10_000, histogram.estimate( null, false, null, false ) );
+        assertClose( 1_000, histogram.estimate( 9_000, true, null, false ) );
+        assertClose( 2_500, histogram.estimate( null, false, 2_500, false ) );
+        assertClose( 5_000, histogram.estimate( 2_500, true, 7_500, false ) );
+        Assert.assertEquals( 0, histogram.estimate( 20_000, true, null, false ) );
+        Assert.assertEquals( 0, histogram.estimate( null, false, -1, false ) );
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        Histogram histogram = Histogram.build( new TreeMap<String, Object>() );
+        Assert.assertEquals( 0, histogram.estimate( "a", true, "b", false ) );
+    }
+
+    private static void assertClose( int expected, int actual ) {
+        Assert.assertTrue( "expected about " + expected + " but was " + actual,
+                Math.abs( expected - actual ) <= 10_000 / 64 );
+    }
+}
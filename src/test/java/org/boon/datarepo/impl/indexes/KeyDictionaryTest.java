@@ -0,0 +1,136 @@
+package org.boon.datarepo.impl.indexes;
+
+import org.boon.datarepo.Repo;
+import org.boon.datarepo.Repos;
+import org.boon.tests.model.Employee;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.text.Collator;
+import java.util.*;
+
+import static org.boon.criteria.ObjectFilter.*;
+
+public class KeyDictionaryTest {
+
+    @Test
+    public void testInternShares() {
+        KeyDictionary dictionary = new KeyDictionary();
+
+        String rick = dictionary.intern( "RICK" );
+        String copy = dictionary.intern( new String( "RICK" ) );
+
+        Assert.assertSame( rick, copy );
+        Assert.assertEquals( 1, dictionary.size() );
+        Assert.assertEquals( rick, dictionary.key( dictionary.id( "RICK" ) ) );
+    }
+
+    @Test
+    public void testReleaseFreesId() {
+        KeyDictionary dictionary = new KeyDictionary();
+
+        dictionary.intern( "a" );
+        dictionary.intern( "a" );
+        dictionary.intern( "b" );
+        int id = dictionary.id( "a" );
+
+        dictionary.release( "a" );
+        Assert.assertEquals( id, dictionary.id( "a" ) );
+        dictionary.release( "a" );
+        Assert.assertEquals( -1, dictionary.id( "a" ) );
+
+        /* The id is used again, dense ids stay dense. */
+        dictionary.intern( "c" );
+        Assert.assertEquals( id, dictionary.id( "c" ) );
+        Assert.assertEquals( 2, dictionary.size() );
+    }
+
+    @Test
+    public void testRankedComparatorSortsLikeCollator() {
+        KeyDictionary dictionary = new KeyDictionary();
+        Collator collator = Collator.getInstance( Locale.US );
+        Comparator ranked = dictionary.comparator( collator );
+
+        List<String> words = new ArrayList<>();
+        Random random = new Random( 7 );
+        for ( int index = 0; index < 1000; index++ ) {
+            StringBuilder word = new StringBuilder();
+            for ( int letter = 0; letter < 1 + random.nextInt( 6 ); letter++ ) {
+                char c = ( char ) ( 'a' + random.nextInt( 5 ) );
+                word.append( random.nextBoolean() ? Character.toUpperCase( c ) : c );
+            }
+            words.add( dictionary.intern( word.toString() ) );
+
+            /* Some ranked, some not yet, and keys that come and go. */
+            if ( index % 7 == 0 ) {
+                dictionary.release( words.get( index / 2 ) );
+            }
+            if ( index % 100 == 0 ) {
+                checkOrder( words, collator, ranked );
+            }
+        }
+        checkOrder( words, collator, ranked );
+    }
+
+    private static void checkOrder( List<String> words, Comparator collator, Comparator ranked ) {
+        for ( int index = 1; index < words.size(); index++ ) {
+            String word = words.get( index );
+            String other = words.get( index - 1 );
+            Assert.assertEquals( Integer.signum( collator.compare( word, other ) ), Integer.signum( ranked.compare( word, other ) ) );
+        }
+    }
+
+    @Test
+    public void testRepoWithDictionaryKeys() {
+        Repo<String, Employee> dictionary = Repos.builder().primaryKey( "id" ).dictionaryKeys()
+                .lookupIndex( "firstName" ).upperCaseIndex( "firstName" )
+                .searchIndex( "lastName" ).collateIndex( "lastName", Locale.US )
+                .build( String.class, Employee.class );
+        Repo<String, Employee> plain = Repos.builder().primaryKey( "id" )
+                .lookupIndex( "firstName" ).upperCaseIndex( "firstName" )
+                .searchIndex( "lastName" ).collateIndex( "lastName", Locale.US )
+                .build( String.class, Employee.class );
+
+        List<Employee> employees = new ArrayList<>();
+        for ( int index = 0; index < 500; index++ ) {
+            employees.add( Employee.employee( "first" + index % 10, "Last" + index % 37, "id-" + index, "05.29.70", index ) );
+        }
+        dictionary.addAll( employees.subList( 0, 250 ) );
+        plain.addAll( employees.subList( 0, 250 ) );
+        for ( Employee employee : employees.subList( 250, 500 ) ) {
+            dictionary.add( employee );
+            plain.add( employee );
+        }
+        for ( int index = 0; index < 500; index += 3 ) {
+            dictionary.removeByKey( "id-" + index );
+            plain.removeByKey( "id-" + index );
+        }
+        dictionary.update( "id-1", "firstName", "Other" );
+        plain.update( "id-1", "firstName", "Other" );
+
+        Assert.assertEquals( ids( plain.query( eq( "firstName", "FIRST4" ) ) ), ids( dictionary.query( eq( "firstName", "FIRST4" ) ) ) );
+        Assert.assertEquals( ids( plain.query( eq( "firstName", "other" ) ) ), ids( dictionary.query( eq( "firstName", "other" ) ) ) );
+        Assert.assertEquals( ids( plain.query( between( "lastName", "last1", "Last3" ) ) ),
+                ids( dictionary.query( between( "lastName", "last1", "Last3" ) ) ) );
+        Assert.assertEquals( ids( plain.query( gt( "lastName", "Last20" ) ) ), ids( dictionary.query( gt( "lastName", "Last20" ) ) ) );
+
+        /* The bucket for the upper cased key kept up with the removes. */
+        Map<?, List<Employee>> buckets = dictionary.index( "firstName" ).buckets();
+        String key = null;
+        for ( Object bucketKey : buckets.keySet() ) {
+            if ( bucketKey.equals( "FIRST4" ) ) {
+                key = ( String ) bucketKey;
+            }
+        }
+        Assert.assertNotNull( key );
+        Assert.assertEquals( 34, buckets.get( key ).size() );
+    }
+
+    private static Set<String> ids( List<Employee> employees ) {
+        Set<String> ids = new HashSet<>();
+        for ( Employee employee : employees ) {
+            ids.add( employee.getId() );
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,129 @@
+package org.boon.datarepo.impl.indexes;
+
+import org.boon.core.reflection.BeanUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class PrimitiveSearchIndexTest {
+
+    public static class Reading {
+        int id;
+        double value;
+
+        Reading( int id, double value ) {
+            this.id = id;
+            this.value = value;
+        }
+    }
+
+    private PrimitiveSearchIndex<Object, Reading> index( String property ) {
+        return new PrimitiveSearchIndex<>( BeanUtils.getFieldsFromObject( Reading.class ).get( property ) );
+    }
+
+    @Test
+    public void testRangesAcrossMerge() throws Exception {
+
+        PrimitiveSearchIndex<Object, Reading> index = index( "id" );
+
+        /* Enough adds to force a few merges, added in reverse so the buffer has to be sorted. */
+        List<Reading> readings = new ArrayList<>();
+        for ( int id = 5000; id > 0; id-- ) {
+            Reading reading = new Reading( id % 2500, id );
+            readings.add( reading );
+            index.add( reading );
+        }
+
+        Assert.assertEquals( 5000, index.size() );
+        Assert.assertEquals( 2, index.findEquals( 10 ).size() );
+        Assert.assertEquals( 20, index.findBetween( 10, 20 ).size() );
+        Assert.assertEquals( 18, index.findGreaterThan( 2490 ).size() );
+        Assert.assertEquals( 20, index.findGreaterThanEqual( 2490 ).size() );
+        Assert.assertEquals( 20, index.findLessThan( 10 ).size() );
+        Assert.assertEquals( 22, index.findLessThanEqual( 10 ).size() );
+        Assert.assertEquals( 0, index.min().id );
+        Assert.assertEquals( 2499, index.max().id );
+        Assert.assertEquals( 2499, index.findLastKey() );
+        Assert.assertNull( index.findEquals( 7000 ) );
+
+        for ( Reading reading : readings ) {
+            if ( reading.id < 100 ) {
+                index.delete( reading );
+            }
+        }
+
+        Assert.assertEquals( 4800, index.size() );
+        Assert.assertNull( index.findEquals( 10 ) );
+        Assert.assertEquals( 100, index.min().id );
+
+        /* One more add sits in the buffer and must still be found. */
+        index.add( new Reading( -1, 0 ) );
+        Assert.assertEquals( -1, index.min().id );
+        Assert.assertEquals( 1, index.findLessThan( 100 ).size() );
+    }
+
+    @Test
+    public void testLookupsWhileAddsArePending() throws Exception {
+
+        PrimitiveSearchIndex<Object, Reading> index = index( "id" );
+        List<Reading> expected = new ArrayList<>();
+        Random random = new Random( 3 );
+
+        /* Fewer adds than a merge takes, so every lookup goes through the pending buffer. */
+        for ( int step = 0; step < 1000; step++ ) {
+            if ( expected.size() > 0 && random.nextInt( 4 ) == 0 ) {
+                Reading reading = expected.remove( random.nextInt( expected.size() ) );
+                Assert.assertTrue( index.delete( reading ) );
+            } else {
+                Reading reading = new Reading( random.nextInt( 200 ), step );
+                expected.add( reading );
+                index.add( reading );
+            }
+        }
+
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for ( Reading reading : expected ) {
+            min = Math.min( min, reading.id );
+            max = Math.max( max, reading.id );
+        }
+        Assert.assertEquals( min, index.min().id );
+        Assert.assertEquals( max, index.max().id );
+
+        for ( int id = -1; id <= 200; id += 7 ) {
+            int equal = 0;
+            int between = 0;
+            for ( Reading reading : expected ) {
+                equal += reading.id == id ? 1 : 0;
+                between += reading.id >= id && reading.id < id + 30 ? 1 : 0;
+            }
+            Assert.assertEquals( equal, index.count( id ) );
+            Assert.assertEquals( between, index.findBetween( id, id + 30 ).size() );
+            Assert.assertEquals( between, index.estimateBetween( id, true, id + 30, false ) );
+        }
+
+        Assert.assertTrue( index.deleteByKey( 10 ) );
+        Assert.assertNull( index.findEquals( 10 ) );
+    }
+
+    @Test
+    public void testDoubleKeysSortLikeNumbers() throws Exception {
+
+        PrimitiveSearchIndex<Object, Reading> index = index( "value" );
+
+        index.add( new Reading( 1, -2.5 ) );
+        index.add( new Reading( 2, -0.5 ) );
+        index.add( new Reading( 3, 0.25 ) );
+        index.add( new Reading( 4, 10.0 ) );
+
+        Assert.assertEquals( 1, index.min().id );
+        Assert.assertEquals( 4, index.max().id );
+        Assert.assertEquals( 2, index.findLessThan( 0 ).size() );
+        Assert.assertEquals( 2, index.findBetween( -1, 10.0 ).size() );
+        Assert.assertEquals( 3, index.findEquals( 0.25 ).get( 0 ).id );
+        Assert.assertEquals( -2.5, index.findFirstKey() );
+    }
+}
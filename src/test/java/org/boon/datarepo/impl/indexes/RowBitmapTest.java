@@ -0,0 +1,55 @@
+package org.boon.datarepo.impl.indexes;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RowBitmapTest {
+
+    private RowBitmap rows( int from, int to, int step ) {
+        RowBitmap rows = new RowBitmap();
+        for ( int row = from; row < to; row += step ) {
+            rows.add( row );
+        }
+        return rows;
+    }
+
+    @Test
+    public void testAddRemoveContains() throws Exception {
+
+        /* Crosses from the small array containers into bitsets and across several containers. */
+        RowBitmap rows = rows( 0, 200_000, 3 );
+        Assert.assertEquals( 66_667, rows.cardinality() );
+        Assert.assertTrue( rows.contains( 150_000 ) );
+        Assert.assertFalse( rows.contains( 150_001 ) );
+        Assert.assertEquals( 0, rows.first() );
+
+        for ( int row = 0; row < 200_000; row += 6 ) {
+            Assert.assertTrue( rows.remove( row ) );
+        }
+        Assert.assertEquals( 33_333, rows.cardinality() );
+        Assert.assertEquals( 3, rows.first() );
+        Assert.assertFalse( rows.remove( 0 ) );
+    }
+
+    @Test
+    public void testAndOrAndNot() throws Exception {
+
+        RowBitmap twos = rows( 0, 100_000, 2 );
+        RowBitmap threes = rows( 0, 100_000, 3 );
+        RowBitmap sparse = rows( 0, 100_000, 1000 );
+
+        Assert.assertEquals( 16_667, twos.and( threes ).cardinality() );
+        Assert.assertEquals( 66_667, twos.or( threes ).cardinality() );
+        Assert.assertEquals( 33_333, twos.andNot( threes ).cardinality() );
+        Assert.assertEquals( 100, twos.and( sparse ).cardinality() );
+        Assert.assertEquals( 0, sparse.andNot( twos ).cardinality() );
+
+        /* The inputs are left alone. */
+        Assert.assertEquals( 50_000, twos.cardinality() );
+        Assert.assertEquals( 33_334, threes.cardinality() );
+
+        int[] array = twos.and( sparse ).toArray();
+        Assert.assertEquals( 0, array[ 0 ] );
+        Assert.assertEquals( 99_000, array[ 99 ] );
+    }
+}
@@ -0,0 +1,143 @@
+package org.boon.datarepo.impl.maps;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class PersistentNavigableMapTest {
+
+    @Test
+    public void sameAsTreeMap() {
+        Random random = new Random( 7 );
+        PersistentNavigableMap<Integer, Integer> map = new PersistentNavigableMap<>();
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+
+        for ( int step = 0; step < 5_000; step++ ) {
+            int key = random.nextInt( 500 );
+            if ( random.nextInt( 3 ) == 0 ) {
+                assertEquals( expected.remove( key ), map.remove( key ) );
+            } else {
+                assertEquals( expected.put( key, step ), map.put( key, step ) );
+            }
+            if ( step % 250 == 0 ) {
+                sameViews( expected, map, random );
+            }
+        }
+        sameViews( expected, map, random );
+    }
+
+    @Test
+    public void snapshotDoesNotSeeLaterWrites() {
+        PersistentNavigableMap<String, Integer> map = new PersistentNavigableMap<>();
+        map.put( "b", 2 );
+        map.put( "a", 1 );
+
+        NavigableMap<String, Integer> snapshot = map.snapshot();
+        map.put( "c", 3 );
+        map.remove( "a" );
+        map.put( "b", 20 );
+
+        assertEquals( Arrays.asList( "a", "b" ), new ArrayList<>( snapshot.keySet() ) );
+        assertEquals( Integer.valueOf( 2 ), snapshot.get( "b" ) );
+        assertEquals( Arrays.asList( "b", "c" ), new ArrayList<>( map.keySet() ) );
+
+        try {
+            snapshot.put( "d", 4 );
+            fail();
+        } catch ( UnsupportedOperationException expected ) {
+        }
+    }
+
+    @Test
+    public void comparator() {
+        PersistentNavigableMap<String, Integer> map = new PersistentNavigableMap<>( String.CASE_INSENSITIVE_ORDER );
+        map.put( "b", 1 );
+        map.put( "A", 2 );
+        map.put( "B", 3 );
+
+        assertEquals( 2, map.size() );
+        assertEquals( Integer.valueOf( 3 ), map.get( "b" ) );
+        assertEquals( "A", map.firstKey() );
+        assertEquals( Arrays.asList( "b", "A" ), new ArrayList<>( map.descendingMap().keySet() ) );
+    }
+
+    @Test
+    public void hashMapSameAsHashMap() {
+        Random random = new Random( 11 );
+        PersistentHashMap<Object, Integer> map = new PersistentHashMap<>();
+        Map<Object, Integer> expected = new HashMap<>();
+
+        for ( int step = 0; step < 5_000; step++ ) {
+            /* Half the keys share one hash code. */
+            Object key = random.nextBoolean() ? Integer.valueOf( random.nextInt( 300 ) ) : new Clash( random.nextInt( 20 ) );
+            if ( random.nextInt( 3 ) == 0 ) {
+                assertEquals( expected.remove( key ), map.remove( key ) );
+            } else {
+                assertEquals( expected.put( key, step ), map.put( key, step ) );
+            }
+            assertEquals( expected.size(), map.size() );
+        }
+        assertEquals( expected, map );
+
+        PersistentHashMap<Object, Integer> snapshot = map.snapshot();
+        Map<Object, Integer> before = new HashMap<>( expected );
+        map.clear();
+        assertEquals( before, snapshot );
+        assertEquals( 0, map.size() );
+    }
+
+    private static void sameViews( NavigableMap<Integer, Integer> expected, NavigableMap<Integer, Integer> map, Random random ) {
+        same( expected, map );
+        same( expected.descendingMap(), map.descendingMap() );
+
+        for ( int round = 0; round < 20; round++ ) {
+            int from = random.nextInt( 520 ) - 10;
+            int to = from + 1 + random.nextInt( 200 );
+            boolean fromInclusive = random.nextBoolean();
+            boolean toInclusive = random.nextBoolean();
+            same( expected.subMap( from, fromInclusive, to, toInclusive ), map.subMap( from, fromInclusive, to, toInclusive ) );
+            same( expected.headMap( to, toInclusive ), map.headMap( to, toInclusive ) );
+            same( expected.tailMap( from, fromInclusive ), map.tailMap( from, fromInclusive ) );
+            same( expected.descendingMap().subMap( to, toInclusive, from, fromInclusive ),
+                    map.descendingMap().subMap( to, toInclusive, from, fromInclusive ) );
+            same( expected.tailMap( from, fromInclusive ).headMap( to, toInclusive ),
+                    map.tailMap( from, fromInclusive ).headMap( to, toInclusive ) );
+        }
+    }
+
+    private static void same( NavigableMap<Integer, Integer> expected, NavigableMap<Integer, Integer> map ) {
+        assertEquals( new ArrayList<>( expected.entrySet() ), new ArrayList<>( map.entrySet() ) );
+        assertEquals( expected.size(), map.size() );
+        assertEquals( expected.isEmpty(), map.isEmpty() );
+        assertEquals( expected.firstEntry(), map.firstEntry() );
+        assertEquals( expected.lastEntry(), map.lastEntry() );
+        for ( int key = -10; key < 520; key += 7 ) {
+            assertEquals( expected.get( key ), map.get( key ) );
+            assertEquals( expected.ceilingKey( key ), map.ceilingKey( key ) );
+            assertEquals( expected.higherKey( key ), map.higherKey( key ) );
+            assertEquals( expected.floorKey( key ), map.floorKey( key ) );
+            assertEquals( expected.lowerKey( key ), map.lowerKey( key ) );
+        }
+    }
+
+    private static final class Clash {
+        private final int id;
+
+        Clash( int id ) {
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals( Object o ) {
+            return o instanceof Clash && ( ( Clash ) o ).id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            return 42;
+        }
+    }
+}
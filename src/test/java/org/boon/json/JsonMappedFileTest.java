@@ -0,0 +1,112 @@
+package org.boon.json;
+
+import org.boon.core.value.LazyValueMap;
+import org.boon.json.implementation.BaseJsonParserAndMapper;
+import org.boon.json.implementation.JsonByteBufferParser;
+import org.boon.json.implementation.JsonUTF8Parser;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+
+import static org.boon.Exceptions.die;
+
+public class JsonMappedFileTest {
+
+    private static final String JSON = "{ \"name\" : \"Rick \\\"H\\\" \\u00e9 ñ\", \"age\" : -42, \"score\" : 1.5e3, \"big\" : 12345678901,\n" +
+            "  \"tags\" : [ \"a\", true, false, null, [ ], { } ],\n" +
+            "  \"address\" : { \"city\" : \"Tucson\", \"zip\" : 85701 } }\n";
+
+    public static class Address {
+        String city;
+        int zip;
+    }
+
+    public static class Person {
+        String name;
+        int age;
+        double score;
+        long big;
+        Address address;
+    }
+
+    private static File file( String json ) throws Exception {
+        File file = File.createTempFile( "mapped", ".json" );
+        file.deleteOnExit();
+        Files.write( file.toPath(), json.getBytes( StandardCharsets.UTF_8 ) );
+        return file;
+    }
+
+    @Test
+    public void mapsTheFileInPlace() throws Exception {
+        File file = file( JSON );
+        Map<String, Object> expected = new JsonParserFactory().createFastParser().parseMap( JSON );
+        BaseJsonParserAndMapper parser = ( BaseJsonParserAndMapper ) new JsonParserFactory().createUTF8DirectByteParser();
+        Map<String, Object> mapped = ( Map<String, Object> ) parser.parseMappedFile( file.toString() );
+
+        boolean ok = mapped instanceof LazyValueMap || die( mapped.getClass().getName() );
+        ok = expected.equals( mapped ) || die( "" + mapped );
+        ok = mapped.get( "name" ).equals( "Rick \"H\" é ñ" ) || die( "" + mapped.get( "name" ) );
+        ok = ( ( List ) mapped.get( "tags" ) ).size() == 6 || die( "" + mapped.get( "tags" ) );
+        ok = mapped.get( "big" ).equals( 12345678901L ) || die( "" + mapped.get( "big" ) );
+
+        ok = !( parser.parseMapFromFile( file.toString() ) instanceof LazyValueMap ) || die();
+    }
+
+    @Test
+    public void buffersParseLikeArrays() {
+        ByteBuffer buffer = ByteBuffer.wrap( ( "xx" + JSON ).getBytes( StandardCharsets.UTF_8 ) );
+        buffer.position( 2 );
+
+        Object parsed = new JsonUTF8Parser().parse( buffer );
+        boolean ok = parsed.equals( new JsonUTF8Parser().parse( JSON.getBytes( StandardCharsets.UTF_8 ) ) ) || die( "" + parsed );
+        ok = !( parsed instanceof LazyValueMap ) || die();
+        ok = buffer.position() == 2 || die();
+        ok = new JsonUTF8Parser().parseInPlace( buffer ) instanceof LazyValueMap || die();
+    }
+
+    @Test
+    public void toObjects() throws Exception {
+        Person person = ( ( BaseJsonParserAndMapper ) new JsonParserFactory().createUTF8DirectByteParser() ).parseMappedFile( Person.class, file( JSON ).toString() );
+
+        boolean ok = person.name.equals( "Rick \"H\" é ñ" ) || die( person.name );
+        ok = person.age == -42 || die( "" + person.age );
+        ok = person.score == 1500.0 || die( "" + person.score );
+        ok = person.big == 12345678901L || die( "" + person.big );
+        ok = person.address.city.equals( "Tucson" ) || die( person.address.city );
+        ok = person.address.zip == 85701 || die( "" + person.address.zip );
+
+        person = new JsonParserFactory().createUTF8DirectByteParser().parseFile( Person.class,
+                file( "{ \"name\" : \"Rick \\\"H\\\"\", \"address\" : { \"city\" : \"Tucson\", \"zip\" : 85701 } }" ).toString() );
+        ok = person.name.equals( "Rick \"H\"" ) || die( person.name );
+        ok = person.address.zip == 85701 || die( "" + person.address.zip );
+
+        ok = new JsonParserFactory().createASCIIParser().parseFile( Address.class, file( "{\"city\":\"A\\tB\",\"zip\":1}" ).toString() )
+                .city.equals( "A\tB" ) || die();
+        ok = new JsonParserFactory().createUTF8DirectByteParser().parseIntFromFile( file( " 7 " ).toString() ) == 7 || die();
+    }
+
+    @Test
+    public void parsesFromTheBufferPosition() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect( 64 );
+        buffer.put( "xx[1, \"two\", 3.5]yy".getBytes( StandardCharsets.UTF_8 ) );
+        buffer.position( 2 );
+        buffer.limit( 17 );
+
+        List<Object> list = ( List<Object> ) new JsonByteBufferParser( StandardCharsets.UTF_8, false ).parse( buffer );
+        boolean ok = list.toString().equals( "[1, two, 3.5]" ) || die( list.toString() );
+        ok = buffer.position() == 2 || die();
+
+        try {
+            buffer.limit( 12 );
+            new JsonByteBufferParser( StandardCharsets.UTF_8, false ).parse( buffer );
+            die();
+        } catch ( JsonException ex ) {
+            ok = ex.getMessage().contains( "at byte" ) || die( ex.getMessage() );
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package org.boon.json;
+
+import org.boon.json.implementation.JsonSchemaParser;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.boon.Exceptions.die;
+
+public class JsonSchemaParserTest {
+
+    public static enum Color { RED, GREEN }
+
+    public static class Address {
+        String city;
+        int zip;
+    }
+
+    public static class Person {
+        String name;
+        int age;
+        long big;
+        double score;
+        float ratio;
+        short rank;
+        boolean active;
+        Boolean verified;
+        Integer count;
+        Long id;
+        Double weight;
+        Color color;
+        Address address;
+        List<Address> previous;
+        Set<String> tags;
+        List<Integer> values;
+        int[] codes;
+        Map<String, Object> extra;
+        Person friend;
+    }
+
+    private static final String JSON = "{ \"name\" : \"Rick \\\"H\\\" \\u00e9\", \"age\" : -42, \"big\" : 12345678901,\n" +
+            "  \"score\" : 1.5e3, \"ratio\" : 0.25, \"rank\" : 7, \"active\" : true, \"verified\" : false,\n" +
+            "  \"count\" : 3, \"id\" : 9876543210, \"weight\" : 70.5, \"color\" : \"GREEN\",\n" +
+            "  \"unknown\" : { \"deep\" : [ 1, { \"x\" : \"}\" } ] }, \"class\" : \"ignored\",\n" +
+            "  \"address\" : { \"city\" : \"Tucson\", \"zip\" : 85701 },\n" +
+            "  \"previous\" : [ { \"city\" : \"Austin\", \"zip\" : 73301 }, null, { \"zip\" : 1 } ],\n" +
+            "  \"tags\" : [ \"a\", \"b\", \"a\" ], \"values\" : [ 1, 2, 3 ], \"codes\" : [ 4, 5 ],\n" +
+            "  \"extra\" : { \"k\" : 1 }, \"friend\" : { \"n\\u0061me\" : \"Bob\", \"friend\" : null, \"age\" : 2 } }";
+
+    @Test
+    public void decodesStraightIntoTheObject() {
+        JsonSchemaParser parser = new JsonParserFactory().createSchemaParser();
+        Person person = parser.parse( Person.class, JSON );
+
+        boolean ok = person.name.equals( "Rick \"H\" é" ) || die( person.name );
+        ok = person.age == -42 || die( "" + person.age );
+        ok = person.big == 12345678901L || die( "" + person.big );
+        ok = person.score == 1500.0 || die( "" + person.score );
+        ok = person.ratio == 0.25f || die( "" + person.ratio );
+        ok = person.rank == 7 || die( "" + person.rank );
+        ok = person.active || die();
+        ok = person.verified == Boolean.FALSE || die( "" + person.verified );
+        ok = person.count == 3 || die( "" + person.count );
+        ok = person.id == 9876543210L || die( "" + person.id );
+        ok = person.weight == 70.5 || die( "" + person.weight );
+        ok = person.color == Color.GREEN || die( "" + person.color );
+
+        ok = person.address.city.equals( "Tucson" ) && person.address.zip == 85701 || die( "" + person.address.city );
+        ok = person.previous.size() == 3 || die( "" + person.previous.size() );
+        ok = person.previous.get( 0 ).city.equals( "Austin" ) || die( person.previous.get( 0 ).city );
+        ok = person.previous.get( 1 ) == null || die();
+        ok = person.previous.get( 2 ).zip == 1 || die();
+
+        ok = person.tags.size() == 2 && person.tags.contains( "b" ) || die( "" + person.tags );
+        ok = person.values.equals( Arrays.asList( 1, 2, 3 ) ) || die( "" + person.values );
+        ok = Arrays.equals( person.codes, new int[]{ 4, 5 } ) || die( Arrays.toString( person.codes ) );
+        ok = person.extra.get( "k" ).equals( 1 ) || die( "" + person.extra );
+
+        ok = person.friend.name.equals( "Bob" ) || die( person.friend.name );
+        ok = person.friend.friend == null && person.friend.age == 2 || die();
+    }
+
+    @Test
+    public void sameAsTheMapRoute() {
+        Person expected = new JsonParserFactory().createFastObjectMapperParser().parse( Person.class, JSON );
+        Person person = new JsonParserFactory().createSchemaParser().parse( Person.class, JSON.getBytes( StandardCharsets.UTF_8 ) );
+
+        boolean ok = person.name.equals( expected.name ) || die( person.name );
+        ok = person.big == expected.big && person.score == expected.score || die();
+        ok = person.address.city.equals( expected.address.city ) || die();
+        ok = person.previous.size() == expected.previous.size() || die();
+    }
+
+    @Test
+    public void listsAndReuse() {
+        JsonSchemaParser parser = new JsonParserFactory().createSchemaParser();
+
+        List<Address> addresses = parser.parseList( Address.class, " [ { \"city\" : \"A\", \"zip\" : 1 }, { \"zip\" : 2, \"city\" : \"B\" } ] " );
+        boolean ok = addresses.size() == 2 || die( "" + addresses.size() );
+        ok = addresses.get( 1 ).city.equals( "B" ) && addresses.get( 1 ).zip == 2 || die();
+
+        ok = parser.parseList( Address.class, "[]" ).isEmpty() || die();
+        ok = parser.parse( Address.class, "{}" ).city == null || die();
+        ok = parser.parse( Address.class, "null" ) == null || die();
+        ok = parser.parse( Address.class, "{\"city\":\"C\"}" ).city.equals( "C" ) || die();
+    }
+
+    @Test
+    public void badInputSaysSo() {
+        JsonSchemaParser parser = new JsonParserFactory().createSchemaParser();
+        try {
+            parser.parse( Address.class, "{\"city\" \"C\"}" );
+            die();
+        } catch ( JsonException ex ) {
+            boolean ok = ex.getMessage().contains( "expecting current character to be ':'" ) || die( ex.getMessage() );
+        }
+        try {
+            parser.parse( Address.class, "[1]" );
+            die();
+        } catch ( JsonException ex ) {
+            boolean ok = ex.getMessage().contains( "expecting a JSON object" ) || die( ex.getMessage() );
+        }
+    }
+}
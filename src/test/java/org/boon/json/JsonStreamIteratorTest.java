@@ -0,0 +1,98 @@
+package org.boon.json;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.boon.Exceptions.die;
+
+public class JsonStreamIteratorTest {
+
+    public static class Record {
+        String name;
+        int count;
+        List<String> tags;
+        Record child;
+    }
+
+    private static String record( int index ) {
+        /* The longest records come first so later ones are parsed over stale chars in the reused buffer. */
+        StringBuilder tags = new StringBuilder();
+        for ( int tag = 0; tag < 50 - index % 50; tag++ ) {
+            tags.append( tag == 0 ? "" : "," ).append( "\"tag" ).append( tag ).append( '"' );
+        }
+        return "{\"name\":\"name \\\"" + index + "\\\"\",\"count\":" + index + ",\"tags\":[" + tags + "]," +
+                "\"child\":{\"name\":\"child" + index + "\",\"count\":" + -index + "}}";
+    }
+
+    private static void check( List<Record> records, int count ) {
+        boolean ok = records.size() == count || die( "" + records.size() );
+        for ( int index = 0; index < count; index++ ) {
+            Record record = records.get( index );
+            ok = record.name.equals( "name \"" + index + "\"" ) || die( record.name );
+            ok = record.count == index || die( "" + record.count );
+            ok = record.tags.size() == 50 - index % 50 || die( "" + record.tags );
+            ok = record.tags.get( record.tags.size() - 1 ).equals( "tag" + ( record.tags.size() - 1 ) ) || die( "" + record.tags );
+            ok = record.child.name.equals( "child" + index ) || die( record.child.name );
+            ok = record.child.count == -index || die( "" + record.child.count );
+        }
+    }
+
+    private static <T> List<T> drain( Iterator<T> iterator ) {
+        List<T> list = new ArrayList<>();
+        while ( iterator.hasNext() ) {
+            list.add( iterator.next() );
+        }
+        return list;
+    }
+
+    @Test
+    public void itemsOfATopLevelArray() {
+        StringBuilder json = new StringBuilder( "[" );
+        for ( int index = 0; index < 200; index++ ) {
+            json.append( index == 0 ? "\n  " : ",\n  " ).append( record( index ) );
+        }
+        json.append( "\n]\n" );
+
+        Iterator<Record> records = new JsonParserFactory().create().parseIterator( Record.class,
+                new ByteArrayInputStream( json.toString().getBytes( StandardCharsets.UTF_8 ) ) );
+        check( drain( records ), 200 );
+        boolean ok = !records.hasNext() || die();
+    }
+
+    @Test
+    public void newlineDelimitedRecords() {
+        StringBuilder json = new StringBuilder();
+        for ( int index = 0; index < 200; index++ ) {
+            json.append( record( index ) ).append( '\n' );
+        }
+
+        check( drain( new JsonParserFactory().create().parseIterator( Record.class, new StringReader( json.toString() ) ) ), 200 );
+        check( drain( new JsonParserFactory().createFastObjectMapperParser().parseIterator( Record.class,
+                new StringReader( json.toString() ) ) ), 200 );
+    }
+
+    @Test
+    public void mapsKeepTheirOwnChars() {
+        String json = "{\"name\":\"a long first name\"}\n{\"name\":\"b\"}\n";
+        List<Map> maps = drain( new JsonParserFactory().createFastParser().parseIterator( Map.class, new StringReader( json ) ) );
+
+        boolean ok = maps.get( 0 ).get( "name" ).toString().equals( "a long first name" ) || die( "" + maps );
+        ok = maps.get( 1 ).get( "name" ).toString().equals( "b" ) || die( "" + maps );
+    }
+
+    @Test
+    public void scalarItems() {
+        List<Integer> numbers = drain( new JsonParserFactory().create().parseIterator( Integer.class, new StringReader( "[1, 2, 3]" ) ) );
+        boolean ok = numbers.toString().equals( "[1, 2, 3]" ) || die( "" + numbers );
+
+        List<Integer> empty = drain( new JsonParserFactory().create().parseIterator( Integer.class, new StringReader( " [ ] " ) ) );
+        ok = empty.isEmpty() || die( "" + empty );
+    }
+}
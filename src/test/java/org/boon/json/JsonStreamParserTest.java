@@ -0,0 +1,109 @@
+package org.boon.json;
+
+import org.boon.json.implementation.JsonStreamParser;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.boon.Exceptions.die;
+
+public class JsonStreamParserTest {
+
+    private static final String JSON = "{ \"name\" : \"Rick \\\"Hightower\\\" \\u00e9\\n\", \"age\" : -42, \"score\" : 1.5e3, " +
+            "\"big\" : 12345678901, \"tags\" : [ \"a\", true, false, null, [ ], { } ], " +
+            "\"address\" : { \"city\" : \"Tucson\", \"zip\" : 85701 } }";
+
+    private static List<JsonToken> tokens( JsonStreamParser parser ) {
+        List<JsonToken> tokens = new ArrayList<>();
+        JsonToken token;
+        while ( ( token = parser.next() ) != null ) {
+            tokens.add( token );
+        }
+        return tokens;
+    }
+
+    @Test
+    public void tokensComeOutInOrder() {
+        JsonStreamParser parser = new JsonParserFactory().createStreamParser( new StringReader( "{\"a\":[1,\"x\",true],\"b\":null}" ) );
+        List<JsonToken> tokens = tokens( parser );
+
+        boolean ok = tokens.toString().equals( "[START_OBJECT, FIELD_NAME, START_ARRAY, NUMBER, STRING, TRUE, END_ARRAY, " +
+                "FIELD_NAME, NULL, END_OBJECT]" ) || die( tokens.toString() );
+    }
+
+    @Test
+    public void valuesMatchTheTreeParser() {
+        Object expected = new JsonParserFactory().create().parse( JSON );
+
+        /* Small buffers split strings, escapes, numbers and literals across refills. */
+        for ( int size = 1; size < 40; size++ ) {
+            JsonStreamParser parser = new JsonStreamParser( new StringReader( JSON ), size );
+            parser.next();
+            Object value = parser.value();
+            boolean ok = expected.equals( value ) || die( size + " " + value );
+            ok = parser.next() == null || die();
+        }
+    }
+
+    @Test
+    public void subTreesAreBuiltOnDemand() {
+        JsonStreamParser parser = new JsonStreamParser( new StringReader( JSON ), 8 );
+        parser.next();
+
+        Object address = null;
+        String name = null;
+        while ( parser.next() == JsonToken.FIELD_NAME ) {
+            if ( parser.fieldName().equals( "address" ) ) {
+                address = parser.value();
+            } else if ( parser.fieldName().equals( "name" ) ) {
+                parser.next();
+                name = parser.text();
+            } else {
+                parser.skip();
+                if ( parser.token() == JsonToken.NUMBER ) {
+                    parser.number();
+                }
+            }
+        }
+
+        boolean ok = parser.token() == JsonToken.END_OBJECT || die( "" + parser.token() );
+        ok = parser.depth() == 0 || die();
+        ok = name.equals( "Rick \"Hightower\" é\n" ) || die( name );
+        ok = ( ( Map ) address ).get( "city" ).equals( "Tucson" ) || die( "" + address );
+        ok = ( ( Map ) address ).get( "zip" ).equals( 85701 ) || die( "" + address );
+    }
+
+    @Test
+    public void valuesOneAfterAnother() {
+        String lines = "{\"id\":1}\n{\"id\":2}\n\n[3]\n\"four\" 5\n";
+        JsonStreamParser parser = new JsonParserFactory().createStreamParser(
+                new ByteArrayInputStream( lines.getBytes( StandardCharsets.UTF_8 ) ) );
+
+        List<Object> values = new ArrayList<>();
+        while ( parser.next() != null ) {
+            values.add( parser.value() );
+        }
+        parser.close();
+
+        boolean ok = values.toString().equals( "[{id=1}, {id=2}, [3], four, 5]" ) || die( values.toString() );
+    }
+
+    @Test
+    public void badInputComplains() {
+        String[] bad = { "{\"a\":1,}", "[1 2]", "{\"a\" 1}", "[1,", "\"open", "{\"a\":tru}", "[x]" };
+        for ( String json : bad ) {
+            try {
+                JsonStreamParser parser = new JsonStreamParser( new StringReader( json ), 2 );
+                while ( parser.next() != null ) {
+                }
+                die( json );
+            } catch ( JsonException ex ) {
+            }
+        }
+    }
+}
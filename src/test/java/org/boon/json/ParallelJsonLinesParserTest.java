@@ -0,0 +1,133 @@
+package org.boon.json;
+
+import org.boon.core.reflection.fields.FieldAccessMode;
+import org.boon.json.implementation.ParallelJsonLinesParser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.boon.Exceptions.die;
+
+public class ParallelJsonLinesParserTest {
+
+    public static class Line {
+        int id;
+        String name;
+        List<Integer> values;
+    }
+
+    File file;
+    ForkJoinPool pool;
+    ParallelJsonLinesParser parser;
+
+    @Before
+    public void setUp() throws Exception {
+        StringBuilder lines = new StringBuilder();
+        for ( int index = 0; index < 2_000; index++ ) {
+            lines.append( "{\"id\":" ).append( index ).append( ",\"name\":\"né" ).append( index )
+                    .append( "\",\"values\":[" ).append( index ).append( ',' ).append( index * 2 ).append( "]}" )
+                    .append( index % 3 == 0 ? "\r\n" : "\n" );
+            if ( index % 100 == 0 ) {
+                lines.append( "   \n" );
+            }
+        }
+
+        file = File.createTempFile( "lines", ".json" );
+        file.deleteOnExit();
+        Files.write( file.toPath(), lines.toString().getBytes( StandardCharsets.UTF_8 ) );
+
+        pool = new ForkJoinPool( 4 );
+        /* Small chunks so the lines are spread over many workers. */
+        parser = new ParallelJsonLinesParser( FieldAccessMode.create( FieldAccessMode.FIELD, false ), pool, 1_000 );
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    private static void check( Line line, int index ) {
+        boolean ok = line.id == index || die( "" + line.id );
+        ok = line.name.equals( "né" + index ) || die( line.name );
+        ok = line.values.equals( Arrays.asList( index, index * 2 ) ) || die( "" + line.values );
+    }
+
+    @Test
+    public void inFileOrder() {
+        Iterator<Line> lines = parser.iterator( file.toPath(), Line.class );
+        int index = 0;
+        while ( lines.hasNext() ) {
+            check( lines.next(), index++ );
+        }
+        boolean ok = index == 2_000 || die( "" + index );
+
+        final List<Line> handled = new ArrayList<>();
+        parser.forEachInOrder( file.toPath(), Line.class, new JsonRecordHandler<Line>() {
+            @Override
+            public void handle( Line record ) {
+                handled.add( record );
+            }
+        } );
+        for ( index = 0; index < handled.size(); index++ ) {
+            check( handled.get( index ), index );
+        }
+        ok = handled.size() == 2_000 || die( "" + handled.size() );
+    }
+
+    @Test
+    public void asTheWorkersGo() {
+        final Queue<Line> handled = new ConcurrentLinkedQueue<>();
+        parser.forEach( file.toPath(), Line.class, new JsonRecordHandler<Line>() {
+            @Override
+            public void handle( Line record ) {
+                handled.add( record );
+            }
+        } );
+
+        Line[] lines = new Line[ 2_000 ];
+        for ( Line line : handled ) {
+            boolean ok = lines[ line.id ] == null || die( "twice " + line.id );
+            lines[ line.id ] = line;
+        }
+        for ( int index = 0; index < lines.length; index++ ) {
+            check( lines[ index ], index );
+        }
+    }
+
+    @Test
+    public void badLineSaysWhere() throws Exception {
+        Files.write( file.toPath(), "{\"id\":1}\n{\"id\":}\n".getBytes( StandardCharsets.UTF_8 ) );
+        try {
+            parser.forEach( file.toPath(), Map.class, new JsonRecordHandler<Map>() {
+                @Override
+                public void handle( Map record ) {
+                }
+            } );
+            die();
+        } catch ( JsonException ex ) {
+            boolean ok = ex.getMessage().contains( "at byte 9" ) || die( ex.getMessage() );
+        }
+    }
+
+    @Test
+    public void shortBadLineAfterALongerOne() throws Exception {
+        Files.write( file.toPath(), "{\"a\":[1, 2]}\n{\"a\":[1,\n".getBytes( StandardCharsets.UTF_8 ) );
+        try {
+            parser.forEachInOrder( file.toPath(), Map.class, new JsonRecordHandler<Map>() {
+                @Override
+                public void handle( Map record ) {
+                }
+            } );
+            die();
+        } catch ( JsonException ex ) {
+            boolean ok = ex.getMessage().contains( "at byte 13" ) || die( ex.getMessage() );
+        }
+    }
+}
@@ -1,8 +1,35 @@
 package org.boon.tests;
 
+import org.boon.core.Function;
+import org.boon.criteria.ObjectFilter;
+import org.boon.criteria.internal.Criteria;
+import org.boon.criteria.internal.QueryFactory;
+import org.boon.datarepo.LookupIndex;
+import org.boon.datarepo.Page;
+import org.boon.datarepo.PlanStep;
+import org.boon.datarepo.Repo;
+import org.boon.datarepo.Repos;
+import org.boon.datarepo.ResultSet;
+import org.boon.sort.Sort;
+import org.boon.tests.model.Employee;
+import org.boon.tests.model.SalesEmployee;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
 public class RepoBuilderTest {
     RepoDefaultTest test;
 
@@ -94,4 +121,396 @@ public class RepoBuilderTest {
 
     }
 
-}
\ No newline at end of file
+
+    @Test
+    public void testConcurrent() throws Exception {
+
+        test.repo = TestHelper.createFromBuilderConcurrent();
+        runAll();
+
+    }
+
+
+    @Test
+    public void testConcurrentWritersShareBucket() throws Exception {
+
+        final Repo<String, Employee> repo = TestHelper.createFromBuilderConcurrent();
+        final int threadCount = 8;
+        final int perThread = 500;
+
+        List<Thread> threads = new ArrayList<>();
+        for ( int t = 0; t < threadCount; t++ ) {
+            final int threadNum = t;
+            Thread thread = new Thread( new Runnable() {
+                @Override
+                public void run() {
+                    for ( int index = 0; index < perThread; index++ ) {
+                        /* Every writer lands in the same lastName bucket. */
+                        repo.add( Employee.employee( "Con" + index, "Current",
+                                "c-" + threadNum + "-" + index, "05.29.70", index ) );
+                        repo.query( ObjectFilter.eq( "lastName", "Current" ) );
+                    }
+                }
+            } );
+            threads.add( thread );
+            thread.start();
+        }
+
+        for ( Thread thread : threads ) {
+            thread.join();
+        }
+
+        assertEquals( threadCount * perThread,
+                repo.query( ObjectFilter.eq( "lastName", "Current" ) ).size() );
+
+    }
+
+    @Test
+    public void testSnapshotQueries() throws Exception {
+
+        test.repo = TestHelper.createFromBuilderSnapshot();
+        runAll();
+
+    }
+
+    @Test
+    public void testSnapshotDoesNotSeeLaterEdits() throws Exception {
+
+        Repo<String, Employee> repo = TestHelper.createFromBuilderSnapshot();
+
+        ResultSet<Employee> before = repo.results( ObjectFilter.eq( "lastName", "Smith" ) );
+        int smiths = before.asList().size();
+
+        repo.update( "222-222-2222", "lastName", "Jones" );
+        repo.add( Employee.employee( "Bill", "Smith", "999-999-9999", "05.29.70", 10_000 ) );
+
+        assertEquals( smiths, before.asList().size() );
+        for ( Employee employee : before.asList() ) {
+            assertEquals( "Smith", employee.getLastName() );
+        }
+
+        assertEquals( smiths, repo.query( ObjectFilter.eq( "lastName", "Smith" ) ).size() );
+        assertEquals( 1, repo.query( ObjectFilter.eq( "lastName", "Jones" ) ).size() );
+        assertEquals( "Jones", repo.get( "222-222-2222" ).getLastName() );
+
+    }
+
+    @Test
+    public void testSnapshotQueryDoesNotWaitOnWriters() throws Exception {
+
+        final CountDownLatch editing = new CountDownLatch( 1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+
+        /* The key getter holds the writer in the middle of its edit. */
+        final Repo<String, Employee> repo = Repos.builder().primaryKey( "id" )
+                .searchIndex( "firstName" ).searchIndex( "lastName" )
+                .keyGetter( "firstName", new Function<Employee, String>() {
+                    @Override
+                    public String apply( Employee employee ) {
+                        if ( employee.getFirstName().equals( "Stuck" ) ) {
+                            editing.countDown();
+                            try {
+                                release.await();
+                            } catch ( InterruptedException e ) {
+                                throw new RuntimeException( e );
+                            }
+                        }
+                        return employee.getFirstName();
+                    }
+                } )
+                .snapshotQueries().build( String.class, Employee.class, SalesEmployee.class );
+
+        repo.add( Employee.employee( "Bill", "Smith", "999-999-9999", "05.29.70", 10_000 ) );
+
+        ExecutorService executor = Executors.newFixedThreadPool( 2 );
+        try {
+            Future<?> writer = executor.submit( new Runnable() {
+                @Override
+                public void run() {
+                    repo.add( Employee.employee( "Stuck", "Smith", "888-888-8888", "05.29.70", 10_000 ) );
+                }
+            } );
+            editing.await();
+
+            Future<List<Employee>> query = executor.submit( new Callable<List<Employee>>() {
+                @Override
+                public List<Employee> call() {
+                    return repo.query( ObjectFilter.eq( "lastName", "Smith" ) );
+                }
+            } );
+            assertEquals( 1, query.get( 10, TimeUnit.SECONDS ).size() );
+
+            release.countDown();
+            writer.get( 10, TimeUnit.SECONDS );
+            assertEquals( 2, repo.query( ObjectFilter.eq( "lastName", "Smith" ) ).size() );
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+
+    }
+
+    @Test
+    public void testSnapshotVersionsTrackEachIndex() throws Exception {
+        Repo<String, Employee> repo = Repos.builder().primaryKey( "id" )
+                .searchIndex( "firstName" ).searchIndex( "lastName" ).searchIndex( "salary" )
+                .snapshotQueries().build( String.class, Employee.class, SalesEmployee.class );
+
+        repo.add( Employee.employee( "Bill", "Smith", "999-999-9999", "05.29.70", 10_000 ) );
+        repo.add( Employee.employee( "Rick", "Smith", "888-888-8888", "05.29.70", 20_000 ) );
+
+        /* Only the firstName index changes, the others carry over from the last version. */
+        repo.modify( repo.get( "999-999-9999" ), "firstName", "William" );
+        assertEquals( 1, repo.query( ObjectFilter.eq( "firstName", "William" ) ).size() );
+        assertEquals( 0, repo.query( ObjectFilter.eq( "firstName", "Bill" ) ).size() );
+        assertEquals( 2, repo.query( ObjectFilter.eq( "lastName", "Smith" ) ).size() );
+        assertEquals( 1, repo.query( ObjectFilter.gt( "salary", 15_000 ) ).size() );
+
+        repo.modify( repo.get( "888-888-8888" ), "salary", 5_000 );
+        assertEquals( 0, repo.query( ObjectFilter.gt( "salary", 15_000 ) ).size() );
+        assertEquals( "William", repo.query( ObjectFilter.gt( "salary", 7_500 ) ).get( 0 ).getFirstName() );
+
+        repo.removeByKey( "999-999-9999" );
+        assertEquals( 0, repo.query( ObjectFilter.eq( "firstName", "William" ) ).size() );
+        assertEquals( 1, repo.query( ObjectFilter.eq( "lastName", "Smith" ) ).size() );
+    }
+
+    @Test
+    public void testBitmap() throws Exception {
+
+        test.repo = TestHelper.createFromBuilderBitmap();
+        runAll();
+
+    }
+
+    @Test
+    public void testBitmapAndOrNot() throws Exception {
+
+        Repo<String, Employee> repo = TestHelper.createFromBuilderBitmap();
+
+        assertEquals( 6, repo.query( ObjectFilter.eq( "lastName", "Smith" ) ).size() );
+
+        assertEquals( 2, repo.query( ObjectFilter.or(
+                ObjectFilter.eq( "lastName", "Sith" ), ObjectFilter.eq( "lastName", "Foo" ) ) ).size() );
+
+        assertEquals( 3, repo.query( ObjectFilter.not( ObjectFilter.eq( "lastName", "Smith" ) ) ).size() );
+
+        assertEquals( 3, repo.query( ObjectFilter.notEq( "lastName", "Smith" ) ).size() );
+
+        /* The bitmap narrows it down, the salary check runs on what is left. */
+        assertEquals( 2, repo.query( ObjectFilter.eq( "lastName", "Smith" ),
+                ObjectFilter.gt( "salary", 100_000 ) ).size() );
+
+        /* Swap Bob for a copy so the shared test employees stay as they are. */
+        repo.removeByKey( "222-222-2222" );
+        repo.add( Employee.employee( "Bob", "Sith", "222-222-2222", "05.29.70", 199_000 ) );
+        repo.removeByKey( "1111-222-2222" );
+
+        assertEquals( 5, repo.query( ObjectFilter.eq( "lastName", "Smith" ) ).size() );
+        assertEquals( "Bob", repo.query( ObjectFilter.eq( "lastName", "Sith" ) ).get( 0 ).getFirstName() );
+        assertEquals( 3, repo.query( ObjectFilter.not( ObjectFilter.eq( "lastName", "Smith" ) ) ).size() );
+    }
+
+    @Test
+    public void testBitmapSnapshotDoesNotSeeLaterEdits() throws Exception {
+
+        Repo<String, Employee> repo = TestHelper.createFromBuilderBitmap();
+        LookupIndex<Object, Employee> snapshot = ( LookupIndex<Object, Employee> ) repo.index( "lastName" ).snapshot();
+
+        repo.removeByKey( "222-222-2222" );
+        repo.add( Employee.employee( "Zed", "Smith", "777-777-7777", "05.29.70", 1_000 ) );
+
+        assertEquals( 6, snapshot.count( "Smith" ) );
+        assertEquals( 6, snapshot.getAll( "Smith" ).size() );
+        assertEquals( 6, repo.query( ObjectFilter.eq( "lastName", "Smith" ) ).size() );
+        for ( Employee employee : snapshot.getAll( "Smith" ) ) {
+            assertTrue( !employee.getFirstName().equals( "Zed" ) );
+        }
+    }
+
+    @Test
+    public void testBitmapIsRejectedInConcurrentRepos() throws Exception {
+        try {
+            Repos.builder().primaryKey( "id" ).bitmapIndex( "lastName" ).concurrent()
+                    .build( String.class, Employee.class, SalesEmployee.class );
+            fail( "bitmap indexes are not thread safe" );
+        } catch ( IllegalStateException expected ) {
+        }
+    }
+
+    @Test
+    public void testQueryPlanUsesMostSelectiveIndexFirst() throws Exception {
+
+        Repo<String, Employee> repo = TestHelper.createFromBuilder();
+
+        /* Six Smiths but only one Bob, so the firstName index goes first and lastName is checked on what is left. */
+        ResultSet<Employee> results = repo.results( ObjectFilter.eq( "lastName", "Smith" ),
+                ObjectFilter.eq( "firstName", "Bob" ) );
+        assertEquals( 1, results.size() );
+
+        List<PlanStep> plan = results.queryPlan();
+        assertEquals( 2, plan.size() );
+        assertEquals( "USE_INDEX", plan.get( 0 ).getType() );
+        assertTrue( plan.get( 0 ).getDetails().startsWith( "firstName" ) );
+        assertEquals( 1, plan.get( 0 ).getEstimatedRows() );
+        assertEquals( 1, plan.get( 0 ).getActualRows() );
+        assertEquals( "FILTER_CANDIDATES", plan.get( 1 ).getType() );
+        assertEquals( 1, plan.get( 1 ).getActualRows() );
+
+        /* Ranges are estimated from the index statistics. */
+        results = repo.results( ObjectFilter.gt( "salary", 100_000 ), ObjectFilter.eq( "lastName", "Smith" ) );
+        assertEquals( 2, results.size() );
+        plan = results.queryPlan();
+        assertEquals( "USE_INDEX", plan.get( 0 ).getType() );
+        assertTrue( plan.get( 0 ).getEstimatedRows() > 0 );
+
+        /* Not equal can not use an index, so it is a scan. */
+        plan = repo.results( ObjectFilter.notEq( "firstName", "Bob" ) ).queryPlan();
+        assertEquals( "LINEAR_SEARCH", plan.get( 0 ).getType() );
+    }
+
+    @Test
+    public void testParallelScan() throws Exception {
+
+        test.repo = TestHelper.createWithNoIndexesParallelScan();
+        runAll();
+
+    }
+
+    @Test
+    public void testParallelScanOfLargeRepo() throws Exception {
+
+        Repo<String, Employee> repo = TestHelper.createWithNoIndexesParallelScan();
+        for ( int index = 0; index < 20_000; index++ ) {
+            repo.add( Employee.employee( "Gen" + ( index % 100 ), "Erated", "gen-" + index, "05.29.70", index ) );
+        }
+
+        /* Large enough to be split up, and in the same order as a scan on this thread. */
+        List<Employee> results = repo.query( ObjectFilter.eq( "firstName", "Gen42" ),
+                ObjectFilter.gte( "salary", 10_000 ) );
+        assertEquals( 100, results.size() );
+        assertEquals( QueryFactory.filter( repo.all(), ObjectFilter.and( ObjectFilter.eq( "firstName", "Gen42" ),
+                ObjectFilter.gte( "salary", 10_000 ) ) ), results );
+
+        assertEquals( 20_000, repo.query( ObjectFilter.or( ObjectFilter.eq( "lastName", "Erated" ),
+                ObjectFilter.eq( "firstName", "Nobody" ) ) ).size() );
+
+        assertEquals( "LINEAR_SEARCH", repo.results( ObjectFilter.eq( "lastName", "Erated" ) )
+                .queryPlan().get( 0 ).getType() );
+    }
+
+    @Test
+    public void testLazyResults() throws Exception {
+
+        Repo<String, Employee> repo = TestHelper.createFromBuilder();
+
+        /* Only one candidate is read to hand back the first Smith. */
+        ResultSet<Employee> results = repo.lazyResults( ObjectFilter.eq( "lastName", "Smith" ) );
+        assertEquals( "Smith", results.firstItem().getLastName() );
+        assertEquals( 1, results.queryPlan().get( 0 ).getActualRows() );
+        assertEquals( 2, results.paginate( 0, 2 ).size() );
+        assertEquals( 6, results.size() );
+        assertEquals( 1, results.paginate( 5, 10 ).size() );
+        assertEquals( 0, results.paginate( 20, 10 ).size() );
+        assertEquals( 0, repo.lazyResults( ObjectFilter.eq( "lastName", "Smith" ) ).paginate( 20, 10 ).size() );
+
+        repo.lazyResults( ObjectFilter.eq( "firstName", "Bob" ), ObjectFilter.eq( "lastName", "Smith" ) ).expectOne();
+        repo.lazyResults( ObjectFilter.eq( "firstName", "Nobody" ) ).expectNone();
+
+        /* Same matches as the eager results, however the plan gets them. */
+        assertSameItems( repo, ObjectFilter.gt( "salary", 50_000 ), ObjectFilter.eq( "lastName", "Smith" ) );
+        assertSameItems( repo, ObjectFilter.gte( "salary", 99_000 ) );
+        assertSameItems( repo, ObjectFilter.gt( "lastName", "Foo" ) );
+        assertSameItems( repo, ObjectFilter.or( ObjectFilter.eq( "firstName", "Bob" ),
+                ObjectFilter.eq( "lastName", "Sith" ) ) );
+        assertSameItems( repo, ObjectFilter.notEq( "lastName", "Smith" ) );
+        assertEquals( repo.size(), repo.lazyResults().size() );
+    }
+
+    private static void assertSameItems( Repo<String, Employee> repo, Criteria... criteria ) {
+        assertEquals( new HashSet<>( repo.results( criteria ).asList() ),
+                new HashSet<>( repo.lazyResults( criteria ).asList() ) );
+    }
+
+    @Test
+    public void testKeysetPagination() throws Exception {
+
+        Repo<String, Employee> repo = TestHelper.createFromBuilder();
+
+        /* Pages of one make the cursor step over employees that share a salary. */
+        List<Employee> walked = new ArrayList<>();
+        Page<Employee> page = repo.page( "salary", null, 1 );
+        while ( true ) {
+            walked.addAll( page.getItems() );
+            if ( !page.hasMore() ) {
+                break;
+            }
+            page = repo.page( "salary", page.getCursor(), 1 );
+        }
+
+        assertEquals( repo.size(), walked.size() );
+        assertEquals( repo.size(), new HashSet<>( walked ).size() );
+        for ( int index = 1; index < walked.size(); index++ ) {
+            assertTrue( walked.get( index - 1 ).getSalary() <= walked.get( index ).getSalary() );
+        }
+
+        page = repo.page( "salary", null, 4, ObjectFilter.eq( "lastName", "Smith" ) );
+        assertEquals( 4, page.getItems().size() );
+        page = repo.page( "salary", page.getCursor(), 4, ObjectFilter.eq( "lastName", "Smith" ) );
+        assertEquals( 2, page.getItems().size() );
+        assertEquals( false, page.hasMore() );
+    }
+
+    @Test
+    public void testKeysetCursorSurvivesItsItemGoing() throws Exception {
+
+        Repo<String, Employee> repo = Repos.builder().primaryKey( "id" ).searchIndex( "salary" )
+                .build( String.class, Employee.class );
+        repo.add( Employee.employee( "C", "Tie", "c", "05.29.70", 100 ) );
+        repo.add( Employee.employee( "A", "Tie", "a", "05.29.70", 100 ) );
+        repo.add( Employee.employee( "D", "Tie", "d", "05.29.70", 100 ) );
+        repo.add( Employee.employee( "B", "Tie", "b", "05.29.70", 100 ) );
+        repo.add( Employee.employee( "E", "Top", "e", "05.29.70", 200 ) );
+
+        /* Ties come out in primary key order. */
+        Page<Employee> page = repo.page( "salary", null, 2 );
+        assertEquals( "A", page.getItems().get( 0 ).getFirstName() );
+        assertEquals( "B", page.getItems().get( 1 ).getFirstName() );
+
+        /* The last item handed out goes, the rest of its tie still comes next. */
+        repo.removeByKey( "b" );
+        page = repo.page( "salary", page.getCursor(), 2 );
+        assertEquals( 2, page.getItems().size() );
+        assertEquals( "C", page.getItems().get( 0 ).getFirstName() );
+        assertEquals( "D", page.getItems().get( 1 ).getFirstName() );
+
+        page = repo.page( "salary", page.getCursor(), 2 );
+        assertEquals( 1, page.getItems().size() );
+        assertEquals( "E", page.getItems().get( 0 ).getFirstName() );
+        assertEquals( false, page.hasMore() );
+    }
+
+    @Test
+    public void testSortedPages() throws Exception {
+
+        Repo<String, Employee> repo = TestHelper.createFromBuilder();
+
+        /* salary walks its search index, firstName keeps the top in a heap. The empNum then-sort makes the order total. */
+        for ( String field : new String[]{ "salary", "firstName" } ) {
+            for ( Sort sort : new Sort[]{ Sort.asc( field ).then( "empNum" ), Sort.desc( field ).then( "empNum" ) } ) {
+                List<Employee> sorted = repo.sortedQuery( sort );
+                for ( int start = 0; start <= sorted.size(); start += 3 ) {
+                    assertEquals( sorted.subList( start, Math.min( start + 4, sorted.size() ) ),
+                            repo.sortedQuery( sort, start, 4 ) );
+                }
+
+                List<Employee> smiths = repo.sortedQuery( sort, ObjectFilter.eq( "lastName", "Smith" ) );
+                assertEquals( smiths.subList( 1, 3 ), repo.sortedQuery( sort, 1, 2, ObjectFilter.eq( "lastName", "Smith" ) ) );
+                assertEquals( smiths.subList( 1, 3 ),
+                        repo.lazyResults( ObjectFilter.eq( "lastName", "Smith" ) ).sort( sort ).paginate( 1, 2 ) );
+                assertEquals( smiths.get( 0 ),
+                        repo.lazyResults( ObjectFilter.eq( "lastName", "Smith" ) ).sort( sort ).firstItem() );
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package org.boon.tests;
+
+import org.boon.datarepo.Repo;
+import org.boon.datarepo.RepoBuilder;
+import org.boon.datarepo.Repos;
+import org.boon.tests.model.Employee;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.boon.criteria.ObjectFilter.*;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static org.boon.tests.TestHelper.ids;
+
+public class RepoBulkLoadTest {
+
+    private static List<Employee> employees( int count ) {
+        List<Employee> employees = new ArrayList<>( count );
+        for ( int index = 0; index < count; index++ ) {
+            Employee employee = Employee.employee( "First" + index, "Last" + index % 37, "id-" + index, "05.29.70", index % 101 * 10 );
+            employee.setEmpNum( ( index * 7919L ) % count );
+            employees.add( employee );
+        }
+        return employees;
+    }
+
+    private static RepoBuilder builder() {
+        return Repos.builder().primaryKey( "id" ).searchIndex( "salary" ).lookupIndex( "lastName" )
+                .uniqueSearchIndex( "empNum" ).uniqueLookupIndex( "firstName" );
+    }
+
+    private static void assertSameQueries( Repo<String, Employee> expected, Repo<String, Employee> actual ) {
+        assertEquals( expected.size(), actual.size() );
+        assertEquals( ids( expected.query( eq( "lastName", "Last5" ) ) ), ids( actual.query( eq( "lastName", "Last5" ) ) ) );
+        assertEquals( ids( expected.query( eq( "salary", 500 ) ) ), ids( actual.query( eq( "salary", 500 ) ) ) );
+        assertEquals( ids( expected.query( gt( "salary", 900 ) ) ), ids( actual.query( gt( "salary", 900 ) ) ) );
+        assertEquals( ids( expected.query( lt( "salary", 30 ) ) ), ids( actual.query( lt( "salary", 30 ) ) ) );
+        assertEquals( ids( expected.query( gt( "empNum", 4_990L ) ) ), ids( actual.query( gt( "empNum", 4_990L ) ) ) );
+        assertEquals( ids( expected.query( eq( "firstName", "First42" ) ) ), ids( actual.query( eq( "firstName", "First42" ) ) ) );
+        assertEquals( expected.query( eq( "salary", 500 ) ).size(), actual.query( eq( "salary", 500 ) ).size() );
+    }
+
+    @Test
+    public void testBulkLoadMatchesAddingOneAtATime() {
+        List<Employee> employees = employees( 5_000 );
+
+        Repo<String, Employee> oneAtATime = builder().build( String.class, Employee.class );
+        for ( Employee employee : employees ) {
+            oneAtATime.add( employee );
+        }
+
+        Repo<String, Employee> bulk = builder().build( String.class, Employee.class );
+        bulk.addAll( employees );
+
+        assertSameQueries( oneAtATime, bulk );
+
+        bulk.removeByKey( "id-42" );
+        bulk.add( Employee.employee( "New", "Last5", "id-new", "05.29.70", 500 ) );
+        oneAtATime.removeByKey( "id-42" );
+        oneAtATime.add( Employee.employee( "New", "Last5", "id-new", "05.29.70", 500 ) );
+        assertSameQueries( oneAtATime, bulk );
+    }
+
+    @Test
+    public void testDuplicateKeysAreSkipped() {
+        Repo<String, Employee> repo = builder().build( String.class, Employee.class );
+        repo.add( Employee.employee( "Rick", "Hightower", "id-1", "05.29.70", 100 ) );
+
+        List<Employee> employees = new ArrayList<>();
+        employees.add( Employee.employee( "Bob", "Smith", "id-1", "05.29.70", 200 ) );
+        employees.add( Employee.employee( "Diana", "Hightower", "id-2", "05.29.70", 300 ) );
+        employees.add( Employee.employee( "Dianna", "Hightower", "id-2", "05.29.70", 400 ) );
+        repo.addAll( employees );
+
+        assertEquals( 2, repo.size() );
+        assertEquals( "Rick", repo.get( "id-1" ).getFirstName() );
+        assertEquals( "Diana", repo.get( "id-2" ).getFirstName() );
+        assertEquals( 2, repo.query( eq( "lastName", "Hightower" ) ).size() );
+        assertEquals( 0, repo.query( eq( "salary", 400 ) ).size() );
+    }
+
+    @Test
+    public void testParallelIndexBuilds() {
+        List<Employee> employees = employees( 5_000 );
+
+        Repo<String, Employee> oneAtATime = builder().build( String.class, Employee.class );
+        for ( Employee employee : employees ) {
+            oneAtATime.add( employee );
+        }
+
+        Repo<String, Employee> bulk = builder().parallelScan().build( String.class, Employee.class );
+        bulk.addAll( employees );
+
+        assertSameQueries( oneAtATime, bulk );
+    }
+
+    @Test
+    public void testAddAllAsync() throws Exception {
+        List<Employee> employees = employees( 1_000 );
+
+        /* Not concurrent, so the load is done on this thread before the call returns. */
+        Repo<String, Employee> repo = builder().build( String.class, Employee.class );
+        repo.addAllAsync( employees.subList( 0, 250 ) );
+        assertEquals( 250, repo.size() );
+        assertTrue( repo.submitAll( employees.subList( 250, 500 ) ).isDone() );
+        assertEquals( 500, repo.size() );
+        repo.submitAll( employees.subList( 500, 1_000 ) ).get();
+
+        assertEquals( 1_000, repo.size() );
+        assertNotNull( repo.get( "id-999" ) );
+
+        Repo<String, Employee> concurrent = builder().concurrent().build( String.class, Employee.class );
+        concurrent.submitAll( employees ).get();
+        assertEquals( 1_000, concurrent.size() );
+        assertNull( concurrent.get( "id-1000" ) );
+    }
+}
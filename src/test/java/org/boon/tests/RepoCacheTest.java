@@ -0,0 +1,110 @@
+package org.boon.tests;
+
+import org.boon.datarepo.Repo;
+import org.boon.datarepo.Repos;
+import org.boon.datarepo.ResultSet;
+import org.boon.tests.model.Employee;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.boon.criteria.ObjectFilter.*;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertSame;
+import static org.boon.tests.TestHelper.ids;
+
+public class RepoCacheTest {
+
+    Repo<String, Employee> repo;
+
+    @Before
+    public void setUp() {
+        repo = Repos.builder().primaryKey( "id" ).searchIndex( "salary" ).lookupIndex( "lastName" )
+                .useCache().build( String.class, Employee.class );
+
+        for ( int index = 0; index < 100; index++ ) {
+            repo.add( Employee.employee( "First" + index, "Last" + index % 5, "id-" + index, "05.29.70", index * 10 ) );
+        }
+    }
+
+    @Test
+    public void testUpdateOnlyTouchesQueriesNamingTheProperty() {
+        ResultSet<Employee> bySalary = repo.results( gt( "salary", 900 ) );
+        ResultSet<Employee> byName = repo.results( eq( "lastName", "Last1" ) );
+        assertEquals( 9, bySalary.asList().size() );
+
+        repo.update( "id-1", "salary", 5_000 );
+
+        assertSame( byName, repo.results( eq( "lastName", "Last1" ) ) );
+        ResultSet<Employee> patched = repo.results( gt( "salary", 900 ) );
+        assertNotSame( bySalary, patched );
+        assertEquals( 10, patched.asList().size() );
+        assertEquals( 9, bySalary.asList().size() );
+
+        repo.update( "id-1", "salary", 10 );
+        assertEquals( 9, repo.results( gt( "salary", 900 ) ).asList().size() );
+    }
+
+    @Test
+    public void testAddAndRemovePatchResults() {
+        ResultSet<Employee> byName = repo.results( eq( "lastName", "Last1" ), lt( "salary", 500 ) );
+        assertEquals( 10, byName.asList().size() );
+
+        repo.add( Employee.employee( "New", "Last1", "id-new", "05.29.70", 1 ) );
+        repo.add( Employee.employee( "Other", "Last2", "id-other", "05.29.70", 1 ) );
+        repo.removeByKey( "id-11" );
+
+        Set<String> expected = ids( byName );
+        expected.add( "id-new" );
+        expected.remove( "id-11" );
+        assertEquals( expected, ids( repo.results( eq( "lastName", "Last1" ), lt( "salary", 500 ) ) ) );
+    }
+
+    @Test
+    public void testModifyPatchesResults() {
+        repo.results( eq( "lastName", "Last1" ) );
+        repo.results( or( eq( "lastName", "Last0" ), eq( "firstName", "Nobody" ) ) );
+
+        repo.modify( Employee.employee( "Moved", "Last0", "id-1", "05.29.70", 10 ) );
+
+        assertEquals( 19, repo.results( eq( "lastName", "Last1" ) ).asList().size() );
+        assertEquals( 21, repo.results( or( eq( "lastName", "Last0" ), eq( "firstName", "Nobody" ) ) ).asList().size() );
+        assertEquals( "Moved", repo.get( "id-1" ).getFirstName() );
+    }
+
+    @Test
+    public void testUpdateKeepsTheItemInPlace() {
+        List<String> before = names( repo.results( eq( "lastName", "Last1" ), lt( "salary", 500 ) ) );
+
+        repo.update( "id-11", "salary", 115 );
+
+        assertEquals( before, names( repo.results( eq( "lastName", "Last1" ), lt( "salary", 500 ) ) ) );
+    }
+
+    @Test
+    public void testBigResultsAreDroppedAndRunAgain() {
+        for ( int index = 100; index < 1_200; index++ ) {
+            repo.add( Employee.employee( "First" + index, "Last" + index % 5, "id-" + index, "05.29.70", index * 10 ) );
+        }
+        ResultSet<Employee> all = repo.results( gt( "salary", -1 ) );
+        assertEquals( 1_200, all.size() );
+
+        repo.update( "id-1", "salary", -5 );
+
+        ResultSet<Employee> again = repo.results( gt( "salary", -1 ) );
+        assertNotSame( all, again );
+        assertEquals( 1_199, again.size() );
+    }
+
+    private static List<String> names( ResultSet<Employee> results ) {
+        List<String> names = new ArrayList<>();
+        for ( Employee employee : results ) {
+            names.add( employee.getId() );
+        }
+        return names;
+    }
+}
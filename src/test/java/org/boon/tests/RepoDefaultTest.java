@@ -9,6 +9,8 @@ import org.boon.tests.model.Employee;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -53,6 +55,15 @@ public class RepoDefaultTest {
 
     }
 
+    @Test
+    public void testAddAllReportsWhetherAnythingWasAdded() throws Exception {
+        Employee emp = employee( "Diana", "Hightower", "21785999", "08.15.82", 100_000 );
+        Collection<Employee> batch = Arrays.asList( emp );
+        assertTrue( repo.addAll( batch ) );
+        assertFalse( repo.addAll( batch ) );
+        assertNotNull( repo.get( "21785999" ) );
+    }
+
     @Test
     public void testRemove() throws Exception {
         Employee emp = employee( "Diana", "Hightower", "21785999", "08.15.82", 100_000 );
@@ -0,0 +1,205 @@
+package org.boon.tests;
+
+import org.boon.core.timer.TimeKeeper;
+import org.boon.criteria.Update;
+import org.boon.datarepo.Repo;
+import org.boon.datarepo.Repos;
+import org.boon.datarepo.modification.ModificationEvent;
+import org.boon.datarepo.modification.ModificationListener;
+import org.boon.tests.model.Employee;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.boon.criteria.ObjectFilter.eq;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+public class RepoExpiryTest {
+
+    final AtomicLong now = new AtomicLong( 1_000_000 );
+    final List<String> events = new ArrayList<>();
+
+    TimeKeeper clock = new TimeKeeper() {
+        @Override
+        public long time() {
+            return now.get();
+        }
+    };
+
+    ModificationListener listener = new ModificationListener() {
+        @Override
+        public void modification( ModificationEvent event ) {
+            String description = event.toString();
+            if ( description.contains( "type=BEFORE_EXPIRE" ) ) {
+                events.add( "before " + event.getKey() );
+            } else if ( description.contains( "type=AFTER_EXPIRE" ) ) {
+                events.add( "after " + event.getKey() );
+            }
+        }
+    };
+
+    @Before
+    public void setUp() {
+        events.clear();
+    }
+
+    @Test
+    public void testTimeToLive() {
+        Repo<String, Employee> repo = Repos.builder().primaryKey( "id" ).lookupIndex( "lastName" ).searchIndex( "salary" )
+                .timeToLive( 1, TimeUnit.SECONDS ).timeKeeper( clock ).events( listener )
+                .build( String.class, Employee.class );
+
+        repo.add( Employee.employee( "Rick", "Hightower", "1", "05.29.70", 100 ) );
+        now.addAndGet( 500 );
+        repo.add( Employee.employee( "Bob", "Hightower", "2", "05.29.70", 200 ) );
+
+        now.addAndGet( 499 );
+        assertNotNull( repo.get( "1" ) );
+
+        now.addAndGet( 1 );
+        assertNull( repo.get( "1" ) );
+        assertNotNull( repo.get( "2" ) );
+        assertEquals( 1, repo.query( eq( "lastName", "Hightower" ) ).size() );
+        assertEquals( 0, repo.query( eq( "salary", 100 ) ).size() );
+        assertEquals( "[before 1, after 1]", events.toString() );
+
+        /* Writing the item again starts its time again. */
+        now.addAndGet( 400 );
+        repo.modify( repo.get( "2" ) );
+        now.addAndGet( 500 );
+        assertNotNull( repo.get( "2" ) );
+        now.addAndGet( 500 );
+        assertNull( repo.get( "2" ) );
+        assertEquals( 0, repo.size() );
+    }
+
+    @Test
+    public void testQueriesDoNotSeeExpiredItems() {
+        Repo<String, Employee> repo = Repos.builder().primaryKey( "id" ).lookupIndex( "lastName" )
+                .timeToLive( 1, TimeUnit.SECONDS ).timeKeeper( clock ).events( listener )
+                .build( String.class, Employee.class );
+
+        repo.add( Employee.employee( "Rick", "Hightower", "1", "05.29.70", 100 ) );
+        now.addAndGet( 1_000 );
+
+        /* No write or get in between, only queries. */
+        assertEquals( 0, repo.query( eq( "lastName", "Hightower" ) ).size() );
+        assertEquals( 0, repo.results( eq( "lastName", "Hightower" ) ).asList().size() );
+        assertEquals( "[before 1, after 1]", events.toString() );
+    }
+
+    @Test
+    public void testTimeToLiveProperty() {
+        Repo<String, Employee> repo = Repos.builder().primaryKey( "id" )
+                .timeToLive( 10, TimeUnit.SECONDS ).timeToLive( "empNum", TimeUnit.SECONDS ).timeKeeper( clock )
+                .build( String.class, Employee.class );
+
+        Employee shortLived = Employee.employee( "Rick", "Hightower", "1", "05.29.70", 100 );
+        shortLived.setEmpNum( 2 );
+        repo.add( shortLived );
+        repo.add( Employee.employee( "Bob", "Hightower", "2", "05.29.70", 200 ) );
+
+        now.addAndGet( 2_000 );
+        assertNull( repo.get( "1" ) );
+        assertNotNull( repo.get( "2" ) );
+
+        repo.update( "2", "empNum", 1L );
+        now.addAndGet( 1_000 );
+        assertNull( repo.get( "2" ) );
+    }
+
+    public static class Session {
+        String id;
+        short timeToLive;
+
+        Session( String id ) {
+            this.id = id;
+        }
+    }
+
+    @Test
+    public void testPrimitiveEditsOfTheTimeToLivePropertyStartTheTimeAgain() {
+        Repo<String, Session> repo = Repos.builder().primaryKey( "id" )
+                .timeToLive( 10, TimeUnit.SECONDS ).timeToLive( "timeToLive", TimeUnit.SECONDS ).timeKeeper( clock )
+                .build( String.class, Session.class );
+
+        repo.add( new Session( "1" ) );
+        repo.add( new Session( "2" ) );
+        repo.add( new Session( "3" ) );
+
+        repo.update( "1", "timeToLive", ( short ) 1 );
+        assertTrue( repo.compareAndUpdate( "2", "timeToLive", ( short ) 0, ( short ) 1 ) );
+
+        now.addAndGet( 2_000 );
+        assertNull( repo.get( "1" ) );
+        assertNull( repo.get( "2" ) );
+        assertNotNull( repo.get( "3" ) );
+    }
+
+    @Test
+    public void testUpdatesOfTheTimeToLivePropertyStartTheTimeAgain() {
+        Repo<String, Employee> repo = Repos.builder().primaryKey( "id" )
+                .timeToLive( 10, TimeUnit.SECONDS ).timeToLive( "empNum", TimeUnit.SECONDS ).timeKeeper( clock )
+                .build( String.class, Employee.class );
+
+        repo.add( Employee.employee( "Rick", "Hightower", "1", "05.29.70", 100 ) );
+        repo.add( Employee.employee( "Bob", "Hightower", "2", "05.29.70", 200 ) );
+
+        repo.update( "1", Update.set( "salary", 1 ), Update.set( "empNum", 1L ) );
+        repo.modify( repo.get( "2" ), Update.set( "salary", 1 ) );
+
+        now.addAndGet( 2_000 );
+        assertNull( repo.get( "1" ) );
+        assertNotNull( repo.get( "2" ) );
+    }
+
+    @Test
+    public void testEditsDropDueItemsFirst() {
+        Repo<String, Employee> repo = Repos.builder().primaryKey( "id" )
+                .timeToLive( 1, TimeUnit.SECONDS ).timeKeeper( clock ).events( listener )
+                .build( String.class, Employee.class );
+
+        repo.add( Employee.employee( "Rick", "Hightower", "1", "05.29.70", 100 ) );
+        now.addAndGet( 2_000 );
+
+        try {
+            repo.update( "1", Update.set( "salary", 1 ) );
+            fail();
+        } catch ( IllegalStateException expected ) {
+        }
+        assertEquals( "[before 1, after 1]", events.toString() );
+    }
+
+    @Test
+    public void testMaxSize() {
+        Repo<String, Employee> repo = Repos.builder().primaryKey( "id" ).lookupIndex( "lastName" ).maxSize( 3 )
+                .timeKeeper( clock ).events( listener )
+                .build( String.class, Employee.class );
+
+        for ( int index = 0; index < 3; index++ ) {
+            repo.add( Employee.employee( "First", "Last", "id-" + index, "05.29.70", index ) );
+        }
+        repo.modify( repo.get( "id-0" ) );
+        repo.add( Employee.employee( "First", "Last", "id-3", "05.29.70", 3 ) );
+        repo.add( Employee.employee( "First", "Last", "id-4", "05.29.70", 4 ) );
+
+        assertEquals( 3, repo.size() );
+        assertNotNull( repo.get( "id-0" ) );
+        assertNull( repo.get( "id-1" ) );
+        assertNull( repo.get( "id-2" ) );
+        assertEquals( 3, repo.query( eq( "lastName", "Last" ) ).size() );
+        assertEquals( "[before id-1, after id-1, before id-2, after id-2]", events.toString() );
+
+        repo.removeByKey( "id-0" );
+        repo.add( Employee.employee( "First", "Last", "id-5", "05.29.70", 5 ) );
+        assertEquals( 3, repo.size() );
+    }
+}
@@ -0,0 +1,113 @@
+package org.boon.tests;
+
+import org.boon.datarepo.Repo;
+import org.boon.datarepo.Repos;
+import org.boon.tests.model.Employee;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.boon.criteria.ObjectFilter.*;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+
+public class RepoGroupByTest {
+
+    Repo<String, Employee> repo;
+
+    @Before
+    public void setUp() {
+        repo = Repos.builder().primaryKey( "id" ).searchIndex( "salary" ).lookupIndex( "lastName" )
+                .build( String.class, Employee.class );
+
+        for ( int index = 0; index < 30; index++ ) {
+            Employee employee = Employee.employee( "First" + index % 4, "Last" + index % 3, "id-" + index, "05.29.70", index * 10 );
+            employee.setEmpNum( index % 2 );
+            repo.add( employee );
+        }
+    }
+
+    private static Map<Object, Map<String, Object>> byKey( String field, List<Map<String, Object>> rows ) {
+        Map<Object, Map<String, Object>> byKey = new HashMap<>();
+        for ( Map<String, Object> row : rows ) {
+            byKey.put( row.get( field ), row );
+        }
+        return byKey;
+    }
+
+    @Test
+    public void testGroupByIndexedField() {
+        List<Map<String, Object>> rows = repo.results().groupBy( "lastName" )
+                .count().sum( "salary" ).min( "salary" ).max( "salary" ).avg( "salary" ).countDistinct( "firstName" )
+                .asListOfMaps();
+
+        assertEquals( 3, rows.size() );
+        Map<String, Object> last1 = byKey( "lastName", rows ).get( "Last1" );
+
+        /* 1, 4, 7 ... 28 */
+        assertEquals( 10L, last1.get( "count" ) );
+        assertEquals( 1450L, last1.get( "sum.salary" ) );
+        assertEquals( 10, last1.get( "min.salary" ) );
+        assertEquals( 280, last1.get( "max.salary" ) );
+        assertEquals( 145.0, last1.get( "avg.salary" ) );
+        assertEquals( 4L, last1.get( "distinct.firstName" ) );
+    }
+
+    @Test
+    public void testGroupByFilteredResults() {
+        List<Map<String, Object>> rows = repo.results( lt( "salary", 100 ) ).groupBy( "lastName" )
+                .count().sum( "salary" ).asListOfMaps();
+
+        Map<Object, Map<String, Object>> byKey = byKey( "lastName", rows );
+        assertEquals( 3, rows.size() );
+        assertEquals( 4L, byKey.get( "Last0" ).get( "count" ) );
+        assertEquals( 180L, byKey.get( "Last0" ).get( "sum.salary" ) );
+        assertEquals( 3L, byKey.get( "Last1" ).get( "count" ) );
+        assertEquals( 120L, byKey.get( "Last1" ).get( "sum.salary" ) );
+    }
+
+    @Test
+    public void testGroupByIndexSeesChanges() {
+        repo.removeByKey( "id-0" );
+        repo.update( "id-1", "lastName", "Other" );
+
+        Map<Object, Map<String, Object>> byKey = byKey( "lastName", repo.results().groupBy( "lastName" ).asListOfMaps() );
+
+        assertEquals( 4, byKey.size() );
+        assertEquals( 9L, byKey.get( "Last0" ).get( "count" ) );
+        assertEquals( 9L, byKey.get( "Last1" ).get( "count" ) );
+        assertEquals( 1L, byKey.get( "Other" ).get( "count" ) );
+    }
+
+    @Test
+    public void testGroupByManyFields() {
+        List<Map<String, Object>> rows = repo.results().groupBy( "lastName", "empNum" ).count().max( "firstName" )
+                .asListOfMaps();
+
+        assertEquals( 6, rows.size() );
+        Map<String, Object> last0 = null;
+        for ( Map<String, Object> row : rows ) {
+            assertEquals( 5L, row.get( "count" ) );
+            if ( row.get( "lastName" ).equals( "Last0" ) && row.get( "empNum" ).equals( 0L ) ) {
+                last0 = row;
+            }
+        }
+
+        /* 0, 6, 12, 18, 24 */
+        assertEquals( "First2", last0.get( "max.firstName" ) );
+    }
+
+    @Test
+    public void testEmptyGroups() {
+        assertEquals( 0, repo.results( gt( "salary", 1_000 ) ).groupBy( "lastName" ).count().asListOfMaps().size() );
+
+        List<Map<String, Object>> rows = repo.results( eq( "id", "id-0" ) ).groupBy( "firstName" ).avg( "salary" )
+                .asListOfMaps();
+        assertEquals( 1, rows.size() );
+        assertEquals( 0.0, rows.get( 0 ).get( "avg.salary" ) );
+        assertNull( rows.get( 0 ).get( "count" ) );
+    }
+}
@@ -0,0 +1,132 @@
+package org.boon.tests;
+
+import org.boon.datarepo.Join;
+import org.boon.datarepo.Repo;
+import org.boon.datarepo.Repos;
+import org.boon.tests.model.Employee;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.boon.criteria.ObjectFilter.*;
+import static org.boon.criteria.ProjectedSelector.max;
+import static org.boon.criteria.Selector.select;
+import static junit.framework.Assert.assertEquals;
+
+public class RepoJoinTest {
+
+    public static class Team {
+        private String id;
+        private String lastName;
+        private int budget;
+
+        public Team( String id, String lastName, int budget ) {
+            this.id = id;
+            this.lastName = lastName;
+            this.budget = budget;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getLastName() {
+            return lastName;
+        }
+
+        public int getBudget() {
+            return budget;
+        }
+    }
+
+    Repo<String, Employee> employees;
+
+    @Before
+    public void setUp() {
+        employees = Repos.builder().primaryKey( "id" ).searchIndex( "salary" ).lookupIndex( "lastName" )
+                .build( String.class, Employee.class );
+
+        for ( int index = 0; index < 12; index++ ) {
+            employees.add( Employee.employee( "First" + index, "Last" + index % 4, "id-" + index, "05.29.70", index * 10 ) );
+        }
+    }
+
+    private static Repo<String, Team> teams( boolean indexed ) {
+        Repo<String, Team> teams = indexed
+                ? Repos.builder().primaryKey( "id" ).lookupIndex( "lastName" ).build( String.class, Team.class )
+                : Repos.builder().primaryKey( "id" ).build( String.class, Team.class );
+
+        teams.add( new Team( "red", "Last0", 100 ) );
+        teams.add( new Team( "blue", "Last1", 200 ) );
+        teams.add( new Team( "green", "Last1", 300 ) );
+        teams.add( new Team( "none", "Nobody", 400 ) );
+        return teams;
+    }
+
+    private static Set<String> pairs( List<Map<String, Object>> rows ) {
+        Set<String> pairs = new HashSet<>();
+        for ( Map<String, Object> row : rows ) {
+            pairs.add( row.get( "firstName" ) + "/" + row.get( "budget" ) );
+        }
+        return pairs;
+    }
+
+    @Test
+    public void testIndexNestedLoop() {
+        Join<Employee, Team> join = employees.results( lt( "salary", 60 ) ).join( teams( true ), "lastName", "lastName" );
+        List<Map<String, Object>> rows = join.asListOfMaps();
+
+        /* First0 and First4 are Last0, First1 and First5 are Last1 and in two teams. */
+        assertEquals( 6, rows.size() );
+        assertEquals( pairs( rows ), new HashSet<>( Arrays.asList(
+                "First0/100", "First4/100", "First1/200", "First1/300", "First5/200", "First5/300" ) ) );
+        assertEquals( "INDEX_NESTED_LOOP", join.queryPlan().get( 0 ).getType() );
+        assertEquals( 6, join.queryPlan().get( 0 ).getActualRows() );
+
+        /* Left fields win, the id is the employee id. */
+        assertEquals( "id-", ( ( String ) rows.get( 0 ).get( "id" ) ).substring( 0, 3 ) );
+    }
+
+    @Test
+    public void testHashJoinMatchesIndexNestedLoop() {
+        Join<Employee, Team> hashJoin = employees.results().join( teams( false ), "lastName", "lastName" );
+        Join<Employee, Team> indexJoin = employees.results().join( teams( true ), "lastName", "lastName" );
+
+        assertEquals( pairs( indexJoin.asListOfMaps() ), pairs( hashJoin.asListOfMaps() ) );
+        assertEquals( 9, hashJoin.asListOfMaps().size() );
+        assertEquals( "HASH_JOIN", hashJoin.queryPlan().get( 0 ).getType() );
+    }
+
+    @Test
+    public void testJoinResultSetsWithSelectors() {
+        Repo<String, Team> teams = teams( false );
+
+        /* A result set with every employee is probed through the lastName index. */
+        Join<Team, Employee> join = teams.results( gt( "budget", 150 ) ).join( employees.results(), "lastName", "lastName" )
+                .selectLeft( select( "id" ), select( "budget" ) ).selectRight( select( "firstName" ), max( "salary" ) );
+        List<Map<String, Object>> rows = join.asListOfMaps();
+
+        assertEquals( 6, rows.size() );
+        assertEquals( "INDEX_NESTED_LOOP", join.queryPlan().get( 0 ).getType() );
+        assertEquals( 3, rows.get( 1 ).size() );
+        assertEquals( 90, rows.get( 0 ).get( "max.salary" ) );
+
+        List selected = join.results().select( select( "firstName" ) ).asList();
+        assertEquals( 6, selected.size() );
+        assertEquals( rows.get( 0 ).get( "firstName" ), ( ( Map ) selected.get( 0 ) ).get( "firstName" ) );
+
+        Join<Team, Employee> filtered = teams.results().join( employees.results( eq( "lastName", "Last0" ) ), "lastName", "lastName" );
+        int count = 0;
+        for ( Map<String, Object> row : filtered ) {
+            assertEquals( "red", row.get( "id" ) );
+            count++;
+        }
+        assertEquals( 3, count );
+        assertEquals( "HASH_JOIN", filtered.queryPlan().get( 0 ).getType() );
+    }
+}
@@ -0,0 +1,128 @@
+package org.boon.tests;
+
+import org.boon.datarepo.DataRepoException;
+import org.boon.datarepo.Repo;
+import org.boon.datarepo.Repos;
+import org.boon.datarepo.impl.journal.Journal;
+import org.boon.tests.model.Employee;
+import org.boon.tests.model.SalesEmployee;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.lang.reflect.Field;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+import static org.boon.tests.TestHelper.assertSameRepo;
+
+public class RepoJournalTest {
+
+    private static Repo<String, Employee> journaled( File directory, long snapshotAfterBytes ) {
+        return Repos.builder().primaryKey( "id" ).searchIndex( "salary" ).searchIndex( "lastName" )
+                .journal( directory, snapshotAfterBytes )
+                .build( String.class, Employee.class, SalesEmployee.class );
+    }
+
+    private static void fill( Repo<String, Employee> repo ) {
+        for ( int index = 0; index < 200; index++ ) {
+            repo.add( index % 3 == 0
+                    ? Employee.employee( "First" + index, "Last" + index % 5, "id-" + index, "05.29.70", index * 100, true )
+                    : Employee.employee( "First" + index, "Last" + index % 5, "id-" + index, "05.29.70", index * 100 ) );
+        }
+        repo.update( "id-1", "firstName", "Changed" );
+        repo.update( "id-4", "salary", 1_000_000 );
+        repo.removeByKey( "id-2" );
+        repo.delete( repo.get( "id-3" ) );
+
+        Employee modified = Employee.employee( "Modified", "Last0", "id-5", "05.29.70", 5 );
+        repo.modify( modified );
+    }
+
+    @Test
+    public void testReplayLog() throws Exception {
+        File directory = Files.createTempDirectory( "repo-journal" ).toFile();
+
+        Repo<String, Employee> repo = journaled( directory, Long.MAX_VALUE );
+        fill( repo );
+
+        Repo<String, Employee> recovered = journaled( directory, Long.MAX_VALUE );
+        assertSameRepo( repo, recovered );
+        assertEquals( "Changed", recovered.get( "id-1" ).getFirstName() );
+        assertEquals( 1_000_000, recovered.get( "id-4" ).getSalary() );
+        assertEquals( "Modified", recovered.get( "id-5" ).getFirstName() );
+        assertNull( recovered.get( "id-2" ) );
+        assertNull( recovered.get( "id-3" ) );
+    }
+
+    @Test
+    public void testSnapshotsAndTornTail() throws Exception {
+        File directory = Files.createTempDirectory( "repo-journal" ).toFile();
+
+        Repo<String, Employee> repo = journaled( directory, 4096 );
+        fill( repo );
+        assertTrue( new File( directory, "snapshot" ).exists() );
+
+        Repo<String, Employee> recovered = journaled( directory, 4096 );
+        assertSameRepo( repo, recovered );
+
+        /* A crash in the middle of a record leaves a length with too few bytes behind it. */
+        recovered.update( "id-6", "firstName", "Last write" );
+        long last = 0;
+        for ( String name : directory.list() ) {
+            if ( name.startsWith( "log." ) ) {
+                last = Math.max( last, Long.parseLong( name.substring( 4 ) ) );
+            }
+        }
+        try ( FileOutputStream out = new FileOutputStream( new File( directory, "log." + last ), true ) ) {
+            out.write( new byte[]{ 0, 0, 0, 50, 1, 2, 3, 4, 5 } );
+        }
+
+        Repo<String, Employee> afterCrash = journaled( directory, 4096 );
+        assertSameRepo( recovered, afterCrash );
+        assertEquals( "Last write", afterCrash.get( "id-6" ).getFirstName() );
+    }
+
+    @Test
+    public void testFailedWriteBreaksTheJournal() throws Exception {
+        File directory = Files.createTempDirectory( "repo-journal" ).toFile();
+        Repo<String, Employee> repo = Repos.builder().primaryKey( "id" )
+                .build( String.class, Employee.class, SalesEmployee.class );
+        Journal journal = new Journal( directory, Employee.class, Long.MAX_VALUE );
+        journal.recover( repo );
+
+        repo.add( Employee.employee( "Rick", "Hightower", "id-1", "05.29.70", 100 ) );
+        journal.log( repo, "id-1" );
+
+        /* The disk fails once, and then works again. */
+        Field field = Journal.class.getDeclaredField( "log" );
+        field.setAccessible( true );
+        FileChannel good = ( FileChannel ) field.get( journal );
+        FileChannel broken = FileChannel.open( new File( directory, "broken" ).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE );
+        broken.close();
+        field.set( journal, broken );
+
+        repo.add( Employee.employee( "Lost", "Hightower", "id-2", "05.29.70", 100 ) );
+        try {
+            journal.log( repo, "id-2" );
+            fail();
+        } catch ( DataRepoException expected ) {
+        }
+
+        field.set( journal, good );
+        repo.add( Employee.employee( "Later", "Hightower", "id-3", "05.29.70", 100 ) );
+        try {
+            journal.log( repo, "id-3" );
+            fail( "a commit after a failed write must not vouch for the lost record" );
+        } catch ( DataRepoException expected ) {
+            assertTrue( expected.getMessage().contains( "failed earlier" ) );
+        }
+        journal.close();
+    }
+}
@@ -0,0 +1,97 @@
+package org.boon.tests;
+
+import org.boon.criteria.internal.Criteria;
+import org.boon.datarepo.Repo;
+import org.boon.datarepo.Repos;
+import org.boon.datarepo.ResultSet;
+import org.boon.tests.model.Employee;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.boon.criteria.ObjectFilter.*;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static org.boon.tests.TestHelper.ids;
+
+public class RepoNGramIndexTest {
+
+    Repo<String, Employee> indexed;
+    Repo<String, Employee> scanned;
+
+    @Before
+    public void setUp() {
+        indexed = Repos.builder().primaryKey( "id" ).ngramIndex( "lastName" ).build( String.class, Employee.class );
+        scanned = Repos.builder().primaryKey( "id" ).build( String.class, Employee.class );
+
+        String[] names = { "Hightower", "Tower", "Towers", "Smith", "Smithson", "Goldsmith", "Lowe", "Ow", "Bowen", "Lo" };
+        List<Employee> employees = new ArrayList<>();
+        for ( int index = 0; index < 40; index++ ) {
+            employees.add( Employee.employee( "First" + index, names[ index % names.length ], "id-" + index, "05.29.70", index ) );
+        }
+
+        /* Half bulk loaded, half added one at a time, so both ways of building the trigrams are covered. */
+        indexed.addAll( employees.subList( 0, 20 ) );
+        scanned.addAll( employees.subList( 0, 20 ) );
+        for ( Employee employee : employees.subList( 20, 40 ) ) {
+            indexed.add( employee );
+            scanned.add( employee );
+        }
+    }
+
+    private void assertSame( Criteria criteria, int expected ) {
+        ResultSet<Employee> results = indexed.results( criteria );
+        assertEquals( ids( scanned.results( criteria ) ), ids( results ) );
+        assertEquals( expected, results.asList().size() );
+    }
+
+    @Test
+    public void testContains() {
+        assertSame( contains( "lastName", "ower" ), 12 );
+        assertSame( contains( "lastName", "mith" ), 12 );
+        assertSame( contains( "lastName", "zzz" ), 0 );
+
+        /* Too short for a trigram, every key is checked. */
+        assertSame( contains( "lastName", "ow" ), 20 );
+
+        assertEquals( "USE_INDEX", indexed.results( contains( "lastName", "ower" ) ).queryPlan().get( 0 ).getType() );
+    }
+
+    @Test
+    public void testEndsWith() {
+        assertSame( endsWith( "lastName", "ower" ), 8 );
+        assertSame( endsWith( "lastName", "smith" ), 4 );
+        assertSame( endsWith( "lastName", "h" ), 8 );
+        assertSame( endsWith( "lastName", "Hightower" ), 4 );
+    }
+
+    @Test
+    public void testMatches() {
+        assertSame( matches( "lastName", "[A-Z]ow.*" ), 16 );
+        assertSame( matches( "lastName", ".*mith(son)?" ), 12 );
+        assertSame( matches( "lastName", "Smith|Lowe" ), 8 );
+        assertSame( matches( "lastName", "Tower\\w*" ), 8 );
+        assertSame( and( matches( "lastName", ".*ower" ), lt( "salary", 20 ) ), 4 );
+    }
+
+    @Test
+    public void testChanges() {
+        indexed.update( "id-0", "lastName", "Glower" );
+        scanned.update( "id-0", "lastName", "Glower" );
+        indexed.removeByKey( "id-1" );
+        scanned.removeByKey( "id-1" );
+
+        assertSame( contains( "lastName", "ower" ), 11 );
+        assertSame( endsWith( "lastName", "lower" ), 1 );
+        assertSame( contains( "lastName", "ightower" ), 3 );
+
+        for ( int index = 0; index < 40; index += 10 ) {
+            indexed.removeByKey( "id-" + ( index + 2 ) );
+            scanned.removeByKey( "id-" + ( index + 2 ) );
+        }
+        assertSame( contains( "lastName", "Towers" ), 0 );
+        assertTrue( indexed.results( endsWith( "lastName", "ers" ) ).asList().isEmpty() );
+    }
+}
@@ -0,0 +1,147 @@
+package org.boon.tests;
+
+import org.boon.criteria.internal.Criteria;
+import org.boon.datarepo.Repo;
+import org.boon.datarepo.Repos;
+import org.boon.datarepo.spi.SearchIndex;
+import org.boon.sort.Sort;
+import org.boon.tests.model.Employee;
+import org.boon.tests.model.SalesEmployee;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.*;
+
+import static org.boon.criteria.ObjectFilter.*;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static org.boon.tests.TestHelper.ids;
+
+public class RepoOffHeapTest {
+
+    Repo<String, Employee> offHeap;
+    Repo<String, Employee> onHeap;
+
+    @Before
+    public void setUp() throws Exception {
+        offHeap = Repos.builder().primaryKey( "id" ).searchIndex( "salary" ).lookupIndex( "lastName" )
+                .offHeap( Files.createTempDirectory( "repo-columns" ).toFile() )
+                .build( String.class, Employee.class, SalesEmployee.class );
+        onHeap = Repos.builder().primaryKey( "id" ).searchIndex( "salary" ).lookupIndex( "lastName" )
+                .build( String.class, Employee.class, SalesEmployee.class );
+
+        for ( int index = 0; index < 300; index++ ) {
+            Employee employee = employee( index );
+            offHeap.add( employee );
+            onHeap.add( employee );
+        }
+    }
+
+    private static Employee employee( int index ) {
+        Employee employee = index % 3 == 0
+                ? Employee.employee( "First" + index, "Last" + index % 7, "id-" + index, "05.29.70", index * 10, true )
+                : Employee.employee( "First" + index, "Last" + index % 7, "id-" + index, "05.29.70", index * 10 );
+        employee.setEmpNum( index );
+        return employee;
+    }
+
+    private void assertSameQuery( Criteria... criteria ) {
+        assertEquals( ids( onHeap.query( criteria ) ), ids( offHeap.query( criteria ) ) );
+    }
+
+    @Test
+    public void testGet() {
+        Employee employee = offHeap.get( "id-9" );
+        assertEquals( "id-9", employee.getId() );
+        assertEquals( SalesEmployee.class, employee.getClass() );
+        assertEquals( "First9", employee.getFirstName() );
+        assertEquals( 90, employee.getSalary() );
+        assertEquals( 9L, employee.getEmpNum() );
+        assertEquals( onHeap.get( "id-9" ).getBirthDate(), employee.getBirthDate() );
+        assertEquals( 1, ( ( SalesEmployee ) employee ).getCommissionRate() );
+
+        assertEquals( Employee.class, offHeap.get( "id-10" ).getClass() );
+        assertNotSame( offHeap.get( "id-10" ), offHeap.get( "id-10" ) );
+        assertNull( offHeap.get( "id-1000" ) );
+        assertEquals( 300, offHeap.size() );
+    }
+
+    @Test
+    public void testQueries() {
+        assertSameQuery( eq( "lastName", "Last3" ) );
+        assertSameQuery( gt( "salary", 2500 ) );
+        assertSameQuery( between( "empNum", 100L, 200L ) );
+        assertSameQuery( startsWith( "firstName", "First2" ) );
+        assertSameQuery( eq( "lastName", "Last3" ), lt( "salary", 1500 ) );
+        assertSameQuery( or( eq( "lastName", "Last3" ), gte( "empNum", 290L ) ) );
+        assertSameQuery( not( eq( "lastName", "Last3" ) ), startsWith( "firstName", "First1" ) );
+        assertSameQuery( in( "salary", 10, 20, 30, 40 ) );
+
+        assertEquals( "USE_BITMAP",
+                offHeap.results( startsWith( "firstName", "First2" ), gt( "salary", 100 ) ).queryPlan().get( 0 ).getType() );
+    }
+
+    @Test
+    public void testEdits() {
+        offHeap.update( "id-1", "firstName", "Changed" );
+        offHeap.update( "id-2", "salary", 1_000_000 );
+        offHeap.removeByKey( "id-4" );
+        offHeap.modify( Employee.employee( "Modified", "Last0", "id-5", "05.29.70", 5 ) );
+
+        assertEquals( "Changed", offHeap.get( "id-1" ).getFirstName() );
+        assertEquals( 1_000_000, offHeap.get( "id-2" ).getSalary() );
+        assertNull( offHeap.get( "id-4" ) );
+        assertEquals( 299, offHeap.size() );
+        assertEquals( ids( Arrays.asList( offHeap.get( "id-2" ) ) ), ids( offHeap.query( gt( "salary", 100_000 ) ) ) );
+        assertTrue( ids( offHeap.query( eq( "lastName", "Last0" ) ) ).contains( "id-5" ) );
+        assertTrue( ids( offHeap.query( eq( "firstName", "Changed" ) ) ).contains( "id-1" ) );
+        assertEquals( 0, offHeap.query( eq( "firstName", "First1" ) ).size() );
+    }
+
+    @Test
+    public void testSortedPaging() {
+        List<Employee> page = offHeap.sortedQuery( Sort.asc( "salary" ), 10, 5, gte( "salary", 1000 ) );
+        assertEquals( 5, page.size() );
+        assertEquals( 1100, page.get( 0 ).getSalary() );
+        assertEquals( 1140, page.get( 4 ).getSalary() );
+    }
+
+    @Test
+    public void testEstimatesAreCloseToTheCount() throws Exception {
+        Repo<String, Employee> repo = Repos.builder().primaryKey( "id" ).searchIndex( "salary" )
+                .offHeap( Files.createTempDirectory( "repo-columns" ).toFile() )
+                .build( String.class, Employee.class, SalesEmployee.class );
+        for ( int index = 0; index < 10_000; index++ ) {
+            repo.add( employee( index ) );
+        }
+
+        SearchIndex<Integer, Employee> salary = ( SearchIndex<Integer, Employee> ) repo.index( "salary" );
+        assertEquals( 10_000, salary.size() );
+        int estimate = salary.estimateBetween( 25_000, false, null, false );
+        assertTrue( String.valueOf( estimate ), Math.abs( estimate - 7_499 ) < 750 );
+        assertEquals( 7_499, repo.query( gt( "salary", 25_000 ) ).size() );
+    }
+
+    @Test
+    public void testReplacedStringsAreReclaimed() throws Exception {
+        File directory = Files.createTempDirectory( "repo-columns" ).toFile();
+        Repo<String, Employee> repo = Repos.builder().primaryKey( "id" ).offHeap( directory )
+                .build( String.class, Employee.class, SalesEmployee.class );
+        for ( int index = 0; index < 100; index++ ) {
+            repo.add( employee( index ) );
+        }
+        for ( int round = 0; round < 200; round++ ) {
+            for ( int index = 0; index < 100; index++ ) {
+                repo.update( "id-" + index, "firstName", "Name" + round + "-" + index );
+            }
+        }
+
+        assertEquals( "Name199-42", repo.get( "id-42" ).getFirstName() );
+        assertEquals( 1, repo.query( eq( "firstName", "Name199-7" ) ).size() );
+        assertTrue( new File( directory, "firstName.heap" ).length() < 64 * 1024 );
+    }
+}
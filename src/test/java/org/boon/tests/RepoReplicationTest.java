@@ -0,0 +1,244 @@
+package org.boon.tests;
+
+import org.boon.datarepo.DataRepoException;
+import org.boon.datarepo.Repo;
+import org.boon.datarepo.Repos;
+import org.boon.datarepo.impl.replication.ChangeSink;
+import org.boon.datarepo.impl.replication.ReplicationFollower;
+import org.boon.datarepo.impl.replication.ReplicationLeader;
+import org.boon.datarepo.impl.replication.ReplicationServer;
+import org.boon.datarepo.impl.replication.StreamChangeSink;
+import org.boon.tests.model.Employee;
+import org.boon.tests.model.SalesEmployee;
+import org.junit.Test;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+import static org.boon.tests.TestHelper.assertSameRepo;
+
+public class RepoReplicationTest {
+
+    private static Repo<String, Employee> repo( ReplicationLeader leader ) {
+        return leader == null
+                ? Repos.builder().primaryKey( "id" ).searchIndex( "salary" ).lookupIndex( "lastName" )
+                .build( String.class, Employee.class, SalesEmployee.class )
+                : Repos.builder().primaryKey( "id" ).searchIndex( "salary" ).lookupIndex( "lastName" ).replicate( leader )
+                .build( String.class, Employee.class, SalesEmployee.class );
+    }
+
+    private static void fill( Repo<String, Employee> repo, int from, int to ) {
+        for ( int index = from; index < to; index++ ) {
+            repo.add( index % 3 == 0
+                    ? Employee.employee( "First" + index, "Last" + index % 5, "id-" + index, "05.29.70", index * 100, true )
+                    : Employee.employee( "First" + index, "Last" + index % 5, "id-" + index, "05.29.70", index * 100 ) );
+        }
+    }
+
+    private static void change( Repo<String, Employee> repo ) {
+        repo.update( "id-1", "firstName", "Changed" );
+        repo.update( "id-4", "salary", 1_000_000 );
+        repo.removeByKey( "id-2" );
+        repo.delete( repo.get( "id-3" ) );
+        repo.modify( Employee.employee( "Modified", "Last0", "id-5", "05.29.70", 5 ) );
+    }
+
+    @Test
+    public void testFileTransport() throws Exception {
+        File file = File.createTempFile( "repo-changes", ".bin" );
+        file.deleteOnExit();
+
+        ReplicationLeader leader = new ReplicationLeader( Employee.class );
+        Repo<String, Employee> repo = repo( leader );
+        fill( repo, 0, 100 );
+
+        /* Joining late, the follower gets a snapshot of the first hundred. */
+        leader.follow( new StreamChangeSink( new FileOutputStream( file ) ) );
+        fill( repo, 100, 200 );
+        change( repo );
+        assertTrue( leader.flush( 10, TimeUnit.SECONDS ) );
+
+        Repo<String, Employee> copy = repo( null );
+        ReplicationFollower follower = new ReplicationFollower( copy, Employee.class );
+        try ( FileInputStream in = new FileInputStream( file ) ) {
+            follower.apply( in );
+        }
+        assertSameRepo( repo, copy );
+        assertEquals( leader.sequence(), follower.sequence() );
+
+        /* Reading the file again from the start only applies what is new. */
+        repo.clear();
+        fill( repo, 0, 10 );
+        assertTrue( leader.flush( 10, TimeUnit.SECONDS ) );
+        try ( FileInputStream in = new FileInputStream( file ) ) {
+            follower.apply( in );
+        }
+        assertSameRepo( repo, copy );
+        assertEquals( 10, copy.size() );
+        leader.close();
+    }
+
+    @Test
+    public void testSequenceNumbers() throws Exception {
+        File early = File.createTempFile( "repo-changes", ".bin" );
+        File late = File.createTempFile( "repo-changes", ".bin" );
+        early.deleteOnExit();
+        late.deleteOnExit();
+
+        ReplicationLeader leader = new ReplicationLeader( Employee.class );
+        Repo<String, Employee> repo = repo( leader );
+        leader.follow( new StreamChangeSink( new FileOutputStream( early ) ) );
+        fill( repo, 0, 10 );
+        leader.follow( new StreamChangeSink( new FileOutputStream( late ) ) );
+        fill( repo, 10, 20 );
+        leader.close();
+
+        List<byte[]> earlyFrames = frames( Files.readAllBytes( early.toPath() ) );
+        List<byte[]> lateFrames = frames( Files.readAllBytes( late.toPath() ) );
+        assertEquals( 21, earlyFrames.size() );
+        assertEquals( 11, lateFrames.size() );
+
+        /* All of the early stream, then the late snapshot and batches are already applied. */
+        Repo<String, Employee> copy = repo( null );
+        ReplicationFollower follower = new ReplicationFollower( copy, Employee.class );
+        follower.apply( stream( earlyFrames ) );
+        assertEquals( 20, follower.sequence() );
+        follower.apply( stream( lateFrames ) );
+        assertEquals( 20, follower.sequence() );
+        assertSameRepo( repo, copy );
+
+        /* The early snapshot then the late batches leaves out changes 1 to 10. */
+        List<byte[]> gap = new ArrayList<>( lateFrames );
+        gap.set( 0, earlyFrames.get( 0 ) );
+        try {
+            new ReplicationFollower( repo( null ), Employee.class ).apply( stream( gap ) );
+            fail();
+        } catch ( DataRepoException ex ) {
+            assertTrue( ex.getMessage().contains( "Missed changes 1 to 10" ) );
+        }
+
+        /* Batches with no snapshot before them. */
+        try {
+            new ReplicationFollower( repo( null ), Employee.class ).apply( stream( lateFrames.subList( 1, 11 ) ) );
+            fail();
+        } catch ( DataRepoException ex ) {
+            assertTrue( ex.getMessage().contains( "no snapshot" ) );
+        }
+
+        /* A torn last frame ends the stream. */
+        byte[] torn = Arrays.copyOf( lateFrames.get( 10 ), lateFrames.get( 10 ).length - 3 );
+        List<byte[]> tail = new ArrayList<>( lateFrames.subList( 0, 10 ) );
+        tail.add( torn );
+        follower = new ReplicationFollower( repo( null ), Employee.class );
+        follower.apply( stream( tail ) );
+        assertEquals( 19, follower.sequence() );
+    }
+
+    @Test
+    public void testSlowFollowerIsDropped() throws Exception {
+        final CountDownLatch stuck = new CountDownLatch( 1 );
+        final CountDownLatch closed = new CountDownLatch( 1 );
+        ReplicationLeader leader = new ReplicationLeader( Employee.class );
+        Repo<String, Employee> repo = repo( leader );
+
+        /* Never gets past the snapshot, like a follower whose socket stopped reading. */
+        leader.follow( new ChangeSink() {
+            @Override
+            public void send( byte[] frame, int length ) throws IOException {
+                try {
+                    stuck.await();
+                } catch ( InterruptedException ex ) {
+                    throw new InterruptedIOException();
+                }
+            }
+
+            @Override
+            public void close() {
+                closed.countDown();
+            }
+        } );
+        assertEquals( 1, leader.followers() );
+
+        fill( repo, 0, 5_000 );
+        assertEquals( 5_000, leader.sequence() );
+        assertEquals( 0, leader.followers() );
+
+        stuck.countDown();
+        assertTrue( closed.await( 10, TimeUnit.SECONDS ) );
+        leader.close();
+    }
+
+    private static List<byte[]> frames( byte[] bytes ) {
+        List<byte[]> frames = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.wrap( bytes );
+        while ( buffer.hasRemaining() ) {
+            byte[] frame = new byte[ buffer.getInt( buffer.position() ) + 8 ];
+            buffer.get( frame );
+            frames.add( frame );
+        }
+        return frames;
+    }
+
+    private static InputStream stream( List<byte[]> frames ) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for ( byte[] frame : frames ) {
+            out.write( frame, 0, frame.length );
+        }
+        return new ByteArrayInputStream( out.toByteArray() );
+    }
+
+    @Test
+    public void testSocketTransport() throws Exception {
+        ReplicationLeader leader = new ReplicationLeader( Employee.class );
+        Repo<String, Employee> repo = repo( leader );
+        ReplicationServer server = new ReplicationServer( leader, 0, InetAddress.getLoopbackAddress() );
+        fill( repo, 0, 50 );
+
+        Repo<String, Employee> first = repo( null );
+        Repo<String, Employee> second = repo( null );
+        ReplicationFollower firstFollower = new ReplicationFollower( first, Employee.class );
+        ReplicationFollower secondFollower = new ReplicationFollower( second, Employee.class );
+        firstFollower.connect( "127.0.0.1", server.port() );
+        waitFor( leader, 1 );
+
+        fill( repo, 50, 150 );
+        secondFollower.connect( "127.0.0.1", server.port() );
+        waitFor( leader, 2 );
+        fill( repo, 150, 200 );
+        change( repo );
+
+        waitFor( firstFollower, leader.sequence() );
+        waitFor( secondFollower, leader.sequence() );
+        assertSameRepo( repo, first );
+        assertSameRepo( repo, second );
+
+        server.close();
+        leader.close();
+    }
+
+    private static void waitFor( ReplicationLeader leader, int followers ) throws InterruptedException {
+        long end = System.currentTimeMillis() + 10_000;
+        while ( leader.followers() < followers ) {
+            assertTrue( System.currentTimeMillis() < end );
+            Thread.sleep( 5 );
+        }
+    }
+
+    private static void waitFor( ReplicationFollower follower, long sequence ) throws InterruptedException {
+        long end = System.currentTimeMillis() + 10_000;
+        while ( follower.sequence() < sequence ) {
+            assertTrue( System.currentTimeMillis() < end );
+            Thread.sleep( 5 );
+        }
+    }
+}
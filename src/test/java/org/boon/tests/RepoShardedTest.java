@@ -0,0 +1,190 @@
+package org.boon.tests;
+
+import org.boon.criteria.ObjectFilter;
+import org.boon.datarepo.Aggregate;
+import org.boon.datarepo.Page;
+import org.boon.datarepo.Repo;
+import org.boon.datarepo.Repos;
+import org.boon.datarepo.View;
+import org.boon.datarepo.impl.ShardedRepo;
+import org.boon.datarepo.impl.indexes.SearchIndexDefault;
+import org.boon.sort.Sort;
+import org.boon.tests.model.Employee;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.boon.criteria.ProjectedSelector.max;
+import static org.boon.criteria.ProjectedSelector.min;
+import static org.boon.criteria.Selector.selects;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+import static org.boon.tests.TestHelper.ids;
+
+public class RepoShardedTest {
+
+    Repo<String, Employee> sharded;
+    Repo<String, Employee> plain;
+
+    @Before
+    public void setUp() {
+        sharded = Repos.builder().primaryKey( "id" ).searchIndex( "salary" ).searchIndex( "lastName" )
+                .lookupIndex( "firstName" ).shards( 4 )
+                .build( String.class, Employee.class );
+        plain = Repos.builder().primaryKey( "id" ).searchIndex( "salary" ).searchIndex( "lastName" )
+                .lookupIndex( "firstName" )
+                .build( String.class, Employee.class );
+
+        /* Each repo gets its own copies, an edit to one must not show up in the other. */
+        sharded.addAll( employees() );
+        plain.addAll( employees() );
+        for ( int index = 0; index < 500; index += 9 ) {
+            sharded.removeByKey( "id-" + index );
+            plain.removeByKey( "id-" + index );
+        }
+        sharded.update( "id-1", "salary", 1_000_000 );
+        plain.update( "id-1", "salary", 1_000_000 );
+    }
+
+    private static List<Employee> employees() {
+        List<Employee> employees = new ArrayList<>();
+        for ( int index = 0; index < 500; index++ ) {
+            employees.add( Employee.employee( "First" + index % 7, "Last" + index % 5, "id-" + index, "05.29.70", index * 10 ) );
+        }
+        return employees;
+    }
+
+    private static List<String> idList( List<Employee> employees ) {
+        List<String> ids = new ArrayList<>();
+        for ( Employee employee : employees ) {
+            ids.add( employee.getId() );
+        }
+        return ids;
+    }
+
+    @Test
+    public void testWritesGoToOneShard() {
+        ShardedRepo<String, Employee> shards = ( ShardedRepo<String, Employee> ) sharded;
+        assertEquals( 4, shards.shardCount() );
+        assertEquals( plain.size(), sharded.size() );
+
+        int total = 0;
+        Set<Repo<String, Employee>> used = new HashSet<>();
+        for ( Employee employee : plain.all() ) {
+            Repo<String, Employee> shard = shards.shard( employee.getId() );
+            assertNotNull( shard.get( employee.getId() ) );
+            used.add( shard );
+        }
+        for ( Repo<String, Employee> shard : used ) {
+            total += shard.size();
+        }
+        assertEquals( 4, used.size() );
+        assertEquals( plain.size(), total );
+
+        assertEquals( 1_000_000, sharded.get( "id-1" ).getSalary() );
+        assertNull( sharded.get( "id-9" ) );
+    }
+
+    @Test
+    public void testQueries() {
+        assertEquals( ids( plain.query( ObjectFilter.eq( "lastName", "Last3" ) ) ),
+                ids( sharded.query( ObjectFilter.eq( "lastName", "Last3" ) ) ) );
+        assertEquals( ids( plain.query( ObjectFilter.gt( "salary", 2_000 ), ObjectFilter.eq( "firstName", "First2" ) ) ),
+                ids( sharded.query( ObjectFilter.gt( "salary", 2_000 ), ObjectFilter.eq( "firstName", "First2" ) ) ) );
+        assertEquals( ids( plain.results( ObjectFilter.lt( "salary", 300 ) ).asList() ),
+                ids( sharded.results( ObjectFilter.lt( "salary", 300 ) ).asList() ) );
+        assertEquals( plain.count( "Last1", "lastName", "Last1" ), sharded.count( "Last1", "lastName", "Last1" ) );
+        assertEquals( plain.maxInt( null, "salary" ), sharded.maxInt( null, "salary" ) );
+        assertEquals( plain.minString( null, "lastName" ), sharded.minString( null, "lastName" ) );
+    }
+
+    @Test
+    public void testSortedQueriesMerge() {
+        assertEquals( idList( plain.sortedQuery( "salary" ) ), idList( sharded.sortedQuery( "salary" ) ) );
+        assertEquals( idList( plain.sortedQuery( Sort.desc( "salary" ), ObjectFilter.eq( "lastName", "Last2" ) ) ),
+                idList( sharded.sortedQuery( Sort.desc( "salary" ), ObjectFilter.eq( "lastName", "Last2" ) ) ) );
+        assertEquals( idList( plain.sortedQuery( Sort.asc( "salary" ), 40, 25 ) ),
+                idList( sharded.sortedQuery( Sort.asc( "salary" ), 40, 25 ) ) );
+        assertEquals( idList( plain.sortedQuery( Sort.desc( "salary" ), 0, 10, ObjectFilter.eq( "firstName", "First3" ) ) ),
+                idList( sharded.sortedQuery( Sort.desc( "salary" ), 0, 10, ObjectFilter.eq( "firstName", "First3" ) ) ) );
+    }
+
+    @Test
+    public void testPagesWalkEveryShard() {
+        List<Employee> expected = plain.sortedQuery( "salary", ObjectFilter.gt( "salary", 100 ) );
+        List<Employee> walked = new ArrayList<>();
+        String cursor = null;
+        do {
+            Page<Employee> page = sharded.page( "salary", cursor, 7, ObjectFilter.gt( "salary", 100 ) );
+            assertTrue( page.getItems().size() <= 7 );
+            walked.addAll( page.getItems() );
+            cursor = page.getCursor();
+        } while ( cursor != null );
+        assertEquals( idList( expected ), idList( walked ) );
+
+        /* Many items share each last name, and every one of them is handed out once. */
+        walked.clear();
+        cursor = null;
+        do {
+            Page<Employee> page = sharded.page( "lastName", cursor, 11 );
+            walked.addAll( page.getItems() );
+            cursor = page.getCursor();
+        } while ( cursor != null );
+        assertEquals( plain.size(), walked.size() );
+        assertEquals( ids( plain.all() ), ids( walked ) );
+        for ( int index = 1; index < walked.size(); index++ ) {
+            assertTrue( walked.get( index - 1 ).getLastName().compareTo( walked.get( index ).getLastName() ) <= 0 );
+        }
+    }
+
+    @Test
+    public void testSelectorsSeeEveryShard() {
+        List<Map<String, Object>> expected = plain.query( selects( max( "salary" ), min( "salary" ) ), ObjectFilter.eq( "lastName", "Last4" ) );
+        List<Map<String, Object>> actual = sharded.query( selects( max( "salary" ), min( "salary" ) ), ObjectFilter.eq( "lastName", "Last4" ) );
+        assertEquals( expected.get( 0 ).get( "max.salary" ), actual.get( 0 ).get( "max.salary" ) );
+        assertEquals( expected.get( 0 ).get( "min.salary" ), actual.get( 0 ).get( "min.salary" ) );
+    }
+
+    @Test
+    public void testView() {
+        View<String, Employee> view = sharded.view( ObjectFilter.eq( "firstName", "First1" ) );
+        assertEquals( plain.query( ObjectFilter.eq( "firstName", "First1" ) ).size(), view.size() );
+
+        sharded.update( "id-2", "firstName", "First1" );
+        assertTrue( view.has( "id-2" ) );
+        assertEquals( ids( sharded.query( ObjectFilter.eq( "firstName", "First1" ) ) ), ids( view.items() ) );
+        view.close();
+    }
+
+    @Test
+    public void testViewAggregatesSeeEveryShard() {
+        View<String, Employee> expected = plain.view( Arrays.asList( Aggregate.count(), Aggregate.sum( "salary" ),
+                Aggregate.max( "salary" ) ), ObjectFilter.eq( "lastName", "Last2" ) );
+        View<String, Employee> view = sharded.view( Arrays.asList( Aggregate.count(), Aggregate.sum( "salary" ),
+                Aggregate.max( "salary" ) ), ObjectFilter.eq( "lastName", "Last2" ) );
+        assertEquals( expected.aggregates(), view.aggregates() );
+
+        plain.update( "id-2", "salary", 2_000_000 );
+        sharded.update( "id-2", "salary", 2_000_000 );
+        plain.removeByKey( "id-7" );
+        sharded.removeByKey( "id-7" );
+        assertEquals( expected.aggregates(), view.aggregates() );
+        assertEquals( 2_000_000, view.aggregate( "max.salary" ) );
+        view.close();
+        expected.close();
+    }
+
+    @Test
+    public void testIndexesCanOnlyBeAddedThroughTheBuilder() {
+        try {
+            sharded.addSearchIndex( "firstName", new SearchIndexDefault( String.class ) );
+            fail();
+        } catch ( IllegalStateException ex ) {
+            assertTrue( ex.getMessage().contains( "searchIndex( \"firstName\" )" ) );
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package org.boon.tests;
+
+import org.boon.datarepo.Aggregate;
+import org.boon.datarepo.Repo;
+import org.boon.datarepo.Repos;
+import org.boon.datarepo.View;
+import org.boon.datarepo.ViewListener;
+import org.boon.tests.model.Employee;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.boon.Lists.list;
+import static org.boon.criteria.ObjectFilter.*;
+import static org.boon.criteria.Selector.select;
+import static org.boon.criteria.Selector.selects;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+public class RepoViewTest {
+
+    Repo<String, Employee> repo;
+
+    @Before
+    public void setUp() {
+        repo = Repos.builder().primaryKey( "id" ).searchIndex( "salary" ).lookupIndex( "lastName" )
+                .build( String.class, Employee.class );
+
+        for ( int index = 0; index < 20; index++ ) {
+            repo.add( Employee.employee( "First" + index, "Last" + index % 2, "id-" + index, "05.29.70", index * 10 ) );
+        }
+    }
+
+    @Test
+    public void testViewFollowsChanges() {
+        View<String, Employee> view = repo.view(
+                list( Aggregate.count(), Aggregate.sum( "salary" ), Aggregate.max( "salary" ), Aggregate.min( "salary" ) ),
+                eq( "lastName", "Last1" ) );
+
+        assertEquals( 10, view.size() );
+        assertEquals( 1000L, view.aggregate( "sum.salary" ) );
+        assertEquals( 190, view.aggregate( "max.salary" ) );
+        assertEquals( 10, view.aggregate( "min.salary" ) );
+
+        repo.add( Employee.employee( "New", "Last1", "id-new", "05.29.70", 500 ) );
+        repo.update( "id-19", "salary", 5 );
+        repo.update( "id-17", "lastName", "Last0" );
+        repo.removeByKey( "id-1" );
+        repo.update( "id-2", "lastName", "Last1" );
+
+        assertEquals( 10, view.size() );
+        assertTrue( view.has( "id-new" ) );
+        assertTrue( view.has( "id-2" ) );
+        assertFalse( view.has( "id-17" ) );
+        assertFalse( view.has( "id-1" ) );
+
+        Map<String, Object> aggregates = view.aggregates();
+        assertEquals( 10L, aggregates.get( "count" ) );
+        assertEquals( 500, aggregates.get( "max.salary" ) );
+        assertEquals( 5, aggregates.get( "min.salary" ) );
+
+        long sum = 0;
+        for ( Employee employee : repo.query( eq( "lastName", "Last1" ) ) ) {
+            sum += employee.getSalary();
+        }
+        assertEquals( sum, aggregates.get( "sum.salary" ) );
+    }
+
+    @Test
+    public void testListenersAndClose() {
+        View<String, Employee> view = repo.view( gt( "salary", 150 ) );
+        final List<String> added = new ArrayList<>();
+        final List<String> removed = new ArrayList<>();
+        view.addListener( new ViewListener<Employee>() {
+            @Override
+            public void added( Employee item ) {
+                added.add( item.getId() );
+            }
+
+            @Override
+            public void removed( Employee item ) {
+                removed.add( item.getId() );
+            }
+        } );
+
+        repo.update( "id-1", "salary", 1_000 );
+        repo.update( "id-18", "salary", 0 );
+        repo.update( "id-2", "firstName", "Renamed" );
+
+        assertEquals( list( "id-1" ), added );
+        assertEquals( list( "id-18" ), removed );
+        assertEquals( 4, view.size() );
+
+        List<Map<String, Object>> rows = view.select( selects( select( "id" ) ) );
+        assertEquals( 4, rows.size() );
+
+        view.close();
+        repo.removeByKey( "id-1" );
+        assertEquals( 4, view.size() );
+        assertNull( repo.get( "id-1" ) );
+    }
+}
@@ -1,17 +1,24 @@
 package org.boon.tests;
 
+import org.boon.criteria.ObjectFilter;
 import org.boon.datarepo.Repo;
 import org.boon.datarepo.RepoBuilder;
 import org.boon.datarepo.Repos;
+import org.boon.datarepo.ResultSet;
 import org.boon.datarepo.modification.ModificationEvent;
 import org.boon.datarepo.modification.ModificationListener;
 import org.boon.tests.model.Employee;
 import org.boon.tests.model.SalesEmployee;
 import org.boon.core.Function;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.logging.Level;
 
+import static junit.framework.Assert.assertEquals;
+
 public class TestHelper {
 
     final static String getTestSSN = "777-222-2222";
@@ -118,6 +125,69 @@ public class TestHelper {
     }
 
 
+    static Repo<String, Employee> createFromBuilderConcurrent() {
+
+        /* Create a repo, and decide what to index. */
+        RepoBuilder repoBuilder = Repos.builder();
+
+        /* Same indexes as the normal repo but safe to share between threads. */
+        repoBuilder.primaryKey( "id" )
+                .searchIndex( "firstName" ).searchIndex( "lastName" )
+                .searchIndex( "salary" ).uniqueSearchIndex( "empNum" ).concurrent();
+
+        /* Create the repo with the builder. */
+        Repo<String, Employee> repo
+                = repoBuilder.build( String.class, Employee.class, SalesEmployee.class );
+
+        for ( Employee employee : employees ) {
+            repo.add( employee );
+        }
+        return repo;
+    }
+
+
+    static Repo<String, Employee> createFromBuilderSnapshot() {
+
+        /* Create a repo, and decide what to index. */
+        RepoBuilder repoBuilder = Repos.builder();
+
+        /* Same indexes as the normal repo but queries run against a frozen copy. */
+        repoBuilder.primaryKey( "id" )
+                .searchIndex( "firstName" ).searchIndex( "lastName" )
+                .searchIndex( "salary" ).uniqueSearchIndex( "empNum" ).snapshotQueries();
+
+        /* Create the repo with the builder. */
+        Repo<String, Employee> repo
+                = repoBuilder.build( String.class, Employee.class, SalesEmployee.class );
+
+        for ( Employee employee : employees ) {
+            repo.add( employee );
+        }
+        return repo;
+    }
+
+
+    static Repo<String, Employee> createFromBuilderBitmap() {
+
+        /* Create a repo, and decide what to index. */
+        RepoBuilder repoBuilder = Repos.builder();
+
+        /* Last names repeat a lot so they get a bitmap. */
+        repoBuilder.primaryKey( "id" )
+                .searchIndex( "firstName" ).bitmapIndex( "lastName" )
+                .searchIndex( "salary" ).uniqueSearchIndex( "empNum" );
+
+        /* Create the repo with the builder. */
+        Repo<String, Employee> repo
+                = repoBuilder.build( String.class, Employee.class, SalesEmployee.class );
+
+        for ( Employee employee : employees ) {
+            repo.add( employee );
+        }
+        return repo;
+    }
+
+
     static Repo<String, Employee> createFromBuilderWithTransformAndCollation() {
 
         /* Create a repo, and decide what to index. */
@@ -188,6 +258,26 @@ public class TestHelper {
     }
 
 
+    public static Repo<String, Employee> createWithNoIndexesParallelScan() {
+        /* Create a repo, and decide what to index. */
+        RepoBuilder repoBuilder = Repos.builder();
+
+        /* Nothing but the primary key is indexed, so every query is a scan split over the pool. */
+        repoBuilder.primaryKey( "id" ).parallelScan();
+
+
+        /* Create the repo with the builder. */
+        Repo<String, Employee> repo
+                = repoBuilder.build( String.class, Employee.class, SalesEmployee.class );
+
+        for ( Employee employee : employees ) {
+            repo.add( employee );
+        }
+        return repo;
+
+    }
+
+
     static Repo<String, Employee> createFromBuilderUsingPropertyAccess() {
 
         /* Create a repo, and decide what to index. */
@@ -235,4 +325,39 @@ public class TestHelper {
         return repo;
     }
 
+
+    /**
+     * Sorted, so a failed compare lists the ids in order.
+     */
+    static Set<String> ids( Collection<Employee> employees ) {
+        Set<String> ids = new TreeSet<>();
+        for ( Employee employee : employees ) {
+            ids.add( employee.getId() );
+        }
+        return ids;
+    }
+
+    static Set<String> ids( ResultSet<Employee> results ) {
+        return ids( results.asList() );
+    }
+
+    /**
+     * Same items by key, with the same type and fields, and the same answers to a couple of queries.
+     */
+    static void assertSameRepo( Repo<String, Employee> expected, Repo<String, Employee> actual ) {
+        assertEquals( expected.size(), actual.size() );
+        for ( Employee employee : expected.all() ) {
+            Employee copy = actual.get( employee.getId() );
+            assertEquals( employee, copy );
+            assertEquals( employee.getClass(), copy.getClass() );
+            assertEquals( employee.getFirstName(), copy.getFirstName() );
+            assertEquals( employee.getSalary(), copy.getSalary() );
+            assertEquals( employee.getEmpNum(), copy.getEmpNum() );
+        }
+        assertEquals( expected.query( ObjectFilter.eq( "lastName", "Last3" ) ).size(),
+                actual.query( ObjectFilter.eq( "lastName", "Last3" ) ).size() );
+        assertEquals( expected.query( ObjectFilter.gt( "salary", 10_000 ) ).size(),
+                actual.query( ObjectFilter.gt( "salary", 10_000 ) ).size() );
+    }
+
 }